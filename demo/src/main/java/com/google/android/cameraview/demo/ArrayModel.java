@@ -4,20 +4,56 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.Log;
 
+import java.io.IOException;
 import java.nio.FloatBuffer;
 
 public class ArrayModel extends Model {
+    private static final String TAG = "ArrayModel";
     protected static final int BYTES_PER_FLOAT = 4;
     protected static final int COORDS_PER_VERTEX = 3;
-    protected static final int VERTEX_STRIDE = COORDS_PER_VERTEX * BYTES_PER_FLOAT;
+    // Vertices are interleaved in a single buffer: position (x, y, z) then normal (x, y, z).
+    protected static final int FLOATS_PER_VERTEX = 2 * COORDS_PER_VERTEX;
+    protected static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
     protected static final int INPUT_BUFFER_SIZE = 0x10000;
 
-    // Vertices, normals will be populated by subclasses
+    // Interleaved vertices will be populated by subclasses
     protected int vertexCount;
     protected FloatBuffer vertexBuffer;
-    protected FloatBuffer normalBuffer;
-    protected FloatBuffer colorBuffer;   // Buffer for color-array (NEW)
+    // Packed vertices, which replace vertexBuffer once packVertices() is called.
+    @Nullable protected PackedVertices packedVertices;
+    // Whether the vertices are packed, and the offset and scale of the packed positions. Unlike
+    // packedVertices, these remain when the CPU copy of the geometry is released.
+    protected boolean packed;
+    protected final float[] packedOffset = new float[3];
+    protected final float[] packedScale = new float[3];
+    // Buffer object holding the vertices (packed or not) in the current GL context, or 0 until
+    // init() uploads them, and its size in bytes.
+    protected int vertexVbo;
+    protected int vertexVboBytes;
+
+    // Where the CPU copy of the geometry is reloaded from, or null to keep it in memory.
+    @Nullable private GeometrySource geometrySource;
+    // Whether the geometry was uploaded to the GPU since it was last loaded in memory.
+    private boolean geometryUploaded;
+    // Whether the CPU copy of the geometry was released, to be reloaded when needed.
+    private boolean geometryReleased;
+
+    // Handles of the uniforms and vertex attributes of glProgram, cached by init().
+    protected int mvpMatrixHandle;
+    protected int lightPosHandle;
+    protected int ambientColorHandle;
+    protected int diffuseColorHandle;
+    protected int specularColorHandle;
+    protected int materialColorHandle;
+    protected int positionOffsetHandle;
+    protected int positionScaleHandle;
+    protected int positionHandle;
+    protected int normalHandle;
+    // How the bounds of the model intersect the frustum (a Frustum constant), while drawFunc()
+    // runs.
+    protected int modelVisibility;
 
 
     private static final String FRAGMENT_SHADER_SOURCE =
@@ -30,69 +66,245 @@ public class ArrayModel extends Model {
                     "  gl_FragColor = vColor;\n" +
                     "}\n";
 
+    /**
+     * Where a model whose CPU copy of the geometry was released reloads it from, such as the mesh
+     * cache or the source file.
+     */
+    public interface GeometrySource {
+        /**
+         * Returns a new model with the same geometry as the one the source was set on, before
+         * its vertices were packed, or null if it is no longer available. Called on the thread
+         * that needs the geometry.
+         */
+        @Nullable
+        ArrayModel reload() throws IOException;
+    }
 
-    @Override
-    public void init(float boundSize) {
-        if (GLES20.glIsProgram(glProgram)) {
-            GLES20.glDeleteProgram(glProgram);
-            glProgram = -1;
+
+    /**
+     * Converts the vertices to the packed format of {@link PackedVertices}, which takes a third
+     * of the memory and bandwidth, and releases the float buffer. Must be called before
+     * {@link #init}.
+     */
+    public void packVertices() {
+        if (vertexBuffer == null) {
+            return;
         }
-        glProgram = Util.compileProgram(R.raw.model_vertex, R.raw.single_light_fragment,
-                new String[] {"a_Position", "a_Normal", "a_Color"});
+        packedVertices = PackedVertices.pack(vertexBuffer, vertexCount);
+        packed = true;
+        System.arraycopy(packedVertices.offset, 0, packedOffset, 0, 3);
+        System.arraycopy(packedVertices.scale, 0, packedScale, 0, 3);
+        vertexBuffer = null;
+    }
 
+    /**
+     * Sets where the geometry of the model can be reloaded from, which is the residency policy of
+     * its CPU copy. With a source, the vertex and index buffers are released as soon as
+     * {@link #init} has uploaded them to the GPU, halving the memory the model takes, and are
+     * reloaded from the source when needed again, such as when the GL context is lost. Without
+     * one, which is the default, they are kept for the lifetime of the model.
+     */
+    public synchronized void setGeometrySource(@Nullable GeometrySource source) {
+        geometrySource = source;
+        if (source != null && geometryUploaded) {
+            releaseGeometry();
+        }
+    }
 
-        // Get the handles to our shader parameters.
-        GLES20.glUseProgram(glProgram);
-        super.init(boundSize);
+    /**
+     * Makes sure that the CPU copy of the geometry is in memory, reloading it from the geometry
+     * source if it was released. Can be called on any thread.
+     *
+     * @return Whether the geometry is in memory. It is not if there is no source, or if the
+     *         source no longer matches the model.
+     * @throws IOException if the source failed to reload the geometry.
+     */
+    public synchronized boolean ensureGeometryLoaded() throws IOException {
+        if (!geometryReleased) {
+            return true;
+        }
+        ArrayModel source = geometrySource != null ? geometrySource.reload() : null;
+        if (source == null || !restoreGeometry(source)) {
+            return false;
+        }
+        geometryReleased = false;
+        geometryUploaded = false;
+        return true;
     }
 
-    @Override
-    public void draw(float[] viewMatrix, float[] projectionMatrix, @NonNull Light light) {
-        if (vertexBuffer == null || normalBuffer == null) {
-            return;
+    // Called once init() has uploaded the geometry: releases the CPU copy if it can be reloaded.
+    synchronized void onGeometryUploaded() {
+        geometryUploaded = true;
+        if (geometrySource != null) {
+            releaseGeometry();
         }
-        GLES20.glUseProgram(glProgram);
+    }
 
-        int mvpMatrixHandle = GLES20.glGetUniformLocation(glProgram, "u_MVP");
-        int positionHandle = GLES20.glGetAttribLocation(glProgram, "a_Position");
-        int normalHandle = GLES20.glGetAttribLocation(glProgram, "a_Normal");
-        int colorHandle = GLES20.glGetAttribLocation(glProgram, "a_Color");
-        int lightPosHandle = GLES20.glGetUniformLocation(glProgram, "u_LightPos");
-        int ambientColorHandle = GLES20.glGetUniformLocation(glProgram, "u_ambientColor");
-        int diffuseColorHandle = GLES20.glGetUniformLocation(glProgram, "u_diffuseColor");
-        int specularColorHandle = GLES20.glGetUniformLocation(glProgram, "u_specularColor");
+    private void releaseGeometry() {
+        if (!geometryReleased) {
+            releaseCpuBuffers();
+            geometryReleased = true;
+        }
+    }
 
+    // Drops the CPU copy of the geometry, which the GPU buffers hold.
+    protected void releaseCpuBuffers() {
+        vertexBuffer = null;
+        packedVertices = null;
+    }
 
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
-                VERTEX_STRIDE, vertexBuffer);
+    // Takes the geometry of a reloaded copy of the model, packing it like ours. Returns false,
+    // leaving the model unchanged, if it doesn't match.
+    protected boolean restoreGeometry(@NonNull ArrayModel source) {
+        if (source.vertexBuffer == null || source.vertexCount != vertexCount) {
+            return false;
+        }
+        if (packed) {
+            packedVertices = PackedVertices.pack(source.vertexBuffer, vertexCount);
+        } else {
+            vertexBuffer = source.vertexBuffer;
+        }
+        return true;
+    }
 
-        GLES20.glEnableVertexAttribArray(normalHandle);
-        GLES20.glVertexAttribPointer(normalHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
-                VERTEX_STRIDE, normalBuffer);
+    @Override
+    public synchronized long getCpuBytes() {
+        long bytes = 0;
+        if (vertexBuffer != null) {
+            bytes += (long) vertexBuffer.capacity() * BYTES_PER_FLOAT;
+        }
+        if (packedVertices != null) {
+            bytes += packedVertices.getByteCount();
+        }
+        return bytes;
+    }
 
-        GLES20.glEnableVertexAttribArray(colorHandle);
-        GLES20.glVertexAttribPointer(colorHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
-                VERTEX_STRIDE, colorBuffer);
+    @Override
+    public long getGpuBytes() {
+        return vertexVboBytes;
+    }
+
+    @Override
+    public void init(float boundSize) {
+        // The program is shared with the other models, and only compiled once per GL context.
+        int vertexShader = packed ? R.raw.model_vertex_packed : R.raw.model_vertex;
+        ShaderProgram program = ProgramRegistry.getInstance().getProgram(vertexShader,
+                R.raw.single_light_fragment, null, new String[] {"a_Position", "a_Normal"});
+        glProgram = program.getProgram();
 
+        // Get the handles to our shader parameters, once rather than on every draw.
+        mvpMatrixHandle = program.getUniformLocation("u_MVP");
+        lightPosHandle = program.getUniformLocation("u_LightPos");
+        ambientColorHandle = program.getUniformLocation("u_ambientColor");
+        diffuseColorHandle = program.getUniformLocation("u_diffuseColor");
+        specularColorHandle = program.getUniformLocation("u_specularColor");
+        materialColorHandle = program.getUniformLocation("u_materialColor");
+        positionOffsetHandle = program.getUniformLocation("u_PositionOffset");
+        positionScaleHandle = program.getUniformLocation("u_PositionScale");
+        positionHandle = program.getAttribLocation("a_Position");
+        normalHandle = program.getAttribLocation("a_Normal");
+        glState.useProgram(glProgram);
+        // After a context loss, the geometry may have to be reloaded to be uploaded again.
+        try {
+            if (!ensureGeometryLoaded()) {
+                Log.e(TAG, "The geometry of " + getTitle() + " is no longer available.");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not reload the geometry of " + getTitle(), e);
+        }
+        createBuffers();
+        glState.invalidateBufferBindings();
+        if (vertexVbo != 0 && GLES20.glGetError() == GLES20.GL_NO_ERROR) {
+            onGeometryUploaded();
+        }
+        super.init(boundSize);
+    }
 
+    /**
+     * Uploads the geometry to buffer objects, so that the driver doesn't copy it from client
+     * memory on every draw call. init() is called again whenever the GL context is recreated,
+     * which deletes the buffers of the lost context along with it, so their names are just
+     * replaced rather than deleted.
+     */
+    protected void createBuffers() {
+        if (packedVertices != null) {
+            vertexVbo = MyGLUtils.createVbo(packedVertices.vertices);
+            vertexVboBytes = packedVertices.vertices.capacity();
+        } else if (vertexBuffer != null) {
+            vertexVbo = MyGLUtils.createVbo(vertexBuffer);
+            vertexVboBytes = vertexBuffer.capacity() * BYTES_PER_FLOAT;
+        } else {
+            vertexVbo = 0;
+            vertexVboBytes = 0;
+        }
+    }
+
+    @Override
+    public void draw(float[] viewMatrix, float[] projectionMatrix, @NonNull Light light) {
+        if (vertexVbo == 0) {
+            return;
+        }
         Matrix.multiplyMM(mvMatrix, 0, viewMatrix, 0, modelMatrix, 0);
         Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvMatrix, 0);
+        // Skip everything, including the state changes, if the model is out of view.
+        frustum.set(mvpMatrix);
+        modelVisibility = frustum.classifyBox(minX, minY, minZ, maxX, maxY, maxZ);
+        if (modelVisibility == Frustum.OUTSIDE) {
+            if (cullingStats != null) {
+                addCulled(cullingStats);
+            }
+            return;
+        }
+        // The state is left as is after drawing: the next draw only changes what it needs to.
+        glState.useProgram(glProgram);
+        glState.setEnabledAttribs(
+                GlStateCache.attribBit(positionHandle) | GlStateCache.attribBit(normalHandle));
+        glState.bindArrayBuffer(vertexVbo);
+        setVertexAttribPointers(0);
+
         GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
 
         GLES20.glUniform3fv(lightPosHandle, 1, light.getPositionInEyeSpace(), 0);
         GLES20.glUniform3fv(ambientColorHandle, 1, light.getAmbientColor(), 0);
         GLES20.glUniform3fv(diffuseColorHandle, 1, light.getDiffuseColor(), 0);
         GLES20.glUniform3fv(specularColorHandle, 1, light.getSpecularColor(), 0);
+        GLES20.glUniform4fv(materialColorHandle, 1, Submesh.DEFAULT_COLOR, 0);
+        if (packed) {
+            GLES20.glUniform3fv(positionOffsetHandle, 1, packedOffset, 0);
+            GLES20.glUniform3fv(positionScaleHandle, 1, packedScale, 0);
+        }
 
         drawFunc();
-
-        GLES20.glDisableVertexAttribArray(normalHandle);
-        GLES20.glDisableVertexAttribArray(positionHandle);
-        GLES20.glDisableVertexAttribArray(colorHandle);
     }
 
     protected void drawFunc() {
         GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
+        if (cullingStats != null) {
+            cullingStats.addDrawn(1, vertexCount / 3);
+        }
+    }
+
+    // Counts the draw calls that drawFunc() would have issued as culled.
+    protected void addCulled(@NonNull CullingStats stats) {
+        stats.addCulled(1, vertexCount / 3);
+    }
+
+    // Points the vertex attributes at the given vertex of the vertex buffer object, so that it is
+    // vertex 0 for the next draw calls. Both attributes are read from the same interleaved buffer.
+    // Only valid while drawFunc() runs, with vertexVbo bound.
+    protected void setVertexAttribPointers(int firstVertex) {
+        if (packed) {
+            int offset = firstVertex * PackedVertices.STRIDE;
+            GLES20.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX, GLES20.GL_SHORT, true,
+                    PackedVertices.STRIDE, offset);
+            GLES20.glVertexAttribPointer(normalHandle, 2, GLES20.GL_BYTE, true,
+                    PackedVertices.STRIDE, offset + PackedVertices.NORMAL_OFFSET);
+            return;
+        }
+        int offset = firstVertex * VERTEX_STRIDE;
+        GLES20.glVertexAttribPointer(positionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
+                VERTEX_STRIDE, offset);
+        GLES20.glVertexAttribPointer(normalHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
+                VERTEX_STRIDE, offset + COORDS_PER_VERTEX * BYTES_PER_FLOAT);
     }
 }
@@ -70,7 +70,23 @@ public class AsyncFileDownloader {
     if (state != STATE_NOT_STARTED) {
       throw new IllegalStateException("Can't add files to AsyncFileDownloader after starting.");
     }
-    entries.add(new Entry(fileName, url));
+    entries.add(new Entry(fileName, url, null));
+  }
+
+  /**
+   * Adds a file to download, whose contents are streamed to the given consumer as they arrive
+   * instead of being stored in its entry.
+   *
+   * Can only be called before {@link #start} is called.
+   * @param fileName The name of the file.
+   * @param url The URL to download the file from.
+   * @param consumer The consumer of the file's contents. It is called on a background thread.
+   */
+  public void add(String fileName, String url, AsyncHttpRequest.StreamConsumer consumer) {
+    if (state != STATE_NOT_STARTED) {
+      throw new IllegalStateException("Can't add files to AsyncFileDownloader after starting.");
+    }
+    entries.add(new Entry(fileName, url, consumer));
   }
 
   /**
@@ -95,6 +111,7 @@ public class AsyncFileDownloader {
           if (state != STATE_DOWNLOADING) return;
           Log.d(TAG, "Finished downloading " + entry.fileName + " from " + entry.url);
           entry.contents = responseBody;
+          entry.done = true;
           if (areAllEntriesDone()) {
             state = STATE_SUCCESS;
             invokeCompletionCallback();
@@ -108,7 +125,7 @@ public class AsyncFileDownloader {
           state = STATE_ERROR;
           invokeCompletionCallback();
         }
-      });
+      }, entry.consumer);
       request.send();
     }
   }
@@ -128,10 +145,10 @@ public class AsyncFileDownloader {
     return entries.get(index);
   }
 
-  // Returns true if all entries have been downloaded (all entries have contents).
+  // Returns true if all entries have been downloaded.
   private boolean areAllEntriesDone() {
     for (Entry entry : entries) {
-      if (entry.contents == null) return false;
+      if (!entry.done) return false;
     }
     return true;
   }
@@ -152,11 +169,22 @@ public class AsyncFileDownloader {
     public final String fileName;
     /** The URL where the file is to be fetched from. */
     public final String url;
-    /** The contents of the file, if it has already been fetched. Otherwise, null. */
+    /**
+     * The contents of the file, if it has already been fetched and was not streamed to a
+     * consumer. Otherwise, null.
+     */
     public byte[] contents;
+    // The consumer to which the file's contents are streamed, if any.
+    private final AsyncHttpRequest.StreamConsumer consumer;
+    // Whether the file has been fetched.
+    private boolean done;
     public Entry(String fileName, String url) {
+      this(fileName, url, null);
+    }
+    private Entry(String fileName, String url, AsyncHttpRequest.StreamConsumer consumer) {
       this.fileName = fileName;
       this.url = url;
+      this.consumer = consumer;
     }
   }
 }
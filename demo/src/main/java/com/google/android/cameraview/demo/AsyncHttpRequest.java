@@ -43,6 +43,9 @@ public class AsyncHttpRequest {
   // The handler on which to post a call to the listener.
   private Handler handler;
 
+  // If not null, the response body is streamed to this consumer instead of being buffered.
+  private StreamConsumer consumer;
+
   // If true, the request was started.
   private boolean requestStarted;
 
@@ -52,7 +55,8 @@ public class AsyncHttpRequest {
   public interface CompletionListener {
     /**
      * Called to indicate that the asynchronous HTTP request finished successfully.
-     * @param responseBody The body of the response.
+     * @param responseBody The body of the response, or null if it was streamed to a
+     *                     {@link StreamConsumer}.
      */
     void onHttpRequestSuccess(byte[] responseBody);
 
@@ -65,6 +69,25 @@ public class AsyncHttpRequest {
     void onHttpRequestFailure(int statusCode, String message, Exception exception);
   }
 
+  /**
+   * Consumer for the body of a streamed request.
+   *
+   * Its method is called on the request's background thread as the data arrives, so the body
+   * can be processed while it is still being downloaded, and never has to be held in memory as a
+   * whole.
+   */
+  public interface StreamConsumer {
+    /**
+     * Called with each part of the response body, in order.
+     * @param buffer The buffer containing the data. It is reused after this method returns.
+     * @param offset The offset of the data in the buffer.
+     * @param length The number of bytes of data.
+     * @throws Exception if the data can't be processed. The request then fails with this
+     *                   exception.
+     */
+    void onHttpData(byte[] buffer, int offset, int length) throws Exception;
+  }
+
   /**
    * Creates a new AsyncHttpRequest for the given URL.
    * @param url The URL of the request.
@@ -72,8 +95,23 @@ public class AsyncHttpRequest {
    * @param listener The listener to call when the request completes.
    */
   public AsyncHttpRequest(String url, Handler handler, CompletionListener listener) {
+    this(url, handler, listener, null);
+  }
+
+  /**
+   * Creates a new AsyncHttpRequest for the given URL, whose response body is streamed to the
+   * given consumer. The listener is then called with a null response body once all the data
+   * has been consumed.
+   * @param url The URL of the request.
+   * @param handler The handler on which the listener should be called.
+   * @param listener The listener to call when the request completes.
+   * @param consumer The consumer of the response body, or null to buffer it.
+   */
+  public AsyncHttpRequest(String url, Handler handler, CompletionListener listener,
+      StreamConsumer consumer) {
     this.handler = handler;
     this.listener = listener;
+    this.consumer = consumer;
     try {
       this.url = new URL(url);
     } catch (MalformedURLException ex) {
@@ -112,6 +150,11 @@ public class AsyncHttpRequest {
             "Request to " + url + " failed with HTTP status code " + responseCode, null);
         return;
       }
+      if (consumer != null) {
+        streamTo(connection.getInputStream(), consumer);
+        postSuccess(null);
+        return;
+      }
       ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
       copyStream(connection.getInputStream(), outputStream);
       postSuccess(outputStream.toByteArray());
@@ -156,4 +199,14 @@ public class AsyncHttpRequest {
     }
     return totalBytes;
   }
+
+  // Passes the entire contents of the given input stream to the given consumer.
+  private static void streamTo(InputStream inputStream, StreamConsumer consumer)
+      throws Exception {
+    byte[] buffer = new byte[16384];
+    int bytesReadThisTime;
+    while ((bytesReadThisTime = inputStream.read(buffer, 0, buffer.length)) > 0) {
+      consumer.onHttpData(buffer, 0, bytesReadThisTime);
+    }
+  }
 }
@@ -0,0 +1,54 @@
+package com.google.android.cameraview.demo;
+
+/**
+ * Counts the draw calls and triangles that were issued and those that were skipped by frustum
+ * culling, over a frame. Only used on the GL thread.
+ */
+public class CullingStats {
+  private int drawCalls;
+  private int triangles;
+  private int culledDrawCalls;
+  private int culledTriangles;
+
+  /** Resets the counters, at the start of a frame. */
+  public void reset() {
+    drawCalls = 0;
+    triangles = 0;
+    culledDrawCalls = 0;
+    culledTriangles = 0;
+  }
+
+  /** Counts draw calls that were issued, and their triangles. */
+  public void addDrawn(int drawCalls, int triangles) {
+    this.drawCalls += drawCalls;
+    this.triangles += triangles;
+  }
+
+  /** Counts draw calls that were skipped because they were outside the frustum. */
+  public void addCulled(int drawCalls, int triangles) {
+    culledDrawCalls += drawCalls;
+    culledTriangles += triangles;
+  }
+
+  public int getDrawCalls() {
+    return drawCalls;
+  }
+
+  public int getTriangles() {
+    return triangles;
+  }
+
+  public int getCulledDrawCalls() {
+    return culledDrawCalls;
+  }
+
+  public int getCulledTriangles() {
+    return culledTriangles;
+  }
+
+  @Override
+  public String toString() {
+    return "Drawn: " + drawCalls + " draw calls, " + triangles + " triangles; culled: "
+        + culledDrawCalls + " draw calls, " + culledTriangles + " triangles";
+  }
+}
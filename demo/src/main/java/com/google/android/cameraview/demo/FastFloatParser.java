@@ -0,0 +1,160 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.charset.Charset;
+
+/**
+ * Parses decimal floats from a range of bytes or chars, without allocating.
+ *
+ * The results are bit-identical to {@link Float#parseFloat(String)}. Numbers of the form
+ * exporters actually write ({@code [+-]digits[.digits][(e|E)[+-]digits]}, with up to 15
+ * significant digits and a small exponent) are converted with a single correctly rounded
+ * double operation. Everything else (hex floats, "NaN", very long mantissas, values near the
+ * limits of the float range, and malformed input) falls back to {@link Float#parseFloat}, which
+ * also takes care of throwing {@link NumberFormatException} for invalid input.
+ */
+public final class FastFloatParser {
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+  // Largest power of ten that a double can represent exactly.
+  private static final int MAX_EXACT_POWER_OF_TEN = 22;
+  private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER_OF_TEN + 1];
+  // Mantissas below this value are represented exactly by a double.
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+  // Number of digits that can be accumulated in a long without overflowing.
+  private static final int MAX_MANTISSA_DIGITS = 18;
+  // A double that lies exactly halfway between two floats has its 29 low (dropped) bits set to
+  // exactly 1 followed by zeroes.
+  private static final long FLOAT_DROPPED_BITS_MASK = (1L << 29) - 1;
+  private static final long FLOAT_HALFWAY_BITS = 1L << 28;
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private FastFloatParser() {}
+
+  /**
+   * Parses the bytes in [{@code start}, {@code end}) of {@code data} as a float.
+   *
+   * @throws NumberFormatException if the range is not a valid float.
+   */
+  public static float parseFloat(byte[] data, int start, int end) {
+    return parseFloat(data, null, start, end);
+  }
+
+  /**
+   * Parses the chars in [{@code start}, {@code end}) of {@code s} as a float.
+   *
+   * @throws NumberFormatException if the range is not a valid float.
+   */
+  public static float parseFloat(CharSequence s, int start, int end) {
+    return parseFloat(null, s, start, end);
+  }
+
+  // Parses a range of either data (if not null) or s. Both inputs share this implementation,
+  // and read their characters through charAt(), so that parsing chars doesn't allocate either.
+  private static float parseFloat(byte[] data, CharSequence s, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (charAt(data, s, i) == '-' || charAt(data, s, i) == '+')) {
+      negative = charAt(data, s, i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean sawDigit = false;
+    boolean inFraction = false;
+    for (; i < end; i++) {
+      int c = charAt(data, s, i);
+      if (c >= '0' && c <= '9') {
+        sawDigit = true;
+        if (mantissa == 0 && c == '0') {
+          // Leading zeroes don't count towards the digit limit.
+          if (inFraction) {
+            exponent--;
+          }
+          continue;
+        }
+        if (++digits > MAX_MANTISSA_DIGITS) {
+          return fallback(data, s, start, end);
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        if (inFraction) {
+          exponent--;
+        }
+      } else if (c == '.' && !inFraction) {
+        inFraction = true;
+      } else {
+        break;
+      }
+    }
+    if (!sawDigit) {
+      return fallback(data, s, start, end);
+    }
+    if (i < end && (charAt(data, s, i) == 'e' || charAt(data, s, i) == 'E')) {
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (charAt(data, s, i) == '-' || charAt(data, s, i) == '+')) {
+        negativeExponent = charAt(data, s, i) == '-';
+        i++;
+      }
+      int exponentStart = i;
+      int explicitExponent = 0;
+      for (; i < end && charAt(data, s, i) >= '0' && charAt(data, s, i) <= '9'; i++) {
+        if (explicitExponent > 1000) {
+          return fallback(data, s, start, end);
+        }
+        explicitExponent = explicitExponent * 10 + (charAt(data, s, i) - '0');
+      }
+      if (i == exponentStart) {
+        return fallback(data, s, start, end);
+      }
+      exponent += negativeExponent ? -explicitExponent : explicitExponent;
+    }
+    if (i != end) {
+      return fallback(data, s, start, end);
+    }
+    float result = convert(mantissa, exponent, negative);
+    return Float.isNaN(result) ? fallback(data, s, start, end) : result;
+  }
+
+  // Converts mantissa * 10^exponent to the nearest float, or returns NaN if that can't be done
+  // exactly on the fast path.
+  private static float convert(long mantissa, int exponent, boolean negative) {
+    if (mantissa == 0) {
+      return negative ? -0.0f : 0.0f;
+    }
+    if (mantissa >= MAX_EXACT_MANTISSA
+        || exponent < -MAX_EXACT_POWER_OF_TEN || exponent > MAX_EXACT_POWER_OF_TEN) {
+      return Float.NaN;
+    }
+    // Both operands are exact, so this is the correctly rounded double result. Its magnitude is
+    // always well inside the normal float range (between 1e-22 and 2^53 * 1e22).
+    double value = exponent < 0
+        ? mantissa / POWERS_OF_TEN[-exponent]
+        : mantissa * POWERS_OF_TEN[exponent];
+    // Rounding the double to float gives the same result as rounding the exact value to float,
+    // unless the double landed exactly halfway between two floats; then we can't tell which way
+    // the exact value should go.
+    if ((Double.doubleToRawLongBits(value) & FLOAT_DROPPED_BITS_MASK) == FLOAT_HALFWAY_BITS) {
+      return Float.NaN;
+    }
+    float result = (float) value;
+    return negative ? -result : result;
+  }
+
+  private static int charAt(byte[] data, CharSequence s, int i) {
+    return data != null ? data[i] : s.charAt(i);
+  }
+
+  private static float fallback(byte[] data, CharSequence s, int start, int end) {
+    String number = data != null
+        ? new String(data, start, end - start, US_ASCII)
+        : s.subSequence(start, end).toString();
+    return Float.parseFloat(number);
+  }
+}
@@ -0,0 +1,125 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive floats.
+ *
+ * This is used instead of a {@code List<Float>} when collecting large amounts of geometry, to
+ * avoid boxing every element. Once the data is complete, {@link #drainTo(FloatBuffer)} moves it
+ * into its final buffer and releases the backing array.
+ */
+public class FloatArrayList {
+  private static final int DEFAULT_CAPACITY = 16;
+  private static final float[] EMPTY = new float[0];
+
+  private float[] elements;
+  private int size;
+
+  /** Creates an empty list. */
+  public FloatArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** Creates an empty list that can hold {@code initialCapacity} elements without growing. */
+  public FloatArrayList(int initialCapacity) {
+    elements = initialCapacity > 0 ? new float[initialCapacity] : EMPTY;
+  }
+
+  /** Returns the number of elements in the list. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns whether the list has no elements. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Appends an element to the end of the list. */
+  public void add(float value) {
+    if (size == elements.length) {
+      grow(size + 1);
+    }
+    elements[size++] = value;
+  }
+
+  /** Appends three elements to the end of the list, e.g. the components of a vector. */
+  public void add(float x, float y, float z) {
+    if (size + 3 > elements.length) {
+      grow(size + 3);
+    }
+    elements[size++] = x;
+    elements[size++] = y;
+    elements[size++] = z;
+  }
+
+  /** Appends {@code count} elements of {@code values}, starting at {@code offset}. */
+  public void addAll(float[] values, int offset, int count) {
+    if (size + count > elements.length) {
+      grow(size + count);
+    }
+    System.arraycopy(values, offset, elements, size, count);
+    size += count;
+  }
+
+  /** Appends all the elements of {@code other}. */
+  public void addAll(FloatArrayList other) {
+    addAll(other.elements, 0, other.size);
+  }
+
+  /** Returns the element at the given index. */
+  public float get(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+    }
+    return elements[index];
+  }
+
+  /** Replaces the element at the given index. */
+  public void set(int index, float value) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+    }
+    elements[index] = value;
+  }
+
+  /** Ensures the list can hold {@code capacity} elements without growing. */
+  public void ensureCapacity(int capacity) {
+    if (capacity > elements.length) {
+      elements = Arrays.copyOf(elements, capacity);
+    }
+  }
+
+  /** Removes all elements, keeping the allocated capacity. */
+  public void clear() {
+    size = 0;
+  }
+
+  /** Returns a copy of the elements as an array of exactly {@link #size()} elements. */
+  public float[] toArray() {
+    return Arrays.copyOf(elements, size);
+  }
+
+  /**
+   * Puts all the elements into the given buffer, at its current position, and then empties the
+   * list and releases its backing array. The list can be reused afterwards.
+   *
+   * @return The buffer, for convenience.
+   */
+  public FloatBuffer drainTo(FloatBuffer buffer) {
+    buffer.put(elements, 0, size);
+    elements = EMPTY;
+    size = 0;
+    return buffer;
+  }
+
+  private void grow(int minCapacity) {
+    int capacity = elements.length + (elements.length >> 1);
+    if (capacity < minCapacity) {
+      capacity = Math.max(minCapacity, DEFAULT_CAPACITY);
+    }
+    elements = Arrays.copyOf(elements, capacity);
+  }
+}
@@ -0,0 +1,76 @@
+package com.google.android.cameraview.demo;
+
+/**
+ * The six planes of a view frustum, to skip drawing what is entirely outside of it.
+ *
+ * The planes are extracted from a clip matrix (projection * view, or projection * view * model
+ * to get them in model coordinates), with the method of Gribb and Hartmann: a point is inside
+ * when its clip coordinates satisfy -w <= x, y, z <= w, and each of these inequalities is a
+ * plane.
+ */
+public class Frustum {
+  /** The box is entirely outside the frustum. */
+  public static final int OUTSIDE = 0;
+  /** The box crosses the boundary of the frustum. */
+  public static final int INTERSECTING = 1;
+  /** The box is entirely inside the frustum. */
+  public static final int INSIDE = 2;
+
+  // Left, right, bottom, top, near and far planes: (a, b, c, d) each, with a normalized normal
+  // pointing inside, so that a * x + b * y + c * z + d is the distance of a point to the plane.
+  private final float[] planes = new float[6 * 4];
+
+  /** Extracts the planes from the given column-major clip matrix. */
+  public void set(float[] matrix) {
+    for (int i = 0; i < 3; i++) {
+      for (int side = 0; side < 2; side++) {
+        // Row 3 plus or minus row i.
+        float sign = side == 0 ? 1 : -1;
+        int plane = (i * 2 + side) * 4;
+        for (int column = 0; column < 4; column++) {
+          planes[plane + column] = matrix[column * 4 + 3] + sign * matrix[column * 4 + i];
+        }
+        float length = (float) Math.sqrt(planes[plane] * planes[plane]
+            + planes[plane + 1] * planes[plane + 1] + planes[plane + 2] * planes[plane + 2]);
+        if (length > 0) {
+          for (int column = 0; column < 4; column++) {
+            planes[plane + column] /= length;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns whether the given axis-aligned box is {@link #OUTSIDE}, {@link #INTERSECTING} or
+   * {@link #INSIDE} the frustum. A box near a corner of the frustum may be reported as
+   * intersecting while it is outside, but never the other way around.
+   */
+  public int classifyBox(float minX, float minY, float minZ, float maxX, float maxY,
+      float maxZ) {
+    int result = INSIDE;
+    for (int plane = 0; plane < planes.length; plane += 4) {
+      float a = planes[plane];
+      float b = planes[plane + 1];
+      float c = planes[plane + 2];
+      float d = planes[plane + 3];
+      // The corner farthest along the normal, then the one farthest against it.
+      float farthest = a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY)
+          + c * (c > 0 ? maxZ : minZ) + d;
+      if (farthest < 0) {
+        return OUTSIDE;
+      }
+      float nearest = a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY)
+          + c * (c > 0 ? minZ : maxZ) + d;
+      if (nearest < 0) {
+        result = INTERSECTING;
+      }
+    }
+    return result;
+  }
+
+  /** Same as {@link #classifyBox}, with the bounds as arrays of 3 floats. */
+  public int classifyBox(float[] min, float[] max) {
+    return classifyBox(min[0], min[1], min[2], max[0], max[1], max[2]);
+  }
+}
@@ -0,0 +1,310 @@
+package com.google.android.cameraview.demo;
+
+import android.opengl.GLES20;
+
+/**
+ * A shadow copy of the GL state that draw calls change most: the current program, the array and
+ * element array buffer bindings, the enabled vertex attribute arrays, blending, depth testing,
+ * face culling and the bound textures. A call that would set a state to the value it already has
+ * is skipped, so draw paths can set everything they need on every draw without resetting it
+ * afterwards.
+ *
+ * The cache is only valid if all the GL calls that change these states go through it. It must be
+ * shared by everything that draws in a GL context, used on its GL thread only, and
+ * {@link #invalidate invalidated} when the context is (re)created. It also counts the calls it
+ * issued and those it skipped, over a frame.
+ */
+public class GlStateCache {
+  /**
+   * The GL calls that the cache issues. They go to GLES20, except in tests, which record them
+   * instead.
+   */
+  interface Gl {
+    void useProgram(int program);
+    void bindBuffer(int target, int buffer);
+    void enableVertexAttribArray(int index);
+    void disableVertexAttribArray(int index);
+    void enable(int capability);
+    void disable(int capability);
+    void activeTexture(int texture);
+    void bindTexture(int target, int texture);
+  }
+
+  private static final Gl GLES20_GL = new Gl() {
+    @Override
+    public void useProgram(int program) {
+      GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+      GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+      GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+      GLES20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void enable(int capability) {
+      GLES20.glEnable(capability);
+    }
+
+    @Override
+    public void disable(int capability) {
+      GLES20.glDisable(capability);
+    }
+
+    @Override
+    public void activeTexture(int texture) {
+      GLES20.glActiveTexture(texture);
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+      GLES20.glBindTexture(target, texture);
+    }
+  };
+
+  // Value of a state that is unknown, so that the next call to set it is always issued.
+  private static final int UNKNOWN = -1;
+  // Number of texture units tracked; calls on other units are always issued.
+  private static final int MAX_TEXTURE_UNITS = 16;
+
+  private int program;
+  private int arrayBuffer;
+  private int elementArrayBuffer;
+  // Bit i is set if vertex attribute array i is enabled. Only the first 32 attributes are
+  // tracked, which is more than GL ES 2.0 devices have.
+  private int enabledAttribs;
+  private boolean attribsKnown;
+  private int blend;
+  private int depthTest;
+  private int cullFace;
+  private int activeTextureUnit;
+  private final int[] textures2d = new int[MAX_TEXTURE_UNITS];
+
+  private final Gl gl;
+  private int issuedCalls;
+  private int elidedCalls;
+
+  public GlStateCache() {
+    this(GLES20_GL);
+  }
+
+  // Creates a cache that issues its calls to the given GL, for tests.
+  GlStateCache(Gl gl) {
+    this.gl = gl;
+    invalidate();
+  }
+
+  /**
+   * Forgets the state, so that the next calls are all issued. Must be called when the GL context
+   * is created, and after GL calls that bypass the cache.
+   */
+  public void invalidate() {
+    program = UNKNOWN;
+    arrayBuffer = UNKNOWN;
+    elementArrayBuffer = UNKNOWN;
+    enabledAttribs = 0;
+    attribsKnown = false;
+    blend = UNKNOWN;
+    depthTest = UNKNOWN;
+    cullFace = UNKNOWN;
+    activeTextureUnit = UNKNOWN;
+    for (int i = 0; i < textures2d.length; i++) {
+      textures2d[i] = UNKNOWN;
+    }
+  }
+
+  /** Resets the counters of issued and elided calls, at the start of a frame. */
+  public void resetCounters() {
+    issuedCalls = 0;
+    elidedCalls = 0;
+  }
+
+  /** Returns the number of GL calls issued since the counters were reset. */
+  public int getIssuedCalls() {
+    return issuedCalls;
+  }
+
+  /** Returns the number of redundant GL calls skipped since the counters were reset. */
+  public int getElidedCalls() {
+    return elidedCalls;
+  }
+
+  /** Makes the given program current. */
+  public void useProgram(int program) {
+    if (count(this.program == program)) {
+      return;
+    }
+    gl.useProgram(program);
+    this.program = program;
+  }
+
+  /**
+   * Must be called when a program is deleted: GL may reuse its name for a new program, which
+   * would then not be made current.
+   */
+  public void onProgramDeleted(int program) {
+    if (this.program == program) {
+      this.program = UNKNOWN;
+    }
+  }
+
+  /** Binds the given buffer to GL_ARRAY_BUFFER. */
+  public void bindArrayBuffer(int buffer) {
+    if (count(arrayBuffer == buffer)) {
+      return;
+    }
+    gl.bindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+    arrayBuffer = buffer;
+  }
+
+  /** Binds the given buffer to GL_ELEMENT_ARRAY_BUFFER. */
+  public void bindElementArrayBuffer(int buffer) {
+    if (count(elementArrayBuffer == buffer)) {
+      return;
+    }
+    gl.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffer);
+    elementArrayBuffer = buffer;
+  }
+
+  /**
+   * Forgets the buffer bindings. Must be called after buffers are bound without the cache, such
+   * as by {@link MyGLUtils#createVbo} and {@link MyGLUtils#createIbo}.
+   */
+  public void invalidateBufferBindings() {
+    arrayBuffer = UNKNOWN;
+    elementArrayBuffer = UNKNOWN;
+  }
+
+  /**
+   * Must be called when buffers are deleted, since deleting a bound buffer binds 0 in its place,
+   * and GL may reuse its name.
+   */
+  public void onBuffersDeleted(int[] buffers) {
+    for (int buffer : buffers) {
+      if (arrayBuffer == buffer) {
+        arrayBuffer = 0;
+      }
+      if (elementArrayBuffer == buffer) {
+        elementArrayBuffer = 0;
+      }
+    }
+  }
+
+  /**
+   * Enables exactly the vertex attribute arrays whose bits are set in the given mask (bit i for
+   * attribute i), and disables the others. After {@link #invalidate}, the arrays that are not in
+   * the mask are assumed to be disabled, as they are in a new context.
+   */
+  public void setEnabledAttribs(int mask) {
+    // Arrays whose state changes; all those of the mask if the state is unknown.
+    int changed = attribsKnown ? enabledAttribs ^ mask : mask;
+    for (int bits = changed | mask; bits != 0; bits &= bits - 1) {
+      int attrib = Integer.numberOfTrailingZeros(bits);
+      int bit = 1 << attrib;
+      if (count((changed & bit) == 0)) {
+        continue;
+      }
+      if ((mask & bit) != 0) {
+        gl.enableVertexAttribArray(attrib);
+      } else {
+        gl.disableVertexAttribArray(attrib);
+      }
+    }
+    enabledAttribs = mask;
+    attribsKnown = true;
+  }
+
+  /**
+   * Returns the bit of the given attribute location in the mask of {@link #setEnabledAttribs},
+   * or 0 if the location is -1 (the attribute is not active).
+   */
+  public static int attribBit(int location) {
+    return location >= 0 && location < Integer.SIZE ? 1 << location : 0;
+  }
+
+  /** Enables or disables blending. */
+  public void setBlend(boolean enabled) {
+    blend = setCapability(GLES20.GL_BLEND, blend, enabled);
+  }
+
+  /** Enables or disables depth testing. */
+  public void setDepthTest(boolean enabled) {
+    depthTest = setCapability(GLES20.GL_DEPTH_TEST, depthTest, enabled);
+  }
+
+  /** Enables or disables face culling. */
+  public void setCullFace(boolean enabled) {
+    cullFace = setCapability(GLES20.GL_CULL_FACE, cullFace, enabled);
+  }
+
+  // Enables or disables the given capability if its current state is not the requested one, and
+  // returns the new state.
+  private int setCapability(int capability, int current, boolean enabled) {
+    int state = enabled ? 1 : 0;
+    if (count(current == state)) {
+      return current;
+    }
+    if (enabled) {
+      gl.enable(capability);
+    } else {
+      gl.disable(capability);
+    }
+    return state;
+  }
+
+  /** Binds the given 2D texture to the given texture unit (0 for GL_TEXTURE0). */
+  public void bindTexture2d(int unit, int texture) {
+    boolean tracked = unit < MAX_TEXTURE_UNITS;
+    if (count(tracked && textures2d[unit] == texture)) {
+      return;
+    }
+    if (!count(activeTextureUnit == unit)) {
+      gl.activeTexture(GLES20.GL_TEXTURE0 + unit);
+      activeTextureUnit = unit;
+    }
+    gl.bindTexture(GLES20.GL_TEXTURE_2D, texture);
+    if (tracked) {
+      textures2d[unit] = texture;
+    }
+  }
+
+  /**
+   * Must be called when textures are deleted, since deleting a bound texture binds 0 in its
+   * place, and GL may reuse its name.
+   */
+  public void onTexturesDeleted(int[] textures) {
+    for (int texture : textures) {
+      for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+        if (textures2d[unit] == texture) {
+          textures2d[unit] = 0;
+        }
+      }
+    }
+  }
+
+  // Counts a call as elided if the state already has the requested value, or as issued
+  // otherwise, and returns whether it is elided.
+  private boolean count(boolean redundant) {
+    if (redundant) {
+      elidedCalls++;
+    } else {
+      issuedCalls++;
+    }
+    return redundant;
+  }
+
+  @Override
+  public String toString() {
+    return "GL state calls: " + issuedCalls + " issued, " + elidedCalls + " elided";
+  }
+}
@@ -0,0 +1,750 @@
+package com.google.android.cameraview.demo;
+
+import android.opengl.GLES20;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A model loaded from a glTF 2.0 asset (https://github.com/KhronosGroup/glTF), either a JSON file
+ * with its binary buffers, or a single binary GLB file.
+ *
+ * Only the geometry is loaded: the triangles of the meshes of the nodes of the default scene,
+ * with their positions, normals and the base color factor of their material. Textures, skins,
+ * morph targets, animations, sparse accessors and quantized attributes are not supported. Each
+ * node with a mesh becomes a {@link MeshGroup}, and each primitive of its mesh a {@link Submesh}.
+ *
+ * The vertex and index data of glTF are already binary, so there is nothing to parse: accessors
+ * are read in place from their buffer views. A scene made of a single primitive without any
+ * transform, whose positions and normals are interleaved as floats (like the vertex buffer of this
+ * class) and whose indices are 16-bit, uses slices of the buffers directly, without any copy, if
+ * they are direct buffers. Otherwise, the primitives are transformed to the coordinates of the
+ * scene and merged into a single interleaved vertex buffer and index buffer.
+ */
+public class GltfModel extends IndexedModel {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // GLB container: a header ("glTF", version, length) followed by chunks (length, type, data).
+    private static final int GLB_MAGIC = 0x46546C67;
+    private static final int GLB_VERSION = 2;
+    private static final int GLB_HEADER_SIZE = 12;
+    private static final int GLB_CHUNK_HEADER_SIZE = 8;
+    private static final int GLB_CHUNK_JSON = 0x4E4F534A;
+    private static final int GLB_CHUNK_BIN = 0x004E4942;
+
+    private static final int COMPONENT_UNSIGNED_BYTE = 5121;
+    private static final int COMPONENT_UNSIGNED_SHORT = 5123;
+    private static final int COMPONENT_UNSIGNED_INT = 5125;
+    private static final int COMPONENT_FLOAT = 5126;
+
+    private static final int MODE_TRIANGLES = 4;
+    private static final int MODE_TRIANGLE_STRIP = 5;
+    private static final int MODE_TRIANGLE_FAN = 6;
+
+    private static final String DATA_URI_BASE64 = ";base64,";
+
+    /**
+     * Loads the model from the bytes of a GLB file. The buffer is used in place: if it is direct,
+     * the model may draw straight from it.
+     *
+     * @param allowIntIndices See {@link #setIndices}.
+     */
+    public GltfModel(@NonNull ByteBuffer glb, boolean allowIntIndices) throws IOException {
+        super();
+        ByteBuffer data = slice(glb, glb.position(), glb.remaining());
+        if (data.limit() < GLB_HEADER_SIZE || data.getInt(0) != GLB_MAGIC) {
+            throw new IOException("Not a GLB file.");
+        }
+        if (data.getInt(4) != GLB_VERSION) {
+            throw new IOException("Unsupported GLB version: " + data.getInt(4));
+        }
+        int length = Math.min(data.getInt(8), data.limit());
+        String json = null;
+        ByteBuffer bin = null;
+        int offset = GLB_HEADER_SIZE;
+        while (offset + GLB_CHUNK_HEADER_SIZE <= length) {
+            int chunkLength = data.getInt(offset);
+            int chunkType = data.getInt(offset + 4);
+            int start = offset + GLB_CHUNK_HEADER_SIZE;
+            if (chunkLength < 0 || chunkLength > length - start) {
+                throw new IOException("Invalid GLB chunk at " + offset + ".");
+            }
+            if (chunkType == GLB_CHUNK_JSON && json == null) {
+                byte[] bytes = new byte[chunkLength];
+                ByteBuffer chunk = slice(data, start, chunkLength);
+                chunk.get(bytes);
+                json = new String(bytes, UTF_8);
+            } else if (chunkType == GLB_CHUNK_BIN && bin == null) {
+                bin = slice(data, start, chunkLength);
+            }
+            // Chunks are padded to 4 bytes.
+            offset = start + ((chunkLength + 3) & ~3);
+        }
+        if (json == null) {
+            throw new IOException("The GLB file has no JSON chunk.");
+        }
+        load(json, null, bin, allowIntIndices);
+    }
+
+    /**
+     * Loads the model from a glTF JSON file.
+     *
+     * @param files The contents of the files that the buffers of the asset refer to, by their
+     *     relative URI. They are used in place: if they are direct buffers, the model may draw
+     *     straight from them.
+     * @param allowIntIndices See {@link #setIndices}.
+     */
+    public GltfModel(@NonNull String json, @NonNull Map<String, ByteBuffer> files,
+            boolean allowIntIndices) throws IOException {
+        super();
+        load(json, files, null, allowIntIndices);
+    }
+
+    @Override
+    public void initModelMatrix(float boundSize) {
+        final float yRotation = 180f;
+        initModelMatrix(boundSize, 0.0f, yRotation, 0.0f);
+        float scale = getBoundScale(boundSize);
+        if (scale == 0.0f) { scale = 1.0f; }
+        floorOffset = (minY - centerMassY) / scale;
+    }
+
+    private void load(@NonNull String json, @Nullable Map<String, ByteBuffer> files,
+            @Nullable ByteBuffer glbBuffer, boolean allowIntIndices) throws IOException {
+        try {
+            JSONObject root = new JSONObject(json);
+            String version = root.getJSONObject("asset").getString("version");
+            if (!version.startsWith("2.")) {
+                throw new IOException("Unsupported glTF version: " + version);
+            }
+            build(new Asset(root, getBuffers(root, files, glbBuffer)), allowIntIndices);
+        } catch (JSONException e) {
+            throw new IOException("Invalid glTF asset.", e);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to build model from glTF data.", e);
+        }
+        if (vertexCount <= 0 || vertexBuffer == null || indexCount <= 0 || indexBuffer == null) {
+            throw new IOException("Invalid model.");
+        }
+    }
+
+    private static ByteBuffer[] getBuffers(JSONObject root, @Nullable Map<String, ByteBuffer> files,
+            @Nullable ByteBuffer glbBuffer) throws JSONException, IOException {
+        JSONArray buffers = root.optJSONArray("buffers");
+        if (buffers == null) {
+            return new ByteBuffer[0];
+        }
+        ByteBuffer[] result = new ByteBuffer[buffers.length()];
+        for (int i = 0; i < buffers.length(); i++) {
+            JSONObject buffer = buffers.getJSONObject(i);
+            int byteLength = buffer.getInt("byteLength");
+            String uri = buffer.optString("uri", null);
+            ByteBuffer data;
+            if (uri == null) {
+                // Only the first buffer of a GLB file may have no URI: it is the binary chunk.
+                data = i == 0 ? glbBuffer : null;
+            } else if (uri.startsWith("data:")) {
+                int base64 = uri.indexOf(DATA_URI_BASE64);
+                if (base64 < 0) {
+                    throw new IOException("Unsupported data URI in buffer " + i + ".");
+                }
+                data = ByteBuffer.wrap(Base64.decode(
+                        uri.substring(base64 + DATA_URI_BASE64.length()), Base64.DEFAULT));
+            } else {
+                data = files == null ? null : files.get(uri);
+                if (data == null && files != null) {
+                    data = files.get(decodeUri(uri));
+                }
+            }
+            if (data == null) {
+                throw new IOException("Missing data of buffer " + i + ": " + uri);
+            }
+            if (byteLength < 0 || data.remaining() < byteLength) {
+                throw new IOException("Buffer " + i + " is shorter than " + byteLength + " bytes.");
+            }
+            result[i] = slice(data, data.position(), byteLength);
+        }
+        return result;
+    }
+
+    private void build(Asset asset, boolean allowIntIndices) throws JSONException, IOException {
+        ArrayList<Instance> instances = new ArrayList<>();
+        collectInstances(asset, instances);
+        if (instances.size() == 1 && isIdentity(instances.get(0).matrix)
+                && buildInPlace(asset, instances.get(0))) {
+            return;
+        }
+
+        FloatArrayList vertices = new FloatArrayList();
+        IntArrayList indices = new IntArrayList();
+        ArrayList<Submesh> submeshList = new ArrayList<>();
+        ArrayList<MeshGroup> groupList = new ArrayList<>();
+        double[] centerMass = new double[3];
+        for (Instance instance : instances) {
+            int groupFirstSubmesh = submeshList.size();
+            float[] boundsMin = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+            float[] boundsMax = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+            for (int i = 0; i < instance.primitives.length(); i++) {
+                int firstIndex = indices.size();
+                JSONObject primitive = instance.primitives.getJSONObject(i);
+                if (!appendPrimitive(asset, primitive, instance.matrix, vertices, indices,
+                        boundsMin, boundsMax, centerMass)) {
+                    continue;
+                }
+                int materialId = primitive.optInt("material", ObjGeometry.MISSING);
+                submeshList.add(new Submesh(materialId, asset.getColor(materialId), firstIndex,
+                        indices.size() - firstIndex));
+            }
+            if (submeshList.size() > groupFirstSubmesh) {
+                groupList.add(new MeshGroup(instance.name, groupFirstSubmesh,
+                        submeshList.size() - groupFirstSubmesh, boundsMin, boundsMax));
+            }
+        }
+        if (indices.isEmpty()) {
+            return;
+        }
+
+        vertexCount = vertices.size() / FLOATS_PER_VERTEX;
+        centerMassX = (float) (centerMass[0] / vertexCount);
+        centerMassY = (float) (centerMass[1] / vertexCount);
+        centerMassZ = (float) (centerMass[2] / vertexCount);
+        ByteBuffer vbb = ByteBuffer.allocateDirect(vertices.size() * BYTES_PER_FLOAT);
+        vbb.order(ByteOrder.nativeOrder());
+        vertexBuffer = vertices.drainTo(vbb.asFloatBuffer());
+        vertexBuffer.position(0);
+        submeshes = submeshList.toArray(new Submesh[submeshList.size()]);
+        groups = groupList.toArray(new MeshGroup[groupList.size()]);
+        setIndices(indices, allowIntIndices);
+    }
+
+    // Lists the nodes with a mesh in the default scene (or, without scenes, in the trees of all
+    // the nodes that have no parent), with their transform.
+    private static void collectInstances(Asset asset, ArrayList<Instance> instances)
+            throws JSONException, IOException {
+        JSONArray nodes = asset.root.optJSONArray("nodes");
+        if (nodes == null) {
+            return;
+        }
+        JSONArray scenes = asset.root.optJSONArray("scenes");
+        float[] identity = new float[16];
+        identity[0] = identity[5] = identity[10] = identity[15] = 1;
+        if (scenes != null && scenes.length() > 0) {
+            JSONArray sceneNodes = scenes.getJSONObject(asset.root.optInt("scene", 0))
+                    .optJSONArray("nodes");
+            for (int i = 0; sceneNodes != null && i < sceneNodes.length(); i++) {
+                collectInstances(asset, sceneNodes.getInt(i), identity, 0, instances);
+            }
+            return;
+        }
+        boolean[] isChild = new boolean[nodes.length()];
+        for (int i = 0; i < nodes.length(); i++) {
+            JSONArray children = nodes.getJSONObject(i).optJSONArray("children");
+            for (int j = 0; children != null && j < children.length(); j++) {
+                isChild[children.getInt(j)] = true;
+            }
+        }
+        for (int i = 0; i < nodes.length(); i++) {
+            if (!isChild[i]) {
+                collectInstances(asset, i, identity, 0, instances);
+            }
+        }
+    }
+
+    private static void collectInstances(Asset asset, int nodeIndex, float[] parentMatrix,
+            int depth, ArrayList<Instance> instances) throws JSONException, IOException {
+        JSONArray nodes = asset.root.getJSONArray("nodes");
+        // Nodes form trees, so a path longer than the number of nodes has a cycle.
+        if (depth > nodes.length()) {
+            throw new IOException("The node hierarchy has a cycle.");
+        }
+        JSONObject node = nodes.getJSONObject(nodeIndex);
+        float[] matrix = new float[16];
+        multiply(parentMatrix, getLocalMatrix(node), matrix);
+        if (node.has("mesh")) {
+            JSONObject mesh = asset.root.getJSONArray("meshes").getJSONObject(node.getInt("mesh"));
+            String name = node.optString("name", mesh.optString("name", MeshGroup.DEFAULT_NAME));
+            instances.add(new Instance(name, mesh.getJSONArray("primitives"), matrix));
+        }
+        JSONArray children = node.optJSONArray("children");
+        for (int i = 0; children != null && i < children.length(); i++) {
+            collectInstances(asset, children.getInt(i), matrix, depth + 1, instances);
+        }
+    }
+
+    // Uses the buffers of the only primitive of the scene directly, if their layout is that of
+    // this class. Returns false, without changing the model, if it isn't.
+    private boolean buildInPlace(Asset asset, Instance instance)
+            throws JSONException, IOException {
+        if (instance.primitives.length() != 1
+                || ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            return false;
+        }
+        JSONObject primitive = instance.primitives.getJSONObject(0);
+        JSONObject attributes = primitive.getJSONObject("attributes");
+        if (primitive.optInt("mode", MODE_TRIANGLES) != MODE_TRIANGLES
+                || !attributes.has("NORMAL") || !primitive.has("indices")) {
+            return false;
+        }
+        Accessor positions = asset.getAccessor(attributes.getInt("POSITION"));
+        Accessor normals = asset.getAccessor(attributes.getInt("NORMAL"));
+        Accessor primitiveIndices = asset.getAccessor(primitive.getInt("indices"));
+        if (!positions.data.isDirect() || !primitiveIndices.data.isDirect()
+                || positions.componentType != COMPONENT_FLOAT || positions.components != 3
+                || normals.componentType != COMPONENT_FLOAT || normals.components != 3
+                || normals.count != positions.count
+                || positions.bufferView != normals.bufferView
+                || positions.stride != VERTEX_STRIDE
+                || normals.offset != positions.offset + COORDS_PER_VERTEX * BYTES_PER_FLOAT
+                || positions.offset % BYTES_PER_FLOAT != 0
+                || primitiveIndices.componentType != COMPONENT_UNSIGNED_SHORT
+                || primitiveIndices.components != 1
+                || primitiveIndices.stride != BYTES_PER_SHORT
+                || primitiveIndices.offset % BYTES_PER_SHORT != 0) {
+            return false;
+        }
+        int count = positions.count;
+        for (int i = 0; i < primitiveIndices.count; i++) {
+            int index = primitiveIndices.getIndex(i);
+            if (index >= count) {
+                throw new IOException("Vertex index out of bounds: " + index);
+            }
+        }
+
+        // The vertices end with the normal of the last one.
+        FloatBuffer vertices = slice(asset.getBufferView(positions.bufferView), positions.offset,
+                count * VERTEX_STRIDE).asFloatBuffer();
+        float[] vertex = new float[3];
+        double[] centerMass = new double[3];
+        for (int i = 0; i < count; i++) {
+            vertex[0] = vertices.get(i * FLOATS_PER_VERTEX);
+            vertex[1] = vertices.get(i * FLOATS_PER_VERTEX + 1);
+            vertex[2] = vertices.get(i * FLOATS_PER_VERTEX + 2);
+            adjustMaxMin(vertex[0], vertex[1], vertex[2]);
+            for (int axis = 0; axis < 3; axis++) {
+                centerMass[axis] += vertex[axis];
+            }
+        }
+        centerMassX = (float) (centerMass[0] / count);
+        centerMassY = (float) (centerMass[1] / count);
+        centerMassZ = (float) (centerMass[2] / count);
+        vertexBuffer = vertices;
+        vertexCount = count;
+        indexBuffer = primitiveIndices.data.asShortBuffer();
+        indexCount = primitiveIndices.count / 3 * 3;
+        indexType = GLES20.GL_UNSIGNED_SHORT;
+        int materialId = primitive.optInt("material", ObjGeometry.MISSING);
+        submeshes = new Submesh[] {
+                new Submesh(materialId, asset.getColor(materialId), 0, indexCount) };
+        groups = new MeshGroup[] { new MeshGroup(instance.name, 0, 1,
+                new float[] { minX, minY, minZ }, new float[] { maxX, maxY, maxZ }) };
+        return true;
+    }
+
+    // Appends the triangles of the primitive, transformed by the given matrix, to the vertices
+    // and indices. Returns false if the primitive has no triangles to draw.
+    private boolean appendPrimitive(Asset asset, JSONObject primitive, float[] matrix,
+            FloatArrayList vertices, IntArrayList indices, float[] boundsMin, float[] boundsMax,
+            double[] centerMass) throws JSONException, IOException {
+        int mode = primitive.optInt("mode", MODE_TRIANGLES);
+        if (mode != MODE_TRIANGLES && mode != MODE_TRIANGLE_STRIP && mode != MODE_TRIANGLE_FAN) {
+            // Points and lines.
+            return false;
+        }
+        JSONObject attributes = primitive.getJSONObject("attributes");
+        Accessor positions = asset.getAccessor(attributes.getInt("POSITION"));
+        Accessor normals = attributes.has("NORMAL")
+                ? asset.getAccessor(attributes.getInt("NORMAL")) : null;
+        if (positions.componentType != COMPONENT_FLOAT || positions.components != 3
+                || (normals != null && (normals.componentType != COMPONENT_FLOAT
+                        || normals.components != 3 || normals.count != positions.count))) {
+            throw new IOException("Unsupported vertex attributes.");
+        }
+        int[] triangles = getTriangles(mode, primitive.has("indices")
+                ? asset.getAccessor(primitive.getInt("indices")) : null, positions.count);
+        if (triangles.length == 0) {
+            return false;
+        }
+
+        // Normals are transformed by the cofactor matrix of the upper 3x3 of the matrix, which is
+        // its inverse transpose scaled by its determinant. A negative determinant mirrors the
+        // triangles, so their winding is reversed to keep them front-facing.
+        float[] normalMatrix = new float[9];
+        float determinant = getCofactors(matrix, normalMatrix);
+        if (determinant < 0) {
+            for (int i = 0; i < triangles.length; i += 3) {
+                int swap = triangles[i + 1];
+                triangles[i + 1] = triangles[i + 2];
+                triangles[i + 2] = swap;
+            }
+            for (int i = 0; i < 9; i++) {
+                normalMatrix[i] = -normalMatrix[i];
+            }
+        }
+
+        float[] position = new float[3];
+        float[] normal = new float[3];
+        int baseVertex = vertices.size() / FLOATS_PER_VERTEX;
+        if (normals != null) {
+            for (int v = 0; v < positions.count; v++) {
+                transformPoint(matrix, positions, v, position);
+                transformNormal(normalMatrix, normals, v, normal);
+                addVertex(vertices, position, normal, boundsMin, boundsMax, centerMass);
+            }
+            for (int index : triangles) {
+                indices.add(baseVertex + index);
+            }
+            return true;
+        }
+
+        // Without normals, glTF asks for flat shading: each triangle gets its own vertices.
+        float[][] corners = new float[3][3];
+        for (int i = 0; i < triangles.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                transformPoint(matrix, positions, triangles[i + j], corners[j]);
+            }
+            getFaceNormal(corners[0], corners[1], corners[2], normal);
+            for (int j = 0; j < 3; j++) {
+                addVertex(vertices, corners[j], normal, boundsMin, boundsMax, centerMass);
+                indices.add(baseVertex + i + j);
+            }
+        }
+        return true;
+    }
+
+    private void addVertex(FloatArrayList vertices, float[] position, float[] normal,
+            float[] boundsMin, float[] boundsMax, double[] centerMass) {
+        vertices.add(position[0], position[1], position[2]);
+        vertices.add(normal[0], normal[1], normal[2]);
+        adjustMaxMin(position[0], position[1], position[2]);
+        for (int axis = 0; axis < 3; axis++) {
+            boundsMin[axis] = Math.min(boundsMin[axis], position[axis]);
+            boundsMax[axis] = Math.max(boundsMax[axis], position[axis]);
+            centerMass[axis] += position[axis];
+        }
+    }
+
+    // Returns the vertex indices of the triangles of a primitive (3 per triangle).
+    private static int[] getTriangles(int mode, @Nullable Accessor indices, int vertexCount)
+            throws IOException {
+        if (indices != null
+                && (indices.components != 1 || indices.componentType == COMPONENT_FLOAT)) {
+            throw new IOException("Unsupported index accessor.");
+        }
+        int count = indices == null ? vertexCount : indices.count;
+        int[] sequence = new int[count];
+        for (int i = 0; i < count; i++) {
+            sequence[i] = indices == null ? i : indices.getIndex(i);
+            if (sequence[i] < 0 || sequence[i] >= vertexCount) {
+                throw new IOException("Vertex index out of bounds: " + sequence[i]);
+            }
+        }
+        if (mode == MODE_TRIANGLES) {
+            return count % 3 == 0 ? sequence : Arrays.copyOf(sequence, count / 3 * 3);
+        }
+        int[] triangles = new int[Math.max(0, count - 2) * 3];
+        for (int i = 2; i < count; i++) {
+            int t = (i - 2) * 3;
+            if (mode == MODE_TRIANGLE_FAN) {
+                triangles[t] = sequence[0];
+                triangles[t + 1] = sequence[i - 1];
+            } else if (i % 2 == 0) {
+                triangles[t] = sequence[i - 2];
+                triangles[t + 1] = sequence[i - 1];
+            } else {
+                // Every other triangle of a strip is reversed, so they all have the same winding.
+                triangles[t] = sequence[i - 1];
+                triangles[t + 1] = sequence[i - 2];
+            }
+            triangles[t + 2] = sequence[i];
+        }
+        return triangles;
+    }
+
+    // Column-major 4x4 matrix of a node: its "matrix", or its translation, rotation and scale.
+    private static float[] getLocalMatrix(JSONObject node) throws JSONException {
+        float[] matrix = new float[16];
+        JSONArray values = node.optJSONArray("matrix");
+        if (values != null) {
+            for (int i = 0; i < 16; i++) {
+                matrix[i] = (float) values.getDouble(i);
+            }
+            return matrix;
+        }
+        float[] t = getFloats(node.optJSONArray("translation"), new float[] { 0, 0, 0 });
+        float[] r = getFloats(node.optJSONArray("rotation"), new float[] { 0, 0, 0, 1 });
+        float[] s = getFloats(node.optJSONArray("scale"), new float[] { 1, 1, 1 });
+        float x = r[0];
+        float y = r[1];
+        float z = r[2];
+        float w = r[3];
+        matrix[0] = (1 - 2 * (y * y + z * z)) * s[0];
+        matrix[1] = 2 * (x * y + z * w) * s[0];
+        matrix[2] = 2 * (x * z - y * w) * s[0];
+        matrix[4] = 2 * (x * y - z * w) * s[1];
+        matrix[5] = (1 - 2 * (x * x + z * z)) * s[1];
+        matrix[6] = 2 * (y * z + x * w) * s[1];
+        matrix[8] = 2 * (x * z + y * w) * s[2];
+        matrix[9] = 2 * (y * z - x * w) * s[2];
+        matrix[10] = (1 - 2 * (x * x + y * y)) * s[2];
+        matrix[12] = t[0];
+        matrix[13] = t[1];
+        matrix[14] = t[2];
+        matrix[15] = 1;
+        return matrix;
+    }
+
+    private static float[] getFloats(@Nullable JSONArray values, float[] defaults)
+            throws JSONException {
+        if (values == null) {
+            return defaults;
+        }
+        for (int i = 0; i < defaults.length; i++) {
+            defaults[i] = (float) values.getDouble(i);
+        }
+        return defaults;
+    }
+
+    // out = a * b, for column-major 4x4 matrices.
+    private static void multiply(float[] a, float[] b, float[] out) {
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += a[k * 4 + row] * b[column * 4 + k];
+                }
+                out[column * 4 + row] = sum;
+            }
+        }
+    }
+
+    private static boolean isIdentity(float[] matrix) {
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                if (matrix[column * 4 + row] != (row == column ? 1 : 0)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Writes the cofactor matrix of the upper 3x3 of the given matrix (column-major, 3 columns of
+    // 3 floats), and returns its determinant.
+    private static float getCofactors(float[] m, float[] out) {
+        // The columns of the cofactor matrix are b x c, c x a and a x b, for the columns a, b, c.
+        for (int i = 0; i < 3; i++) {
+            int a = ((i + 1) % 3) * 4;
+            int b = ((i + 2) % 3) * 4;
+            out[i * 3] = m[a + 1] * m[b + 2] - m[a + 2] * m[b + 1];
+            out[i * 3 + 1] = m[a + 2] * m[b] - m[a] * m[b + 2];
+            out[i * 3 + 2] = m[a] * m[b + 1] - m[a + 1] * m[b];
+        }
+        return m[0] * out[0] + m[1] * out[1] + m[2] * out[2];
+    }
+
+    private static void transformPoint(float[] m, Accessor positions, int vertex, float[] out) {
+        float x = positions.getFloat(vertex, 0);
+        float y = positions.getFloat(vertex, 1);
+        float z = positions.getFloat(vertex, 2);
+        out[0] = m[0] * x + m[4] * y + m[8] * z + m[12];
+        out[1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+        out[2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+    }
+
+    private static void transformNormal(float[] m, Accessor normals, int vertex, float[] out) {
+        float x = normals.getFloat(vertex, 0);
+        float y = normals.getFloat(vertex, 1);
+        float z = normals.getFloat(vertex, 2);
+        out[0] = m[0] * x + m[3] * y + m[6] * z;
+        out[1] = m[1] * x + m[4] * y + m[7] * z;
+        out[2] = m[2] * x + m[5] * y + m[8] * z;
+        normalize(out);
+    }
+
+    private static void getFaceNormal(float[] a, float[] b, float[] c, float[] out) {
+        float e1x = b[0] - a[0];
+        float e1y = b[1] - a[1];
+        float e1z = b[2] - a[2];
+        float e2x = c[0] - a[0];
+        float e2y = c[1] - a[1];
+        float e2z = c[2] - a[2];
+        out[0] = e1y * e2z - e1z * e2y;
+        out[1] = e1z * e2x - e1x * e2z;
+        out[2] = e1x * e2y - e1y * e2x;
+        normalize(out);
+    }
+
+    private static void normalize(float[] v) {
+        float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        if (length > 0) {
+            v[0] /= length;
+            v[1] /= length;
+            v[2] /= length;
+        } else {
+            v[0] = 0;
+            v[1] = 0;
+            v[2] = 1;
+        }
+    }
+
+    // A little-endian view of the given range of the buffer, sharing its contents.
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length);
+        duplicate.position(offset);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String decodeUri(String uri) {
+        try {
+            return URLDecoder.decode(uri, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return uri;
+        }
+    }
+
+    // A node with a mesh, and its transform in the scene.
+    private static class Instance {
+        final String name;
+        final JSONArray primitives;
+        final float[] matrix;
+
+        Instance(String name, JSONArray primitives, float[] matrix) {
+            this.name = name;
+            this.primitives = primitives;
+            this.matrix = matrix;
+        }
+    }
+
+    // The JSON of an asset, and its buffers.
+    private static class Asset {
+        final JSONObject root;
+        final ByteBuffer[] buffers;
+
+        Asset(JSONObject root, ByteBuffer[] buffers) {
+            this.root = root;
+            this.buffers = buffers;
+        }
+
+        ByteBuffer getBufferView(int index) throws JSONException, IOException {
+            JSONObject view = root.getJSONArray("bufferViews").getJSONObject(index);
+            int buffer = view.getInt("buffer");
+            int offset = view.optInt("byteOffset", 0);
+            int length = view.getInt("byteLength");
+            if (buffer < 0 || buffer >= buffers.length || offset < 0 || length < 0
+                    || offset > buffers[buffer].limit() - length) {
+                throw new IOException("Buffer view " + index + " is out of bounds.");
+            }
+            return slice(buffers[buffer], offset, length);
+        }
+
+        Accessor getAccessor(int index) throws JSONException, IOException {
+            JSONObject accessor = root.getJSONArray("accessors").getJSONObject(index);
+            if (accessor.has("sparse") || !accessor.has("bufferView")) {
+                throw new IOException("Unsupported accessor " + index + ".");
+            }
+            int bufferView = accessor.getInt("bufferView");
+            int componentType = accessor.getInt("componentType");
+            int componentSize;
+            switch (componentType) {
+                case COMPONENT_UNSIGNED_BYTE:
+                    componentSize = 1;
+                    break;
+                case COMPONENT_UNSIGNED_SHORT:
+                    componentSize = BYTES_PER_SHORT;
+                    break;
+                case COMPONENT_UNSIGNED_INT:
+                case COMPONENT_FLOAT:
+                    componentSize = BYTES_PER_INT;
+                    break;
+                default:
+                    throw new IOException("Unsupported component type " + componentType + ".");
+            }
+            String type = accessor.getString("type");
+            int components = type.equals("SCALAR") ? 1 : type.equals("VEC2") ? 2
+                    : type.equals("VEC3") ? 3 : type.equals("VEC4") ? 4 : 0;
+            if (components == 0) {
+                throw new IOException("Unsupported accessor type " + type + ".");
+            }
+            int count = accessor.getInt("count");
+            int offset = accessor.optInt("byteOffset", 0);
+            int elementSize = components * componentSize;
+            int byteStride = root.getJSONArray("bufferViews").getJSONObject(bufferView)
+                    .optInt("byteStride", 0);
+            int stride = byteStride != 0 ? byteStride : elementSize;
+            ByteBuffer view = getBufferView(bufferView);
+            long end = count == 0 ? offset : offset + (long) stride * (count - 1) + elementSize;
+            if (count < 0 || offset < 0 || end > view.limit()) {
+                throw new IOException("Accessor " + index + " is out of bounds.");
+            }
+            return new Accessor(slice(view, offset, (int) (end - offset)), bufferView, offset,
+                    stride, count, componentType, components);
+        }
+
+        float[] getColor(int materialId) throws JSONException {
+            JSONArray materials = root.optJSONArray("materials");
+            if (materialId == ObjGeometry.MISSING || materials == null) {
+                return Submesh.DEFAULT_COLOR;
+            }
+            JSONObject pbr = materials.getJSONObject(materialId)
+                    .optJSONObject("pbrMetallicRoughness");
+            JSONArray factor = pbr == null ? null : pbr.optJSONArray("baseColorFactor");
+            return factor == null ? Submesh.DEFAULT_COLOR
+                    : getFloats(factor, new float[] { 1, 1, 1, 1 });
+        }
+    }
+
+    // The elements of an accessor, read in place from its buffer view.
+    private static class Accessor {
+        final ByteBuffer data;
+        final int bufferView;
+        // Offset of the first element in the buffer view.
+        final int offset;
+        final int stride;
+        final int count;
+        final int componentType;
+        final int components;
+
+        Accessor(ByteBuffer data, int bufferView, int offset, int stride, int count,
+                int componentType, int components) {
+            this.data = data;
+            this.bufferView = bufferView;
+            this.offset = offset;
+            this.stride = stride;
+            this.count = count;
+            this.componentType = componentType;
+            this.components = components;
+        }
+
+        float getFloat(int element, int component) {
+            return data.getFloat(element * stride + component * BYTES_PER_INT);
+        }
+
+        int getIndex(int element) {
+            switch (componentType) {
+                case COMPONENT_UNSIGNED_BYTE:
+                    return data.get(element * stride) & 0xff;
+                case COMPONENT_UNSIGNED_SHORT:
+                    return data.getShort(element * stride) & 0xffff;
+                default:
+                    // Indices above 2^31 can't be addressed anyway.
+                    return data.getInt(element * stride);
+            }
+        }
+    }
+}
@@ -1,20 +1,436 @@
 package com.google.android.cameraview.demo;
 
 import android.opengl.GLES20;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ExecutorService;
 
 public class IndexedModel extends ArrayModel {
+    private static final String TAG = "IndexedModel";
     protected static final int BYTES_PER_INT = 4;
+    protected static final int BYTES_PER_SHORT = 2;
 
-    protected IntBuffer indexBuffer;
+    // Index buffer, either a ShortBuffer (the indices of each submesh are then relative to its
+    // base vertex) or an IntBuffer, as given by indexType.
+    protected Buffer indexBuffer;
+    // GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+    protected int indexType = GLES20.GL_UNSIGNED_INT;
     protected int indexCount;
+    // Ranges of the index buffer to draw with each material. If null, all the indices are drawn
+    // with the default color.
+    protected Submesh[] submeshes;
+    // Named ranges of the submeshes, each of which can be hidden. If null, all the submeshes are
+    // drawn.
+    protected MeshGroup[] groups;
+    // Simplified levels of detail, from the finest to the coarsest, which share the vertices of the
+    // model. Null until they are built, in the background.
+    @Nullable protected volatile MeshLod[] lods;
+    // Hierarchy of the triangles of the full model, for raycast(). Null until it is built, in the
+    // background.
+    @Nullable protected volatile TriangleBvh bvh;
+    // Level of detail to draw: 0 for the full model, or 1 + the index in lods.
+    private int lod;
+    // Buffer object holding indexBuffer in the current GL context, or 0 until init() uploads it,
+    // and its size in bytes.
+    protected int indexIbo;
+    protected int indexIboBytes;
+    // Buffer objects holding the indices of each of lodIbosFor, uploaded the first time they are
+    // drawn since the levels of detail are built in the background. Null until then.
+    @Nullable private int[] lodIbos;
+    @Nullable private MeshLod[] lodIbosFor;
+    // Base vertex the vertex attributes currently point at, while drawFunc() runs.
+    private int boundBaseVertex;
+
+    /** Returns the groups of the model, or null if it has none. */
+    @Nullable public MeshGroup[] getGroups() {
+        return groups;
+    }
+
+    /**
+     * Returns the simplified levels of detail of the model, from the finest to the coarsest, or
+     * null if they were not built (yet).
+     */
+    @Nullable public MeshLod[] getLods() {
+        return lods;
+    }
+
+    /**
+     * Builds simplified levels of detail of the model on the given executor (see
+     * {@link MeshSimplifier}), and stores them in the model once they are done. The model is
+     * copied first, on the calling thread, so this must be called before
+     * {@link #packVertices()}.
+     */
+    public void buildLods(@NonNull ExecutorService executor) {
+        if (vertexBuffer == null) {
+            return;
+        }
+        final MeshSimplifier simplifier = new MeshSimplifier(vertexBuffer, vertexCount,
+                indexBuffer, submeshes);
+        final int triangleCount = indexCount / 3;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.currentTimeMillis();
+                    MeshLod[] builtLods = simplifier.buildLods(MeshSimplifier.DEFAULT_LOD_RATIOS);
+                    StringBuilder counts = new StringBuilder();
+                    for (MeshLod lod : builtLods) {
+                        counts.append(' ').append(lod.indexCount / 3).append(" (error ")
+                                .append(lod.error).append(')');
+                    }
+                    Log.d(TAG, "Simplified " + triangleCount + " triangles to" + counts + " in "
+                            + (System.currentTimeMillis() - start) + " ms.");
+                    lods = builtLods;
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to build levels of detail.", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts building the bounding volume hierarchy used by {@link #raycast}, on the given
+     * executor. Until it is built, raycast() returns null. Must be called before
+     * {@link #packVertices()}, as it reads the float vertices.
+     */
+    public void buildBvh(@NonNull ExecutorService executor) {
+        if (vertexBuffer == null) {
+            return;
+        }
+        final FloatBuffer vertices = vertexBuffer.duplicate();
+        final Buffer indices = indexBuffer instanceof IntBuffer
+                ? ((IntBuffer) indexBuffer).duplicate() : ((ShortBuffer) indexBuffer).duplicate();
+        final int vertexCount = this.vertexCount;
+        final int indexCount = this.indexCount;
+        final Submesh[] submeshes = this.submeshes;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    bvh = TriangleBvh.build(vertices, vertexCount, indices, indexCount, submeshes);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to build the bounding volume hierarchy.", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getLodCount() {
+        MeshLod[] lods = this.lods;
+        return lods == null ? 1 : lods.length + 1;
+    }
+
+    @Override
+    public float getLodError(int lod) {
+        MeshLod[] lods = this.lods;
+        return lod == 0 || lods == null ? 0 : lods[lod - 1].error;
+    }
+
+    @Override
+    public int getLod() {
+        return lod;
+    }
+
+    @Override
+    public void setLod(int lod) {
+        this.lod = Math.max(0, Math.min(lod, getLodCount() - 1));
+    }
+
+    @Override
+    @Nullable
+    public RaycastHit raycast(float[] origin, float[] direction) {
+        TriangleBvh bvh = this.bvh;
+        RaycastHit hit = bvh == null ? null : bvh.raycast(origin, direction);
+        if (hit == null || submeshes == null) {
+            return hit;
+        }
+        int index = hit.triangle * 3;
+        int submesh = -1;
+        for (int i = 0; i < submeshes.length; i++) {
+            if (index >= submeshes[i].firstIndex
+                    && index < submeshes[i].firstIndex + submeshes[i].indexCount) {
+                submesh = i;
+                break;
+            }
+        }
+        int group = -1;
+        if (groups != null) {
+            for (int i = 0; i < groups.length; i++) {
+                if (submesh >= groups[i].firstSubmesh
+                        && submesh < groups[i].firstSubmesh + groups[i].submeshCount) {
+                    group = i;
+                    break;
+                }
+            }
+        }
+        return new RaycastHit(hit.triangle, submesh, group, hit.distance);
+    }
+
+    /**
+     * Shows or hides all the groups with the given name. Can be called from any thread.
+     *
+     * @return Whether the model has a group with that name.
+     */
+    public boolean setGroupVisible(String name, boolean visible) {
+        boolean found = false;
+        if (groups != null) {
+            for (MeshGroup group : groups) {
+                if (group.name.equals(name)) {
+                    group.setVisible(visible);
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Shows or hides all the groups of the model. Can be called from any thread. */
+    public void setAllGroupsVisible(boolean visible) {
+        if (groups != null) {
+            for (MeshGroup group : groups) {
+                group.setVisible(visible);
+            }
+        }
+    }
+
+    /**
+     * Sets the index buffer from the given triangles, which index vertexBuffer (with vertexCount
+     * vertices), and whose ranges are given by submeshes and groups.
+     *
+     * @param allowIntIndices Whether 32-bit indices may be used if the model has more vertices
+     *     than 16-bit indices can address, and the GL context (as last seen by
+     *     {@link MyGLUtils#loadExtensions()}) supports them. Otherwise, large models are split into
+     *     chunks that are drawn with 16-bit indices, and vertexBuffer, submeshes and groups are
+     *     replaced by those of the chunks.
+     */
+    protected void setIndices(@NonNull IntArrayList indices, boolean allowIntIndices) {
+        indexCount = indices.size();
+        if (allowIntIndices && vertexCount > MeshSplitter.MAX_CHUNK_VERTICES
+                && MyGLUtils.isExtensionSupported(MyGLUtils.EXTENSION_ELEMENT_INDEX_UINT)) {
+            // The list is drained into its direct buffer, so that the intermediate list and the
+            // final buffer coexist for as short a time as possible.
+            ByteBuffer ibb = ByteBuffer.allocateDirect(indexCount * BYTES_PER_INT);
+            ibb.order(ByteOrder.nativeOrder());
+            IntBuffer intIndexBuffer = ibb.asIntBuffer();
+            indices.drainTo(intIndexBuffer).position(0);
+            indexBuffer = intIndexBuffer;
+            indexType = GLES20.GL_UNSIGNED_INT;
+        } else {
+            // 16-bit indices, in chunks of at most 65535 vertices if the model is larger than that.
+            MeshSplitter split = MeshSplitter.split(indices, vertexCount, submeshes, groups,
+                    MeshSplitter.MAX_CHUNK_VERTICES);
+            vertexBuffer = split.gatherVertices(vertexBuffer, FLOATS_PER_VERTEX);
+            vertexCount = split.getVertexCount();
+            submeshes = split.submeshes;
+            groups = split.groups;
+            indexBuffer = split.indices;
+            indexType = GLES20.GL_UNSIGNED_SHORT;
+        }
+    }
+
+    @Override
+    protected void createBuffers() {
+        super.createBuffers();
+        // The buffers of the levels of detail belonged to the previous context, if any.
+        lodIbos = null;
+        lodIbosFor = null;
+        if (indexBuffer != null && indexCount > 0) {
+            indexIbo = createIbo(indexBuffer);
+            indexIboBytes = getByteCount(indexBuffer);
+        } else {
+            indexIbo = 0;
+            indexIboBytes = 0;
+        }
+    }
+
+    private static int createIbo(Buffer indices) {
+        return indices instanceof IntBuffer ? MyGLUtils.createIbo((IntBuffer) indices)
+                : MyGLUtils.createIbo((ShortBuffer) indices);
+    }
+
+    private static int getByteCount(Buffer indices) {
+        int bytesPerIndex = indices instanceof IntBuffer ? BYTES_PER_INT : BYTES_PER_SHORT;
+        return indices.capacity() * bytesPerIndex;
+    }
+
+    @Override
+    protected void releaseCpuBuffers() {
+        super.releaseCpuBuffers();
+        indexBuffer = null;
+    }
+
+    @Override
+    protected boolean restoreGeometry(@NonNull ArrayModel source) {
+        if (!(source instanceof IndexedModel)) {
+            return false;
+        }
+        IndexedModel indexedSource = (IndexedModel) source;
+        if (indexedSource.indexBuffer == null || indexedSource.indexCount != indexCount
+                || indexedSource.indexType != indexType || !super.restoreGeometry(source)) {
+            return false;
+        }
+        indexBuffer = indexedSource.indexBuffer;
+        return true;
+    }
+
+    @Override
+    public synchronized long getCpuBytes() {
+        long bytes = super.getCpuBytes();
+        if (indexBuffer != null) {
+            bytes += getByteCount(indexBuffer);
+        }
+        // The levels of detail are small next to the full model, and are uploaded lazily, so they
+        // stay in memory.
+        MeshLod[] lods = this.lods;
+        if (lods != null) {
+            for (MeshLod lod : lods) {
+                bytes += getByteCount(lod.indices);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getGpuBytes() {
+        long bytes = super.getGpuBytes() + indexIboBytes;
+        int[] lodIbos = this.lodIbos;
+        MeshLod[] lods = lodIbosFor;
+        if (lodIbos != null && lods != null) {
+            for (int i = 0; i < lods.length && i < lodIbos.length; i++) {
+                if (lodIbos[i] != 0) {
+                    bytes += getByteCount(lods[i].indices);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    // Returns the buffer object holding the indices of the given level of detail, uploading it
+    // if it wasn't yet. Must be called on the GL thread.
+    private int getLodIbo(MeshLod[] lods, int index) {
+        if (lodIbosFor != lods) {
+            if (lodIbos != null) {
+                GLES20.glDeleteBuffers(lodIbos.length, lodIbos, 0);
+                glState.onBuffersDeleted(lodIbos);
+            }
+            lodIbos = new int[lods.length];
+            lodIbosFor = lods;
+        }
+        if (lodIbos[index] == 0) {
+            lodIbos[index] = createIbo(lods[index].indices);
+            glState.invalidateBufferBindings();
+        }
+        return lodIbos[index];
+    }
 
     @Override
     protected void drawFunc() {
-        if (indexBuffer == null || indexCount == 0) {
+        if (indexIbo == 0) {
+            return;
+        }
+        if (submeshes == null) {
+            glState.bindElementArrayBuffer(indexIbo);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, indexType, 0);
+            if (cullingStats != null) {
+                cullingStats.addDrawn(1, indexCount / 3);
+            }
             return;
         }
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_INT, indexBuffer);
+        // The levels of detail share the vertices, the groups and the layout of the submeshes of
+        // the full model; only their indices differ.
+        int ibo = indexIbo;
+        Submesh[] drawnSubmeshes = submeshes;
+        MeshLod[] lods = this.lods;
+        if (lod > 0 && lods != null && lod <= lods.length) {
+            ibo = getLodIbo(lods, lod - 1);
+            drawnSubmeshes = lods[lod - 1].submeshes;
+        }
+        glState.bindElementArrayBuffer(ibo);
+        boundBaseVertex = 0;
+        if (groups == null) {
+            drawSubmeshes(drawnSubmeshes, 0, drawnSubmeshes.length);
+        } else {
+            for (MeshGroup group : groups) {
+                if (!group.isVisible()) {
+                    continue;
+                }
+                // If the whole model is inside the frustum, so are all of its groups.
+                if (modelVisibility != Frustum.INSIDE
+                        && frustum.classifyBox(group.boundsMin, group.boundsMax)
+                        == Frustum.OUTSIDE) {
+                    if (cullingStats != null) {
+                        addCulled(cullingStats, drawnSubmeshes, group.firstSubmesh,
+                                group.submeshCount);
+                    }
+                    continue;
+                }
+                drawSubmeshes(drawnSubmeshes, group.firstSubmesh, group.submeshCount);
+            }
+        }
+    }
+
+    // One draw call per material, with the material's color passed as a uniform. The vertex
+    // attributes are moved whenever the base vertex changes, which only happens between the
+    // chunks of meshes that were split for 16-bit indices.
+    private void drawSubmeshes(Submesh[] submeshes, int first, int count) {
+        int indexSize = indexType == GLES20.GL_UNSIGNED_INT ? BYTES_PER_INT : BYTES_PER_SHORT;
+        for (int i = first; i < first + count; i++) {
+            Submesh submesh = submeshes[i];
+            if (submesh.indexCount == 0) {
+                continue;
+            }
+            if (submesh.baseVertex != boundBaseVertex) {
+                setVertexAttribPointers(submesh.baseVertex);
+                boundBaseVertex = submesh.baseVertex;
+            }
+            GLES20.glUniform4fv(materialColorHandle, 1, submesh.color, 0);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, submesh.indexCount, indexType,
+                    submesh.firstIndex * indexSize);
+            if (cullingStats != null) {
+                cullingStats.addDrawn(1, submesh.indexCount / 3);
+            }
+        }
+    }
+
+    @Override
+    protected void addCulled(@NonNull CullingStats stats) {
+        if (indexIbo == 0) {
+            return;
+        }
+        if (submeshes == null) {
+            stats.addCulled(1, indexCount / 3);
+            return;
+        }
+        Submesh[] drawnSubmeshes = submeshes;
+        MeshLod[] lods = this.lods;
+        if (lod > 0 && lods != null && lod <= lods.length) {
+            drawnSubmeshes = lods[lod - 1].submeshes;
+        }
+        if (groups == null) {
+            addCulled(stats, drawnSubmeshes, 0, drawnSubmeshes.length);
+        } else {
+            for (MeshGroup group : groups) {
+                if (group.isVisible()) {
+                    addCulled(stats, drawnSubmeshes, group.firstSubmesh, group.submeshCount);
+                }
+            }
+        }
+    }
+
+    private static void addCulled(CullingStats stats, Submesh[] submeshes, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            if (submeshes[i].indexCount > 0) {
+                stats.addCulled(1, submeshes[i].indexCount / 3);
+            }
+        }
     }
 }
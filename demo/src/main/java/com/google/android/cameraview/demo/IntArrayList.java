@@ -0,0 +1,125 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints.
+ *
+ * This is used instead of a {@code List<Integer>} when collecting large amounts of geometry, to
+ * avoid boxing every element. Once the data is complete, {@link #drainTo(IntBuffer)} moves it
+ * into its final buffer and releases the backing array.
+ */
+public class IntArrayList {
+  private static final int DEFAULT_CAPACITY = 16;
+  private static final int[] EMPTY = new int[0];
+
+  private int[] elements;
+  private int size;
+
+  /** Creates an empty list. */
+  public IntArrayList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /** Creates an empty list that can hold {@code initialCapacity} elements without growing. */
+  public IntArrayList(int initialCapacity) {
+    elements = initialCapacity > 0 ? new int[initialCapacity] : EMPTY;
+  }
+
+  /** Returns the number of elements in the list. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns whether the list has no elements. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Appends an element to the end of the list. */
+  public void add(int value) {
+    if (size == elements.length) {
+      grow(size + 1);
+    }
+    elements[size++] = value;
+  }
+
+  /** Appends three elements to the end of the list, e.g. the indices of a triangle. */
+  public void add(int a, int b, int c) {
+    if (size + 3 > elements.length) {
+      grow(size + 3);
+    }
+    elements[size++] = a;
+    elements[size++] = b;
+    elements[size++] = c;
+  }
+
+  /** Appends {@code count} elements of {@code values}, starting at {@code offset}. */
+  public void addAll(int[] values, int offset, int count) {
+    if (size + count > elements.length) {
+      grow(size + count);
+    }
+    System.arraycopy(values, offset, elements, size, count);
+    size += count;
+  }
+
+  /** Appends all the elements of {@code other}. */
+  public void addAll(IntArrayList other) {
+    addAll(other.elements, 0, other.size);
+  }
+
+  /** Returns the element at the given index. */
+  public int get(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+    }
+    return elements[index];
+  }
+
+  /** Replaces the element at the given index. */
+  public void set(int index, int value) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+    }
+    elements[index] = value;
+  }
+
+  /** Ensures the list can hold {@code capacity} elements without growing. */
+  public void ensureCapacity(int capacity) {
+    if (capacity > elements.length) {
+      elements = Arrays.copyOf(elements, capacity);
+    }
+  }
+
+  /** Removes all elements, keeping the allocated capacity. */
+  public void clear() {
+    size = 0;
+  }
+
+  /** Returns a copy of the elements as an array of exactly {@link #size()} elements. */
+  public int[] toArray() {
+    return Arrays.copyOf(elements, size);
+  }
+
+  /**
+   * Puts all the elements into the given buffer, at its current position, and then empties the
+   * list and releases its backing array. The list can be reused afterwards.
+   *
+   * @return The buffer, for convenience.
+   */
+  public IntBuffer drainTo(IntBuffer buffer) {
+    buffer.put(elements, 0, size);
+    elements = EMPTY;
+    size = 0;
+    return buffer;
+  }
+
+  private void grow(int minCapacity) {
+    int capacity = elements.length + (elements.length >> 1);
+    if (capacity < minCapacity) {
+      capacity = Math.max(minCapacity, DEFAULT_CAPACITY);
+    }
+    elements = Arrays.copyOf(elements, capacity);
+  }
+}
@@ -0,0 +1,84 @@
+package com.google.android.cameraview.demo;
+
+import android.opengl.Matrix;
+
+/**
+ * Chooses the level of detail of a {@link Model} from the size of its error on screen.
+ *
+ * The error of each level of detail (see {@link Model#getLodError}) is projected at the distance
+ * of the closest point of the model's bounding sphere, and the coarsest level whose error is
+ * under {@link #MAX_ERROR_PIXELS} is used. To avoid popping back and forth when the model sits
+ * right at a threshold, a coarser level is only switched to once its error is below
+ * {@code MAX_ERROR_PIXELS * (1 - HYSTERESIS)}, while the current one is kept until its error
+ * reaches {@code MAX_ERROR_PIXELS}.
+ */
+public class LodSelector {
+  /** Largest error on screen, in pixels, that a level of detail may have. */
+  public static final float MAX_ERROR_PIXELS = 1;
+  /** Fraction of {@link #MAX_ERROR_PIXELS} by which a coarser level must beat the threshold. */
+  public static final float HYSTERESIS = 0.25f;
+
+  private final float[] modelViewMatrix = new float[16];
+  private final float[] sphere = new float[4];
+  private final float[] center = new float[4];
+
+  /**
+   * Selects the level of detail of the model for the given matrices, and sets it with
+   * {@link Model#setLod}. Must be called on the GL thread.
+   *
+   * @param viewportHeight The height of the viewport, in pixels.
+   */
+  public void update(Model model, float[] viewMatrix, float[] projectionMatrix,
+      int viewportHeight) {
+    if (model.getLodCount() <= 1) {
+      return;
+    }
+    model.setLod(selectLod(model, getPixelsPerUnit(model, viewMatrix, projectionMatrix,
+        viewportHeight)));
+  }
+
+  /**
+   * Returns the number of pixels that a length of 1 in model coordinates takes on screen at the
+   * closest point of the model's bounding sphere (or at the near plane, if the camera is inside
+   * the sphere).
+   */
+  float getPixelsPerUnit(Model model, float[] viewMatrix, float[] projectionMatrix,
+      int viewportHeight) {
+    Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, model.getModelMatrix(), 0);
+    model.getBoundingSphere(sphere);
+    float radius = sphere[3];
+    sphere[3] = 1;
+    Matrix.multiplyMV(center, 0, modelViewMatrix, 0, sphere, 0);
+    // The model matrix only rotates, scales uniformly and translates, so any column gives the
+    // scale.
+    float scale = (float) Math.sqrt(modelViewMatrix[0] * modelViewMatrix[0]
+        + modelViewMatrix[1] * modelViewMatrix[1] + modelViewMatrix[2] * modelViewMatrix[2]);
+    // The camera looks down -z.
+    float distance = Math.max(-center[2] - radius * scale, getNearPlane(projectionMatrix));
+    // projectionMatrix[5] is the vertical focal length, in units of half the viewport height.
+    return scale * projectionMatrix[5] * viewportHeight / 2 / distance;
+  }
+
+  /**
+   * Returns the coarsest level of detail of the model whose error is small enough at the given
+   * scale, starting from its current level, with hysteresis.
+   */
+  static int selectLod(Model model, float pixelsPerUnit) {
+    int lodCount = model.getLodCount();
+    int lod = Math.min(model.getLod(), lodCount - 1);
+    while (lod > 0 && model.getLodError(lod) * pixelsPerUnit >= MAX_ERROR_PIXELS) {
+      lod--;
+    }
+    while (lod + 1 < lodCount && model.getLodError(lod + 1) * pixelsPerUnit
+        < MAX_ERROR_PIXELS * (1 - HYSTERESIS)) {
+      lod++;
+    }
+    return lod;
+  }
+
+  private static float getNearPlane(float[] projectionMatrix) {
+    // For a perspective projection, m[10] = -(f + n) / (f - n) and m[14] = -2fn / (f - n), so
+    // n = m[14] / (m[10] - 1).
+    return projectionMatrix[14] / (projectionMatrix[10] - 1);
+  }
+}
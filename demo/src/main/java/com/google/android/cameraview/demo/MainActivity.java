@@ -50,10 +50,15 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -84,6 +89,10 @@ public class MainActivity extends AppCompatActivity implements
     // how big or small the asset is, we will scale it to a reasonable size for viewing.
     private static final float ASSET_DISPLAY_SIZE = 5;
 
+    // Whether models are drawn from packed vertices (see PackedVertices), which take half the
+    // memory of float ones.
+    private static final boolean USE_PACKED_VERTICES = true;
+
     // Our background thread, which does all of the heavy lifting so we don't block the main thread.
     private HandlerThread backgroundThread;
 
@@ -93,6 +102,18 @@ public class MainActivity extends AppCompatActivity implements
     // The AsyncFileDownloader responsible for downloading a set of data files from Poly.
     private AsyncFileDownloader fileDownloader;
 
+    // Thread pool used to parse large OBJ files on all the available cores.
+    private ExecutorService parseExecutor;
+
+    // Parser that the OBJ file is streamed into while it downloads.
+    private ObjGeometry.StreamingParser objParser;
+
+    // Cache of the models we already parsed, so they don't have to be downloaded and parsed again.
+    private MeshCache meshCache;
+
+    // Hash of the URLs of the data files of the asset, which identifies the content it's made of.
+    private long dataFilesHash;
+
     private ARDemoApp app;
 
 
@@ -110,6 +131,8 @@ public class MainActivity extends AppCompatActivity implements
         backgroundThread = new HandlerThread("Worker");
         backgroundThread.start();
         backgroundThreadHandler = new Handler(backgroundThread.getLooper());
+        parseExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        meshCache = new MeshCache(new File(getCacheDir(), "meshes"));
 
         // Request the asset from the Poly API.
         Log.d(TAG, "Requesting asset " + ASSET_ID);
@@ -156,6 +179,7 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        parseExecutor.shutdownNow();
         if (mBackgroundHandler != null) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
                 mBackgroundHandler.getLooper().quitSafely();
@@ -274,26 +298,32 @@ public class MainActivity extends AppCompatActivity implements
             setStatusMessageOnUiThread(response.getString("displayName") + " by " +
                     response.getString("authorName"));
 
-            // The asset may have several formats (OBJ, GLTF, FBX, etc). We will look for the OBJ format.
+            // The asset may have several formats (OBJ, GLTF, FBX, etc). We prefer glTF 2.0, whose
+            // binary buffers need far less parsing than the OBJ text, and fall back to OBJ.
             JSONArray formats = response.getJSONArray("formats");
-            boolean foundObjFormat = false;
+            JSONObject gltfFormat = null;
+            JSONObject objFormat = null;
             for (int i = 0; i < formats.length(); i++) {
                 JSONObject format = formats.getJSONObject(i);
-                if (format.getString("formatType").equals("OBJ")) {
-                    // Found the OBJ format. The format gives us the URL of the data files that we should
-                    // download (which include the OBJ file, the MTL file and the textures). We will now
-                    // request those files.
-                    requestDataFiles(format);
-                    foundObjFormat = true;
-                    break;
+                String formatType = format.getString("formatType");
+                if (gltfFormat == null && formatType.equals("GLTF2")) {
+                    gltfFormat = format;
+                } else if (objFormat == null && formatType.equals("OBJ")) {
+                    objFormat = format;
                 }
             }
-            if (!foundObjFormat) {
-                // If this happens, it's because the asset doesn't have a representation in the OBJ
-                // format. Since this simple sample code can only parse OBJ, we can't proceed.
-                // But other formats might be available, so if your client supports multiple formats,
-                // you could still try a different format instead.
-                Log.e(TAG, "Could not find OBJ format in asset.");
+            if (gltfFormat != null) {
+                // The format gives us the URL of the data files that we should download (the glTF
+                // or GLB file, its binary buffers and the textures). We will now request those
+                // files.
+                requestGltfDataFiles(gltfFormat);
+            } else if (objFormat != null) {
+                // Same for the OBJ format: the OBJ file, the MTL file and the textures.
+                requestDataFiles(objFormat);
+            } else {
+                // If this happens, it's because the asset has neither a glTF 2.0 nor an OBJ
+                // representation. Since this sample code can only parse those, we can't proceed.
+                Log.e(TAG, "Could not find GLTF2 or OBJ format in asset.");
                 return;
             }
         } catch (JSONException jsonException) {
@@ -307,21 +337,58 @@ public class MainActivity extends AppCompatActivity implements
     // NOTE: this runs on the background thread.
     private void requestDataFiles(JSONObject objFormat) throws JSONException {
         // objFormat has the list of data files for the OBJ format (OBJ file, MTL file, textures).
+        // The URLs of the files change whenever their content does, so they identify the content
+        // of the asset. If we already built a model from the same files, we use that instead.
+        JSONObject rootFile = objFormat.getJSONObject("root");
+        JSONArray resources = objFormat.getJSONArray("resources");
+        StringBuilder urls = new StringBuilder(rootFile.getString("url"));
+        for (int i = 0; i < resources.length(); i++) {
+            urls.append('\n').append(resources.getJSONObject(i).getString("url"));
+        }
+        dataFilesHash = MeshCache.hash(urls.toString());
+        try {
+            MeshCache.Entry cachedModel = meshCache.load(ASSET_ID, dataFilesHash);
+            if (cachedModel != null) {
+                Log.d(TAG, "Using cached model for asset " + ASSET_ID);
+                ObjModel objModel = new ObjModel(cachedModel);
+                objModel.buildLods(parseExecutor);
+                objModel.buildBvh(parseExecutor);
+                if (USE_PACKED_VERTICES) {
+                    objModel.packVertices();
+                }
+                // Once on the GPU, the model can be reloaded from the cache when needed.
+                objModel.setGeometrySource(
+                        ObjModel.getCacheSource(meshCache, ASSET_ID, dataFilesHash));
+                setCurrentModel(objModel);
+                return;
+            }
+        } catch (IOException e) {
+            // The cache deletes unreadable files, so the model will be cached again.
+            Log.w(TAG, "Invalid cached model, downloading it again.", e);
+        }
+
         // We will use a AsyncFileDownloader to download all those files.
         fileDownloader = new AsyncFileDownloader();
 
-        // The "root file" is the OBJ.
-        JSONObject rootFile = objFormat.getJSONObject("root");
-        fileDownloader.add(rootFile.getString("relativePath"), rootFile.getString("url"));
+        // The "root file" is the OBJ. Rather than waiting for the whole file, we parse it as it
+        // arrives, so that parsing overlaps with the download.
+        final ObjGeometry.StreamingParser parser = new ObjGeometry.StreamingParser(parseExecutor);
+        objParser = parser;
+        fileDownloader.add(rootFile.getString("relativePath"), rootFile.getString("url"),
+                new AsyncHttpRequest.StreamConsumer() {
+            @Override
+            public void onHttpData(byte[] buffer, int offset, int length) {
+                parser.feed(buffer, offset, length);
+            }
+        });
 
         // The "resource files" are the MTL file and textures.
-        JSONArray resources = objFormat.getJSONArray("resources");
         for (int i = 0; i < resources.length(); i++) {
             JSONObject resourceFile = resources.getJSONObject(i);
             String path = resourceFile.getString("relativePath");
             String url = resourceFile.getString("url");
-            // For this example, we only care about OBJ and MTL files (not textures).
-            if (path.toLowerCase().endsWith(".obj") || path.toLowerCase().endsWith(".mtl")) {
+            // For this example, we only care about the MTL files (not textures).
+            if (path.toLowerCase().endsWith(".mtl")) {
                 fileDownloader.add(path, url);
             }
         }
@@ -342,6 +409,78 @@ public class MainActivity extends AppCompatActivity implements
         });
     }
 
+    // Requests the data files for the GLTF2 format.
+    // NOTE: this runs on the background thread.
+    private void requestGltfDataFiles(JSONObject gltfFormat) throws JSONException {
+        fileDownloader = new AsyncFileDownloader();
+
+        // The "root file" is the glTF (or GLB) file; it must be the first entry.
+        JSONObject rootFile = gltfFormat.getJSONObject("root");
+        fileDownloader.add(rootFile.getString("relativePath"), rootFile.getString("url"));
+
+        // The "resource files" are the binary buffers and textures. We only need the buffers.
+        JSONArray resources = gltfFormat.getJSONArray("resources");
+        for (int i = 0; i < resources.length(); i++) {
+            JSONObject resourceFile = resources.getJSONObject(i);
+            String path = resourceFile.getString("relativePath");
+            if (path.toLowerCase().endsWith(".bin")) {
+                fileDownloader.add(path, resourceFile.getString("url"));
+            }
+        }
+
+        Log.d(TAG, "Starting to download glTF files, # files: " + fileDownloader.getEntryCount());
+        fileDownloader.start(backgroundThreadHandler, new AsyncFileDownloader.CompletionListener() {
+            @Override
+            public void onPolyDownloadFinished(AsyncFileDownloader downloader) {
+                if (downloader.isError()) {
+                    Log.e(TAG, "Failed to download data files for asset.");
+                    setStatusMessageOnUiThread("Failed to download data files.");
+                    return;
+                }
+                processGltfDataFiles();
+            }
+        });
+    }
+
+    // NOTE: this runs on the background thread.
+    private void processGltfDataFiles() {
+        Log.d(TAG, "All glTF files downloaded.");
+        AsyncFileDownloader.Entry root = fileDownloader.getEntry(0);
+        Map<String, ByteBuffer> files = new HashMap<>();
+        for (int i = 1; i < fileDownloader.getEntryCount(); i++) {
+            AsyncFileDownloader.Entry entry = fileDownloader.getEntry(i);
+            files.put(entry.fileName, toDirectBuffer(entry.contents));
+        }
+
+        try {
+            GltfModel gltfModel;
+            if (root.fileName.toLowerCase().endsWith(".glb")) {
+                gltfModel = new GltfModel(toDirectBuffer(root.contents), false);
+            } else {
+                gltfModel = new GltfModel(new String(root.contents, Charset.forName("UTF-8")),
+                        files, false);
+            }
+            gltfModel.buildLods(parseExecutor);
+            gltfModel.buildBvh(parseExecutor);
+            if (USE_PACKED_VERTICES) {
+                gltfModel.packVertices();
+            }
+            setCurrentModel(gltfModel);
+        } catch (IOException e) {
+            Log.e(TAG, "Error parsing glTF file.", e);
+            setStatusMessageOnUiThread("Failed to load glTF file.");
+        }
+    }
+
+    // Copies downloaded contents to a direct buffer, so that the model can draw from it in place.
+    private static ByteBuffer toDirectBuffer(byte[] contents) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(contents.length)
+                .order(ByteOrder.nativeOrder());
+        buffer.put(contents);
+        buffer.flip();
+        return buffer;
+    }
+
     // NOTE: this runs on the background thread.
     private void processDataFiles() {
         Log.d(TAG, "All data files downloaded.");
@@ -350,23 +489,39 @@ public class MainActivity extends AppCompatActivity implements
 
         Model model = null;
         MtlLibrary mtlLibrary = new MtlLibrary();
-        InputStream myInputStream = null;
 
         try {
             for (int i = 0; i < fileDownloader.getEntryCount(); i++) {
                 AsyncFileDownloader.Entry entry = fileDownloader.getEntry(i);
-                Log.d(TAG, "Processing: " + entry.fileName + ", length:" + entry.contents.length);
-                String contents = new String(entry.contents, Charset.forName("UTF-8"));
-                if (entry.fileName.toLowerCase().endsWith(".obj")) {
-                    myInputStream = new ByteArrayInputStream(entry.contents);
-                } else if (entry.fileName.toLowerCase().endsWith(".mtl")) {
-                    mtlLibrary.parseAndAdd(contents);
+                if (entry.fileName.toLowerCase().endsWith(".mtl")) {
+                    Log.d(TAG, "Processing: " + entry.fileName + ", length:" + entry.contents.length);
+                    mtlLibrary.parseAndAdd(new String(entry.contents, Charset.forName("UTF-8")));
                 }
             }
 
-            if (myInputStream != null) {
-                model = new ObjModel(myInputStream, mtlLibrary);
-                setCurrentModel(model);
+            // The OBJ was parsed while it downloaded; only its last block may be left.
+            ObjModel objModel = new ObjModel(objParser.finish(), mtlLibrary, false, parseExecutor);
+            objParser = null;
+            Log.d(TAG, String.valueOf(objModel.getVertexCacheResult()));
+            // The cache keeps the float buffers, which the model drops if its vertices are packed.
+            MeshCache.Entry cacheEntry = objModel.toCacheEntry();
+            objModel.buildLods(parseExecutor);
+            objModel.buildBvh(parseExecutor);
+            if (USE_PACKED_VERTICES) {
+                objModel.packVertices();
+            }
+            model = objModel;
+            setCurrentModel(model);
+
+            // Keep the model around so the next launch can skip downloading and parsing it.
+            // Once stored, the model can release its geometry after uploading it to the GPU, and
+            // reload it from the cache when needed.
+            try {
+                meshCache.store(ASSET_ID, dataFilesHash, cacheEntry);
+                objModel.setGeometrySource(
+                        ObjModel.getCacheSource(meshCache, ASSET_ID, dataFilesHash));
+            } catch (IOException e) {
+                Log.w(TAG, "Could not cache model.", e);
             }
 
 
@@ -374,6 +529,10 @@ public class MainActivity extends AppCompatActivity implements
             Log.e(TAG, "Error parsing MTL file.");
             mtlParseException.printStackTrace();
             setStatusMessageOnUiThread("Failed to parse MTL file.");
+        } catch (ObjGeometry.ObjParseException objParseException) {
+            Log.e(TAG, "Error parsing OBJ file.");
+            objParseException.printStackTrace();
+            setStatusMessageOnUiThread("Failed to parse OBJ file.");
         }catch (IOException e) {
             e.printStackTrace();
         }
@@ -415,6 +574,15 @@ public class MainActivity extends AppCompatActivity implements
         }
         ARDemoApp.getInstance().setCurrentModel(model);
         mMyGLSurfaceView = new MyGLSurfaceView3(this, model);
+        mMyGLSurfaceView.setOnModelTapListener(new MyGLSurfaceView3.OnModelTapListener() {
+            @Override
+            public void onModelTap(@Nullable RaycastHit hit) {
+                if (hit != null) {
+                    Log.d(TAG, "Tapped triangle " + hit.triangle + " of group " + hit.group
+                            + " at distance " + hit.distance);
+                }
+            }
+        });
         mFrameLayout.addView(mMyGLSurfaceView);
     }
 
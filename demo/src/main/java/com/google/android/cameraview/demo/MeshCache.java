@@ -0,0 +1,341 @@
+package com.google.android.cameraview.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * On-disk cache of meshes that have already been parsed, in a compiled binary format.
+ *
+ * Each cached mesh is stored in its own file, named after the asset it comes from, and tagged
+ * with a hash of the content it was built from. A file holds a few float values (bounds, center
+ * of mass...) and a list of float, int, short or byte buffers. Loading a mesh maps its file into
+ * memory and returns views of the mapped regions, so the buffers can be handed to OpenGL without
+ * being copied or parsed.
+ *
+ * A cached file is ignored (and deleted) if it was written with another {@link #VERSION} of the
+ * format, on a machine with a different byte order, for different content, or if it is corrupt.
+ *
+ * File layout (in the byte order given by the header):
+ * <pre>
+ *   magic "MESH" (4 bytes), byte order (1 byte: 0 = big endian, 1 = little endian), 3 bytes pad
+ *   int version, long content hash, int value count, int buffer count, 4 bytes pad
+ *   float values[value count]
+ *   buffer table: (int type, int element count, int byte offset) for each buffer
+ *   buffer data, each buffer starting at a multiple of 16 bytes
+ * </pre>
+ */
+public class MeshCache {
+  /**
+   * Version of the file format. Must be increased whenever the layout of the file, or the meaning
+   * of the data that models store in it, changes.
+   */
+  public static final int VERSION = 7;
+
+  private static final String FILE_EXTENSION = ".mesh";
+  private static final byte[] MAGIC = { 'M', 'E', 'S', 'H' };
+  private static final int HEADER_SIZE = 32;
+  private static final int BUFFER_TABLE_ENTRY_SIZE = 12;
+  private static final int BUFFER_ALIGNMENT = 16;
+
+  private static final int TYPE_FLOAT = 1;
+  private static final int TYPE_INT = 2;
+  private static final int TYPE_SHORT = 3;
+  private static final int TYPE_BYTE = 4;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  // Directory where the cached files are stored.
+  private final File directory;
+
+  /** Contents of a cached mesh. */
+  public static class Entry {
+    /** Scalar values, such as bounds or center of mass. Their meaning is up to the model. */
+    public final float[] values;
+    /** Buffers of the mesh. Each one is a {@link FloatBuffer}, {@link IntBuffer},
+     * {@link ShortBuffer} or {@link ByteBuffer}, and is positioned at 0 when loaded. */
+    public final Buffer[] buffers;
+
+    public Entry(float[] values, Buffer[] buffers) {
+      this.values = values;
+      this.buffers = buffers;
+    }
+
+    /** Returns the buffer at the given index, which must be a float buffer. */
+    public FloatBuffer getFloatBuffer(int index) throws IOException {
+      return checkType(FloatBuffer.class, index);
+    }
+
+    /** Returns the buffer at the given index, which must be an int buffer. */
+    public IntBuffer getIntBuffer(int index) throws IOException {
+      return checkType(IntBuffer.class, index);
+    }
+
+    /** Returns the buffer at the given index, which must be a short buffer. */
+    public ShortBuffer getShortBuffer(int index) throws IOException {
+      return checkType(ShortBuffer.class, index);
+    }
+
+    /** Returns the buffer at the given index, which must be a byte buffer. */
+    public ByteBuffer getByteBuffer(int index) throws IOException {
+      return checkType(ByteBuffer.class, index);
+    }
+
+    private <T extends Buffer> T checkType(Class<T> type, int index) throws IOException {
+      if (index >= buffers.length || !type.isInstance(buffers[index])) {
+        throw new IOException("Cached mesh has no " + type.getSimpleName() + " at " + index);
+      }
+      return type.cast(buffers[index]);
+    }
+  }
+
+  /**
+   * Creates a cache that stores its files in the given directory (typically a subdirectory of
+   * the app's cache directory). The directory is created when needed.
+   */
+  public MeshCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns a hash of the given content, suitable for {@link #load} and {@link #store}. This is
+   * a 64-bit FNV-1a hash: it is only meant to detect changes, not to be cryptographically secure.
+   */
+  public static long hash(String content) {
+    byte[] bytes = content.getBytes(Charset.forName("UTF-8"));
+    long hash = FNV_OFFSET_BASIS;
+    for (byte b : bytes) {
+      hash ^= b & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Loads the mesh cached for the given asset.
+   *
+   * @param assetId The ID of the asset.
+   * @param contentHash The hash of the content from which the mesh should have been built.
+   * @return The cached mesh, whose buffers map the cached file, or null if there is no cached
+   *         mesh for this asset and content. A mesh cached for other content is deleted.
+   * @throws IOException if the cached file could not be read. It is deleted, so that the mesh
+   *         can be stored again.
+   */
+  public Entry load(String assetId, long contentHash) throws IOException {
+    File file = getFile(assetId);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      Entry entry = read(file, contentHash);
+      if (entry == null) {
+        file.delete();
+      }
+      return entry;
+    } catch (IOException ex) {
+      file.delete();
+      throw ex;
+    }
+  }
+
+  /**
+   * Stores the given mesh for the given asset, replacing any previously cached mesh. The file is
+   * written under a temporary name and then renamed, so a partially written file is never
+   * loaded. The positions of the buffers are not modified.
+   *
+   * @param assetId The ID of the asset.
+   * @param contentHash The hash of the content from which the mesh was built.
+   * @param entry The mesh.
+   * @throws IOException if the mesh could not be written.
+   */
+  public void store(String assetId, long contentHash, Entry entry) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+    File file = getFile(assetId);
+    File tempFile = new File(directory, assetId + FILE_EXTENSION + ".tmp");
+    try {
+      write(tempFile, contentHash, entry);
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Could not rename " + tempFile + " to " + file);
+      }
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  // Returns the file in which the mesh of the given asset is cached.
+  private File getFile(String assetId) {
+    return new File(directory, assetId + FILE_EXTENSION);
+  }
+
+  // Reads the given file, or returns null if it is for another version, byte order or content.
+  private static Entry read(File file, long contentHash) throws IOException {
+    MappedByteBuffer data;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Invalid file size: " + channel.size());
+      }
+      // The mapping remains valid after the file is closed.
+      data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      randomAccessFile.close();
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (data.get(i) != MAGIC[i]) {
+        throw new IOException("Not a mesh file.");
+      }
+    }
+    ByteOrder order = data.get(MAGIC.length) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    if (order != ByteOrder.nativeOrder()) {
+      return null;
+    }
+    data.order(order);
+    data.position(8);
+    if (data.getInt() != VERSION || data.getLong() != contentHash) {
+      return null;
+    }
+    int valueCount = data.getInt();
+    int bufferCount = data.getInt();
+    if (valueCount < 0 || bufferCount < 0
+        || HEADER_SIZE + valueCount * 4L + bufferCount * (long) BUFFER_TABLE_ENTRY_SIZE
+            > data.capacity()) {
+      throw new IOException("Invalid header.");
+    }
+    data.position(HEADER_SIZE);
+    float[] values = new float[valueCount];
+    for (int i = 0; i < valueCount; i++) {
+      values[i] = data.getFloat();
+    }
+    Buffer[] buffers = new Buffer[bufferCount];
+    for (int i = 0; i < bufferCount; i++) {
+      int type = data.getInt();
+      int count = data.getInt();
+      int offset = data.getInt();
+      long size = (long) count * getElementSize(type);
+      if (count < 0 || offset < 0 || offset + size > data.capacity()) {
+        throw new IOException("Invalid buffer " + i + ": " + count + " elements at " + offset);
+      }
+      ByteBuffer region = data.duplicate();
+      region.position(offset);
+      region.limit((int) (offset + size));
+      region = region.slice().order(order);
+      if (type == TYPE_FLOAT) {
+        buffers[i] = region.asFloatBuffer();
+      } else if (type == TYPE_INT) {
+        buffers[i] = region.asIntBuffer();
+      } else if (type == TYPE_SHORT) {
+        buffers[i] = region.asShortBuffer();
+      } else {
+        buffers[i] = region;
+      }
+    }
+    return new Entry(values, buffers);
+  }
+
+  private static void write(File file, long contentHash, Entry entry) throws IOException {
+    int[] types = new int[entry.buffers.length];
+    int[] offsets = new int[entry.buffers.length];
+    long size = HEADER_SIZE + entry.values.length * 4L
+        + entry.buffers.length * (long) BUFFER_TABLE_ENTRY_SIZE;
+    for (int i = 0; i < entry.buffers.length; i++) {
+      types[i] = getType(entry.buffers[i]);
+      size = align(size);
+      offsets[i] = (int) size;
+      size += (long) entry.buffers[i].limit() * getElementSize(types[i]);
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Mesh is too large to cache: " + size + " bytes");
+    }
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(size);
+      FileChannel channel = randomAccessFile.getChannel();
+      MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      data.order(ByteOrder.nativeOrder());
+      data.put(MAGIC);
+      data.put((byte) (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1));
+      data.position(8);
+      data.putInt(VERSION);
+      data.putLong(contentHash);
+      data.putInt(entry.values.length);
+      data.putInt(entry.buffers.length);
+      data.position(HEADER_SIZE);
+      for (float value : entry.values) {
+        data.putFloat(value);
+      }
+      for (int i = 0; i < entry.buffers.length; i++) {
+        data.putInt(types[i]);
+        data.putInt(entry.buffers[i].limit());
+        data.putInt(offsets[i]);
+      }
+      for (int i = 0; i < entry.buffers.length; i++) {
+        data.position(offsets[i]);
+        ByteBuffer region = data.slice().order(ByteOrder.nativeOrder());
+        Buffer buffer = entry.buffers[i];
+        // Duplicates are used so the positions of the model's buffers are left alone.
+        if (types[i] == TYPE_FLOAT) {
+          FloatBuffer source = ((FloatBuffer) buffer).duplicate();
+          source.position(0);
+          region.asFloatBuffer().put(source);
+        } else if (types[i] == TYPE_INT) {
+          IntBuffer source = ((IntBuffer) buffer).duplicate();
+          source.position(0);
+          region.asIntBuffer().put(source);
+        } else if (types[i] == TYPE_SHORT) {
+          ShortBuffer source = ((ShortBuffer) buffer).duplicate();
+          source.position(0);
+          region.asShortBuffer().put(source);
+        } else {
+          ByteBuffer source = ((ByteBuffer) buffer).duplicate();
+          source.position(0);
+          region.put(source);
+        }
+      }
+      data.force();
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  private static int getType(Buffer buffer) throws IOException {
+    if (buffer instanceof FloatBuffer) {
+      return TYPE_FLOAT;
+    } else if (buffer instanceof IntBuffer) {
+      return TYPE_INT;
+    } else if (buffer instanceof ShortBuffer) {
+      return TYPE_SHORT;
+    } else if (buffer instanceof ByteBuffer) {
+      return TYPE_BYTE;
+    }
+    throw new IOException("Unsupported buffer type: " + buffer.getClass().getName());
+  }
+
+  private static int getElementSize(int type) throws IOException {
+    if (type == TYPE_FLOAT || type == TYPE_INT) {
+      return 4;
+    } else if (type == TYPE_SHORT) {
+      return 2;
+    } else if (type == TYPE_BYTE) {
+      return 1;
+    }
+    throw new IOException("Unknown buffer type: " + type);
+  }
+
+  private static long align(long offset) {
+    return (offset + BUFFER_ALIGNMENT - 1) / BUFFER_ALIGNMENT * BUFFER_ALIGNMENT;
+  }
+}
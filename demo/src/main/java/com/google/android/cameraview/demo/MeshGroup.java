@@ -0,0 +1,250 @@
+package com.google.android.cameraview.demo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * A named part of a model (an "o" or "g" group of an OBJ file), made of a contiguous range of
+ * its submeshes, and therefore of its index buffer.
+ *
+ * Each group has its own axis-aligned bounding box, in the coordinates of the model's vertex
+ * buffer, and can be hidden so that the model skips its draw calls.
+ */
+public class MeshGroup {
+  /** Name of the group of the faces that come before any "o" or "g" record. */
+  public static final String DEFAULT_NAME = "default";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** Name of the group. Several groups of a model may have the same name. */
+  public final String name;
+  /** Position of the first submesh of the group in the model's submeshes. */
+  public final int firstSubmesh;
+  /** Number of submeshes in the group. */
+  public final int submeshCount;
+  /** Minimum coordinates of the group's axis-aligned bounding box (x, y, z). */
+  public final float[] boundsMin;
+  /** Maximum coordinates of the group's axis-aligned bounding box (x, y, z). */
+  public final float[] boundsMax;
+
+  // Written by the UI thread, read by the GL thread.
+  private volatile boolean visible = true;
+
+  public MeshGroup(String name, int firstSubmesh, int submeshCount, float[] boundsMin,
+      float[] boundsMax) {
+    this.name = name;
+    this.firstSubmesh = firstSubmesh;
+    this.submeshCount = submeshCount;
+    this.boundsMin = boundsMin;
+    this.boundsMax = boundsMax;
+  }
+
+  /** Returns whether the group is drawn. Groups are visible when created. */
+  public boolean isVisible() {
+    return visible;
+  }
+
+  /** Sets whether the group is drawn. Can be called from any thread. */
+  public void setVisible(boolean visible) {
+    this.visible = visible;
+  }
+
+  /**
+   * Returns the first submesh, submesh count and name length (in UTF-8 bytes) of each of the
+   * given groups, to be stored in a {@link MeshCache} along with {@link #getBounds(MeshGroup[])}
+   * and {@link #getNames(MeshGroup[])}.
+   */
+  public static IntBuffer getRanges(MeshGroup[] groups) {
+    IntBuffer ranges = IntBuffer.allocate(groups.length * 3);
+    for (MeshGroup group : groups) {
+      ranges.put(group.firstSubmesh).put(group.submeshCount)
+          .put(group.name.getBytes(UTF_8).length);
+    }
+    ranges.position(0);
+    return ranges;
+  }
+
+  /** Returns the bounds of the given groups (6 floats each: minimum, then maximum). */
+  public static FloatBuffer getBounds(MeshGroup[] groups) {
+    FloatBuffer bounds = FloatBuffer.allocate(groups.length * 6);
+    for (MeshGroup group : groups) {
+      bounds.put(group.boundsMin, 0, 3).put(group.boundsMax, 0, 3);
+    }
+    bounds.position(0);
+    return bounds;
+  }
+
+  /** Returns the names of the given groups, encoded in UTF-8 one after the other. */
+  public static ByteBuffer getNames(MeshGroup[] groups) {
+    ArrayList<byte[]> names = new ArrayList<>(groups.length);
+    int size = 0;
+    for (MeshGroup group : groups) {
+      byte[] name = group.name.getBytes(UTF_8);
+      names.add(name);
+      size += name.length;
+    }
+    ByteBuffer result = ByteBuffer.allocate(size);
+    for (byte[] name : names) {
+      result.put(name);
+    }
+    result.position(0);
+    return result;
+  }
+
+  /**
+   * Recreates groups from the buffers returned by {@link #getRanges(MeshGroup[])},
+   * {@link #getBounds(MeshGroup[])} and {@link #getNames(MeshGroup[])}.
+   *
+   * @param submeshCount The number of submeshes in the model, to validate the ranges.
+   * @throws IOException if the buffers don't describe valid groups.
+   */
+  public static MeshGroup[] fromBuffers(IntBuffer ranges, FloatBuffer bounds, ByteBuffer names,
+      int submeshCount) throws IOException {
+    int count = ranges.limit() / 3;
+    if (ranges.limit() != count * 3 || bounds.limit() != count * 6) {
+      throw new IOException("Invalid groups.");
+    }
+    MeshGroup[] groups = new MeshGroup[count];
+    int nameOffset = 0;
+    for (int i = 0; i < count; i++) {
+      int firstSubmesh = ranges.get(i * 3);
+      int groupSubmeshCount = ranges.get(i * 3 + 1);
+      int nameLength = ranges.get(i * 3 + 2);
+      if (firstSubmesh < 0 || groupSubmeshCount < 0
+          || firstSubmesh + groupSubmeshCount > submeshCount
+          || nameLength < 0 || nameOffset + nameLength > names.limit()) {
+        throw new IOException("Invalid group " + i + ".");
+      }
+      byte[] name = new byte[nameLength];
+      for (int j = 0; j < nameLength; j++) {
+        name[j] = names.get(nameOffset + j);
+      }
+      nameOffset += nameLength;
+      float[] boundsMin = new float[3];
+      float[] boundsMax = new float[3];
+      for (int j = 0; j < 3; j++) {
+        boundsMin[j] = bounds.get(i * 6 + j);
+        boundsMax[j] = bounds.get(i * 6 + 3 + j);
+      }
+      groups[i] = new MeshGroup(new String(name, UTF_8), firstSubmesh, groupSubmeshCount,
+          boundsMin, boundsMax);
+    }
+    return groups;
+  }
+
+  /**
+   * Builds the submeshes and groups of a model from the faces of an {@link ObjGeometry}, as the
+   * model emits their indices in the order given by
+   * {@link ObjGeometry#getFacesByGroupAndMaterial()}.
+   *
+   * For each face, call {@link #startFace} before emitting its indices, then {@link #addVertex}
+   * for each of its vertices. Call {@link #finish} once all the faces have been emitted. Faces
+   * that are skipped (not emitted) must not be passed to the builder. Submeshes and groups that
+   * end up without any index are dropped.
+   */
+  public static class Builder {
+    private final ObjGeometry geometry;
+    private final MtlLibrary materials;
+    private final ArrayList<Submesh> submeshes = new ArrayList<>();
+    private final ArrayList<MeshGroup> groups = new ArrayList<>();
+
+    private boolean started;
+    // Geometry group and material of the current submesh.
+    private int group;
+    private int material;
+    private int submeshFirstIndex;
+    private int groupFirstSubmesh;
+    // Bounds of the current group, or null if no vertex was added to it yet.
+    private float[] boundsMin;
+    private float[] boundsMax;
+
+    public Builder(ObjGeometry geometry, MtlLibrary materials) {
+      this.geometry = geometry;
+      this.materials = materials;
+    }
+
+    /**
+     * Starts a face, ending the current submesh (and group) if the face has a different material
+     * (or group).
+     *
+     * @param face The index of the face in the geometry.
+     * @param indexPosition The number of indices emitted so far.
+     */
+    public void startFace(int face, int indexPosition) {
+      int faceGroup = geometry.getFaceGroup(face);
+      int faceMaterial = geometry.getFaceMaterial(face);
+      if (started && faceGroup == group && faceMaterial == material) {
+        return;
+      }
+      endSubmesh(indexPosition);
+      if (!started || faceGroup != group) {
+        endGroup();
+      }
+      started = true;
+      group = faceGroup;
+      material = faceMaterial;
+      submeshFirstIndex = indexPosition;
+    }
+
+    /** Grows the bounds of the current group to contain the given (final) vertex position. */
+    public void addVertex(float x, float y, float z) {
+      if (boundsMin == null) {
+        boundsMin = new float[] { x, y, z };
+        boundsMax = new float[] { x, y, z };
+        return;
+      }
+      boundsMin[0] = Math.min(boundsMin[0], x);
+      boundsMin[1] = Math.min(boundsMin[1], y);
+      boundsMin[2] = Math.min(boundsMin[2], z);
+      boundsMax[0] = Math.max(boundsMax[0], x);
+      boundsMax[1] = Math.max(boundsMax[1], y);
+      boundsMax[2] = Math.max(boundsMax[2], z);
+    }
+
+    /**
+     * Ends the last submesh and group.
+     *
+     * @param indexPosition The total number of indices emitted.
+     */
+    public void finish(int indexPosition) {
+      endSubmesh(indexPosition);
+      endGroup();
+    }
+
+    public Submesh[] getSubmeshes() {
+      return submeshes.toArray(new Submesh[submeshes.size()]);
+    }
+
+    public MeshGroup[] getGroups() {
+      return groups.toArray(new MeshGroup[groups.size()]);
+    }
+
+    private void endSubmesh(int indexPosition) {
+      if (!started || indexPosition == submeshFirstIndex) {
+        return;
+      }
+      int materialId = Submesh.getMaterialId(geometry, material, materials);
+      submeshes.add(new Submesh(materialId, Submesh.getColor(materialId, materials),
+          submeshFirstIndex, indexPosition - submeshFirstIndex));
+    }
+
+    private void endGroup() {
+      if (started && submeshes.size() > groupFirstSubmesh) {
+        String name = group == ObjGeometry.MISSING ? DEFAULT_NAME : geometry.getGroupName(group);
+        if (boundsMin == null) {
+          boundsMin = new float[3];
+          boundsMax = new float[3];
+        }
+        groups.add(new MeshGroup(name, groupFirstSubmesh, submeshes.size() - groupFirstSubmesh,
+            boundsMin, boundsMax));
+      }
+      groupFirstSubmesh = submeshes.size();
+      boundsMin = null;
+      boundsMax = null;
+    }
+  }
+}
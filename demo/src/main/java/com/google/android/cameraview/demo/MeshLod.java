@@ -0,0 +1,31 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.Buffer;
+
+/**
+ * A simplified level of detail of a mesh, built by {@link MeshSimplifier}.
+ *
+ * A level of detail only has its own indices: they refer to the vertices of the full mesh, with
+ * the same index type and base vertices. Its submeshes match those of the full mesh one for one
+ * (some of them may be empty), so the groups of the mesh apply to every level of detail.
+ */
+public class MeshLod {
+  /** The index buffer (a ShortBuffer or an IntBuffer, like that of the full mesh). */
+  public final Buffer indices;
+  /** Number of indices in {@link #indices}. */
+  public final int indexCount;
+  /** Ranges of {@link #indices} to draw with each material. */
+  public final Submesh[] submeshes;
+  /**
+   * Geometric error of this level of detail: roughly the largest distance, in the units of the
+   * vertex positions, between its surface and that of the full mesh.
+   */
+  public final float error;
+
+  public MeshLod(Buffer indices, int indexCount, Submesh[] submeshes, float error) {
+    this.indices = indices;
+    this.indexCount = indexCount;
+    this.submeshes = submeshes;
+    this.error = error;
+  }
+}
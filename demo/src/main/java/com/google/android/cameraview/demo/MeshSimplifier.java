@@ -0,0 +1,513 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Builds simplified levels of detail of an indexed mesh, by collapsing edges in order of their
+ * quadric error (Garland and Heckbert, "Surface Simplification Using Quadric Error Metrics").
+ *
+ * Each position accumulates the planes of the triangles around it, weighted by their area, as a
+ * quadric: the sum of the squared distances to those planes. Collapsing the edge from position
+ * a to position b costs the quadric of both, evaluated at b. Positions only move onto existing
+ * ones, so the levels of detail reuse the vertex buffer of the full mesh and only have their own
+ * index buffers. Where a position has several vertices (with different normals), each corner
+ * that moves takes the vertex at the new position whose normal is closest to its own.
+ *
+ * Positions on the boundary between two submeshes (materials or groups), on an open edge, or on
+ * an edge shared by more than two triangles are never moved, so materials keep their outlines
+ * and holes don't grow. Collapses that would flip a triangle are skipped.
+ *
+ * Edges are collapsed in passes: the edges are sorted by cost, and collapsed in that order,
+ * skipping those that touch a position that already changed during the pass, until the target
+ * is reached or no edge can be collapsed.
+ *
+ * The constructor copies the mesh, so that {@link #buildLods} can then run on any thread, while
+ * the mesh is being drawn.
+ */
+public class MeshSimplifier {
+  /** Default triangle ratios of the levels of detail, from the finest to the coarsest. */
+  public static final float[] DEFAULT_LOD_RATIOS = { 0.5f, 0.25f, 0.1f };
+
+  // Number of doubles per quadric (the upper triangle of a symmetric 4x4 matrix).
+  private static final int QUADRIC_SIZE = 10;
+  private static final int EMPTY = -1;
+
+  private final int vertexCount;
+  // Position and normal of each vertex (3 floats each).
+  private final float[] vertexPositions;
+  private final float[] vertexNormals;
+  // Current vertices of each triangle (3 per triangle, in global vertex indices), or EMPTY for the
+  // triangles that were collapsed.
+  private final int[] triangles;
+  // Submesh of each triangle.
+  private final int[] triangleSubmeshes;
+  private final Submesh[] submeshes;
+  private final boolean shortIndices;
+
+  // Position of each vertex, among the distinct positions of the mesh.
+  private int[] vertexPosition;
+  // The vertices of position p are positionVertices[positionVertexStarts[p]] to
+  // positionVertices[positionVertexStarts[p + 1] - 1].
+  private int[] positionVertexStarts;
+  private int[] positionVertices;
+  private int positionCount;
+  // Positions that must not move.
+  private boolean[] locked;
+  // Quadric of each position, and the total weight (area) of its planes.
+  private double[] quadrics;
+  private double[] quadricWeights;
+  private int liveTriangleCount;
+  private float error;
+  // Scratch space for the geometry of one triangle.
+  private final double[] corners = new double[9];
+  private final double[] normalBefore = new double[3];
+  private final double[] normalAfter = new double[3];
+
+  /**
+   * Copies the given mesh.
+   *
+   * @param vertices The interleaved vertices: position then normal, so
+   *     {@link MyGLUtils#FLOATS_PER_VERTEX} floats per vertex.
+   * @param vertexCount The number of vertices.
+   * @param indices The index buffer, either a ShortBuffer (with indices relative to the base
+   *     vertex of their submesh) or an IntBuffer.
+   * @param submeshes The submeshes, which must cover all the indices, in order.
+   */
+  public MeshSimplifier(FloatBuffer vertices, int vertexCount, Buffer indices,
+      Submesh[] submeshes) {
+    this.vertexCount = vertexCount;
+    this.submeshes = submeshes;
+    vertexPositions = new float[vertexCount * 3];
+    vertexNormals = new float[vertexCount * 3];
+    for (int v = 0; v < vertexCount; v++) {
+      for (int i = 0; i < 3; i++) {
+        vertexPositions[v * 3 + i] = vertices.get(v * MyGLUtils.FLOATS_PER_VERTEX + i);
+        vertexNormals[v * 3 + i] = vertices.get(v * MyGLUtils.FLOATS_PER_VERTEX + 3 + i);
+      }
+    }
+    shortIndices = indices instanceof ShortBuffer;
+    int triangleCount = 0;
+    for (Submesh submesh : submeshes) {
+      triangleCount += submesh.indexCount / 3;
+    }
+    triangles = new int[triangleCount * 3];
+    triangleSubmeshes = new int[triangleCount];
+    int triangle = 0;
+    for (int s = 0; s < submeshes.length; s++) {
+      Submesh submesh = submeshes[s];
+      for (int i = submesh.firstIndex; i + 2 < submesh.firstIndex + submesh.indexCount; i += 3) {
+        for (int k = 0; k < 3; k++) {
+          triangles[triangle * 3 + k] = shortIndices
+              ? submesh.baseVertex + (((ShortBuffer) indices).get(i + k) & 0xffff)
+              : ((IntBuffer) indices).get(i + k);
+        }
+        triangleSubmeshes[triangle] = s;
+        triangle++;
+      }
+    }
+    liveTriangleCount = triangleCount;
+  }
+
+  /**
+   * Builds levels of detail with the given ratios of the triangles of the full mesh, each one
+   * simplified from the previous one. A level of detail may have more triangles than asked if the
+   * mesh can't be simplified further; levels that are not smaller than the previous one are left
+   * out.
+   *
+   * @param ratios The triangle ratios, in decreasing order.
+   */
+  public MeshLod[] buildLods(float[] ratios) {
+    int fullTriangleCount = liveTriangleCount;
+    findPositions();
+    lockBoundaries();
+    computeQuadrics();
+    MeshLod[] lods = new MeshLod[ratios.length];
+    int lodCount = 0;
+    int previousTriangleCount = fullTriangleCount;
+    for (float ratio : ratios) {
+      simplify((int) (fullTriangleCount * ratio));
+      if (liveTriangleCount >= previousTriangleCount) {
+        break;
+      }
+      previousTriangleCount = liveTriangleCount;
+      lods[lodCount++] = createLod();
+    }
+    return Arrays.copyOf(lods, lodCount);
+  }
+
+  // Groups the vertices by position (with -0 and +0 considered equal).
+  private void findPositions() {
+    PositionGroups groups = PositionGroups.find(vertexPositions, vertexCount);
+    vertexPosition = groups.vertexPositions;
+    positionCount = groups.positionCount;
+    positionVertexStarts = new int[positionCount + 1];
+    for (int v = 0; v < vertexCount; v++) {
+      positionVertexStarts[vertexPosition[v] + 1]++;
+    }
+    for (int p = 0; p < positionCount; p++) {
+      positionVertexStarts[p + 1] += positionVertexStarts[p];
+    }
+    int[] next = Arrays.copyOf(positionVertexStarts, positionCount);
+    positionVertices = new int[vertexCount];
+    for (int v = 0; v < vertexCount; v++) {
+      positionVertices[next[vertexPosition[v]]++] = v;
+    }
+  }
+
+  // Locks the positions on submesh boundaries, open edges and non-manifold edges.
+  private void lockBoundaries() {
+    locked = new boolean[positionCount];
+    int[] positionSubmeshes = new int[positionCount];
+    Arrays.fill(positionSubmeshes, EMPTY);
+    long[] edges = new long[liveTriangleCount * 3];
+    int edgeCount = 0;
+    for (int t = 0; t < triangleSubmeshes.length; t++) {
+      for (int k = 0; k < 3; k++) {
+        int p = position(t, k);
+        if (positionSubmeshes[p] == EMPTY) {
+          positionSubmeshes[p] = triangleSubmeshes[t];
+        } else if (positionSubmeshes[p] != triangleSubmeshes[t]) {
+          locked[p] = true;
+        }
+        edges[edgeCount++] = edgeKey(p, position(t, (k + 1) % 3));
+      }
+    }
+    // Each edge of a closed surface is shared by exactly two triangles.
+    Arrays.sort(edges, 0, edgeCount);
+    for (int i = 0; i < edgeCount; ) {
+      int end = i + 1;
+      while (end < edgeCount && edges[end] == edges[i]) {
+        end++;
+      }
+      if (end - i != 2) {
+        locked[(int) (edges[i] >>> 32)] = true;
+        locked[(int) edges[i]] = true;
+      }
+      i = end;
+    }
+  }
+
+  private void computeQuadrics() {
+    quadrics = new double[positionCount * QUADRIC_SIZE];
+    quadricWeights = new double[positionCount];
+    double[] plane = new double[4];
+    for (int t = 0; t < triangleSubmeshes.length; t++) {
+      double area = getPlane(t, plane);
+      if (area == 0) {
+        continue;
+      }
+      for (int k = 0; k < 3; k++) {
+        int p = position(t, k);
+        addPlane(quadrics, p * QUADRIC_SIZE, plane, area);
+        quadricWeights[p] += area;
+      }
+    }
+  }
+
+  // Collapses edges until at most targetTriangleCount triangles are left, or no edge can be
+  // collapsed.
+  private void simplify(int targetTriangleCount) {
+    boolean[] touched = new boolean[positionCount];
+    while (liveTriangleCount > targetTriangleCount) {
+      // The triangles around each position.
+      int[] positionTriangleStarts = new int[positionCount + 1];
+      for (int t = 0; t < triangleSubmeshes.length; t++) {
+        if (triangles[t * 3] != EMPTY) {
+          for (int k = 0; k < 3; k++) {
+            positionTriangleStarts[position(t, k) + 1]++;
+          }
+        }
+      }
+      for (int p = 0; p < positionCount; p++) {
+        positionTriangleStarts[p + 1] += positionTriangleStarts[p];
+      }
+      int[] next = Arrays.copyOf(positionTriangleStarts, positionCount);
+      int[] positionTriangles = new int[positionTriangleStarts[positionCount]];
+      for (int t = 0; t < triangleSubmeshes.length; t++) {
+        if (triangles[t * 3] != EMPTY) {
+          for (int k = 0; k < 3; k++) {
+            positionTriangles[next[position(t, k)]++] = t;
+          }
+        }
+      }
+
+      // The collapse of each edge, in the cheapest direction, sorted by cost.
+      long[] edges = new long[liveTriangleCount * 3];
+      int edgeCount = 0;
+      for (int t = 0; t < triangleSubmeshes.length; t++) {
+        if (triangles[t * 3] != EMPTY) {
+          for (int k = 0; k < 3; k++) {
+            edges[edgeCount++] = edgeKey(position(t, k), position(t, (k + 1) % 3));
+          }
+        }
+      }
+      Arrays.sort(edges, 0, edgeCount);
+      int[] collapseFrom = new int[edgeCount];
+      int[] collapseTo = new int[edgeCount];
+      float[] collapseCosts = new float[edgeCount];
+      long[] order = new long[edgeCount];
+      int collapseCount = 0;
+      for (int i = 0; i < edgeCount; i++) {
+        if (i > 0 && edges[i] == edges[i - 1]) {
+          continue;
+        }
+        int p = (int) (edges[i] >>> 32);
+        int q = (int) edges[i];
+        float costPQ = locked[p] ? Float.MAX_VALUE : getCollapseCost(p, q);
+        float costQP = locked[q] ? Float.MAX_VALUE : getCollapseCost(q, p);
+        if (costPQ == Float.MAX_VALUE && costQP == Float.MAX_VALUE) {
+          continue;
+        }
+        boolean forward = costPQ <= costQP;
+        collapseFrom[collapseCount] = forward ? p : q;
+        collapseTo[collapseCount] = forward ? q : p;
+        collapseCosts[collapseCount] = Math.min(costPQ, costQP);
+        // Costs are positive, so their bits sort like their values.
+        order[collapseCount] =
+            ((long) Float.floatToIntBits(collapseCosts[collapseCount]) << 32) | collapseCount;
+        collapseCount++;
+      }
+      Arrays.sort(order, 0, collapseCount);
+
+      Arrays.fill(touched, false);
+      int collapsed = 0;
+      for (int i = 0; i < collapseCount && liveTriangleCount > targetTriangleCount; i++) {
+        int c = (int) order[i];
+        int from = collapseFrom[c];
+        int to = collapseTo[c];
+        if (touched[from] || touched[to]
+            || flips(from, to, positionTriangles, positionTriangleStarts)) {
+          continue;
+        }
+        collapse(from, to, positionTriangles, positionTriangleStarts);
+        double weight = quadricWeights[from] + quadricWeights[to];
+        if (weight > 0) {
+          error = Math.max(error, (float) Math.sqrt(collapseCosts[c] / weight));
+        }
+        for (int j = 0; j < QUADRIC_SIZE; j++) {
+          quadrics[to * QUADRIC_SIZE + j] += quadrics[from * QUADRIC_SIZE + j];
+        }
+        quadricWeights[to] = weight;
+        touched[from] = true;
+        touched[to] = true;
+        collapsed++;
+      }
+      if (collapsed == 0) {
+        return;
+      }
+    }
+  }
+
+  // Returns the quadric error of moving position from onto position to.
+  private float getCollapseCost(int from, int to) {
+    int vertex = positionVertices[positionVertexStarts[to]] * 3;
+    double x = vertexPositions[vertex];
+    double y = vertexPositions[vertex + 1];
+    double z = vertexPositions[vertex + 2];
+    double cost = evaluate(quadrics, from * QUADRIC_SIZE, x, y, z)
+        + evaluate(quadrics, to * QUADRIC_SIZE, x, y, z);
+    return (float) Math.max(cost, 0);
+  }
+
+  // Returns whether moving position from onto position to would flip (or flatten) any of the
+  // triangles that only the first one is part of.
+  private boolean flips(int from, int to, int[] positionTriangles, int[] starts) {
+    for (int i = starts[from]; i < starts[from + 1]; i++) {
+      int t = positionTriangles[i];
+      if (triangles[t * 3] == EMPTY || hasPosition(t, to)) {
+        continue;
+      }
+      getNormal(t, from, from, normalBefore);
+      getNormal(t, from, to, normalAfter);
+      if (normalBefore[0] * normalAfter[0] + normalBefore[1] * normalAfter[1]
+          + normalBefore[2] * normalAfter[2] <= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Moves position from onto position to: the triangles that have both are removed, and the
+  // others take the vertex of the new position closest to their old one.
+  private void collapse(int from, int to, int[] positionTriangles, int[] starts) {
+    for (int i = starts[from]; i < starts[from + 1]; i++) {
+      int t = positionTriangles[i];
+      if (triangles[t * 3] == EMPTY) {
+        continue;
+      }
+      if (hasPosition(t, to)) {
+        triangles[t * 3] = EMPTY;
+        liveTriangleCount--;
+        continue;
+      }
+      for (int k = 0; k < 3; k++) {
+        if (position(t, k) == from) {
+          triangles[t * 3 + k] = findVertex(triangles[t * 3 + k], to, t);
+        }
+      }
+    }
+  }
+
+  // Returns the vertex at the given position whose normal is closest to that of the given vertex,
+  // among those that the given triangle can refer to.
+  private int findVertex(int vertex, int position, int triangle) {
+    int baseVertex = submeshes[triangleSubmeshes[triangle]].baseVertex;
+    int best = EMPTY;
+    float bestDot = -Float.MAX_VALUE;
+    for (int i = positionVertexStarts[position]; i < positionVertexStarts[position + 1]; i++) {
+      int candidate = positionVertices[i];
+      if (shortIndices && (candidate < baseVertex
+          || candidate - baseVertex >= MeshSplitter.MAX_CHUNK_VERTICES)) {
+        continue;
+      }
+      float dot = vertexNormals[vertex * 3] * vertexNormals[candidate * 3]
+          + vertexNormals[vertex * 3 + 1] * vertexNormals[candidate * 3 + 1]
+          + vertexNormals[vertex * 3 + 2] * vertexNormals[candidate * 3 + 2];
+      if (dot > bestDot) {
+        best = candidate;
+        bestDot = dot;
+      }
+    }
+    if (best == EMPTY) {
+      // The triangle's neighbors across the collapsed edge are in the same submesh, so they
+      // always have a vertex at the new position in range.
+      throw new IllegalStateException("No vertex in range at position " + position);
+    }
+    return best;
+  }
+
+  private MeshLod createLod() {
+    IntArrayList indices = new IntArrayList(liveTriangleCount * 3);
+    Submesh[] lodSubmeshes = new Submesh[submeshes.length];
+    VertexCacheOptimizer optimizer = new VertexCacheOptimizer(vertexCount);
+    int t = 0;
+    for (int s = 0; s < submeshes.length; s++) {
+      int firstIndex = indices.size();
+      for (; t < triangleSubmeshes.length && triangleSubmeshes[t] == s; t++) {
+        if (triangles[t * 3] != EMPTY) {
+          indices.add(triangles[t * 3], triangles[t * 3 + 1], triangles[t * 3 + 2]);
+        }
+      }
+      int submeshIndexCount = indices.size() - firstIndex;
+      optimizer.optimizeTriangleOrder(indices, firstIndex, submeshIndexCount);
+      Submesh submesh = submeshes[s];
+      lodSubmeshes[s] = new Submesh(submesh.materialId, submesh.color, firstIndex,
+          submeshIndexCount, submesh.baseVertex);
+    }
+
+    int indexCount = indices.size();
+    Buffer buffer;
+    if (shortIndices) {
+      ShortBuffer shortBuffer = ByteBuffer.allocateDirect(indexCount * MyGLUtils.SHORT_SIZE)
+          .order(ByteOrder.nativeOrder())
+          .asShortBuffer();
+      for (Submesh submesh : lodSubmeshes) {
+        for (int i = submesh.firstIndex; i < submesh.firstIndex + submesh.indexCount; i++) {
+          shortBuffer.put(i, (short) (indices.get(i) - submesh.baseVertex));
+        }
+      }
+      buffer = shortBuffer;
+    } else {
+      IntBuffer intBuffer = ByteBuffer.allocateDirect(indexCount * MyGLUtils.INT_SIZE)
+          .order(ByteOrder.nativeOrder())
+          .asIntBuffer();
+      indices.drainTo(intBuffer).position(0);
+      buffer = intBuffer;
+    }
+    return new MeshLod(buffer, indexCount, lodSubmeshes, error);
+  }
+
+  private int position(int triangle, int corner) {
+    return vertexPosition[triangles[triangle * 3 + corner]];
+  }
+
+  private boolean hasPosition(int triangle, int position) {
+    return position(triangle, 0) == position || position(triangle, 1) == position
+        || position(triangle, 2) == position;
+  }
+
+  // Writes the (unnormalized) normal of the given triangle into out, with the corners at
+  // position from moved to position to.
+  private void getNormal(int triangle, int from, int to, double[] out) {
+    for (int k = 0; k < 3; k++) {
+      int p = position(triangle, k);
+      int vertex = (p == from ? positionVertices[positionVertexStarts[to]]
+          : triangles[triangle * 3 + k]) * 3;
+      corners[k * 3] = vertexPositions[vertex];
+      corners[k * 3 + 1] = vertexPositions[vertex + 1];
+      corners[k * 3 + 2] = vertexPositions[vertex + 2];
+    }
+    cross(corners, out);
+  }
+
+  // Writes the plane of the given triangle (unit normal and distance) into plane, and returns
+  // the area of the triangle.
+  private double getPlane(int triangle, double[] plane) {
+    for (int k = 0; k < 3; k++) {
+      int vertex = triangles[triangle * 3 + k] * 3;
+      corners[k * 3] = vertexPositions[vertex];
+      corners[k * 3 + 1] = vertexPositions[vertex + 1];
+      corners[k * 3 + 2] = vertexPositions[vertex + 2];
+    }
+    cross(corners, plane);
+    double length = Math.sqrt(plane[0] * plane[0] + plane[1] * plane[1] + plane[2] * plane[2]);
+    if (length == 0) {
+      return 0;
+    }
+    plane[0] /= length;
+    plane[1] /= length;
+    plane[2] /= length;
+    plane[3] = -(plane[0] * corners[0] + plane[1] * corners[1] + plane[2] * corners[2]);
+    return length / 2;
+  }
+
+  // Cross product of the edges of the triangle with the given corners (x, y, z of each).
+  private static void cross(double[] corners, double[] out) {
+    double ux = corners[3] - corners[0];
+    double uy = corners[4] - corners[1];
+    double uz = corners[5] - corners[2];
+    double vx = corners[6] - corners[0];
+    double vy = corners[7] - corners[1];
+    double vz = corners[8] - corners[2];
+    out[0] = uy * vz - uz * vy;
+    out[1] = uz * vx - ux * vz;
+    out[2] = ux * vy - uy * vx;
+  }
+
+  // Adds the quadric of the given plane, with the given weight, to the quadric at offset.
+  private static void addPlane(double[] quadrics, int offset, double[] plane, double weight) {
+    double a = plane[0];
+    double b = plane[1];
+    double c = plane[2];
+    double d = plane[3];
+    quadrics[offset] += weight * a * a;
+    quadrics[offset + 1] += weight * a * b;
+    quadrics[offset + 2] += weight * a * c;
+    quadrics[offset + 3] += weight * a * d;
+    quadrics[offset + 4] += weight * b * b;
+    quadrics[offset + 5] += weight * b * c;
+    quadrics[offset + 6] += weight * b * d;
+    quadrics[offset + 7] += weight * c * c;
+    quadrics[offset + 8] += weight * c * d;
+    quadrics[offset + 9] += weight * d * d;
+  }
+
+  // Returns the weighted sum of the squared distances of the point to the planes of a quadric.
+  private static double evaluate(double[] q, int offset, double x, double y, double z) {
+    return q[offset] * x * x + 2 * q[offset + 1] * x * y + 2 * q[offset + 2] * x * z
+        + 2 * q[offset + 3] * x + q[offset + 4] * y * y + 2 * q[offset + 5] * y * z
+        + 2 * q[offset + 6] * y + q[offset + 7] * z * z + 2 * q[offset + 8] * z
+        + q[offset + 9];
+  }
+
+  private static long edgeKey(int p, int q) {
+    return p < q ? ((long) p << 32) | q : ((long) q << 32) | p;
+  }
+
+}
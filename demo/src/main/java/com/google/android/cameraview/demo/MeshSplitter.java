@@ -0,0 +1,185 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Converts an indexed mesh to 16-bit indices, splitting it into chunks of at most
+ * {@link #MAX_CHUNK_VERTICES} vertices when it has more than an unsigned short can address.
+ *
+ * The triangles keep their order and their position in the index buffer; only the indices
+ * change, to be relative to the first vertex of their chunk. Each chunk's vertices are
+ * contiguous in the new vertex buffers, in order of first use, so a vertex that is used by
+ * several chunks is duplicated in each. Submeshes that straddle chunks are cut in pieces, each
+ * with the {@link Submesh#baseVertex} of its chunk, at which the vertex attributes must point
+ * when it is drawn (OpenGL ES 2 has no base vertex parameter for draw calls).
+ *
+ * 16-bit indices take half the memory and bandwidth of 32-bit ones, and don't need the
+ * OES_element_index_uint extension.
+ */
+public class MeshSplitter {
+  /**
+   * Maximum number of vertices in a chunk. The last unsigned short value is left unused, since
+   * some implementations reserve it (as a primitive restart index).
+   */
+  public static final int MAX_CHUNK_VERTICES = 65535;
+
+  /** The new index buffer (direct, native order, positioned at 0). */
+  public final ShortBuffer indices;
+  /** The submeshes, cut at chunk boundaries. */
+  public final Submesh[] submeshes;
+  /** The groups, as ranges of the new submeshes. */
+  public final MeshGroup[] groups;
+  // The original index of each new vertex.
+  private final int[] sourceVertices;
+  private final int sourceVertexCount;
+
+  private MeshSplitter(ShortBuffer indices, Submesh[] submeshes, MeshGroup[] groups,
+      int[] sourceVertices, int sourceVertexCount) {
+    this.indices = indices;
+    this.submeshes = submeshes;
+    this.groups = groups;
+    this.sourceVertices = sourceVertices;
+    this.sourceVertexCount = sourceVertexCount;
+  }
+
+  /**
+   * Splits a mesh.
+   *
+   * @param indices The triangle indices of the mesh.
+   * @param vertexCount The number of vertices of the mesh.
+   * @param submeshes The submeshes of the mesh, which must cover all of {@code indices}, and have
+   *     a base vertex of 0.
+   * @param groups The groups of the mesh, or null.
+   * @param maxChunkVertices The maximum number of vertices per chunk, at most
+   *     {@link #MAX_CHUNK_VERTICES}.
+   */
+  public static MeshSplitter split(IntArrayList indices, int vertexCount, Submesh[] submeshes,
+      MeshGroup[] groups, int maxChunkVertices) {
+    ShortBuffer result = ByteBuffer.allocateDirect(indices.size() * MyGLUtils.SHORT_SIZE)
+        .order(ByteOrder.nativeOrder())
+        .asShortBuffer();
+    // Chunk in which each vertex was last added, and its index in that chunk.
+    int[] vertexChunks = new int[vertexCount];
+    int[] chunkIndices = new int[vertexCount];
+    Arrays.fill(vertexChunks, -1);
+    IntArrayList sourceVertices = new IntArrayList(vertexCount);
+    int chunk = 0;
+    int baseVertex = 0;
+    ArrayList<Submesh> pieces = new ArrayList<>(submeshes.length);
+    // Position in pieces of the first piece of each submesh.
+    int[] firstPieces = new int[submeshes.length + 1];
+    for (int s = 0; s < submeshes.length; s++) {
+      Submesh submesh = submeshes[s];
+      firstPieces[s] = pieces.size();
+      int pieceStart = submesh.firstIndex;
+      int end = submesh.firstIndex + submesh.indexCount;
+      for (int t = submesh.firstIndex; t < end; t += 3) {
+        int a = indices.get(t);
+        int b = indices.get(t + 1);
+        int c = indices.get(t + 2);
+        int newVertices = (vertexChunks[a] != chunk ? 1 : 0)
+            + (vertexChunks[b] != chunk && b != a ? 1 : 0)
+            + (vertexChunks[c] != chunk && c != a && c != b ? 1 : 0);
+        if (sourceVertices.size() - baseVertex + newVertices > maxChunkVertices) {
+          addPiece(pieces, submesh, pieceStart, t, baseVertex);
+          chunk++;
+          baseVertex = sourceVertices.size();
+          pieceStart = t;
+        }
+        for (int k = 0; k < 3; k++) {
+          int vertex = indices.get(t + k);
+          if (vertexChunks[vertex] != chunk) {
+            vertexChunks[vertex] = chunk;
+            chunkIndices[vertex] = sourceVertices.size() - baseVertex;
+            sourceVertices.add(vertex);
+          }
+          result.put(t + k, (short) chunkIndices[vertex]);
+        }
+      }
+      addPiece(pieces, submesh, pieceStart, end, baseVertex);
+    }
+    firstPieces[submeshes.length] = pieces.size();
+
+    MeshGroup[] splitGroups = null;
+    if (groups != null) {
+      splitGroups = new MeshGroup[groups.length];
+      for (int g = 0; g < groups.length; g++) {
+        MeshGroup group = groups[g];
+        int first = firstPieces[group.firstSubmesh];
+        splitGroups[g] = new MeshGroup(group.name, first,
+            firstPieces[group.firstSubmesh + group.submeshCount] - first, group.boundsMin,
+            group.boundsMax);
+      }
+    }
+    result.position(0);
+    return new MeshSplitter(result, pieces.toArray(new Submesh[pieces.size()]), splitGroups,
+        sourceVertices.toArray(), vertexCount);
+  }
+
+  /** Returns the number of vertices of the split mesh. */
+  public int getVertexCount() {
+    return sourceVertices.length;
+  }
+
+  /** Returns the number of chunks the mesh was split into. */
+  public int getChunkCount() {
+    int chunkCount = 0;
+    int lastBaseVertex = -1;
+    for (Submesh submesh : submeshes) {
+      if (submesh.baseVertex != lastBaseVertex) {
+        chunkCount++;
+        lastBaseVertex = submesh.baseVertex;
+      }
+    }
+    return chunkCount;
+  }
+
+  /**
+   * Returns a vertex attribute buffer for the split mesh, with the values of the given buffer
+   * for the original vertices. If the vertices didn't change (a single chunk that uses all the
+   * vertices in order), the given buffer itself is returned.
+   *
+   * @param source The attribute buffer of the original mesh.
+   * @param components The number of floats per vertex.
+   */
+  public FloatBuffer gatherVertices(FloatBuffer source, int components) {
+    if (isIdentity()) {
+      return source;
+    }
+    FloatBuffer result = ByteBuffer
+        .allocateDirect(sourceVertices.length * components * MyGLUtils.FLOAT_SIZE)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+    for (int vertex : sourceVertices) {
+      for (int i = 0; i < components; i++) {
+        result.put(source.get(vertex * components + i));
+      }
+    }
+    result.position(0);
+    return result;
+  }
+
+  private boolean isIdentity() {
+    if (sourceVertices.length != sourceVertexCount) {
+      return false;
+    }
+    for (int i = 0; i < sourceVertices.length; i++) {
+      if (sourceVertices[i] != i) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addPiece(ArrayList<Submesh> pieces, Submesh submesh, int start, int end,
+      int baseVertex) {
+    if (end > start) {
+      pieces.add(new Submesh(submesh.materialId, submesh.color, start, end - start, baseVertex));
+    }
+  }
+}
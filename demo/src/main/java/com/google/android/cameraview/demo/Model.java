@@ -2,6 +2,7 @@ package com.google.android.cameraview.demo;
 
 import android.opengl.Matrix;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 /*
  * Copyright 2017 Dmitry Brant. All rights reserved.
@@ -31,6 +32,11 @@ public abstract class Model {
     protected float[] modelMatrix = new float[16];
     protected float[] mvMatrix = new float[16];
     protected float[] mvpMatrix = new float[16];
+    // Frustum of the current draw() call, in model coordinates.
+    protected final Frustum frustum = new Frustum();
+    @Nullable protected CullingStats cullingStats;
+    // GL state shared by everything drawn in the context of the model.
+    @NonNull protected GlStateCache glState = new GlStateCache();
 
     protected float maxX;
     protected float maxY;
@@ -84,6 +90,91 @@ public abstract class Model {
 
     abstract public void draw(float[] viewMatrix, float[] projectionMatrix, Light light);
 
+    /**
+     * Sets the counters that the next draw() calls add their issued and culled draw calls to, or
+     * null to not count them. Must be called on the GL thread.
+     */
+    public void setCullingStats(@Nullable CullingStats cullingStats) {
+        this.cullingStats = cullingStats;
+    }
+
+    /**
+     * Sets the GL state cache that init() and draw() change the GL state through. It must be the
+     * one shared by everything drawn in the same GL context. Must be called on the GL thread,
+     * before init().
+     */
+    public void setGlState(@NonNull GlStateCache glState) {
+        this.glState = glState;
+    }
+
+    /**
+     * Returns the number of levels of detail the model can be drawn with. Level 0 is the full
+     * model, and higher levels are coarser.
+     */
+    public int getLodCount() {
+        return 1;
+    }
+
+    /**
+     * Returns the geometric error of the given level of detail, in model coordinates (before the
+     * model matrix): roughly how far its surface is from that of the full model.
+     */
+    public float getLodError(int lod) {
+        return 0;
+    }
+
+    /** Returns the level of detail that the next draw() calls use. */
+    public int getLod() {
+        return 0;
+    }
+
+    /**
+     * Sets the level of detail that the next draw() calls use. Must be called on the GL thread.
+     * Levels the model doesn't have are clamped to the coarsest one.
+     */
+    public void setLod(int lod) {
+    }
+
+    /**
+     * Returns the closest triangle of the model hit by the given ray, in model coordinates (before
+     * the model matrix), or null if there is none or the model can't be picked (yet). Can be
+     * called from any thread.
+     *
+     * @param origin The origin of the ray (x, y, z).
+     * @param direction The direction of the ray (x, y, z).
+     */
+    @Nullable
+    public RaycastHit raycast(float[] origin, float[] direction) {
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes of geometry the model holds in memory, which may be released
+     * once it is on the GPU (see {@link ArrayModel#setGeometrySource}).
+     */
+    public long getCpuBytes() {
+        return 0;
+    }
+
+    /** Returns the number of bytes of the GPU buffers the model was uploaded to by init(). */
+    public long getGpuBytes() {
+        return 0;
+    }
+
+    /**
+     * Writes the bounding sphere of the model, in model coordinates, into {@code out}: the center
+     * (x, y, z) and the radius.
+     */
+    public void getBoundingSphere(float[] out) {
+        out[0] = (minX + maxX) / 2;
+        out[1] = (minY + maxY) / 2;
+        out[2] = (minZ + maxZ) / 2;
+        float dx = maxX - minX;
+        float dy = maxY - minY;
+        float dz = maxZ - minZ;
+        out[3] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+    }
+
     protected void adjustMaxMin(float x, float y, float z) {
         if (x > maxX) {
             maxX = x;
@@ -16,6 +16,7 @@ package com.google.android.cameraview.demo;
 
 import android.util.Log;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
@@ -32,6 +33,8 @@ public class MtlLibrary {
   public static class Material {
     // Name of the material.
     public String name;
+    // ID of the material in its library. IDs are dense, from 0 to getMaterialCount() - 1.
+    public int id;
     // For simplicity, we only handle diffuse color in this sample code.
     public float[] diffuseColor = { 1, 1, 1, 1 };
     public Material(String name) {
@@ -41,6 +44,8 @@ public class MtlLibrary {
 
   // Map from material name to Material.
   private HashMap<String, Material> materials = new HashMap<>();
+  // Materials, indexed by ID.
+  private ArrayList<Material> materialsById = new ArrayList<>();
 
   /** Creates a new (empty) material library. */
   public MtlLibrary() {}
@@ -59,19 +64,17 @@ public class MtlLibrary {
         if (verb.equals("newmtl")) {
           // Start of a new material.
           currentMaterial = new Material(args);
-          materials.put(currentMaterial.name, currentMaterial);
+          add(currentMaterial);
         } else if (verb.equals("Kd")) {
           // Set the diffuse color of the current material.
           if (currentMaterial == null) {
             throw new MtlParseException("Kd directive must come after newmtl", null);
           }
-          String[] parts = args.split(" +");
-          if (parts.length < 3) {
+          float[] color = { 0, 0, 0, 1 };
+          if (parseFloats(args, color, 3) < 3) {
             throw new MtlParseException("Kd directive had fewer than 3 components: " + args, null);
           }
-          currentMaterial.diffuseColor = new float[] {
-            Float.parseFloat(parts[0]), Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), 1
-          };
+          currentMaterial.diffuseColor = color;
         }
       }
     } catch (Exception ex) {
@@ -79,6 +82,40 @@ public class MtlLibrary {
     }
   }
 
+  // Parses up to maxCount space-separated floats from s into out, without splitting the string.
+  // Returns the number of floats parsed.
+  private static int parseFloats(String s, float[] out, int maxCount) {
+    int count = 0;
+    int i = 0;
+    int length = s.length();
+    while (count < maxCount) {
+      while (i < length && s.charAt(i) == ' ') {
+        i++;
+      }
+      if (i >= length) {
+        break;
+      }
+      int start = i;
+      while (i < length && s.charAt(i) != ' ') {
+        i++;
+      }
+      out[count++] = FastFloatParser.parseFloat(s, start, i);
+    }
+    return count;
+  }
+
+  // Adds the given material, replacing any material with the same name (and taking its ID).
+  private void add(Material material) {
+    Material previous = materials.put(material.name, material);
+    if (previous != null) {
+      material.id = previous.id;
+      materialsById.set(material.id, material);
+    } else {
+      material.id = materialsById.size();
+      materialsById.add(material);
+    }
+  }
+
   /** Returns the material with the given name. Throws an exception if not found. */
   public Material getMaterialByName(String name) {
     Material material = materials.get(name);
@@ -88,6 +125,25 @@ public class MtlLibrary {
     return material;
   }
 
+  /**
+   * Returns the ID of the material with the given name. Throws an exception if not found.
+   * Look up each material once and then refer to it by ID, rather than looking it up by name
+   * for each face.
+   */
+  public int getMaterialId(String name) {
+    return getMaterialByName(name).id;
+  }
+
+  /** Returns the material with the given ID. */
+  public Material getMaterial(int id) {
+    return materialsById.get(id);
+  }
+
+  /** Returns the number of materials in the library. */
+  public int getMaterialCount() {
+    return materialsById.size();
+  }
+
   public class MtlParseException extends Exception {
     public MtlParseException(String message, Exception cause) {
       super(message, cause);
@@ -27,6 +27,8 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
     }
 
    private Triangle mTriangle;
+    // GL state of the context, shared by everything drawn in it.
+    private final GlStateCache mGlState = new GlStateCache();
     // mMVPMatrix is an abbreviation for "Model View Projection Matrix"
     private final float[] mMVPMatrix = new float[16];
     private final float[] mProjectionMatrix = new float[16];
@@ -42,7 +44,9 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
 
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         // Set the background frame color
-        mTriangle = new Triangle();
+        mGlState.invalidate();
+        ProgramRegistry.getInstance().onContextCreated();
+        mTriangle = new Triangle(mGlState);
         gl.glDisable(GL10.GL_DITHER);
         gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT,
                 GL10.GL_FASTEST);
@@ -56,6 +60,7 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
     }
 
     public void onDrawFrame(GL10 gl) {
+        mGlState.resetCounters();
 
         float[] scratch = new float[16];
 
@@ -89,17 +94,4 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
         // in the onDrawFrame() method
         Matrix.frustumM(mProjectionMatrix, 0, -ratio, ratio, -1, 1, 3, 7);
     }
-
-    public static int loadShader(int type, String shaderCode){
-
-        // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
-        // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shader = GLES20.glCreateShader(type);
-
-        // add the source code to the shader and compile it
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
-
-        return shader;
-    }
 }
@@ -86,21 +86,24 @@ public class MyGLRenderer2 implements GLSurfaceView.Renderer {
     // The shader we use to draw the object.
     private MyShader myShader;
 
+    // GL state of the context, shared by everything drawn in it.
+    private final GlStateCache glState = new GlStateCache();
+
     // If true, we are ready to render the object. If false, the object isn't available yet.
     private boolean readyToRender = false;
 
-    // Handle of the VBO that stores the vertex positions of the object.
-    private int positionsVbo;
+    // Handle of the VBO that stores the interleaved vertices (positions and normals) of the object.
+    private int vbo;
+
+    // Ranges of the IBO to draw with each material.
+    private Submesh[] submeshes;
 
-    // Handle of the VBO that stores the color information for the object.
-    private int colorsVbo;
+    // Objects and groups of the object, as ranges of the submeshes.
+    private MeshGroup[] groups;
 
     // Handle of the IBO that stores the sequence of indices we use to draw the object.
     private int ibo;
 
-    // Number of indices present in the IBO.
-    private int indexCount;
-
     // Time (as given by System.currentTimeMillis) when the last frame was rendered.
     private long lastFrameTime;
 
@@ -155,12 +158,15 @@ public class MyGLRenderer2 implements GLSurfaceView.Renderer {
     @Override
     public void onSurfaceCreated(GL10 unused, EGLConfig config) {
 //        GLES20.glClearColor(0.0f, 0.15f, 0.15f, 1.0f);
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-        myShader = new MyShader();
+        glState.invalidate();
+        glState.setDepthTest(true);
+        ProgramRegistry.getInstance().onContextCreated();
+        myShader = new MyShader(glState);
     }
 
     @Override
     public void onDrawFrame(GL10 unused) {
+        glState.resetCounters();
 
         // Draw background color.
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
@@ -193,14 +199,18 @@ public class MyGLRenderer2 implements GLSurfaceView.Renderer {
 
         if (readyToRender) {
             // We're ready to render, so just render using our existing VBOs and IBO.
-            myShader.render(mvpMatrix, indexCount, ibo, positionsVbo, colorsVbo);
+            myShader.render(mvpMatrix, groups, submeshes, ibo, vbo);
         } else if (obj != null) {
             // The object is ready, but we haven't consumed it yet. We need to create the VBOs and IBO
             // to render the object.
-            indexCount = obj.indexCount;
+            submeshes = obj.submeshes;
+            groups = obj.groups;
             ibo = MyGLUtils.createIbo(obj.indices);
-            positionsVbo = MyGLUtils.createVbo(obj.positions);
-            colorsVbo = MyGLUtils.createVbo(obj.colors);
+            vbo = MyGLUtils.createVbo(obj.vertices);
+            glState.invalidateBufferBindings();
+            // The VBO and IBO now hold the geometry, so the object doesn't need its own copy.
+            obj.vertices = null;
+            obj.indices = null;
             // Now we're ready to render the object.
             readyToRender = true;
             Log.d(TAG, "VBOs/IBO created. Now ready to render object.");
@@ -222,6 +232,13 @@ public class MyGLRenderer2 implements GLSurfaceView.Renderer {
         // the GL thread will notice it on the next frame.
         objectToRender = rawObject;
         Log.d(TAG, "Received raw object to render.");
+        if (rawObject.unweldedVertexCount > 0) {
+            Log.d(TAG, "Welded " + rawObject.unweldedVertexCount + " face vertices into "
+                    + rawObject.vertexCount + " vertices.");
+        }
+        if (rawObject.vertexCacheResult != null) {
+            Log.d(TAG, rawObject.vertexCacheResult.toString());
+        }
     }
 
     public void SetPositionMatrix()
@@ -3,7 +3,9 @@ package com.google.android.cameraview.demo;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.Log;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -24,6 +26,7 @@ import javax.microedition.khronos.opengles.GL10;
  * limitations under the License.
  */
 public class MyGLRenderer3 implements GLSurfaceView.Renderer {
+    private static final String TAG = "MyGLRenderer3";
     private static final float MODEL_BOUND_SIZE = 50f;
     private static final float Z_NEAR = 2f;
     private static final float Z_FAR = MODEL_BOUND_SIZE * 10;
@@ -33,6 +36,11 @@ public class MyGLRenderer3 implements GLSurfaceView.Renderer {
 
     private final float[] projectionMatrix = new float[16];
     private final float[] viewMatrix = new float[16];
+    private final LodSelector lodSelector = new LodSelector();
+    private final CullingStats cullingStats = new CullingStats();
+    private final GlStateCache glState = new GlStateCache();
+    private int viewportWidth;
+    private int viewportHeight;
 
     private float rotateAngleX;
     private float rotateAngleY;
@@ -44,6 +52,24 @@ public class MyGLRenderer3 implements GLSurfaceView.Renderer {
         this.model = model;
     }
 
+    /**
+     * Returns the draw calls and triangles of the last frame, issued and culled. Only valid on the
+     * GL thread.
+     */
+    @NonNull
+    public CullingStats getCullingStats() {
+        return cullingStats;
+    }
+
+    /**
+     * Returns the GL state cache of the context, whose counters are those of the last frame. Only
+     * valid on the GL thread.
+     */
+    @NonNull
+    public GlStateCache getGlState() {
+        return glState;
+    }
+
     public void translate(float dx, float dy, float dz) {
         final float translateScaleFactor = MODEL_BOUND_SIZE / 200f;
         translateX += dx * translateScaleFactor;
@@ -61,6 +87,46 @@ public class MyGLRenderer3 implements GLSurfaceView.Renderer {
         updateViewMatrix();
     }
 
+    /**
+     * Returns the triangle of the model under the given point of the view, in pixels, or null if
+     * there is none (or the model can't be picked yet).
+     */
+    @Nullable
+    public RaycastHit pick(float x, float y) {
+        if (model == null || viewportWidth == 0 || viewportHeight == 0) {
+            return null;
+        }
+        // Cast a ray from the near plane to the far plane, in model coordinates.
+        float[] modelViewMatrix = new float[16];
+        float[] modelViewProjectionMatrix = new float[16];
+        float[] inverseMatrix = new float[16];
+        Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, model.getModelMatrix(), 0);
+        Matrix.multiplyMM(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelViewMatrix, 0);
+        if (!Matrix.invertM(inverseMatrix, 0, modelViewProjectionMatrix, 0)) {
+            return null;
+        }
+        float ndcX = 2 * x / viewportWidth - 1;
+        float ndcY = 1 - 2 * y / viewportHeight;
+        float[] near = new float[4];
+        float[] far = new float[4];
+        Matrix.multiplyMV(near, 0, inverseMatrix, 0, new float[] {ndcX, ndcY, -1, 1}, 0);
+        Matrix.multiplyMV(far, 0, inverseMatrix, 0, new float[] {ndcX, ndcY, 1, 1}, 0);
+        float[] origin = new float[3];
+        float[] direction = new float[3];
+        for (int i = 0; i < 3; i++) {
+            origin[i] = near[i] / near[3];
+            direction[i] = far[i] / far[3] - origin[i];
+        }
+        float length = Matrix.length(direction[0], direction[1], direction[2]);
+        if (length == 0) {
+            return null;
+        }
+        for (int i = 0; i < 3; i++) {
+            direction[i] /= length;
+        }
+        return model.raycast(origin, direction);
+    }
+
     private void updateViewMatrix() {
         Matrix.setLookAtM(viewMatrix, 0, 0, 0, translateZ, 0f, 0f, 0f, 0f, 1.0f, 0.0f);
         Matrix.translateM(viewMatrix, 0, -translateX, -translateY, 0f);
@@ -72,14 +138,22 @@ public class MyGLRenderer3 implements GLSurfaceView.Renderer {
     public void onDrawFrame(GL10 unused) {
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
+        cullingStats.reset();
+        glState.resetCounters();
         if (model != null) {
+            lodSelector.update(model, viewMatrix, projectionMatrix, viewportHeight);
             model.draw(viewMatrix, projectionMatrix, light);
         }
+        if (Log.isLoggable(TAG, Log.VERBOSE)) {
+            Log.v(TAG, cullingStats + "; " + glState);
+        }
     }
 
     @Override
     public void onSurfaceChanged(GL10 unused, int width, int height) {
         GLES20.glViewport(0, 0, width, height);
+        viewportWidth = width;
+        viewportHeight = height;
         float ratio = (float) width / height;
         Matrix.frustumM(projectionMatrix, 0, -ratio, ratio, -1, 1, Z_NEAR, Z_FAR);
 
@@ -106,11 +180,18 @@ public class MyGLRenderer3 implements GLSurfaceView.Renderer {
         GLES20.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT,
                 GL10.GL_FASTEST);
         GLES20.glClearColor(0,0,0,0);
-        GLES20.glEnable(GLES20.GL_CULL_FACE);
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        glState.invalidate();
+        glState.setCullFace(true);
+        glState.setDepthTest(true);
+        MyGLUtils.loadExtensions();
+        ProgramRegistry.getInstance().onContextCreated();
 
         if (model != null) {
+            model.setGlState(glState);
             model.init(MODEL_BOUND_SIZE);
+            model.setCullingStats(cullingStats);
+            Log.d(TAG, "Model uploaded: " + model.getGpuBytes() + " bytes on the GPU, "
+                    + model.getCpuBytes() + " bytes in memory.");
         }
     }
 }
@@ -7,6 +7,7 @@ import android.opengl.GLSurfaceView;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.MotionEvent;
+import android.view.ViewConfiguration;
 
 
 /*
@@ -29,10 +30,20 @@ public class MyGLSurfaceView3 extends GLSurfaceView {
     private static final int TOUCH_ROTATE = 1;
     private static final int TOUCH_ZOOM = 2;
 
+    /** Listener for taps on the model. */
+    public interface OnModelTapListener {
+        /** Called with the triangle of the model that was tapped, or null if none was. */
+        void onModelTap(@Nullable RaycastHit hit);
+    }
+
     @NonNull private MyGLRenderer3 renderer;
+    @Nullable private OnModelTapListener onModelTapListener;
+    private final float touchSlop;
 
     private float previousX;
     private float previousY;
+    private float downX;
+    private float downY;
 
     private PointF pinchStartPoint = new PointF();
     private float pinchStartDistance = 0.0f;
@@ -47,6 +58,11 @@ public class MyGLSurfaceView3 extends GLSurfaceView {
         renderer = new MyGLRenderer3(model);
         setRenderer(renderer);
         setRenderMode(RENDERMODE_WHEN_DIRTY);
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    public void setOnModelTapListener(@Nullable OnModelTapListener listener) {
+        onModelTapListener = listener;
     }
 
     @Override
@@ -55,6 +71,8 @@ public class MyGLSurfaceView3 extends GLSurfaceView {
             case MotionEvent.ACTION_DOWN:
                 previousX = event.getX();
                 previousY = event.getY();
+                downX = previousX;
+                downY = previousY;
                 break;
 
             case MotionEvent.ACTION_MOVE:
@@ -95,6 +113,11 @@ public class MyGLSurfaceView3 extends GLSurfaceView {
                 break;
 
             case MotionEvent.ACTION_UP:
+                // A touch that didn't pinch or move further than the slop is a tap.
+                if (touchMode != TOUCH_ZOOM && onModelTapListener != null
+                        && Math.hypot(event.getX() - downX, event.getY() - downY) < touchSlop) {
+                    onModelTapListener.onModelTap(renderer.pick(event.getX(), event.getY()));
+                }
                 pinchStartPoint.x = 0.0f;
                 pinchStartPoint.y = 0.0f;
                 touchMode = TOUCH_NONE;
@@ -17,35 +17,44 @@ package com.google.android.cameraview.demo;
 import android.opengl.GLES20;
 import android.util.Log;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
 public class MyGLUtils {
   private static final String TAG = "PolySample";
   public static final int FLOAT_SIZE = 4;  // sizeof(float) is 4 bytes.
   public static final int SHORT_SIZE = 2;  // sizeof(short) is 2 bytes.
+  public static final int INT_SIZE = 4;  // sizeof(int) is 4 bytes.
 
   public static final int COORDS_PER_VERTEX = 3;
+  // Vertices are interleaved: position (x, y, z) then normal (x, y, z).
+  public static final int FLOATS_PER_VERTEX = 2 * COORDS_PER_VERTEX;
+  public static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * FLOAT_SIZE;
+  public static final int NORMAL_OFFSET = COORDS_PER_VERTEX * FLOAT_SIZE;
   public static final int NUM_COLOR_COMPONENTS = 4; // r, g, b, a
 
-  public static int loadShader(int type, String shaderCode) {
-    // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
-    // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-    int shader = GLES20.glCreateShader(type);
+  // Extension that allows GL_UNSIGNED_INT indices in glDrawElements.
+  public static final String EXTENSION_ELEMENT_INDEX_UINT = "GL_OES_element_index_uint";
 
-    // add the source code to the shader and compile it
-    GLES20.glShaderSource(shader, shaderCode);
-    GLES20.glCompileShader(shader);
-    MyGLUtils.checkGlError("compile shader");
-    int[] status = new int[1];
-    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
-    if (status[0] != GLES20.GL_TRUE) {
-      Log.e(TAG, "Shader compile error!");
-      Log.e(TAG, GLES20.glGetShaderInfoLog(shader));
-    }
-    return shader;
+  // Extensions of the last GL context passed to loadExtensions(), surrounded by spaces, or null.
+  private static volatile String extensions;
+
+  // Reads the extensions of the current GL context. Must be called on the GL thread, typically
+  // from onSurfaceCreated(), so that isExtensionSupported() can then be called from any thread.
+  public static void loadExtensions() {
+    String list = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+    extensions = " " + (list != null ? list : "") + " ";
+  }
+
+  // Returns whether the given extension is supported by the GL context that was last passed to
+  // loadExtensions(), or false if there was none. Can be called on any thread.
+  public static boolean isExtensionSupported(String name) {
+    String list = extensions;
+    return list != null && list.contains(" " + name + " ");
   }
 
   public static void checkGlError(String glOperation) {
@@ -57,24 +66,30 @@ public class MyGLUtils {
   }
 
   public static int createVbo(FloatBuffer data) {
-    int[] vbos = new int[1];
-    data.position(0);
-    GLES20.glGenBuffers(1, vbos, 0);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[0]);
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, data.capacity() * MyGLUtils.FLOAT_SIZE, data,
-        GLES20.GL_STATIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-    return vbos[0];
+    return createBuffer(GLES20.GL_ARRAY_BUFFER, data, data.capacity() * FLOAT_SIZE);
+  }
+
+  public static int createVbo(ByteBuffer data) {
+    return createBuffer(GLES20.GL_ARRAY_BUFFER, data, data.capacity());
   }
 
   public static int createIbo(ShortBuffer data) {
-    int[] ibos = new int[1];
+    return createBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, data, data.capacity() * SHORT_SIZE);
+  }
+
+  public static int createIbo(IntBuffer data) {
+    return createBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, data, data.capacity() * INT_SIZE);
+  }
+
+  // Uploads the whole of data (size bytes) to a new buffer object bound to target, and returns
+  // its name. Leaves nothing bound to target.
+  private static int createBuffer(int target, Buffer data, int size) {
+    int[] buffers = new int[1];
     data.position(0);
-    GLES20.glGenBuffers(1, ibos, 0);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibos[0]);
-    GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, data.capacity() * MyGLUtils.SHORT_SIZE,
-        data, GLES20.GL_STATIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-    return ibos[0];
+    GLES20.glGenBuffers(1, buffers, 0);
+    GLES20.glBindBuffer(target, buffers[0]);
+    GLES20.glBufferData(target, size, data, GLES20.GL_STATIC_DRAW);
+    GLES20.glBindBuffer(target, 0);
+    return buffers[0];
   }
 }
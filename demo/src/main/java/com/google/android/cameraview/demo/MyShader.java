@@ -20,7 +20,8 @@ import android.util.Log;
 /**
  * Our simple unlit shader.
  *
- * This shader renders geometry and colors as given by an IBO and VBOs.
+ * This shader renders geometry as given by an IBO and a VBO of interleaved vertices, drawing each
+ * submesh with the color of its material.
  */
 public class MyShader {
   private static final String TAG = "PolySample";
@@ -31,12 +32,7 @@ public class MyShader {
       "uniform mat4 uMVPMatrix;\n" +
       // Position attribute (position of the vertex in world space).
       "attribute vec4 aPosition;\n" +
-      // Vertex color attribute.
-      "attribute vec4 aColor;\n" +
-      // Vertex color varying (used to pass the vertex color to the fragment shader).
-      "varying vec4 vColor;\n" +
       "void main() {\n" +
-      "  vColor = aColor;\n" +
          // aPosition is in world space. Multiplying it by the MVP matrix will convert it
          // to a screen position, which is what we should write to gl_Position.
       "  gl_Position = uMVPMatrix * aPosition;\n" +
@@ -44,12 +40,12 @@ public class MyShader {
 
   private static final String FRAGMENT_SHADER_SOURCE =
       "precision mediump float;\n" +
-      // Color (received from vertex shader).
-      "varying vec4 vColor;\n" +
+      // Color of the material being drawn.
+      "uniform vec4 uColor;\n" +
       "void main() {\n" +
          // Since this is a simple unlit shader, we just set the fragment color to the color
-         // we got from the vertex shader.
-      "  gl_FragColor = vColor;\n" +
+         // of the material.
+      "  gl_FragColor = uColor;\n" +
       "}\n";
 
   // Handle to the program (vertex shader + fragment shader).
@@ -58,58 +54,70 @@ public class MyShader {
   private int mvpMatrixHandle;
   // Handle to the aPosition attribute, which we use to feed positions into the shader.
   private int positionHandle;
-  // Handle to the aColor attribute, which we use to feed vertex colors into the shader.
+  // Handle to the uColor uniform, which we use to feed the material color into the shader.
   private int colorHandle;
+  // GL state of the context, which the shader changes only where needed.
+  private final GlStateCache glState;
 
-  /** Creates the shader. This will compile and link the shader. */
-  public MyShader() {
-    // Compile and link the shader program.
-    int vertexShader = MyGLUtils.loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_SOURCE);
-    int fragmentShader = MyGLUtils.loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_SOURCE);
-    program = GLES20.glCreateProgram();
-    GLES20.glAttachShader(program, vertexShader);
-    GLES20.glAttachShader(program, fragmentShader);
-    GLES20.glLinkProgram(program);
+  /**
+   * Creates the shader. This will compile and link the shader.
+   *
+   * @param glState The GL state cache of the context, through which the shader changes the state.
+   */
+  public MyShader(GlStateCache glState) {
+    this.glState = glState;
+    // Get the shader program, compiled and linked once per GL context (or loaded from its saved
+    // binary).
+    ShaderProgram shaderProgram = ProgramRegistry.getInstance().getProgram(VERTEX_SHADER_SOURCE,
+        FRAGMENT_SHADER_SOURCE, null, null);
+    program = shaderProgram.getProgram();
     MyGLUtils.checkGlError("link program");
 
-    // Get the handles to our shader parameters.
-    GLES20.glUseProgram(program);
-    positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
-    colorHandle = GLES20.glGetAttribLocation(program, "aColor");
-    mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-    GLES20.glUseProgram(0);
+    // Get the handles to our shader parameters, from the locations enumerated after linking.
+    positionHandle = shaderProgram.getAttribLocation("aPosition");
+    colorHandle = shaderProgram.getUniformLocation("uColor");
+    mvpMatrixHandle = shaderProgram.getUniformLocation("uMVPMatrix");
     MyGLUtils.checkGlError("get handles");
   }
 
-  public void render(float[] mvpMatrix, int numIndices, int ibo, int positionVbo, int colorsVbo) {
-    GLES20.glUseProgram(program);
+  /**
+   * Renders the given submeshes of the geometry in the IBO and VBO, one draw call per submesh.
+   * Only the submeshes of the visible groups are drawn.
+   */
+  public void render(float[] mvpMatrix, MeshGroup[] groups, Submesh[] submeshes, int ibo,
+      int vbo) {
+    glState.useProgram(program);
 
-    // Set up to feed positions to shader from positions VBO.
-    GLES20.glEnableVertexAttribArray(positionHandle);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, positionVbo);
+    // Set up to feed positions to shader from the VBO, in which each position is followed by the
+    // rest of its vertex.
+    glState.setEnabledAttribs(GlStateCache.attribBit(positionHandle));
+    glState.bindArrayBuffer(vbo);
     GLES20.glVertexAttribPointer(positionHandle, MyGLUtils.COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
-        /* stride */ 0, /* offset in positionVbo */ 0);
-
-    // Set up to feed colors to shader from color VBO.
-    GLES20.glEnableVertexAttribArray(colorHandle);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, colorsVbo);
-    GLES20.glVertexAttribPointer(colorHandle, MyGLUtils.NUM_COLOR_COMPONENTS, GLES20.GL_FLOAT, false,
-        /* stride */ 0, /* offset in colorVbo */ 0);
+        MyGLUtils.VERTEX_STRIDE, /* offset in vbo */ 0);
+    int boundBaseVertex = 0;
 
     // Feed MVP matrix uniform to shader.
     GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
 
-    // Bind IBO and render the triangles.
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
-    GLES20.glDrawElements(GLES20.GL_TRIANGLES, numIndices, GLES20.GL_UNSIGNED_SHORT,
-        /* offset in ibo */ 0);
+    // Bind IBO and render the triangles of each material, with the material's color.
+    glState.bindElementArrayBuffer(ibo);
+    for (MeshGroup group : groups) {
+      if (!group.isVisible()) continue;
+      for (int i = group.firstSubmesh; i < group.firstSubmesh + group.submeshCount; i++) {
+        Submesh submesh = submeshes[i];
+        if (submesh.baseVertex != boundBaseVertex) {
+          // The indices of the submesh are relative to the first vertex of its chunk.
+          GLES20.glVertexAttribPointer(positionHandle, MyGLUtils.COORDS_PER_VERTEX,
+              GLES20.GL_FLOAT, false, MyGLUtils.VERTEX_STRIDE,
+              /* offset in vbo */ submesh.baseVertex * MyGLUtils.VERTEX_STRIDE);
+          boundBaseVertex = submesh.baseVertex;
+        }
+        GLES20.glUniform4fv(colorHandle, 1, submesh.color, 0);
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, submesh.indexCount, GLES20.GL_UNSIGNED_SHORT,
+            /* offset in ibo */ submesh.firstIndex * MyGLUtils.SHORT_SIZE);
+      }
+    }
     MyGLUtils.checkGlError("render");
-
-    // Clean up.
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-    GLES20.glDisableVertexAttribArray(positionHandle);
-    GLES20.glDisableVertexAttribArray(colorHandle);
-    GLES20.glUseProgram(0);
+    // The state is left as is: the cache skips setting it again on the next frame.
   }
 }
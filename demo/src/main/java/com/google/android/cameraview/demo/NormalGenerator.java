@@ -0,0 +1,255 @@
+package com.google.android.cameraview.demo;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes smooth normals for the faces of an {@link ObjGeometry}, for files that don't have
+ * their own ("vn" records).
+ *
+ * The normal of each face corner is the normalized sum of the normals of the faces around its
+ * position (by value, so that the faces on either side of a seam where the file duplicates the
+ * position are still smoothed together), each weighted by the area of its face, so that small faces don't skew the result.
+ * Only the faces whose normal is within the crease angle of the corner's own face are summed,
+ * so that hard edges stay hard: the corners of a cube get one normal per side, while a finely
+ * tessellated sphere is shaded smoothly. Corners on the same side of a crease get exactly the
+ * same normal, so they can still be welded into a single vertex.
+ *
+ * The face normals and then the corner normals are computed in parallel over ranges of faces,
+ * when an executor is given and the geometry is large enough.
+ */
+public class NormalGenerator {
+  /** Default crease angle, in degrees. */
+  public static final float DEFAULT_CREASE_ANGLE = 60;
+
+  // Faces below this count are not worth splitting into tasks.
+  private static final int MIN_FACES_PER_TASK = 8192;
+  private static final int TASKS_PER_THREAD = 4;
+
+  private final ObjGeometry geometry;
+  private final float creaseCos;
+  // Index of the first corner of each face, followed by the total number of corners.
+  private final int[] firstCorners;
+  // Area-weighted normal of each face (3 floats per face; its length is twice the area).
+  private final float[] faceNormals;
+  // Length of each face normal.
+  private final float[] faceNormalLengths;
+  // Position of each vertex of the geometry, among its distinct positions.
+  private int[] vertexPositions;
+  // The faces around each position: those of position p are
+  // positionFaces[positionFaceStarts[p]] to positionFaces[positionFaceStarts[p + 1] - 1].
+  private int[] positionFaceStarts;
+  private int[] positionFaces;
+  // Normal of each face corner (3 floats per corner, normalized).
+  private final float[] cornerNormals;
+
+  private NormalGenerator(ObjGeometry geometry, float creaseAngle) {
+    this.geometry = geometry;
+    creaseCos = (float) Math.cos(Math.toRadians(creaseAngle));
+    int faceCount = geometry.getFaceCount();
+    firstCorners = new int[faceCount + 1];
+    for (int face = 0; face < faceCount; face++) {
+      firstCorners[face + 1] = firstCorners[face] + geometry.getFaceVertexCount(face);
+    }
+    faceNormals = new float[faceCount * 3];
+    faceNormalLengths = new float[faceCount];
+    cornerNormals = new float[firstCorners[faceCount] * 3];
+  }
+
+  /**
+   * Computes the normals of all the faces of the given geometry.
+   *
+   * @param geometry The geometry.
+   * @param creaseAngle The angle between two faces, in degrees, above which the edge between them
+   *     is kept sharp.
+   * @param executor The executor to run on, or null to run on the calling thread only.
+   */
+  public static NormalGenerator generate(ObjGeometry geometry, float creaseAngle,
+      @Nullable ExecutorService executor) {
+    final NormalGenerator generator = new NormalGenerator(geometry, creaseAngle);
+    runInRanges(geometry.getFaceCount(), executor, new RangeTask() {
+      @Override
+      public void run(int firstFace, int endFace) {
+        generator.computeFaceNormals(firstFace, endFace);
+      }
+    });
+    generator.computePositionFaces();
+    runInRanges(geometry.getFaceCount(), executor, new RangeTask() {
+      @Override
+      public void run(int firstFace, int endFace) {
+        generator.computeCornerNormals(firstFace, endFace);
+      }
+    });
+    return generator;
+  }
+
+  /** Returns whether any face of the given geometry has a corner without a normal. */
+  public static boolean isNeeded(ObjGeometry geometry) {
+    for (int face = 0; face < geometry.getFaceCount(); face++) {
+      for (int j = 0; j < geometry.getFaceVertexCount(face); j++) {
+        if (geometry.getFaceNormalIndex(face, j) == ObjGeometry.MISSING) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Writes the normal of the given corner of the given face into {@code out} (3 floats). */
+  public void getNormal(int face, int vertexInFace, float[] out) {
+    int corner = (firstCorners[face] + vertexInFace) * 3;
+    out[0] = cornerNormals[corner];
+    out[1] = cornerNormals[corner + 1];
+    out[2] = cornerNormals[corner + 2];
+  }
+
+  // Newell's method, which also works for polygons that are not quite planar. The result is the
+  // normal scaled by twice the area of the face.
+  private void computeFaceNormals(int firstFace, int endFace) {
+    float[] current = new float[3];
+    float[] next = new float[3];
+    for (int face = firstFace; face < endFace; face++) {
+      int vertexCount = geometry.getFaceVertexCount(face);
+      if (vertexCount < 3) {
+        continue;
+      }
+      float x = 0;
+      float y = 0;
+      float z = 0;
+      geometry.getVertex(geometry.getFaceVertexIndex(face, vertexCount - 1), current);
+      for (int j = 0; j < vertexCount; j++) {
+        geometry.getVertex(geometry.getFaceVertexIndex(face, j), next);
+        x += (current[1] - next[1]) * (current[2] + next[2]);
+        y += (current[2] - next[2]) * (current[0] + next[0]);
+        z += (current[0] - next[0]) * (current[1] + next[1]);
+        float[] swap = current;
+        current = next;
+        next = swap;
+      }
+      faceNormals[face * 3] = x;
+      faceNormals[face * 3 + 1] = y;
+      faceNormals[face * 3 + 2] = z;
+      faceNormalLengths[face] = (float) Math.sqrt(x * x + y * y + z * z);
+    }
+  }
+
+  // Groups the vertices by position value, then builds the list of faces around each position,
+  // with a counting sort of the corners.
+  private void computePositionFaces() {
+    int vertexCount = geometry.getVertexCount();
+    float[] positions = new float[vertexCount * 3];
+    float[] vertex = new float[3];
+    for (int v = 0; v < vertexCount; v++) {
+      geometry.getVertex(v, vertex);
+      System.arraycopy(vertex, 0, positions, v * 3, 3);
+    }
+    PositionGroups groups = PositionGroups.find(positions, vertexCount);
+    vertexPositions = groups.vertexPositions;
+    int positionCount = groups.positionCount;
+
+    int faceCount = geometry.getFaceCount();
+    positionFaceStarts = new int[positionCount + 1];
+    for (int face = 0; face < faceCount; face++) {
+      for (int j = 0; j < geometry.getFaceVertexCount(face); j++) {
+        positionFaceStarts[getPosition(face, j) + 1]++;
+      }
+    }
+    for (int p = 0; p < positionCount; p++) {
+      positionFaceStarts[p + 1] += positionFaceStarts[p];
+    }
+    int[] next = new int[positionCount];
+    System.arraycopy(positionFaceStarts, 0, next, 0, next.length);
+    positionFaces = new int[firstCorners[faceCount]];
+    for (int face = 0; face < faceCount; face++) {
+      for (int j = 0; j < geometry.getFaceVertexCount(face); j++) {
+        positionFaces[next[getPosition(face, j)]++] = face;
+      }
+    }
+  }
+
+  // Returns the position of the given corner of the given face.
+  private int getPosition(int face, int vertexInFace) {
+    return vertexPositions[geometry.getFaceVertexIndex(face, vertexInFace)];
+  }
+
+  private void computeCornerNormals(int firstFace, int endFace) {
+    for (int face = firstFace; face < endFace; face++) {
+      float fx = faceNormals[face * 3];
+      float fy = faceNormals[face * 3 + 1];
+      float fz = faceNormals[face * 3 + 2];
+      float minDot = creaseCos * faceNormalLengths[face];
+      for (int j = 0; j < geometry.getFaceVertexCount(face); j++) {
+        int position = getPosition(face, j);
+        float x = 0;
+        float y = 0;
+        float z = 0;
+        // The faces are always summed in the same order, so that corners on the same side of a
+        // crease get bit-identical normals.
+        for (int i = positionFaceStarts[position]; i < positionFaceStarts[position + 1]; i++) {
+          int other = positionFaces[i];
+          float ox = faceNormals[other * 3];
+          float oy = faceNormals[other * 3 + 1];
+          float oz = faceNormals[other * 3 + 2];
+          if (other == face || fx * ox + fy * oy + fz * oz >= minDot * faceNormalLengths[other]) {
+            x += ox;
+            y += oy;
+            z += oz;
+          }
+        }
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        int corner = (firstCorners[face] + j) * 3;
+        if (length > 0) {
+          cornerNormals[corner] = x / length;
+          cornerNormals[corner + 1] = y / length;
+          cornerNormals[corner + 2] = z / length;
+        } else {
+          // Degenerate face, with no area.
+          cornerNormals[corner + 2] = 1;
+        }
+      }
+    }
+  }
+
+  private interface RangeTask {
+    void run(int first, int end);
+  }
+
+  // Runs the task over [0, count), in ranges on the executor if there is enough work.
+  private static void runInRanges(int count, @Nullable ExecutorService executor,
+      final RangeTask task) {
+    int taskCount = Math.min(Runtime.getRuntime().availableProcessors() * TASKS_PER_THREAD,
+        count / MIN_FACES_PER_TASK);
+    if (executor == null || taskCount <= 1) {
+      task.run(0, count);
+      return;
+    }
+    List<Callable<Void>> tasks = new ArrayList<>(taskCount);
+    for (int i = 0; i < taskCount; i++) {
+      final int first = (int) ((long) count * i / taskCount);
+      final int end = (int) ((long) count * (i + 1) / taskCount);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          task.run(first, end);
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException("Failed to generate normals.", ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while generating normals.", ex);
+    }
+  }
+}
@@ -14,43 +14,38 @@
 
 package com.google.android.cameraview.demo;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Representation of an object's geometry, extracted from an OBJ file.
+ *
+ * The geometry is stored as flat arrays of primitives (positions, normals, texture coordinates,
+ * face vertex indices, face offsets, material and group IDs) rather than as an object per element,
+ * so that very large models don't take several objects per face. Use the accessors to read it.
+ *
+ * Each face has a material (from "usemtl" records) and a group (from "o" and "g" records, which
+ * are treated alike: each one starts a group named by the rest of the line). Faces that come
+ * before the first record of either kind have none, which is reported as {@link #MISSING}.
  */
 public class ObjGeometry {
   /** Symbolic constant used in place of an index to indicate a missing component. */
   public static final int MISSING = -1;
 
-  /** Represents a face of the object. */
-  public static class Face {
-    /** Name of the material with which the face should be drawn. */
-    public String materialName;
-    /** Vertices that make up the face. */
-    public FaceVertex[] faceVertices;
-    /** Creates a face. */
-    public Face(FaceVertex[] faceVertices, String materialName) {
-      this.faceVertices = faceVertices;
-      this.materialName = materialName;
-    }
-  }
-
-  /** Represents each of the vertices in a face of the object. */
-  public static class FaceVertex {
-    /** Index of the vertex. For use with {@link ObjGeometry#getVertex(int)}. */
-    public int vertexIndex;
-    /** Index of the texture coordinates. Use with {@link ObjGeometry#getTexCoord(int)}. */
-    public int texCoordIndex;
-    /** Index of the normal. Use with {@link ObjGeometry#getNormal(int)}. */
-    public int normalIndex;
-    /** Creates a FaceVertex.*/
-    public FaceVertex(int vertexIndex, int texCoordIndex, int normalIndex) {
-      this.vertexIndex = vertexIndex;
-      this.texCoordIndex = texCoordIndex;
-      this.normalIndex = normalIndex;
-    }
-  }
+  // Files are never split into chunks smaller than this when parsing in parallel.
+  private static final int MIN_CHUNK_SIZE = 256 * 1024;
+  // Number of chunks per available processor when parsing in parallel. Using more chunks than
+  // threads evens out the load when some parts of the file are slower to parse than others.
+  private static final int CHUNKS_PER_THREAD = 2;
 
   /** Represents a vector with 3 float components (x, y and z). Can be position or direction. */
   public static class Vec3 {
@@ -85,19 +80,26 @@ public class ObjGeometry {
     }
   }
 
-  // Object's vertices, as laid out in the OBJ file.
-  private ArrayList<Vec3> vertices = new ArrayList<>();
-  // Object's normals, as laid out in the OBJ file.
-  private ArrayList<Vec3> normals = new ArrayList<>();
-  // Object's texture coordinates, as laid out in the OBJ file.
-  private ArrayList<TexCoords> texCoords = new ArrayList<>();
-  // Object's faces, as laid out in the OBJ file.
-  private ArrayList<Face> faces = new ArrayList<>();
-
-  // Minimum coordinates of the object's axis-aligned bounding box.
-  private Vec3 boundsMin = null;
-  // Maximum coordinates of the object's axis-aligned bounding box.
-  private Vec3 boundsMax = null;
+  // Object's vertices, as laid out in the OBJ file (3 floats per vertex: x, y, z).
+  private FloatArrayList vertices = new FloatArrayList();
+  // Object's normals, as laid out in the OBJ file (3 floats per normal: x, y, z).
+  private FloatArrayList normals = new FloatArrayList();
+  // Object's texture coordinates, as laid out in the OBJ file (2 floats per entry: u, v).
+  private FloatArrayList texCoords = new FloatArrayList();
+  // The vertices of all the faces, one face after the other. Each face vertex is stored as 3
+  // ints: the 0-based indices of its position, texture coordinates and normal (or MISSING).
+  private IntArrayList faceVertices = new IntArrayList();
+  // Index (in face vertices, not ints) of the first vertex of each face in faceVertices.
+  private IntArrayList faceStarts = new IntArrayList();
+  // Material of each face, and names of the materials in order of first use.
+  private final FaceLabels materials = new FaceLabels();
+  // Group ("o" or "g") of each face, and names of the groups in order of first use.
+  private final FaceLabels groups = new FaceLabels();
+
+  // Minimum and maximum coordinates of the object's axis-aligned bounding box (x, y, z), or null
+  // if the object has no vertices.
+  private float[] boundsMin = null;
+  private float[] boundsMax = null;
 
   /**
    * Parses the given OBJ file.
@@ -106,161 +108,672 @@ public class ObjGeometry {
    * @throws ObjParseException if there is an error parsing the file.
    */
   public static ObjGeometry parse(String objFile) throws ObjParseException {
-    ObjGeometry result = new ObjGeometry();
-    String currentMaterialName = null;
-    int lineNo = 0;
-    try {
-      String[] lines = objFile.split("\n");
-      for (lineNo = 1; lineNo <= lines.length; lineNo++) {
-        String line = lines[lineNo - 1].trim();
-        int indexOfSpace = line.indexOf(' ');
-        String verb = indexOfSpace >= 0 ? line.substring(0, indexOfSpace) : line;
-        String args = indexOfSpace >= 0 ? line.substring(indexOfSpace).trim() : "";
-        if (verb.equals("v")) {
-          // Vertex.
-          Vec3 vertex = parseVec3(args);
-          result.vertices.add(vertex);
-          result.encapsulateInBounds(vertex);
-        } else if (verb.equals("vt")) {
-          // Texture coordinates.
-          result.texCoords.add(parseTexCoords(args));
-        } else if (verb.equals("vn")) {
-          // Vertex normal.
-          result.normals.add(parseVec3(args));
-        } else if (verb.equals("f")) {
-          // Face.
-          result.faces.add(parseFace(args, currentMaterialName));
-        } else if (verb.equals("usemtl")) {
-          // Use given material.
-          currentMaterialName = args;
+    return parse(objFile.getBytes(Charset.forName("UTF-8")));
+  }
+
+  /**
+   * Parses the given OBJ file directly from its bytes, without decoding it to text.
+   *
+   * @return A {@link com.example.polysample.ObjGeometry} representing the object.
+   * @throws ObjParseException if there is an error parsing the file.
+   */
+  public static ObjGeometry parse(byte[] objFile) throws ObjParseException {
+    return parse(new ObjTokenizer(objFile));
+  }
+
+  /**
+   * Parses the remaining bytes of the given buffer as an OBJ file.
+   *
+   * @return A {@link com.example.polysample.ObjGeometry} representing the object.
+   * @throws ObjParseException if there is an error parsing the file.
+   */
+  public static ObjGeometry parse(ByteBuffer objFile) throws ObjParseException {
+    return parse(ObjTokenizer.wrap(objFile));
+  }
+
+  /**
+   * Parses the given OBJ file, splitting the work across the threads of {@code executor}.
+   *
+   * The file is cut into chunks at line boundaries, and each chunk is parsed independently.
+   * The chunks are then concatenated, offsetting any relative indices by the number of elements
+   * in the chunks before them, so the result is identical to that of {@link #parse(byte[])}.
+   * Small files are parsed on the calling thread.
+   *
+   * @return A {@link com.example.polysample.ObjGeometry} representing the object.
+   * @throws ObjParseException if there is an error parsing the file.
+   */
+  public static ObjGeometry parse(final byte[] objFile, ExecutorService executor)
+      throws ObjParseException {
+    int chunkCount = Math.min(Runtime.getRuntime().availableProcessors() * CHUNKS_PER_THREAD,
+        objFile.length / MIN_CHUNK_SIZE);
+    if (chunkCount <= 1) {
+      return parse(objFile);
+    }
+    final int[] chunkStarts = splitAtLines(objFile, chunkCount);
+    List<Callable<Chunk>> tasks = new ArrayList<>(chunkCount);
+    for (int i = 0; i < chunkCount; i++) {
+      final int start = chunkStarts[i];
+      final int end = chunkStarts[i + 1];
+      tasks.add(new Callable<Chunk>() {
+        @Override
+        public Chunk call() {
+          return parseChunk(new ObjTokenizer(objFile, start, end - start));
         }
+      });
+    }
+    Chunk[] chunks = new Chunk[chunkCount];
+    try {
+      List<Future<Chunk>> futures = executor.invokeAll(tasks);
+      for (int i = 0; i < chunkCount; i++) {
+        chunks[i] = futures.get(i).get();
+      }
+    } catch (ExecutionException ex) {
+      throw new ObjParseException("Failed to parse OBJ.", ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ObjParseException("Interrupted while parsing OBJ.", ex);
+    }
+    return merge(chunks);
+  }
+
+  private static ObjGeometry parse(ObjTokenizer tokenizer) throws ObjParseException {
+    return merge(new Chunk[] { parseChunk(tokenizer) });
+  }
+
+  // Parses one chunk of an OBJ file. Relative indices are resolved against the elements of this
+  // chunk only, and are recorded so that merge() can rebase them. Errors are recorded in the
+  // chunk rather than thrown, so that merge() can report them with the line number in the file.
+  private static Chunk parseChunk(ObjTokenizer tokenizer) {
+    Chunk chunk = new Chunk();
+    chunk.parse(tokenizer);
+    return chunk;
+  }
+
+  // Concatenates the chunks of a file into a single ObjGeometry.
+  private static ObjGeometry merge(Chunk[] chunks) throws ObjParseException {
+    int linesBefore = 0;
+    for (Chunk chunk : chunks) {
+      if (chunk.error != null) {
+        throw new ObjParseException("Failed to parse OBJ, line #" + (linesBefore + chunk.errorLine),
+            chunk.error);
+      }
+      linesBefore += chunk.lineCount;
+    }
+    if (chunks.length == 1) {
+      // Nothing to rebase, so the chunk is the whole file.
+      return validate(chunks[0].geometry);
+    }
+    ObjGeometry result = new ObjGeometry();
+    int vertexFloats = 0, normalFloats = 0, texCoordFloats = 0, faceVertexInts = 0, faceCount = 0;
+    for (Chunk chunk : chunks) {
+      vertexFloats += chunk.geometry.vertices.size();
+      normalFloats += chunk.geometry.normals.size();
+      texCoordFloats += chunk.geometry.texCoords.size();
+      faceVertexInts += chunk.geometry.faceVertices.size();
+      faceCount += chunk.geometry.getFaceCount();
+    }
+    result.vertices.ensureCapacity(vertexFloats);
+    result.normals.ensureCapacity(normalFloats);
+    result.texCoords.ensureCapacity(texCoordFloats);
+    result.faceVertices.ensureCapacity(faceVertexInts);
+    result.faceStarts.ensureCapacity(faceCount);
+    result.materials.faceLabels.ensureCapacity(faceCount);
+    result.groups.faceLabels.ensureCapacity(faceCount);
+
+    for (Chunk chunk : chunks) {
+      ObjGeometry geometry = chunk.geometry;
+      chunk.rebaseRelativeIndices(result.getVertexCount(), result.getTexCoordCount(),
+          result.getNormalCount());
+      int faceVertexBase = result.getTotalFaceVertexCount();
+      for (int i = 0; i < geometry.getFaceCount(); i++) {
+        result.faceStarts.add(geometry.faceStarts.get(i) + faceVertexBase);
+      }
+      result.materials.append(geometry.materials);
+      result.groups.append(geometry.groups);
+      result.vertices.addAll(geometry.vertices);
+      result.normals.addAll(geometry.normals);
+      result.texCoords.addAll(geometry.texCoords);
+      result.faceVertices.addAll(geometry.faceVertices);
+      if (geometry.boundsMin != null) {
+        result.encapsulateInBounds(geometry.boundsMin[0], geometry.boundsMin[1],
+            geometry.boundsMin[2]);
+        result.encapsulateInBounds(geometry.boundsMax[0], geometry.boundsMax[1],
+            geometry.boundsMax[2]);
       }
-      if (result.vertices.size() <= 0) {
-        throw new Exception("Did not find any vertices in OBJ file.");
+    }
+    return validate(result);
+  }
+
+  private static ObjGeometry validate(ObjGeometry geometry) throws ObjParseException {
+    if (geometry.vertices.size() <= 0) {
+      throw new ObjParseException("Failed to parse OBJ.",
+          new Exception("Did not find any vertices in OBJ file."));
+    }
+    return geometry;
+  }
+
+  // Returns the offsets at which each of chunkCount chunks of roughly equal size start, followed
+  // by the length of the data. Each chunk starts at the beginning of a line.
+  private static int[] splitAtLines(byte[] data, int chunkCount) {
+    int[] starts = new int[chunkCount + 1];
+    for (int i = 1; i < chunkCount; i++) {
+      int start = Math.max((int) ((long) data.length * i / chunkCount), starts[i - 1]);
+      while (start < data.length && data[start - 1] != '\n') {
+        start++;
       }
-      return result;
-    } catch (Exception ex) {
-      throw new ObjParseException("Failed to parse OBJ, line #" + lineNo, ex);
+      starts[i] = start;
     }
+    starts[chunkCount] = data.length;
+    return starts;
   }
 
-  /** Returns the vertex at the given index. */
+  /** Returns a new Vec3 with the vertex at the given index. */
   public Vec3 getVertex(int index) {
-    return vertices.get(index);
+    return new Vec3(vertices.get(index * 3), vertices.get(index * 3 + 1),
+        vertices.get(index * 3 + 2));
+  }
+
+  /** Copies the vertex at the given index into {@code out} (x, y, z), without allocating. */
+  public void getVertex(int index, float[] out) {
+    out[0] = vertices.get(index * 3);
+    out[1] = vertices.get(index * 3 + 1);
+    out[2] = vertices.get(index * 3 + 2);
   }
 
   /** Returns the number of vertices in the object. */
   public int getVertexCount() {
-    return vertices.size();
+    return vertices.size() / 3;
   }
 
-  /** Returns the normal at the given index. */
+  /** Returns a new Vec3 with the normal at the given index. */
   public Vec3 getNormal(int index) {
-    return normals.get(index);
+    return new Vec3(normals.get(index * 3), normals.get(index * 3 + 1),
+        normals.get(index * 3 + 2));
+  }
+
+  /** Copies the normal at the given index into {@code out} (x, y, z), without allocating. */
+  public void getNormal(int index, float[] out) {
+    out[0] = normals.get(index * 3);
+    out[1] = normals.get(index * 3 + 1);
+    out[2] = normals.get(index * 3 + 2);
   }
 
   /** Returns the number of normals in the object. */
   public int getNormalCount() {
-    return normals.size();
+    return normals.size() / 3;
   }
 
-  /** Returns the texture coordinates at the given index. */
+  /** Returns new TexCoords with the texture coordinates at the given index. */
   public TexCoords getTexCoord(int index) {
-    return texCoords.get(index);
+    return new TexCoords(texCoords.get(index * 2), texCoords.get(index * 2 + 1));
   }
 
-  /** Gets the number of texture coordinates in the object. */
-  public int getTexCoordCount() {
-    return texCoords.size();
+  /** Copies the texture coordinates at the given index into {@code out} (u, v). */
+  public void getTexCoord(int index, float[] out) {
+    out[0] = texCoords.get(index * 2);
+    out[1] = texCoords.get(index * 2 + 1);
   }
 
-  /** Returns the face at the given index. */
-  public Face getFace(int index) {
-    return faces.get(index);
+  /** Gets the number of texture coordinates in the object. */
+  public int getTexCoordCount() {
+    return texCoords.size() / 2;
   }
 
   /** Returns the number of faces in the object. */
   public int getFaceCount() {
-    return faces.size();
+    return faceStarts.size();
+  }
+
+  /** Returns the number of vertices in the given face. */
+  public int getFaceVertexCount(int face) {
+    return getFaceEnd(face) - faceStarts.get(face);
+  }
+
+  /** Returns the total number of vertices in all the faces of the object. */
+  public int getTotalFaceVertexCount() {
+    return faceVertices.size() / 3;
+  }
+
+  /**
+   * Returns the index of the position of a vertex of a face. For use with
+   * {@link #getVertex(int, float[])}.
+   * @param face The index of the face.
+   * @param vertexInFace The index of the vertex within the face.
+   */
+  public int getFaceVertexIndex(int face, int vertexInFace) {
+    return getFaceVertexComponent(face, vertexInFace, ObjTokenizer.FACE_VERTEX_POSITION);
+  }
+
+  /**
+   * Returns the index of the texture coordinates of a vertex of a face, or {@link #MISSING}. For
+   * use with {@link #getTexCoord(int, float[])}.
+   */
+  public int getFaceTexCoordIndex(int face, int vertexInFace) {
+    return getFaceVertexComponent(face, vertexInFace, ObjTokenizer.FACE_VERTEX_TEX_COORDS);
+  }
+
+  /**
+   * Returns the index of the normal of a vertex of a face, or {@link #MISSING}. For use with
+   * {@link #getNormal(int, float[])}.
+   */
+  public int getFaceNormalIndex(int face, int vertexInFace) {
+    return getFaceVertexComponent(face, vertexInFace, ObjTokenizer.FACE_VERTEX_NORMAL);
+  }
+
+  /**
+   * Returns the ID of the material of the given face, or {@link #MISSING} if it has none.
+   * Material IDs are dense, from 0 to {@link #getMaterialCount()} - 1.
+   */
+  public int getFaceMaterial(int face) {
+    return materials.faceLabels.get(face);
+  }
+
+  /** Returns the name of the material of the given face, or null if it has none. */
+  public String getFaceMaterialName(int face) {
+    return materials.getName(materials.faceLabels.get(face));
+  }
+
+  /** Returns the number of materials used by the faces of the object. */
+  public int getMaterialCount() {
+    return materials.names.size();
+  }
+
+  /** Returns the name of the material with the given ID. */
+  public String getMaterialName(int material) {
+    return materials.names.get(material);
+  }
+
+  /**
+   * Returns the ID of the group of the given face, or {@link #MISSING} if it has none. Group IDs
+   * are dense, from 0 to {@link #getGroupCount()} - 1.
+   */
+  public int getFaceGroup(int face) {
+    return groups.faceLabels.get(face);
+  }
+
+  /** Returns the name of the group of the given face, or null if it has none. */
+  public String getFaceGroupName(int face) {
+    return groups.getName(groups.faceLabels.get(face));
+  }
+
+  /** Returns the number of groups ("o" and "g" names) used by the faces of the object. */
+  public int getGroupCount() {
+    return groups.names.size();
+  }
+
+  /** Returns the name of the group with the given ID. */
+  public String getGroupName(int group) {
+    return groups.names.get(group);
+  }
+
+  /**
+   * Returns the indices of all the faces, sorted by group and then by material: first the faces
+   * without a group, then those of group 0, 1, etc., and within each group, first the faces
+   * without a material, then those of material 0, 1, etc. Faces with the same group and material
+   * keep their order in the file, so each (group, material) pair is a contiguous run that can be
+   * drawn with a single draw call.
+   *
+   * The faces are sorted with two stable counting sorts (by material, then by group), so this
+   * takes linear time.
+   */
+  public int[] getFacesByGroupAndMaterial() {
+    int[] faces = new int[getFaceCount()];
+    for (int i = 0; i < faces.length; i++) {
+      faces[i] = i;
+    }
+    faces = sortFaces(faces, materials);
+    return sortFaces(faces, groups);
   }
 
   /** Returns the minimum coordinates of the object's axis-aligned bounding box. */
-  public Vec3 getBoundsMin() { return boundsMin; }
+  public Vec3 getBoundsMin() {
+    return new Vec3(boundsMin[0], boundsMin[1], boundsMin[2]);
+  }
 
   /** Returns the maximum coordinates of the object's axis-aligned bounding box. */
-  public Vec3 getBoundsMax() { return boundsMax; }
+  public Vec3 getBoundsMax() {
+    return new Vec3(boundsMax[0], boundsMax[1], boundsMax[2]);
+  }
 
   /** Returns the center of the object's axis-aligned bounding box. */
   public Vec3 getBoundsCenter() {
-    return new Vec3((boundsMin.x + boundsMax.x) / 2f, (boundsMin.y + boundsMax.y) / 2f,
-        (boundsMin.z + boundsMax.z) / 2f);
+    return new Vec3((boundsMin[0] + boundsMax[0]) / 2f, (boundsMin[1] + boundsMax[1]) / 2f,
+        (boundsMin[2] + boundsMax[2]) / 2f);
   }
 
   /** Returns the size of the object's axis-aligned bounding box. */
   public Vec3 getBoundsSize() {
-    return new Vec3(boundsMax.x - boundsMin.x, boundsMax.y - boundsMin.y, boundsMax.z - boundsMin.z);
+    return new Vec3(boundsMax[0] - boundsMin[0], boundsMax[1] - boundsMin[1],
+        boundsMax[2] - boundsMin[2]);
   }
 
   private ObjGeometry() {}
 
-  private static Vec3 parseVec3(String s) {
-    String[] parts = s.trim().split(" +");
-    if (parts.length != 3) throw new RuntimeException("Vec3 doesn't have 3 components.");
-    return new Vec3(Float.parseFloat(parts[0]),
-        Float.parseFloat(parts[1]), Float.parseFloat(parts[2]));
+  // Returns the given faces, stably sorted by their label (MISSING first).
+  private static int[] sortFaces(int[] faces, FaceLabels labels) {
+    int[] starts = new int[labels.names.size() + 2];
+    for (int face : faces) {
+      starts[labels.faceLabels.get(face) + 2]++;
+    }
+    for (int i = 2; i < starts.length; i++) {
+      starts[i] += starts[i - 1];
+    }
+    int[] sorted = new int[faces.length];
+    for (int face : faces) {
+      sorted[starts[labels.faceLabels.get(face) + 1]++] = face;
+    }
+    return sorted;
   }
 
-  private static TexCoords parseTexCoords(String s) {
-    String[] parts = s.trim().split(" +");
-    if (parts.length < 2) throw new RuntimeException("Tex coords has < 2 components.");
-    return new TexCoords(Float.parseFloat(parts[0]), Float.parseFloat(parts[1]));
+  // Reads the first 3 components. Any others, such as the w of "v x y z w" or the vertex colors of
+  // "v x y z r g b", are ignored along with the rest of the line.
+  private static void parseVec3(ObjTokenizer tokenizer, FloatArrayList out) {
+    out.add(tokenizer.nextFloat(), tokenizer.nextFloat(), tokenizer.nextFloat());
   }
 
-  private static Face parseFace(String s, String materialName) {
-    String[] parts = s.trim().split(" +");
-    if (parts.length < 3) throw new RuntimeException("Face must have at least 3 vertices.");
-    FaceVertex[] faceVertices = new FaceVertex[parts.length];
-    for (int i = 0; i < faceVertices.length; i++) {
-      faceVertices[i] = parseFaceVertex(parts[i]);
-    }
-    return new Face(faceVertices, materialName);
+  private static void parseTexCoords(ObjTokenizer tokenizer, FloatArrayList out) {
+    if (!tokenizer.hasMoreTokens()) throw new RuntimeException("Tex coords has < 2 components.");
+    float u = tokenizer.nextFloat();
+    if (!tokenizer.hasMoreTokens()) throw new RuntimeException("Tex coords has < 2 components.");
+    out.add(u);
+    out.add(tokenizer.nextFloat());
   }
 
-  private static FaceVertex parseFaceVertex(String s) {
-    String[] parts = s.split("/");
-    if (parts.length == 0) throw new RuntimeException("FaceVertex must have a face index.");
-    int vertexIndex = Integer.parseInt(parts[0]);
-    int texCoordIndex = parts.length >= 2 ? tryParseInt(parts[1], MISSING) : MISSING;
-    int normalIndex = parts.length >= 3 ? tryParseInt(parts[2], MISSING) : MISSING;
-    // Subtract 1 from all indices because OBJ indices start at 1 and ours start at 0.
-    return new FaceVertex(
-        vertexIndex == MISSING ? MISSING : vertexIndex - 1,
-        texCoordIndex == MISSING ? MISSING : texCoordIndex - 1,
-        normalIndex == MISSING ? MISSING : normalIndex - 1);
+  // Returns the index (in face vertices) just past the last vertex of the given face.
+  private int getFaceEnd(int face) {
+    return face + 1 < faceStarts.size() ? faceStarts.get(face + 1) : getTotalFaceVertexCount();
   }
 
-  private static int tryParseInt(String s, int defaultValue) {
-    try {
-      return Integer.parseInt(s);
-    } catch (NumberFormatException ex) {
-      return defaultValue;
+  private int getFaceVertexComponent(int face, int vertexInFace, int component) {
+    if (vertexInFace < 0 || vertexInFace >= getFaceVertexCount(face)) {
+      throw new IndexOutOfBoundsException("Face " + face + " has no vertex " + vertexInFace);
     }
+    return faceVertices.get((faceStarts.get(face) + vertexInFace) * 3 + component);
   }
 
-  private void encapsulateInBounds(Vec3 vertex) {
+  // Adds a face vertex as read by the tokenizer (1-based or relative indices), converting its
+  // indices to 0-based ones.
+  private void addFaceVertex(int[] faceVertex) {
+    faceVertices.add(
+        ObjTokenizer.resolveIndex(faceVertex[ObjTokenizer.FACE_VERTEX_POSITION],
+            getVertexCount(), MISSING),
+        ObjTokenizer.resolveIndex(faceVertex[ObjTokenizer.FACE_VERTEX_TEX_COORDS],
+            getTexCoordCount(), MISSING),
+        ObjTokenizer.resolveIndex(faceVertex[ObjTokenizer.FACE_VERTEX_NORMAL],
+            getNormalCount(), MISSING));
+  }
+
+  // Grows the bounds to contain the vertex whose x coordinate is at the given offset.
+  private void encapsulateInBounds(FloatArrayList coords, int offset) {
+    encapsulateInBounds(coords.get(offset), coords.get(offset + 1), coords.get(offset + 2));
+  }
+
+  private void encapsulateInBounds(float x, float y, float z) {
     if (boundsMin == null) {
-      boundsMin = new Vec3(vertex);
-    } else {
-      boundsMin.x = Math.min(boundsMin.x, vertex.x);
-      boundsMin.y = Math.min(boundsMin.y, vertex.y);
-      boundsMin.z = Math.min(boundsMin.z, vertex.z);
-    }
-    if (boundsMax == null) {
-      boundsMax = new Vec3(vertex);
-    } else {
-      boundsMax.x = Math.max(boundsMax.x, vertex.x);
-      boundsMax.y = Math.max(boundsMax.y, vertex.y);
-      boundsMax.z = Math.max(boundsMax.z, vertex.z);
+      boundsMin = new float[] { x, y, z };
+      boundsMax = new float[] { x, y, z };
+      return;
+    }
+    boundsMin[0] = Math.min(boundsMin[0], x);
+    boundsMin[1] = Math.min(boundsMin[1], y);
+    boundsMin[2] = Math.min(boundsMin[2], z);
+    boundsMax[0] = Math.max(boundsMax[0], x);
+    boundsMax[1] = Math.max(boundsMax[1], y);
+    boundsMax[2] = Math.max(boundsMax[2], z);
+  }
+
+  /**
+   * Parses an OBJ file incrementally, as its bytes become available (for example, while it is
+   * still being downloaded), so that parsing overlaps with reading and the whole file never has
+   * to be held in memory.
+   *
+   * The bytes passed to {@link #feed} are gathered into blocks that end at a line boundary. Each
+   * block is parsed as soon as it is full, on the given executor if there is one, and released
+   * once it has been parsed. {@link #finish()} parses whatever is left and returns the geometry,
+   * which is identical to that of {@link #parse(byte[])} on the whole file.
+   *
+   * {@link #feed} and {@link #finish()} must not be called concurrently.
+   */
+  public static class StreamingParser {
+    private final ExecutorService executor;
+    private final List<Future<Chunk>> chunks = new ArrayList<>();
+    // Block currently being filled, and the number of bytes in it.
+    private byte[] block = new byte[MIN_CHUNK_SIZE];
+    private int blockLength;
+    private boolean finished;
+
+    /**
+     * Creates a parser.
+     *
+     * @param executor Executor on which to parse the blocks, or null to parse them on the
+     *                 thread that calls {@link #feed}.
+     */
+    public StreamingParser(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    /**
+     * Consumes the next {@code length} bytes of the file, starting at {@code offset} in
+     * {@code data}. The bytes are copied, so {@code data} can be reused after this returns.
+     */
+    public void feed(byte[] data, int offset, int length) {
+      if (finished) {
+        throw new IllegalStateException("Can't feed a StreamingParser after finish().");
+      }
+      while (length > 0) {
+        int count = Math.min(length, block.length - blockLength);
+        System.arraycopy(data, offset, block, blockLength, count);
+        blockLength += count;
+        offset += count;
+        length -= count;
+        if (blockLength == block.length) {
+          submitFullBlock();
+        }
+      }
+    }
+
+    /**
+     * Parses the rest of the file and returns its geometry. Blocks until all the blocks have
+     * been parsed.
+     *
+     * @throws ObjParseException if there is an error parsing the file.
+     */
+    public ObjGeometry finish() throws ObjParseException {
+      if (finished) {
+        throw new IllegalStateException("StreamingParser was already finished.");
+      }
+      finished = true;
+      if (blockLength > 0 || chunks.isEmpty()) {
+        submit(block, blockLength);
+      }
+      block = null;
+      Chunk[] parsedChunks = new Chunk[chunks.size()];
+      try {
+        for (int i = 0; i < parsedChunks.length; i++) {
+          parsedChunks[i] = chunks.get(i).get();
+        }
+      } catch (ExecutionException ex) {
+        throw new ObjParseException("Failed to parse OBJ.", ex);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new ObjParseException("Interrupted while parsing OBJ.", ex);
+      }
+      return merge(parsedChunks);
+    }
+
+    // Submits the complete lines of the (full) current block for parsing, and carries the last,
+    // incomplete line over to a new block.
+    private void submitFullBlock() {
+      int end = blockLength;
+      while (end > 0 && block[end - 1] != '\n') {
+        end--;
+      }
+      if (end == 0) {
+        // A single line doesn't fit in the block. Grow it and wait for the end of the line.
+        block = Arrays.copyOf(block, block.length * 2);
+        return;
+      }
+      int carry = blockLength - end;
+      byte[] nextBlock = new byte[Math.max(MIN_CHUNK_SIZE, carry * 2)];
+      System.arraycopy(block, end, nextBlock, 0, carry);
+      submit(block, end);
+      block = nextBlock;
+      blockLength = carry;
+    }
+
+    private void submit(final byte[] data, final int length) {
+      FutureTask<Chunk> task = new FutureTask<>(new Callable<Chunk>() {
+        @Override
+        public Chunk call() {
+          return parseChunk(new ObjTokenizer(data, 0, length));
+        }
+      });
+      chunks.add(task);
+      if (executor != null) {
+        executor.execute(task);
+      } else {
+        task.run();
+      }
+    }
+  }
+
+  // The result of parsing a part of an OBJ file, along with the state needed to stitch it
+  // together with the parts that come before it.
+  private static class Chunk {
+    final ObjGeometry geometry = new ObjGeometry();
+    // Positions in geometry.faceVertices of the indices that were given as relative (negative)
+    // indices, and were therefore resolved against this chunk's elements only. The component of
+    // each (ObjTokenizer.FACE_VERTEX_*) is its position modulo 3.
+    final IntArrayList relativeIndices = new IntArrayList(0);
+    // Number of lines in the chunk.
+    int lineCount;
+    // The error that stopped the parsing of the chunk, if any, and the line (within the chunk)
+    // where it happened.
+    Exception error;
+    int errorLine;
+
+    void parse(ObjTokenizer tokenizer) {
+      ObjGeometry result = geometry;
+      int[] faceVertex = new int[3];
+      try {
+        int record;
+        while ((record = tokenizer.nextRecord()) != ObjTokenizer.RECORD_END) {
+          if (record == ObjTokenizer.RECORD_VERTEX) {
+            // Vertex.
+            parseVec3(tokenizer, result.vertices);
+            result.encapsulateInBounds(result.vertices, result.vertices.size() - 3);
+          } else if (record == ObjTokenizer.RECORD_TEX_COORDS) {
+            // Texture coordinates.
+            parseTexCoords(tokenizer, result.texCoords);
+          } else if (record == ObjTokenizer.RECORD_NORMAL) {
+            // Vertex normal.
+            parseVec3(tokenizer, result.normals);
+          } else if (record == ObjTokenizer.RECORD_FACE) {
+            // Face.
+            int faceStart = result.getTotalFaceVertexCount();
+            while (tokenizer.nextFaceVertex(faceVertex)) {
+              recordRelativeIndices(faceVertex, result.faceVertices.size());
+              result.addFaceVertex(faceVertex);
+            }
+            if (result.getTotalFaceVertexCount() - faceStart < 3) {
+              throw new RuntimeException("Face must have at least 3 vertices.");
+            }
+            result.faceStarts.add(faceStart);
+            result.materials.addFace();
+            result.groups.addFace();
+          } else if (record == ObjTokenizer.RECORD_USE_MATERIAL) {
+            // Use given material.
+            result.materials.select(tokenizer.nextName(), result.getFaceCount());
+          } else if (record == ObjTokenizer.RECORD_OBJECT
+              || record == ObjTokenizer.RECORD_GROUP) {
+            // Start a new object or group.
+            result.groups.select(tokenizer.nextName(), result.getFaceCount());
+          }
+        }
+        lineCount = tokenizer.getLineNumber();
+      } catch (Exception ex) {
+        error = ex;
+        errorLine = tokenizer.getLineNumber();
+      }
+    }
+
+    void recordRelativeIndices(int[] faceVertex, int position) {
+      for (int component = 0; component < faceVertex.length; component++) {
+        if (faceVertex[component] < 0) {
+          relativeIndices.add(position + component);
+        }
+      }
+    }
+
+    void rebaseRelativeIndices(int vertexBase, int texCoordBase, int normalBase) {
+      IntArrayList faceVertices = geometry.faceVertices;
+      for (int i = 0; i < relativeIndices.size(); i++) {
+        int position = relativeIndices.get(i);
+        int component = position % 3;
+        int base = component == ObjTokenizer.FACE_VERTEX_POSITION ? vertexBase
+            : component == ObjTokenizer.FACE_VERTEX_TEX_COORDS ? texCoordBase : normalBase;
+        faceVertices.set(position, faceVertices.get(position) + base);
+      }
+    }
+  }
+
+  // A name (such as a material or group) given to each face by the last record of some kind that
+  // precedes it. Names get dense IDs in order of first use.
+  private static class FaceLabels {
+    // Label of each face, as an index into names, or MISSING if it has none.
+    final IntArrayList faceLabels = new IntArrayList();
+    // Names of the labels, in order of first use.
+    final ArrayList<String> names = new ArrayList<>();
+    final HashMap<String, Integer> ids = new HashMap<>();
+    // Label given to the faces that are added.
+    int current = MISSING;
+    // Whether select() was ever called, and how many faces had been added before the first call.
+    // Faces before that point take the label that was current at the end of the previous chunk.
+    boolean selected;
+    int facesBeforeFirstSelect;
+
+    // Gives the label with the given name to the faces added from now on.
+    void select(String name, int faceCount) {
+      if (!selected) {
+        selected = true;
+        facesBeforeFirstSelect = faceCount;
+      }
+      current = getId(name);
+    }
+
+    void addFace() {
+      faceLabels.add(current);
+    }
+
+    String getName(int id) {
+      return id == MISSING ? null : names.get(id);
+    }
+
+    // Appends the labels of the faces of a chunk that follows the ones already in this object,
+    // mapping the chunk's IDs to the IDs used here.
+    void append(FaceLabels chunk) {
+      int[] chunkIds = new int[chunk.names.size()];
+      for (int i = 0; i < chunkIds.length; i++) {
+        chunkIds[i] = getId(chunk.names.get(i));
+      }
+      int faceCount = chunk.faceLabels.size();
+      int inheritingFaces = chunk.selected ? chunk.facesBeforeFirstSelect : faceCount;
+      for (int i = 0; i < faceCount; i++) {
+        faceLabels.add(i < inheritingFaces ? current : chunkIds[chunk.faceLabels.get(i)]);
+      }
+      if (chunk.selected) {
+        current = chunkIds[chunk.current];
+      }
+    }
+
+    private int getId(String name) {
+      Integer id = ids.get(name);
+      if (id == null) {
+        id = names.size();
+        names.add(name);
+        ids.put(name, id);
+      }
+      return id;
     }
   }
 
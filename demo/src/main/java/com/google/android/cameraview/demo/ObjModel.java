@@ -1,23 +1,30 @@
 package com.google.android.cameraview.demo;
 
+import android.opengl.GLES20;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ExecutorService;
 
 /*
  *
  * Info on the Wavefront OBJ format: https://en.wikipedia.org/wiki/Wavefront_.obj_file
  * This is NOT a complete implementation of the OBJ format. It does not support textures,
- * only supports faces of 3 or 4 vertices, and combines all sub-objects into a single model.
+ * and only supports faces of 3 or 4 vertices. Objects and groups ("o" and "g") are kept as
+ * {@link MeshGroup}s of a single model, which can be hidden individually.
+ * The file is parsed into an {@link ObjGeometry} (sequentially or in parallel), from which the
+ * interleaved vertex buffer and the index buffer are then built, with the triangles sorted by
+ * group and material. Faces without normals get smooth ones from a {@link NormalGenerator}.
  *
  * Copyright 2017 Dmitry Brant. All rights reserved.
  *
@@ -34,17 +41,145 @@ import java.util.List;
  * limitations under the License.
  */
 public class ObjModel extends IndexedModel {
+    // Layout of a cached model (see MeshCache): the bounds and center of mass are stored as
+    // values, followed by the interleaved vertex buffer, the index buffer, the submeshes and the
+    // groups.
+    private static final int CACHE_VALUE_COUNT = 9;
+    private static final int CACHE_VERTEX_BUFFER = 0;
+    private static final int CACHE_INDEX_BUFFER = 1;
+    private static final int CACHE_SUBMESH_RANGES = 2;
+    private static final int CACHE_SUBMESH_COLORS = 3;
+    private static final int CACHE_GROUP_RANGES = 4;
+    private static final int CACHE_GROUP_BOUNDS = 5;
+    private static final int CACHE_GROUP_NAMES = 6;
+
+    // How the vertex cache optimization went, or null if the model was loaded from the cache.
+    private VertexCacheOptimizer.Result vertexCacheResult;
 
     public ObjModel(@NonNull InputStream inputStream, MtlLibrary materials) throws IOException {
+        this(ByteBuffer.wrap(readFully(new BufferedInputStream(inputStream, INPUT_BUFFER_SIZE))),
+                materials);
+    }
+
+    /**
+     * Parses the model directly from the bytes of an OBJ file, without decoding them to text
+     * first. This is the preferred way of loading a model that is already in memory.
+     */
+    public ObjModel(@NonNull ByteBuffer buffer, MtlLibrary materials) throws IOException {
+        this(parse(buffer), materials);
+    }
+
+    /**
+     * Builds the model from an already parsed OBJ file. Use this together with
+     * {@link ObjGeometry#parse(byte[], java.util.concurrent.ExecutorService)} to parse large
+     * files on several threads.
+     */
+    public ObjModel(@NonNull ObjGeometry geometry, MtlLibrary materials) throws IOException {
+        this(geometry, materials, false);
+    }
+
+    /**
+     * Builds the model from an already parsed OBJ file.
+     *
+     * @param allowIntIndices Whether the model may use 32-bit indices if it has more vertices than
+     *     16-bit indices can address, and the GL context (as last seen by
+     *     {@link MyGLUtils#loadExtensions()}) supports them. Otherwise, large models are split into
+     *     chunks that are drawn with 16-bit indices.
+     */
+    public ObjModel(@NonNull ObjGeometry geometry, MtlLibrary materials, boolean allowIntIndices)
+            throws IOException {
+        this(geometry, materials, allowIntIndices, null);
+    }
+
+    /**
+     * Builds the model from an already parsed OBJ file.
+     *
+     * @param allowIntIndices See {@link #ObjModel(ObjGeometry, MtlLibrary, boolean)}.
+     * @param executor The executor on which to generate the normals of the faces that have none,
+     *     in parallel, or null to generate them on the calling thread.
+     */
+    public ObjModel(@NonNull ObjGeometry geometry, MtlLibrary materials, boolean allowIntIndices,
+            @Nullable ExecutorService executor) throws IOException {
         super();
-        BufferedInputStream stream = new BufferedInputStream(inputStream, INPUT_BUFFER_SIZE);
-        readText(stream, materials);
-        if (vertexCount <= 0 || vertexBuffer == null || normalBuffer == null
-                || indexCount <= 0 || indexBuffer == null) {
+        try {
+            build(geometry, materials, allowIntIndices, executor);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to build model from OBJ data.", e);
+        }
+        if (vertexCount <= 0 || vertexBuffer == null || indexCount <= 0 || indexBuffer == null) {
             throw new IOException("Invalid model.");
         }
     }
 
+    /**
+     * Creates the model from a mesh previously stored with {@link #toCacheEntry()}. The buffers
+     * of the entry are used directly, without copying.
+     */
+    public ObjModel(@NonNull MeshCache.Entry entry) throws IOException {
+        super();
+        if (entry.values.length != CACHE_VALUE_COUNT) {
+            throw new IOException("Invalid cached model.");
+        }
+        minX = entry.values[0];
+        minY = entry.values[1];
+        minZ = entry.values[2];
+        maxX = entry.values[3];
+        maxY = entry.values[4];
+        maxZ = entry.values[5];
+        centerMassX = entry.values[6];
+        centerMassY = entry.values[7];
+        centerMassZ = entry.values[8];
+        vertexBuffer = entry.getFloatBuffer(CACHE_VERTEX_BUFFER);
+        if (entry.buffers.length > CACHE_INDEX_BUFFER
+                && entry.buffers[CACHE_INDEX_BUFFER] instanceof ShortBuffer) {
+            indexBuffer = entry.getShortBuffer(CACHE_INDEX_BUFFER);
+            indexType = GLES20.GL_UNSIGNED_SHORT;
+        } else {
+            indexBuffer = entry.getIntBuffer(CACHE_INDEX_BUFFER);
+            indexType = GLES20.GL_UNSIGNED_INT;
+        }
+        vertexCount = vertexBuffer.limit() / FLOATS_PER_VERTEX;
+        indexCount = indexBuffer.limit();
+        submeshes = Submesh.fromBuffers(entry.getIntBuffer(CACHE_SUBMESH_RANGES),
+                entry.getFloatBuffer(CACHE_SUBMESH_COLORS), indexCount, vertexCount);
+        groups = MeshGroup.fromBuffers(entry.getIntBuffer(CACHE_GROUP_RANGES),
+                entry.getFloatBuffer(CACHE_GROUP_BOUNDS), entry.getByteBuffer(CACHE_GROUP_NAMES),
+                submeshes.length);
+        if (vertexCount <= 0 || vertexBuffer.limit() % FLOATS_PER_VERTEX != 0 || indexCount <= 0) {
+            throw new IOException("Invalid cached model.");
+        }
+    }
+
+    /**
+     * Returns the model's buffers, bounds and center of mass, to be stored in a
+     * {@link MeshCache}. The floor offset is not stored, since it is derived from these when the
+     * model is initialized. Must be called before {@link #packVertices()}, which drops the float
+     * vertex buffer.
+     */
+    public MeshCache.Entry toCacheEntry() {
+        float[] values = { minX, minY, minZ, maxX, maxY, maxZ,
+                centerMassX, centerMassY, centerMassZ };
+        return new MeshCache.Entry(values, new Buffer[] { vertexBuffer, indexBuffer,
+                Submesh.getRanges(submeshes), Submesh.getColors(submeshes),
+                MeshGroup.getRanges(groups), MeshGroup.getBounds(groups),
+                MeshGroup.getNames(groups) });
+    }
+
+    /**
+     * Returns a geometry source that reloads the model from the given mesh cache, where it was
+     * stored with {@link #toCacheEntry()} for the given asset and content hash.
+     */
+    public static GeometrySource getCacheSource(@NonNull final MeshCache cache,
+            @NonNull final String assetId, final long contentHash) {
+        return new GeometrySource() {
+            @Override
+            public ArrayModel reload() throws IOException {
+                MeshCache.Entry entry = cache.load(assetId, contentHash);
+                return entry != null ? new ObjModel(entry) : null;
+            }
+        };
+    }
+
     @Override
     public void initModelMatrix(float boundSize) {
         final float yRotation = 180f;
@@ -54,241 +189,119 @@ public class ObjModel extends IndexedModel {
         floorOffset = (minY - centerMassY) / scale;
     }
 
-    private void readText(@NonNull InputStream stream, MtlLibrary materials) throws IOException {
-        List<Float> normalBucket = new ArrayList<>();
-        List<Float> vertices = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        List<Float> colors = new ArrayList<>();
-        List<Integer> normalIndices = new ArrayList<>();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(stream), INPUT_BUFFER_SIZE);
-        String line;
-        String[] lineArr;
-        int[][] intArr = new int[4][];
-        int index1, index2, index3, index4;
-        float[] customNormal = new float[3];
-        float[] colorsArray = null ;
-        float x, y, z;
+    private static byte[] readFully(@NonNull InputStream stream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(INPUT_BUFFER_SIZE);
+        byte[] buffer = new byte[INPUT_BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = stream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static ObjGeometry parse(@NonNull ByteBuffer buffer) throws IOException {
+        try {
+            return ObjGeometry.parse(buffer);
+        } catch (ObjGeometry.ObjParseException e) {
+            throw new IOException("Failed to parse OBJ data.", e);
+        }
+    }
+
+    private void build(@NonNull ObjGeometry geometry, MtlLibrary materials,
+            boolean allowIntIndices, @Nullable ExecutorService executor) {
+        float[] vertex = new float[3];
+        float[] normal = new float[3];
         double centerMassX = 0.0;
         double centerMassY = 0.0;
         double centerMassZ = 0.0;
-        String currentMaterialName = null;
 
-        for (int i = 0; i < intArr.length; i++) {
-            intArr[i] = new int[8];
+        int positionCount = geometry.getVertexCount();
+        for (int i = 0; i < positionCount; i++) {
+            geometry.getVertex(i, vertex);
+            adjustMaxMin(vertex[0], vertex[1], vertex[2]);
+            centerMassX += vertex[0];
+            centerMassY += vertex[1];
+            centerMassZ += vertex[2];
         }
+        this.centerMassX = (float)(centerMassX / positionCount);
+        this.centerMassY = (float)(centerMassY / positionCount);
+        this.centerMassZ = (float)(centerMassZ / positionCount);
 
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            lineArr = line.split("\\s+");
-
-            if (lineArr.length > 1 && lineArr[0].equals("usemtl")) {
-                currentMaterialName = lineArr[1];
-            } else if (lineArr.length > 3 && lineArr[0].equals("v")) {
-                x = Float.parseFloat(lineArr[1]);
-                y = Float.parseFloat(lineArr[2]);
-                z = Float.parseFloat(lineArr[3]);
-                adjustMaxMin(x, y, z);
-                vertices.add(x);
-                vertices.add(y);
-                vertices.add(z);
-                centerMassX += x;
-                centerMassY += y;
-                centerMassZ += z;
+        // Faces without normals get smooth ones, which are only shared across edges that are
+        // flatter than the crease angle.
+        NormalGenerator normals = NormalGenerator.isNeeded(geometry)
+                ? NormalGenerator.generate(geometry, NormalGenerator.DEFAULT_CREASE_ANGLE, executor)
+                : null;
 
-            } else if (lineArr.length > 3 && lineArr[0].equals("vn")) {
-                x = Float.parseFloat(lineArr[1]);
-                y = Float.parseFloat(lineArr[2]);
-                z = Float.parseFloat(lineArr[3]);
-                normalBucket.add(x);
-                normalBucket.add(y);
-                normalBucket.add(z);
-
-            } else if (lineArr.length > 3 && lineArr[0].equals("f")) {
-                if (lineArr.length == 4) {
-                    // it's a triangle
-                    parseInts(lineArr[1], intArr[0]);
-                    parseInts(lineArr[2], intArr[1]);
-                    parseInts(lineArr[3], intArr[2]);
-
-                    colorsArray = materials.getMaterialByName(currentMaterialName).diffuseColor;
-                    colors.add(colorsArray[0]);
-                    colors.add(colorsArray[1]);
-                    colors.add(colorsArray[2]);
-                    colors.add(colorsArray[3]);
-
-                    index1 = intArr[0][0] - 1;
-                    index2 = intArr[1][0] - 1;
-                    index3 = intArr[2][0] - 1;
-                    indices.add(index1);
-                    indices.add(index2);
-                    indices.add(index3);
-
-                    if (intArr[0][2] != -1) {
-                        normalIndices.add(intArr[0][2] - 1);
-                        normalIndices.add(intArr[1][2] - 1);
-                        normalIndices.add(intArr[2][2] - 1);
-                    } else {
-                        Util.calculateNormal(vertices.get(index1 * 3), vertices.get(index1 * 3 + 1), vertices.get(index1 * 3 + 2),
-                                vertices.get(index2 * 3), vertices.get(index2 * 3 + 1), vertices.get(index2 * 3 + 2),
-                                vertices.get(index3 * 3), vertices.get(index3 * 3 + 1), vertices.get(index3 * 3 + 2),
-                                customNormal);
-                        normalBucket.add(customNormal[0]);
-                        normalBucket.add(customNormal[1]);
-                        normalBucket.add(customNormal[2]);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                    }
-
-                } else if (lineArr.length == 5) {
-                    // it's a quad
-                    parseInts(lineArr[1], intArr[0]);
-                    parseInts(lineArr[2], intArr[1]);
-                    parseInts(lineArr[3], intArr[2]);
-                    parseInts(lineArr[4], intArr[3]);
-
-                    colorsArray = materials.getMaterialByName(currentMaterialName).diffuseColor;
-                    colors.add(colorsArray[0]);
-                    colors.add(colorsArray[1]);
-                    colors.add(colorsArray[2]);
-                    colors.add(colorsArray[3]);
-
-                    index1 = intArr[0][0] - 1;
-                    index2 = intArr[1][0] - 1;
-                    index3 = intArr[2][0] - 1;
-                    index4 = intArr[3][0] - 1;
-                    indices.add(index1);
-                    indices.add(index2);
-                    indices.add(index3);
-                    indices.add(index1);
-                    indices.add(index3);
-                    indices.add(index4);
-
-                    if (intArr[0][2] != -1) {
-                        normalIndices.add(intArr[0][2] - 1);
-                        normalIndices.add(intArr[1][2] - 1);
-                        normalIndices.add(intArr[2][2] - 1);
-                        normalIndices.add(intArr[0][2] - 1);
-                        normalIndices.add(intArr[2][2] - 1);
-                        normalIndices.add(intArr[3][2] - 1);
-                    } else {
-                        Util.calculateNormal(vertices.get(index1 * 3), vertices.get(index1 * 3 + 1), vertices.get(index1 * 3 + 2),
-                                vertices.get(index2 * 3), vertices.get(index2 * 3 + 1), vertices.get(index2 * 3 + 2),
-                                vertices.get(index3 * 3), vertices.get(index3 * 3 + 1), vertices.get(index3 * 3 + 2),
-                                customNormal);
-                        normalBucket.add(customNormal[0]);
-                        normalBucket.add(customNormal[1]);
-                        normalBucket.add(customNormal[2]);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                        Util.calculateNormal(vertices.get(index1 * 3), vertices.get(index1 * 3 + 1), vertices.get(index1 * 3 + 2),
-                                vertices.get(index3 * 3), vertices.get(index3 * 3 + 1), vertices.get(index3 * 3 + 2),
-                                vertices.get(index4 * 3), vertices.get(index4 * 3 + 1), vertices.get(index4 * 3 + 2),
-                                customNormal);
-                        normalBucket.add(customNormal[0]);
-                        normalBucket.add(customNormal[1]);
-                        normalBucket.add(customNormal[2]);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                        normalIndices.add((normalBucket.size() - 1) / 3);
-                    }
+        // The triangles are emitted sorted by group and material, so each material of each group
+        // is drawn with a single draw call, and each group can be skipped as a whole. Each face
+        // corner becomes a vertex with its position and normal, welded to any identical one, so a
+        // position gets as many vertices as it has distinct normals.
+        VertexWelder welder = new VertexWelder(positionCount);
+        IntArrayList indices = new IntArrayList();
+        MeshGroup.Builder groupBuilder = new MeshGroup.Builder(geometry, materials);
+        int[] faceVertices = new int[4];
+        for (int face : geometry.getFacesByGroupAndMaterial()) {
+            int faceVertexCount = geometry.getFaceVertexCount(face);
+            // Only triangles and quads are supported.
+            if (faceVertexCount != 3 && faceVertexCount != 4) {
+                continue;
+            }
+            groupBuilder.startFace(face, indices.size());
+            for (int j = 0; j < faceVertexCount; j++) {
+                geometry.getVertex(geometry.getFaceVertexIndex(face, j), vertex);
+                int normalIndex = geometry.getFaceNormalIndex(face, j);
+                if (normalIndex != ObjGeometry.MISSING) {
+                    geometry.getNormal(normalIndex, normal);
+                } else {
+                    normals.getNormal(face, j, normal);
                 }
+                faceVertices[j] = welder.add(vertex, normal);
+                groupBuilder.addVertex(vertex[0], vertex[1], vertex[2]);
+            }
+            // Quads are split into the triangles 0-1-2 and 0-2-3.
+            for (int j = 2; j < faceVertexCount; j++) {
+                indices.add(faceVertices[0], faceVertices[j - 1], faceVertices[j]);
             }
-            // TODO: Support texture coordinates ("vt")
-
         }
+        groupBuilder.finish(indices.size());
+        submeshes = groupBuilder.getSubmeshes();
+        groups = groupBuilder.getGroups();
 
-        vertexCount = vertices.size() / 3;
-
-        this.centerMassX = (float)(centerMassX / vertexCount);
-        this.centerMassY = (float)(centerMassY / vertexCount);
-        this.centerMassZ = (float)(centerMassZ / vertexCount);
-
-        float[] floatArray = new float[vertices.size()];
-        for (int i = 0; i < vertices.size(); i++) {
-            floatArray[i] = vertices.get(i);
+        // Positions and normals are interleaved in a single buffer, so each vertex is read from
+        // contiguous memory.
+        vertexCount = welder.getVertexCount();
+        vertexBuffer = allocateFloatBuffer(vertexCount * FLOATS_PER_VERTEX);
+        FloatArrayList weldedPositions = welder.getPositions();
+        FloatArrayList weldedNormals = welder.getNormals();
+        for (int i = 0; i < vertexCount * COORDS_PER_VERTEX; i += COORDS_PER_VERTEX) {
+            vertexBuffer.put(weldedPositions.get(i)).put(weldedPositions.get(i + 1))
+                    .put(weldedPositions.get(i + 2));
+            vertexBuffer.put(weldedNormals.get(i)).put(weldedNormals.get(i + 1))
+                    .put(weldedNormals.get(i + 2));
         }
-        ByteBuffer vbb = ByteBuffer.allocateDirect(floatArray.length * BYTES_PER_FLOAT);
-        vbb.order(ByteOrder.nativeOrder());
-        vertexBuffer = vbb.asFloatBuffer();
-        vertexBuffer.put(floatArray);
         vertexBuffer.position(0);
 
-        float[] floatArray2 = new float[colors.size()];
-        for (int i = 0; i < colors.size(); i++) {
-            floatArray2[i] = colors.get(i);
-        }
-        ByteBuffer cbb = ByteBuffer.allocateDirect(floatArray2.length * BYTES_PER_FLOAT);
-        cbb.order(ByteOrder.nativeOrder()); // Use native byte order (NEW)
-        colorBuffer = cbb.asFloatBuffer();  // Convert byte buffer to float (NEW)
-        colorBuffer.put(floatArray2);            // Copy data into buffer (NEW)
-        colorBuffer.position(0);
-
-        indexCount = indices.size();
-
-        int[] intArray = new int[indexCount];
-        for (int i = 0; i < indexCount; i++) {
-            intArray[i] = indices.get(i);
-        }
-        vbb = ByteBuffer.allocateDirect(indexCount * BYTES_PER_INT);
-        vbb.order(ByteOrder.nativeOrder());
-        indexBuffer = vbb.asIntBuffer();
-        indexBuffer.put(intArray);
-        indexBuffer.position(0);
+        // Reorder the triangles for the vertex cache, and the vertices in order of first use.
+        vertexCacheResult = VertexCacheOptimizer.optimize(indices, submeshes, vertexCount);
+        VertexCacheOptimizer.remapVertices(vertexBuffer, FLOATS_PER_VERTEX,
+                vertexCacheResult.remap);
 
-        float[] normalArray = new float[vertices.size()];
-        int vi, ni;
-        for (int i = 0; i < indexCount; i++) {
-            vi = indices.get(i);
-            ni = normalIndices.get(i);
-            normalArray[vi * 3] = normalBucket.get(ni * 3);
-            normalArray[vi * 3 + 1] = normalBucket.get(ni * 3 + 1);
-            normalArray[vi * 3 + 2] = normalBucket.get(ni * 3 + 2);
-        }
-
-        vbb = ByteBuffer.allocateDirect(normalArray.length * BYTES_PER_FLOAT);
-        vbb.order(ByteOrder.nativeOrder());
-        normalBuffer = vbb.asFloatBuffer();
-        normalBuffer.put(normalArray);
-        normalBuffer.position(0);
+        setIndices(indices, allowIntIndices);
     }
 
-    // This is a method that takes a string and parses any integers out of it (in place, without
-    // using any additional string splitting, regexes, or int parsing), which provides a pretty
-    // significant speed gain.
-    // - The first three output integers are pre-initialized to -1.
-    // - The integers in the string are expected to be delimited by a single non-numeric character.
-    //   If a non-numeric character follows another non-numeric character, then an integer value
-    //   of -1 will be added to the output array.
-    protected static void parseInts(String str, int[] ints) {
-        int len = str.length();
-        int intIndex = 0;
-        int currentInt = -1;
-        ints[0] = -1;
-        ints[1] = -1;
-        ints[2] = -1;
+    /**
+     * Returns the ACMR and ATVR of the index buffer before and after it was optimized for the
+     * vertex cache, or null if the model was loaded from the cache.
+     */
+    @Nullable
+    public VertexCacheOptimizer.Result getVertexCacheResult() {
+        return vertexCacheResult;
+    }
 
-        for (int i = 0; i < len; i++) {
-            char c = str.charAt(i);
-            if (c >= '0' && c <= '9') {
-                if (currentInt == -1) {
-                    currentInt = (c - '0');
-                } else {
-                    currentInt *= 10;
-                    currentInt += (c - '0');
-                }
-            } else {
-                if (currentInt >= 0) {
-                    ints[intIndex++] = currentInt;
-                    currentInt = -1;
-                } else {
-                    ints[intIndex++] = -1;
-                }
-            }
-        }
-        if (currentInt >= 0) {
-            ints[intIndex] = currentInt;
-        }
+    private static FloatBuffer allocateFloatBuffer(int floatCount) {
+        ByteBuffer bb = ByteBuffer.allocateDirect(floatCount * BYTES_PER_FLOAT);
+        bb.order(ByteOrder.nativeOrder());
+        return bb.asFloatBuffer();
     }
 }
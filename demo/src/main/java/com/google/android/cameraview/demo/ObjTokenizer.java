@@ -0,0 +1,279 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Scans the records of an OBJ file directly from its bytes.
+ *
+ * Lines are found by searching for newline bytes, and the numbers in each line are parsed in
+ * place (floats with {@link FastFloatParser}), so scanning a file does not allocate any Strings
+ * or arrays per line. The only exception is {@link #nextName()}, which is used for the (rare)
+ * records that carry a name, such as "usemtl", "o" and "g".
+ *
+ * Typical usage:
+ * <pre>
+ *   ObjTokenizer tokenizer = new ObjTokenizer(bytes);
+ *   int record;
+ *   while ((record = tokenizer.nextRecord()) != ObjTokenizer.RECORD_END) {
+ *     if (record == ObjTokenizer.RECORD_VERTEX) {
+ *       float x = tokenizer.nextFloat();
+ *       ...
+ *     }
+ *   }
+ * </pre>
+ */
+public class ObjTokenizer {
+  /** Returned by {@link #nextRecord()} when there are no more lines. */
+  public static final int RECORD_END = -1;
+  /** A line that is empty, a comment, or a record type we don't care about. */
+  public static final int RECORD_OTHER = 0;
+  /** A "v" (vertex position) record. */
+  public static final int RECORD_VERTEX = 1;
+  /** A "vt" (texture coordinates) record. */
+  public static final int RECORD_TEX_COORDS = 2;
+  /** A "vn" (vertex normal) record. */
+  public static final int RECORD_NORMAL = 3;
+  /** An "f" (face) record. */
+  public static final int RECORD_FACE = 4;
+  /** A "usemtl" (use material) record. */
+  public static final int RECORD_USE_MATERIAL = 5;
+  /** An "o" (object name) record. */
+  public static final int RECORD_OBJECT = 6;
+  /** A "g" (group name) record. */
+  public static final int RECORD_GROUP = 7;
+
+  /** Index of the position component in the array filled by {@link #nextFaceVertex(int[])}. */
+  public static final int FACE_VERTEX_POSITION = 0;
+  /** Index of the texture coordinates component. */
+  public static final int FACE_VERTEX_TEX_COORDS = 1;
+  /** Index of the normal component. */
+  public static final int FACE_VERTEX_NORMAL = 2;
+  /** Value reported for a face vertex component that is absent (OBJ indices are never 0). */
+  public static final int NO_INDEX = 0;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final byte[] data;
+  private final int end;
+  // Start of the line that will be returned by the next call to nextRecord().
+  private int nextLineStart;
+  // Read position within the current line.
+  private int pos;
+  // End of the current line (exclusive, not including the line terminator).
+  private int lineEnd;
+  // 1-based number of the current line.
+  private int lineNumber;
+
+  /** Creates a tokenizer over all of the given bytes. */
+  public ObjTokenizer(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  /** Creates a tokenizer over {@code length} bytes of {@code data}, starting at {@code offset}. */
+  public ObjTokenizer(byte[] data, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > data.length) {
+      throw new IndexOutOfBoundsException("Invalid range " + offset + "+" + length
+          + " for array of length " + data.length);
+    }
+    this.data = data;
+    this.end = offset + length;
+    this.nextLineStart = offset;
+    this.pos = offset;
+    this.lineEnd = offset;
+  }
+
+  /**
+   * Creates a tokenizer over the remaining bytes of the given buffer. The buffer's backing array
+   * is used directly if it has one; otherwise the remaining bytes are copied once.
+   */
+  public static ObjTokenizer wrap(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return new ObjTokenizer(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return new ObjTokenizer(bytes);
+  }
+
+  /** Returns the 1-based number of the current line. */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Advances to the next line and identifies its record type.
+   *
+   * @return One of the RECORD_* constants, or {@link #RECORD_END} if there are no more lines.
+   */
+  public int nextRecord() {
+    if (nextLineStart >= end) {
+      pos = end;
+      lineEnd = end;
+      return RECORD_END;
+    }
+    int lineStart = nextLineStart;
+    int i = lineStart;
+    while (i < end && data[i] != '\n') {
+      i++;
+    }
+    nextLineStart = i + 1;
+    // Don't treat the CR of a CRLF line terminator as part of the line.
+    if (i > lineStart && data[i - 1] == '\r') {
+      i--;
+    }
+    lineEnd = i;
+    pos = lineStart;
+    lineNumber++;
+
+    skipSpaces();
+    int keywordStart = pos;
+    while (pos < lineEnd && !isSpace(data[pos])) {
+      pos++;
+    }
+    int keywordLength = pos - keywordStart;
+    byte first = keywordLength > 0 ? data[keywordStart] : 0;
+    if (keywordLength == 1) {
+      if (first == 'v') return RECORD_VERTEX;
+      if (first == 'f') return RECORD_FACE;
+      if (first == 'o') return RECORD_OBJECT;
+      if (first == 'g') return RECORD_GROUP;
+    } else if (keywordLength == 2 && first == 'v') {
+      byte second = data[keywordStart + 1];
+      if (second == 'n') return RECORD_NORMAL;
+      if (second == 't') return RECORD_TEX_COORDS;
+    } else if (keywordLength == 6 && matches(keywordStart, "usemtl")) {
+      return RECORD_USE_MATERIAL;
+    }
+    return RECORD_OTHER;
+  }
+
+  /** Returns whether there are more tokens in the current line. */
+  public boolean hasMoreTokens() {
+    skipSpaces();
+    return pos < lineEnd;
+  }
+
+  /**
+   * Parses the next token of the current line as a float.
+   *
+   * @throws NumberFormatException if there are no more tokens, or the token is not a number.
+   */
+  public float nextFloat() {
+    skipSpaces();
+    if (pos >= lineEnd) {
+      throw new NumberFormatException("Expected a number at line " + lineNumber);
+    }
+    int start = pos;
+    while (pos < lineEnd && !isSpace(data[pos])) {
+      pos++;
+    }
+    return FastFloatParser.parseFloat(data, start, pos);
+  }
+
+  /**
+   * Parses the next token of the current line as a face vertex ("v", "v/vt", "v//vn" or
+   * "v/vt/vn"). The indices are stored exactly as they appear in the file (1-based, or negative
+   * if relative); absent components are reported as {@link #NO_INDEX}.
+   *
+   * @param out Array of at least 3 elements, which receives the position, texture coordinates and
+   *            normal indices, at {@link #FACE_VERTEX_POSITION}, {@link #FACE_VERTEX_TEX_COORDS}
+   *            and {@link #FACE_VERTEX_NORMAL} respectively.
+   * @return False if there are no more tokens in the line.
+   * @throws NumberFormatException if the token is malformed.
+   */
+  public boolean nextFaceVertex(int[] out) {
+    skipSpaces();
+    if (pos >= lineEnd) {
+      return false;
+    }
+    out[FACE_VERTEX_POSITION] = NO_INDEX;
+    out[FACE_VERTEX_TEX_COORDS] = NO_INDEX;
+    out[FACE_VERTEX_NORMAL] = NO_INDEX;
+    int component = 0;
+    int value = 0;
+    boolean negative = false;
+    boolean sawDigit = false;
+    for (; pos < lineEnd; pos++) {
+      byte c = data[pos];
+      if (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+        sawDigit = true;
+      } else if (c == '-' && !sawDigit && !negative) {
+        negative = true;
+      } else if (c == '/' && component < FACE_VERTEX_NORMAL) {
+        if (sawDigit) {
+          out[component] = negative ? -value : value;
+        }
+        component++;
+        value = 0;
+        negative = false;
+        sawDigit = false;
+      } else if (isSpace(c)) {
+        break;
+      } else {
+        throw new NumberFormatException("Invalid face vertex at line " + lineNumber);
+      }
+    }
+    if (sawDigit) {
+      out[component] = negative ? -value : value;
+    }
+    if (out[FACE_VERTEX_POSITION] == NO_INDEX) {
+      throw new NumberFormatException("Face vertex without a position at line " + lineNumber);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the rest of the current line, with surrounding whitespace removed. The name is decoded
+   * as UTF-8, like MTL files, so that materials match their "newmtl" names. This is the only
+   * method that allocates, so it should only be used for records that are not repeated often.
+   */
+  public String nextName() {
+    skipSpaces();
+    int last = lineEnd;
+    while (last > pos && isSpace(data[last - 1])) {
+      last--;
+    }
+    String name = new String(data, pos, last - pos, UTF_8);
+    pos = lineEnd;
+    return name;
+  }
+
+  /**
+   * Resolves an index as read by {@link #nextFaceVertex(int[])} to a 0-based index.
+   *
+   * @param index The index from the file.
+   * @param count The number of elements of that kind defined so far, used to resolve relative
+   *              (negative) indices.
+   * @param missing The value to return if the index is {@link #NO_INDEX}.
+   */
+  public static int resolveIndex(int index, int count, int missing) {
+    if (index > 0) {
+      return index - 1;
+    } else if (index < 0) {
+      return count + index;
+    }
+    return missing;
+  }
+
+  private void skipSpaces() {
+    while (pos < lineEnd && isSpace(data[pos])) {
+      pos++;
+    }
+  }
+
+  private boolean matches(int offset, String keyword) {
+    for (int i = 0; i < keyword.length(); i++) {
+      if (data[offset + i] != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSpace(byte c) {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+  }
+}
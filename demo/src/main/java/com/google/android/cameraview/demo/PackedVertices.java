@@ -0,0 +1,165 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Vertex positions and normals in a compact interleaved format, to be drawn with
+ * {@code model_vertex_packed.glsl}, which decodes them on the GPU.
+ *
+ * Each vertex takes {@link #STRIDE} bytes: its position as 3 normalized signed shorts, followed by
+ * its normal as 2 normalized signed bytes (at {@link #NORMAL_OFFSET}).
+ *
+ * Positions are relative to the bounding box of the vertices: each coordinate is
+ * {@code offset + value * scale}, with {@link #offset} the center of the box and {@link #scale}
+ * half its size. The error is at most 1/65535 of the size of the box on each axis.
+ *
+ * Normals are encoded with the octahedral mapping (the unit sphere is projected on an octahedron,
+ * which is then unfolded to a square). The error is below a degree.
+ *
+ * This is 8 bytes per vertex instead of 24 for float positions and normals.
+ *
+ * Values are quantized so that the OpenGL ES 2 conversion of normalized integers,
+ * {@code (2c + 1) / (2^b - 1)}, gives back the closest representable value.
+ */
+public class PackedVertices {
+  /** Number of bytes per vertex. */
+  public static final int STRIDE = 8;
+  /** Offset of the normal in each vertex, in bytes. */
+  public static final int NORMAL_OFFSET = 3 * MyGLUtils.SHORT_SIZE;
+
+  /** The interleaved vertices (direct, native order). */
+  public final ByteBuffer vertices;
+  /** Center of the bounding box of the positions (x, y, z). */
+  public final float[] offset;
+  /** Half the size of the bounding box of the positions (x, y, z). */
+  public final float[] scale;
+  /** Number of vertices. */
+  public final int vertexCount;
+
+  private PackedVertices(ByteBuffer vertices, float[] offset, float[] scale, int vertexCount) {
+    this.vertices = vertices;
+    this.offset = offset;
+    this.scale = scale;
+    this.vertexCount = vertexCount;
+  }
+
+  /**
+   * Packs the given vertices.
+   *
+   * @param vertices The interleaved float vertices: position (x, y, z) then normal (x, y, z), so
+   *     {@link MyGLUtils#FLOATS_PER_VERTEX} floats per vertex. The normals don't have to be
+   *     normalized.
+   * @param vertexCount The number of vertices.
+   */
+  public static PackedVertices pack(FloatBuffer vertices, int vertexCount) {
+    int floatsPerVertex = MyGLUtils.FLOATS_PER_VERTEX;
+    float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+    float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+    for (int v = 0; v < vertexCount; v++) {
+      for (int axis = 0; axis < 3; axis++) {
+        float value = vertices.get(v * floatsPerVertex + axis);
+        min[axis] = Math.min(min[axis], value);
+        max[axis] = Math.max(max[axis], value);
+      }
+    }
+    float[] offset = new float[3];
+    float[] scale = new float[3];
+    for (int axis = 0; axis < 3 && vertexCount > 0; axis++) {
+      offset[axis] = (min[axis] + max[axis]) / 2;
+      scale[axis] = (max[axis] - min[axis]) / 2;
+    }
+
+    ByteBuffer packed = ByteBuffer.allocateDirect(vertexCount * STRIDE)
+        .order(ByteOrder.nativeOrder());
+    float[] octahedral = new float[2];
+    for (int v = 0; v < vertexCount; v++) {
+      int source = v * floatsPerVertex;
+      for (int axis = 0; axis < 3; axis++) {
+        float value = scale[axis] > 0
+            ? (vertices.get(source + axis) - offset[axis]) / scale[axis] : 0;
+        packed.putShort(v * STRIDE + axis * MyGLUtils.SHORT_SIZE, (short) quantize(value, 16));
+      }
+      encodeOctahedral(vertices.get(source + 3), vertices.get(source + 4),
+          vertices.get(source + 5), octahedral);
+      packed.put(v * STRIDE + NORMAL_OFFSET, (byte) quantize(octahedral[0], 8));
+      packed.put(v * STRIDE + NORMAL_OFFSET + 1, (byte) quantize(octahedral[1], 8));
+    }
+    return new PackedVertices(packed, offset, scale, vertexCount);
+  }
+
+  /** Returns the number of bytes of the packed vertices. */
+  public int getByteCount() {
+    return vertexCount * STRIDE;
+  }
+
+  /** Decodes the position of the given vertex into {@code out} (3 floats). */
+  public void getPosition(int vertex, float[] out) {
+    for (int axis = 0; axis < 3; axis++) {
+      short value = vertices.getShort(vertex * STRIDE + axis * MyGLUtils.SHORT_SIZE);
+      out[axis] = offset[axis] + dequantize(value, 16) * scale[axis];
+    }
+  }
+
+  /** Decodes the normal of the given vertex into {@code out} (3 floats, normalized). */
+  public void getNormal(int vertex, float[] out) {
+    decodeOctahedral(dequantize(vertices.get(vertex * STRIDE + NORMAL_OFFSET), 8),
+        dequantize(vertices.get(vertex * STRIDE + NORMAL_OFFSET + 1), 8), out);
+  }
+
+  /**
+   * Maps a unit vector to the octahedral square [-1, 1]^2. The vector doesn't have to be
+   * normalized; a zero vector is mapped to (0, 0), the encoding of (0, 0, 1).
+   */
+  static void encodeOctahedral(float x, float y, float z, float[] out) {
+    float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+    if (sum == 0) {
+      out[0] = 0;
+      out[1] = 0;
+      return;
+    }
+    float u = x / sum;
+    float v = y / sum;
+    if (z < 0) {
+      // Fold the lower half of the octahedron over the corners of the square.
+      float foldedU = (1 - Math.abs(v)) * signNotZero(u);
+      v = (1 - Math.abs(u)) * signNotZero(v);
+      u = foldedU;
+    }
+    out[0] = u;
+    out[1] = v;
+  }
+
+  /** Inverse of {@link #encodeOctahedral}, as done by the shader. The result is normalized. */
+  static void decodeOctahedral(float u, float v, float[] out) {
+    float x = u;
+    float y = v;
+    float z = 1 - Math.abs(u) - Math.abs(v);
+    if (z < 0) {
+      x = (1 - Math.abs(v)) * Math.signum(u);
+      y = (1 - Math.abs(u)) * Math.signum(v);
+    }
+    float length = (float) Math.sqrt(x * x + y * y + z * z);
+    out[0] = x / length;
+    out[1] = y / length;
+    out[2] = z / length;
+  }
+
+  // Returns the signed integer of the given number of bits that OpenGL ES 2 converts to the
+  // closest value to the given one, in [-1, 1].
+  private static int quantize(float value, int bits) {
+    int steps = (1 << bits) - 1;
+    int max = (1 << (bits - 1)) - 1;
+    int quantized = Math.round((value * steps - 1) / 2);
+    return Math.max(-max - 1, Math.min(max, quantized));
+  }
+
+  private static float dequantize(int value, int bits) {
+    return (2 * value + 1) / (float) ((1 << bits) - 1);
+  }
+
+  private static float signNotZero(float value) {
+    return value < 0 ? -1 : 1;
+  }
+}
@@ -0,0 +1,80 @@
+package com.google.android.cameraview.demo;
+
+import java.util.Arrays;
+
+/**
+ * Groups the vertices of a mesh by position: vertices whose positions are bit-identical (with -0
+ * and +0 considered equal) get the same position index, even if the file gave them different
+ * indices, as exporters do on texture or material seams. Positions are looked up in an open
+ * addressing hash table, like the vertices of a {@link VertexWelder}.
+ */
+final class PositionGroups {
+  private static final int EMPTY = -1;
+
+  /** Number of distinct positions. */
+  final int positionCount;
+  /** Position index of each vertex. Positions are numbered in order of first use. */
+  final int[] vertexPositions;
+
+  private PositionGroups(int positionCount, int[] vertexPositions) {
+    this.positionCount = positionCount;
+    this.vertexPositions = vertexPositions;
+  }
+
+  /**
+   * Groups the given vertices.
+   *
+   * @param positions The position of each vertex (3 floats per vertex).
+   * @param vertexCount The number of vertices.
+   */
+  static PositionGroups find(float[] positions, int vertexCount) {
+    int[] vertexPositions = new int[vertexCount];
+    int tableSize = 64;
+    while (tableSize < vertexCount * 2) {
+      tableSize *= 2;
+    }
+    int[] table = new int[tableSize];
+    Arrays.fill(table, EMPTY);
+    int[] positionFirstVertex = new int[vertexCount];
+    int mask = tableSize - 1;
+    int positionCount = 0;
+    for (int v = 0; v < vertexCount; v++) {
+      int slot = hash(positions, v) & mask;
+      while (table[slot] != EMPTY
+          && !samePosition(positions, positionFirstVertex[table[slot]], v)) {
+        slot = (slot + 1) & mask;
+      }
+      if (table[slot] == EMPTY) {
+        table[slot] = positionCount;
+        positionFirstVertex[positionCount++] = v;
+      }
+      vertexPositions[v] = table[slot];
+    }
+    return new PositionGroups(positionCount, vertexPositions);
+  }
+
+  private static int hash(float[] positions, int vertex) {
+    int h = bits(positions[vertex * 3]);
+    h = h * 31 + bits(positions[vertex * 3 + 1]);
+    h = h * 31 + bits(positions[vertex * 3 + 2]);
+    // Spread the high bits down, since the table only uses the low ones.
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+  }
+
+  private static boolean samePosition(float[] positions, int vertex1, int vertex2) {
+    for (int i = 0; i < 3; i++) {
+      if (bits(positions[vertex1 * 3 + i]) != bits(positions[vertex2 * 3 + i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Adding 0 turns -0 into +0, so that they are treated as the same value.
+  private static int bits(float value) {
+    return Float.floatToIntBits(value + 0.0f);
+  }
+}
@@ -0,0 +1,369 @@
+package com.google.android.cameraview.demo;
+
+import android.annotation.TargetApi;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RawRes;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide registry of the linked GL programs, so that each combination of shader sources,
+ * defines and attribute bindings is compiled once per GL context, however many models or shaders
+ * use it.
+ *
+ * When the context supports program binaries (GL ES 3.0, on API 18 and above), linked programs
+ * are also saved to a directory, and loaded from there in later contexts and processes instead of
+ * compiling their GLSL again. A saved binary is tagged with the vendor, renderer and version of
+ * the driver, and with the build fingerprint of the system, and is ignored (and deleted) when any
+ * of them changes, or when the driver rejects it.
+ *
+ * The registry must be told when a GL context is created, since the programs of the previous one
+ * are gone with it. It can only be used on the GL thread of the current context.
+ */
+public class ProgramRegistry {
+  private static final String TAG = "ProgramRegistry";
+
+  // "PRGB": program binary.
+  private static final int MAGIC = 0x50524742;
+  /** Version of the file format. Must be increased whenever it changes. */
+  static final int VERSION = 1;
+  private static final String FILE_EXTENSION = ".bin";
+
+  private static ProgramRegistry instance;
+
+  // Directory where program binaries are saved, or null to not save them.
+  @Nullable private final File directory;
+  // Programs of the current context, by key (see getKey()).
+  private final Map<String, ShaderProgram> programs = new HashMap<>();
+  // Sources of the shaders read from raw resources, which don't change while the process runs.
+  private final Map<Integer, String> resourceSources = new HashMap<>();
+  // Identity of the driver of the current context, which program binaries are only valid for.
+  @Nullable private String driver;
+  // Whether program binaries can be loaded and saved in the current context.
+  private boolean binariesSupported;
+
+  /** A program binary, as saved to or loaded from a file. */
+  static class ProgramBinary {
+    final int format;
+    final byte[] data;
+
+    ProgramBinary(int format, byte[] data) {
+      this.format = format;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Returns the registry of the process, which saves program binaries in the cache directory of
+   * the app.
+   */
+  @NonNull
+  public static synchronized ProgramRegistry getInstance() {
+    if (instance == null) {
+      instance = new ProgramRegistry(new File(ARDemoApp.getInstance().getCacheDir(), "programs"));
+    }
+    return instance;
+  }
+
+  /**
+   * Creates a registry that saves program binaries in the given directory (created when needed),
+   * or doesn't save them if it is null.
+   */
+  public ProgramRegistry(@Nullable File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Forgets the programs of the previous GL context, and checks whether the new one supports
+   * program binaries. Must be called on the GL thread when the context is created, typically
+   * from onSurfaceCreated(), before any program is requested.
+   */
+  public synchronized void onContextCreated() {
+    programs.clear();
+    driver = GLES20.glGetString(GLES20.GL_VENDOR) + "\n" + GLES20.glGetString(GLES20.GL_RENDERER)
+        + "\n" + GLES20.glGetString(GLES20.GL_VERSION) + "\n" + Build.FINGERPRINT;
+    binariesSupported = false;
+    if (directory != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+        && isEs3(GLES20.glGetString(GLES20.GL_VERSION))) {
+      int[] formatCount = new int[1];
+      GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+      binariesSupported = formatCount[0] > 0;
+    }
+  }
+
+  // Returns whether the given GL_VERSION string is that of a GL ES 3.0 context or above.
+  private static boolean isEs3(@Nullable String version) {
+    String prefix = "OpenGL ES ";
+    return version != null && version.startsWith(prefix) && version.length() > prefix.length()
+        && version.charAt(prefix.length()) >= '3' && version.charAt(prefix.length()) <= '9';
+  }
+
+  /**
+   * Same as {@link #getProgram(String, String, String[], String[])}, with the shaders read from
+   * raw resources (only once per process).
+   */
+  @NonNull
+  public synchronized ShaderProgram getProgram(@RawRes int vertexShader, @RawRes int fragmentShader,
+      @Nullable String[] defines, @Nullable String[] attributes) {
+    return getProgram(getResourceSource(vertexShader), getResourceSource(fragmentShader), defines,
+        attributes);
+  }
+
+  private String getResourceSource(@RawRes int resourceId) {
+    String source = resourceSources.get(resourceId);
+    if (source == null) {
+      source = Util.readTextFileFromRawRes(resourceId);
+      resourceSources.put(resourceId, source);
+    }
+    return source;
+  }
+
+  /**
+   * Returns the program made of the given shaders, compiling and linking it (or loading its saved
+   * binary) if the current context doesn't have it yet. The program belongs to the registry, and
+   * must not be deleted.
+   *
+   * @param vertexSource The GLSL source of the vertex shader.
+   * @param fragmentSource The GLSL source of the fragment shader.
+   * @param defines Macros to define in both shaders, each as "NAME" or "NAME VALUE", or null.
+   * @param attributes Attributes to bind to locations 0, 1, ... before linking, or null.
+   * @throws RuntimeException if the shaders don't compile or the program doesn't link.
+   */
+  @NonNull
+  public synchronized ShaderProgram getProgram(@NonNull String vertexSource,
+      @NonNull String fragmentSource, @Nullable String[] defines, @Nullable String[] attributes) {
+    String key = getKey(vertexSource, fragmentSource, defines, attributes);
+    ShaderProgram program = programs.get(key);
+    if (program != null) {
+      return program;
+    }
+    File file = directory != null
+        ? new File(directory, Long.toHexString(MeshCache.hash(key)) + FILE_EXTENSION) : null;
+    int handle = binariesSupported ? loadProgramBinary(file) : 0;
+    if (handle == 0) {
+      handle = linkProgram(applyDefines(vertexSource, defines),
+          applyDefines(fragmentSource, defines), attributes);
+      if (binariesSupported) {
+        saveProgramBinary(handle, file);
+      }
+    }
+    program = new ShaderProgram(handle);
+    programs.put(key, program);
+    return program;
+  }
+
+  // Returns a key that identifies a program by everything it is built from.
+  static String getKey(String vertexSource, String fragmentSource, @Nullable String[] defines,
+      @Nullable String[] attributes) {
+    StringBuilder key = new StringBuilder(vertexSource).append('\0').append(fragmentSource);
+    key.append('\0');
+    if (defines != null) {
+      for (String define : defines) {
+        key.append(define).append('\n');
+      }
+    }
+    key.append('\0');
+    if (attributes != null) {
+      for (String attribute : attributes) {
+        key.append(attribute).append('\n');
+      }
+    }
+    return key.toString();
+  }
+
+  // Returns the source with the given macros defined, after its #version directive if it has
+  // one, since nothing may precede it.
+  static String applyDefines(String source, @Nullable String[] defines) {
+    if (defines == null || defines.length == 0) {
+      return source;
+    }
+    StringBuilder lines = new StringBuilder();
+    for (String define : defines) {
+      lines.append("#define ").append(define).append('\n');
+    }
+    int start = 0;
+    if (source.trim().startsWith("#version")) {
+      int end = source.indexOf('\n');
+      start = end < 0 ? source.length() : end + 1;
+    }
+    String head = source.substring(0, start);
+    if (start > 0 && !head.endsWith("\n")) {
+      head += "\n";
+    }
+    return head + lines + source.substring(start);
+  }
+
+  private int linkProgram(String vertexSource, String fragmentSource,
+      @Nullable String[] attributes) {
+    int vertexShader = Util.loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+    int fragmentShader = Util.loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+    int program = GLES20.glCreateProgram();
+    GLES20.glAttachShader(program, vertexShader);
+    GLES20.glAttachShader(program, fragmentShader);
+    if (attributes != null) {
+      for (int i = 0; i < attributes.length; i++) {
+        GLES20.glBindAttribLocation(program, i, attributes[i]);
+      }
+    }
+    if (binariesSupported) {
+      setBinaryRetrievable(program);
+    }
+    GLES20.glLinkProgram(program);
+    // The shaders are deleted along with the program, and no longer needed once it is linked.
+    GLES20.glDetachShader(program, vertexShader);
+    GLES20.glDetachShader(program, fragmentShader);
+    GLES20.glDeleteShader(vertexShader);
+    GLES20.glDeleteShader(fragmentShader);
+    if (!isLinked(program)) {
+      Log.e(TAG, "Error linking program: " + GLES20.glGetProgramInfoLog(program));
+      GLES20.glDeleteProgram(program);
+      throw new RuntimeException("Program link failed.");
+    }
+    return program;
+  }
+
+  private static boolean isLinked(int program) {
+    int[] status = new int[1];
+    GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+    return status[0] != 0;
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private static void setBinaryRetrievable(int program) {
+    GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+  }
+
+  // Creates a program from the binary saved in the given file, or returns 0 if there is none or
+  // the driver rejects it.
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private int loadProgramBinary(@Nullable File file) {
+    if (file == null || !file.isFile()) {
+      return 0;
+    }
+    ProgramBinary binary;
+    try {
+      binary = readBinary(file, driver);
+    } catch (IOException e) {
+      Log.w(TAG, "Discarding unreadable program binary " + file, e);
+      binary = null;
+    }
+    if (binary == null) {
+      file.delete();
+      return 0;
+    }
+    ByteBuffer data = ByteBuffer.allocateDirect(binary.data.length).order(ByteOrder.nativeOrder());
+    data.put(binary.data).position(0);
+    int program = GLES20.glCreateProgram();
+    GLES30.glProgramBinary(program, binary.format, data, binary.data.length);
+    if (!isLinked(program)) {
+      Log.d(TAG, "Driver rejected program binary " + file);
+      GLES20.glDeleteProgram(program);
+      file.delete();
+      return 0;
+    }
+    return program;
+  }
+
+  // Saves the binary of the given linked program to the given file, if the driver provides one.
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private void saveProgramBinary(int program, @Nullable File file) {
+    if (file == null) {
+      return;
+    }
+    int[] length = new int[1];
+    GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+    if (length[0] <= 0) {
+      return;
+    }
+    ByteBuffer data = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+    // A failed call writes nothing, so the returned length stays 0. This doesn't use
+    // glGetError(), which may also report errors from earlier calls.
+    int[] binaryLength = new int[1];
+    int[] format = new int[1];
+    GLES30.glGetProgramBinary(program, length[0], binaryLength, 0, format, 0, data);
+    if (binaryLength[0] <= 0) {
+      return;
+    }
+    byte[] bytes = new byte[binaryLength[0]];
+    data.position(0);
+    data.get(bytes);
+    try {
+      writeBinary(file, driver, new ProgramBinary(format[0], bytes));
+    } catch (IOException e) {
+      Log.w(TAG, "Could not save program binary " + file, e);
+    }
+  }
+
+  /**
+   * Reads a program binary saved by {@link #writeBinary}, or returns null if it was saved with
+   * another version of the format or for another driver.
+   */
+  @Nullable
+  static ProgramBinary readBinary(File file, String driver) throws IOException {
+    DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION
+          || !input.readUTF().equals(driver)) {
+        return null;
+      }
+      int format = input.readInt();
+      int length = input.readInt();
+      if (length <= 0 || length > file.length()) {
+        throw new IOException("Invalid binary length: " + length);
+      }
+      byte[] data = new byte[length];
+      input.readFully(data);
+      return new ProgramBinary(format, data);
+    } finally {
+      Util.closeSilently(input);
+    }
+  }
+
+  /**
+   * Saves a program binary for the given driver. The file is written under a temporary name and
+   * then renamed, so a partially written file is never read.
+   */
+  static void writeBinary(File file, String driver, ProgramBinary binary) throws IOException {
+    File directory = file.getParentFile();
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory " + directory);
+    }
+    File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      try {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(driver);
+        output.writeInt(binary.format);
+        output.writeInt(binary.data.length);
+        output.write(binary.data);
+      } finally {
+        output.close();
+      }
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Could not rename " + tempFile + " to " + file);
+      }
+    } finally {
+      tempFile.delete();
+    }
+  }
+}
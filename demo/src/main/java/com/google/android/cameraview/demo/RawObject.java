@@ -14,10 +14,15 @@
 
 package com.google.android.cameraview.demo;
 
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Represents a "raw object" in an OpenGL-friendly format.
@@ -30,21 +35,69 @@ import java.nio.ShortBuffer;
  * can then use to create the OpenGL objects (IBO, VBOs).
  */
 public class RawObject {
-  // Buffer with the vertex positions (3 floats per vertex: x, y, z).
-  public FloatBuffer positions;
-  // Buffer with the vertex colors (4 floats per vertex, RGBA).
-  public FloatBuffer colors;
-  // Buffer with the vertex normals (3 floats per vertex: x, y, z). Normalized.
-  public FloatBuffer normals;
-  // Index buffer with the draw order (each index is an unsigned short).
+  // Buffer with the interleaved vertices: the position (x, y, z), then the normal (x, y, z,
+  // normalized), so MyGLUtils.FLOATS_PER_VERTEX floats per vertex.
+  public FloatBuffer vertices;
+  // Index buffer with the draw order (each index is an unsigned short, relative to the base vertex
+  // of its submesh).
   public ShortBuffer indices;
+  // Ranges of the index buffer to draw with each material. The color of each material is given
+  // here once, rather than for each vertex. Objects with more than 65535 vertices are split into
+  // chunks, and each submesh gives the base vertex of its chunk.
+  public Submesh[] submeshes;
+  // Objects and groups of the OBJ file, as ranges of the submeshes, each with its bounds (in the
+  // translated and scaled coordinates of the positions).
+  public MeshGroup[] groups;
   // Number of vertices in the buffers.
   public int vertexCount;
+  // Number of vertices the object would have without welding (one per face corner), to track how
+  // much welding saves. Not stored in the cache.
+  public int unweldedVertexCount;
+  // How the vertex cache optimization went, for the caller to report. Not stored in the cache.
+  public VertexCacheOptimizer.Result vertexCacheResult;
   // Number of indices in the index buffer.
   public int indexCount;
 
+  /**
+   * Returns the buffers of this object, to be stored in a {@link MeshCache}.
+   */
+  public MeshCache.Entry toCacheEntry() {
+    return new MeshCache.Entry(new float[0], new Buffer[] { vertices, indices,
+        Submesh.getRanges(submeshes), Submesh.getColors(submeshes),
+        MeshGroup.getRanges(groups), MeshGroup.getBounds(groups), MeshGroup.getNames(groups) });
+  }
+
+  /**
+   * Creates a raw object from a mesh previously stored with {@link #toCacheEntry()}. The buffers
+   * of the entry are used directly, without copying.
+   * @param entry The cached mesh.
+   * @return The raw object.
+   * @throws IOException if the entry is not a valid raw object.
+   */
+  public static RawObject fromCacheEntry(MeshCache.Entry entry) throws IOException {
+    RawObject result = new RawObject();
+    result.vertices = entry.getFloatBuffer(0);
+    result.indices = entry.getShortBuffer(1);
+    result.vertexCount = result.vertices.limit() / MyGLUtils.FLOATS_PER_VERTEX;
+    result.indexCount = result.indices.limit();
+    result.submeshes = Submesh.fromBuffers(entry.getIntBuffer(2), entry.getFloatBuffer(3),
+        result.indexCount, result.vertexCount);
+    result.groups = MeshGroup.fromBuffers(entry.getIntBuffer(4), entry.getFloatBuffer(5),
+        entry.getByteBuffer(6), result.submeshes.length);
+    if (result.vertices.limit() % MyGLUtils.FLOATS_PER_VERTEX != 0) {
+      throw new IOException("Invalid cached raw object.");
+    }
+    return result;
+  }
+
   /**
    * Converts an OBJ + MTL combination to raw format.
+   *
+   * Face corners that have exactly the same position and normal are welded into a single vertex,
+   * and triangles that are degenerate (two corners at the same position) are dropped, along with
+   * any vertex that only they used. The number of vertices before and after welding is kept in
+   * {@link #unweldedVertexCount} and {@link #vertexCount}. Faces without normals get smooth ones,
+   * computed on the calling thread (see {@link NormalGenerator}).
    * @param geometry The geometry to convert.
    * @param materials The materials library.
    * @param translation The translation to apply to each vertex. Translation is applied BEFORE scale.
@@ -53,92 +106,136 @@ public class RawObject {
    */
   public static RawObject convertObjAndMtl(ObjGeometry geometry, MtlLibrary materials,
         ObjGeometry.Vec3 translation, float scaleFactor) {
+    return convertObjAndMtl(geometry, materials, translation, scaleFactor, null);
+  }
+
+  /**
+   * Converts an OBJ + MTL combination to raw format, like
+   * {@link #convertObjAndMtl(ObjGeometry, MtlLibrary, ObjGeometry.Vec3, float)}, but computing
+   * missing normals in parallel on the given executor (or on the calling thread, if null).
+   */
+  public static RawObject convertObjAndMtl(ObjGeometry geometry, MtlLibrary materials,
+        ObjGeometry.Vec3 translation, float scaleFactor, @Nullable ExecutorService executor) {
     RawObject result = new RawObject();
 
-    // First, let's figure out how many entries we will need.
-    result.vertexCount = 0;
-    result.indexCount = 0;
+    // First, let's figure out how many entries we will need at most: one vertex per face corner.
+    int maxIndexCount = 0;
+    int maxVerticesInFace = 0;
+    result.unweldedVertexCount = 0;
     for (int i = 0; i < geometry.getFaceCount(); i++) {
-      int numVerticesInFace = geometry.getFace(i).faceVertices.length;
+      int numVerticesInFace = geometry.getFaceVertexCount(i);
       if (numVerticesInFace < 3) continue;
-      result.vertexCount += numVerticesInFace;
+      result.unweldedVertexCount += numVerticesInFace;
+      maxVerticesInFace = Math.max(maxVerticesInFace, numVerticesInFace);
       // Each n-gon is broken into (n-2) triangles, each of which need 3 indices.
-      result.indexCount += 3 * (numVerticesInFace - 2);
+      maxIndexCount += 3 * (numVerticesInFace - 2);
     }
 
-    // Allocate the buffers with the exact capacity we will need.
-    result.positions = ByteBuffer
-        .allocateDirect(MyGLUtils.FLOAT_SIZE * MyGLUtils.COORDS_PER_VERTEX * result.vertexCount)
-        .order(ByteOrder.nativeOrder())
-        .asFloatBuffer();
-    result.colors = ByteBuffer
-        .allocateDirect(MyGLUtils.FLOAT_SIZE * MyGLUtils.NUM_COLOR_COMPONENTS * result.vertexCount)
-        .order(ByteOrder.nativeOrder())
-        .asFloatBuffer();
-    result.normals = ByteBuffer
-        .allocateDirect(MyGLUtils.FLOAT_SIZE * MyGLUtils.COORDS_PER_VERTEX * result.vertexCount)
-        .order(ByteOrder.nativeOrder())
-        .asFloatBuffer();
-    result.indices = ByteBuffer
-        .allocateDirect(MyGLUtils.SHORT_SIZE * result.indexCount)
-        .order(ByteOrder.nativeOrder())
-        .asShortBuffer();
-
-    // Start writing the buffers at position 0.
-    result.positions.position(0);
-    result.colors.position(0);
-    result.normals.position(0);
-    result.indices.position(0);
+    // Faces without normals get smooth ones. Translation and (uniform) scale don't change them.
+    NormalGenerator normals = NormalGenerator.isNeeded(geometry)
+        ? NormalGenerator.generate(geometry, NormalGenerator.DEFAULT_CREASE_ANGLE, executor)
+        : null;
 
     // Now comes the fun part: converting the object.
-    short currentVertexIndex = 0;
-    for (int i = 0; i < geometry.getFaceCount(); i++) {
-      ObjGeometry.Face face = geometry.getFace(i);
-      float[] faceColor = materials.getMaterialByName(face.materialName).diffuseColor;
-      int numVerticesInFace = face.faceVertices.length;
+    // The faces are converted sorted by group and material, so that the triangles of each material
+    // of each group are contiguous in the index buffer and can be drawn with a single draw call.
+    // The position and normal of each face vertex are copied through these scratch arrays, so we
+    // don't allocate anything per vertex. Each corner is welded to an existing vertex if there is
+    // one with the same position and normal.
+    float[] pos = new float[3];
+    float[] normal = new float[3];
+    int[] faceVertices = new int[maxVerticesInFace];
+    VertexWelder welder = new VertexWelder(geometry.getVertexCount());
+    IntArrayList indices = new IntArrayList(maxIndexCount);
+    MeshGroup.Builder groupBuilder = new MeshGroup.Builder(geometry, materials);
+    for (int i : geometry.getFacesByGroupAndMaterial()) {
+      int numVerticesInFace = geometry.getFaceVertexCount(i);
       if (numVerticesInFace < 3) continue;
-      short startVertexIndex = currentVertexIndex;
+      groupBuilder.startFace(i, indices.size());
       for (int j = 0; j < numVerticesInFace; j++) {
-        ObjGeometry.FaceVertex faceVertex = face.faceVertices[j];
-        ObjGeometry.Vec3 pos = new ObjGeometry.Vec3(geometry.getVertex(faceVertex.vertexIndex));
-        ObjGeometry.Vec3 normal;
-        if (faceVertex.normalIndex != ObjGeometry.MISSING) {
-          normal = geometry.getNormal(faceVertex.normalIndex);
+        geometry.getVertex(geometry.getFaceVertexIndex(i, j), pos);
+        int normalIndex = geometry.getFaceNormalIndex(i, j);
+        if (normalIndex != ObjGeometry.MISSING) {
+          geometry.getNormal(normalIndex, normal);
         } else {
-          // Missing normal.
-          // TODO: recompute.
-          normal = new ObjGeometry.Vec3(0, 0, 1);
+          normals.getNormal(i, j, normal);
         }
         translateAndScale(pos, translation, scaleFactor);
-        result.positions.put(pos.x).put(pos.y).put(pos.z);
-        result.normals.put(normal.x).put(normal.y).put(normal.z);
-        result.colors.put(faceColor[0]).put(faceColor[1]).put(faceColor[2]).put(faceColor[3]);
-        ++currentVertexIndex;
+        faceVertices[j] = welder.add(pos, normal);
       }
       // We triangulate the face as a triangle fan with the pivot at [0].
       // So the triangles are 0-1-2, 0-2-3, 0-3-4, ...
       // If the face has numVerticesInFace vertices, it will be represented as
-      // (numVerticesInFace - 2) triangles.
+      // (numVerticesInFace - 2) triangles, minus the degenerate ones.
       for (int j = 0; j < numVerticesInFace - 2; j++) {
         // This triangle is 0,j+1,j+2.
-        result.indices
-            // Triangle fan pivot is always the first vertex of the face.
-            .put(startVertexIndex)
-            // Second vertex of triangle.
-            .put((short)(startVertexIndex + j + 1))
-            // Third vertex of triangle.
-            .put((short)(startVertexIndex + j + 2));
+        int a = faceVertices[0];
+        int b = faceVertices[j + 1];
+        int c = faceVertices[j + 2];
+        if (welder.samePosition(a, b) || welder.samePosition(b, c)
+            || welder.samePosition(a, c)) {
+          continue;
+        }
+        indices.add(a, b, c);
+        addToBounds(groupBuilder, welder, a);
+        addToBounds(groupBuilder, welder, b);
+        addToBounds(groupBuilder, welder, c);
       }
     }
+    groupBuilder.finish(indices.size());
+    result.submeshes = groupBuilder.getSubmeshes();
+    result.groups = groupBuilder.getGroups();
+    // Vertices whose triangles were all degenerate are not used anymore.
+    welder.removeUnreferenced(indices);
+    // Reorder the triangles for the vertex cache, and the vertices in order of first use.
+    result.vertexCacheResult = VertexCacheOptimizer.optimize(indices, result.submeshes,
+        welder.getVertexCount());
+
+    // Allocate the buffer with the exact capacity we need, and interleave the positions and
+    // normals into it, so that each vertex is read from contiguous memory.
+    int weldedVertexCount = welder.getVertexCount();
+    FloatBuffer vertices = ByteBuffer
+        .allocateDirect(MyGLUtils.VERTEX_STRIDE * weldedVertexCount)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+    FloatArrayList weldedPositions = welder.getPositions();
+    FloatArrayList weldedNormals = welder.getNormals();
+    for (int i = 0; i < weldedVertexCount * MyGLUtils.COORDS_PER_VERTEX; i += 3) {
+      vertices.put(weldedPositions.get(i)).put(weldedPositions.get(i + 1))
+          .put(weldedPositions.get(i + 2));
+      vertices.put(weldedNormals.get(i)).put(weldedNormals.get(i + 1))
+          .put(weldedNormals.get(i + 2));
+    }
+    vertices.position(0);
+    VertexCacheOptimizer.remapVertices(vertices, MyGLUtils.FLOATS_PER_VERTEX,
+        result.vertexCacheResult.remap);
+
+    // Indices are unsigned shorts, so objects with more than 65535 vertices are split into chunks
+    // (duplicating the vertices they share).
+    MeshSplitter split = MeshSplitter.split(indices, weldedVertexCount, result.submeshes,
+        result.groups, MeshSplitter.MAX_CHUNK_VERTICES);
+    result.vertices = split.gatherVertices(vertices, MyGLUtils.FLOATS_PER_VERTEX);
+    result.indices = split.indices;
+    result.submeshes = split.submeshes;
+    result.groups = split.groups;
+    result.vertexCount = split.getVertexCount();
+    result.indexCount = indices.size();
     return result;
   }
 
+  private static void addToBounds(MeshGroup.Builder groupBuilder, VertexWelder welder,
+      int vertex) {
+    FloatArrayList positions = welder.getPositions();
+    groupBuilder.addVertex(positions.get(vertex * 3), positions.get(vertex * 3 + 1),
+        positions.get(vertex * 3 + 2));
+  }
+
   // Translates and scales the given point by the given translation and scale.
   // Translation is applied BEFORE scale.
-  private static void translateAndScale(ObjGeometry.Vec3 pointToTransform,
+  private static void translateAndScale(float[] pointToTransform,
       ObjGeometry.Vec3 translate, float scale) {
-    pointToTransform.x = (pointToTransform.x + translate.x) * scale;
-    pointToTransform.y = (pointToTransform.y + translate.y) * scale;
-    pointToTransform.z = (pointToTransform.z + translate.z) * scale;
+    pointToTransform[0] = (pointToTransform[0] + translate.x) * scale;
+    pointToTransform[1] = (pointToTransform[1] + translate.y) * scale;
+    pointToTransform[2] = (pointToTransform[2] + translate.z) * scale;
   }
 }
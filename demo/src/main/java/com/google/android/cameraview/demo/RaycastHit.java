@@ -0,0 +1,26 @@
+package com.google.android.cameraview.demo;
+
+/** The closest triangle of a model hit by a ray, as returned by {@link Model#raycast}. */
+public class RaycastHit {
+  /** Index of the triangle: its indices start at {@code 3 * triangle} in the index buffer. */
+  public final int triangle;
+  /** Index of the submesh that contains the triangle, or -1 if the model has no submeshes. */
+  public final int submesh;
+  /**
+   * Index of the group that contains the triangle in {@link IndexedModel#getGroups()}, or -1 if
+   * the model has no groups.
+   */
+  public final int group;
+  /**
+   * Distance from the origin of the ray to the hit point, in units of the length of the ray's
+   * direction (so in model coordinates if the direction is normalized).
+   */
+  public final float distance;
+
+  public RaycastHit(int triangle, int submesh, int group, float distance) {
+    this.triangle = triangle;
+    this.submesh = submesh;
+    this.group = group;
+    this.distance = distance;
+  }
+}
@@ -0,0 +1,85 @@
+package com.google.android.cameraview.demo;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A linked GL program, with the locations of all of its active uniforms and attributes.
+ *
+ * The locations are enumerated once, when the program is wrapped, with glGetActiveUniform and
+ * glGetActiveAttrib, so that looking them up afterwards doesn't go through the driver. Callers
+ * typically keep the locations they need in fields, rather than looking them up on every frame.
+ * Must be used on the GL thread that owns the program.
+ */
+public class ShaderProgram {
+  private final int program;
+  private final Map<String, Integer> uniformLocations = new HashMap<>();
+  private final Map<String, Integer> attribLocations = new HashMap<>();
+
+  /** Wraps the given program, which must already be linked. */
+  public ShaderProgram(int program) {
+    this.program = program;
+    int[] values = new int[3];
+    GLES20.glGetProgramiv(program, GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH, values, 0);
+    GLES20.glGetProgramiv(program, GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH, values, 1);
+    byte[] name = new byte[Math.max(1, Math.max(values[0], values[1]))];
+    int[] length = new int[1];
+    int[] size = new int[1];
+    int[] type = new int[1];
+
+    GLES20.glGetProgramiv(program, GLES20.GL_ACTIVE_UNIFORMS, values, 2);
+    for (int i = 0; i < values[2]; i++) {
+      GLES20.glGetActiveUniform(program, i, name.length, length, 0, size, 0, type, 0, name, 0);
+      String uniform = getName(name, length[0]);
+      int location = GLES20.glGetUniformLocation(program, uniform);
+      uniformLocations.put(uniform, location);
+      // Arrays are reported as their first element, but are usually looked up by their name.
+      if (uniform.endsWith("[0]")) {
+        uniformLocations.put(uniform.substring(0, uniform.length() - 3), location);
+      }
+    }
+
+    GLES20.glGetProgramiv(program, GLES20.GL_ACTIVE_ATTRIBUTES, values, 2);
+    for (int i = 0; i < values[2]; i++) {
+      GLES20.glGetActiveAttrib(program, i, name.length, length, 0, size, 0, type, 0, name, 0);
+      String attrib = getName(name, length[0]);
+      attribLocations.put(attrib, GLES20.glGetAttribLocation(program, attrib));
+    }
+  }
+
+  // Names of uniforms and attributes are ASCII, and length excludes the null terminator.
+  private static String getName(byte[] name, int length) {
+    char[] chars = new char[Math.min(length, name.length)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) name[i];
+    }
+    return new String(chars);
+  }
+
+  /** Returns the handle of the program. */
+  public int getProgram() {
+    return program;
+  }
+
+  /**
+   * Returns the location of the given uniform, or -1 if the program has no such active uniform
+   * (for instance because the compiler optimized it out), like glGetUniformLocation.
+   */
+  public int getUniformLocation(String name) {
+    Integer location = uniformLocations.get(name);
+    return location != null ? location : -1;
+  }
+
+  /** Returns the location of the given attribute, or -1 if it is not active. */
+  public int getAttribLocation(String name) {
+    Integer location = attribLocations.get(name);
+    return location != null ? location : -1;
+  }
+
+  /** Deletes the program. The locations must not be used afterwards. */
+  public void delete() {
+    GLES20.glDeleteProgram(program);
+  }
+}
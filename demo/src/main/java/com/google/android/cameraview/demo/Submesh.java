@@ -0,0 +1,122 @@
+package com.google.android.cameraview.demo;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A range of a model's index buffer whose triangles are all drawn with the same material.
+ *
+ * Loaders emit the triangles of each material of each {@link MeshGroup} contiguously, so a model
+ * can be drawn with one draw call per material and group, passing the material's color as a
+ * uniform instead of storing it in every vertex.
+ */
+public class Submesh {
+  /** Color used for faces that don't have a material. */
+  public static final float[] DEFAULT_COLOR = { 1, 1, 1, 1 };
+
+  // Number of ints per submesh in the buffer returned by getRanges().
+  private static final int RANGE_SIZE = 4;
+
+  /** ID of the material in its {@link MtlLibrary}, or {@link ObjGeometry#MISSING}. */
+  public final int materialId;
+  /** Diffuse color of the material (RGBA). */
+  public final float[] color;
+  /** Position of the first index of the submesh in the index buffer. */
+  public final int firstIndex;
+  /** Number of indices in the submesh. */
+  public final int indexCount;
+  /**
+   * Vertex that the indices of the submesh are relative to: the vertex attributes must point at
+   * it when the submesh is drawn. Only meshes split by {@link MeshSplitter} have a base vertex
+   * other than 0.
+   */
+  public final int baseVertex;
+
+  public Submesh(int materialId, float[] color, int firstIndex, int indexCount) {
+    this(materialId, color, firstIndex, indexCount, 0);
+  }
+
+  public Submesh(int materialId, float[] color, int firstIndex, int indexCount, int baseVertex) {
+    this.materialId = materialId;
+    this.color = color;
+    this.firstIndex = firstIndex;
+    this.indexCount = indexCount;
+    this.baseVertex = baseVertex;
+  }
+
+  /**
+   * Returns the material that should be used for the faces of the given material of a geometry.
+   *
+   * @param material The ID of the material in the geometry, or {@link ObjGeometry#MISSING}.
+   * @return The ID of the material in {@code materials}, or {@link ObjGeometry#MISSING} for faces
+   *     without a material.
+   */
+  public static int getMaterialId(ObjGeometry geometry, int material, MtlLibrary materials) {
+    return material == ObjGeometry.MISSING ? ObjGeometry.MISSING
+        : materials.getMaterialId(geometry.getMaterialName(material));
+  }
+
+  /** Returns the color of the given material, or {@link #DEFAULT_COLOR} if it's MISSING. */
+  public static float[] getColor(int materialId, MtlLibrary materials) {
+    return materialId == ObjGeometry.MISSING
+        ? DEFAULT_COLOR : materials.getMaterial(materialId).diffuseColor;
+  }
+
+  /**
+   * Returns the material ID, first index, index count and base vertex of each of the given
+   * submeshes, to be stored in a {@link MeshCache} along with {@link #getColors(Submesh[])}.
+   */
+  public static IntBuffer getRanges(Submesh[] submeshes) {
+    IntBuffer ranges = IntBuffer.allocate(submeshes.length * RANGE_SIZE);
+    for (Submesh submesh : submeshes) {
+      ranges.put(submesh.materialId).put(submesh.firstIndex).put(submesh.indexCount)
+          .put(submesh.baseVertex);
+    }
+    ranges.position(0);
+    return ranges;
+  }
+
+  /** Returns the colors of the given submeshes (4 floats each). */
+  public static FloatBuffer getColors(Submesh[] submeshes) {
+    FloatBuffer colors = FloatBuffer.allocate(submeshes.length * 4);
+    for (Submesh submesh : submeshes) {
+      colors.put(submesh.color, 0, 4);
+    }
+    colors.position(0);
+    return colors;
+  }
+
+  /**
+   * Recreates submeshes from the buffers returned by {@link #getRanges(Submesh[])} and
+   * {@link #getColors(Submesh[])}.
+   *
+   * @param indexCount The number of indices in the index buffer, to validate the ranges.
+   * @param vertexCount The number of vertices, to validate the base vertices.
+   * @throws IOException if the buffers don't describe valid submeshes.
+   */
+  public static Submesh[] fromBuffers(IntBuffer ranges, FloatBuffer colors, int indexCount,
+      int vertexCount) throws IOException {
+    int count = ranges.limit() / RANGE_SIZE;
+    if (ranges.limit() != count * RANGE_SIZE || colors.limit() != count * 4) {
+      throw new IOException("Invalid submeshes.");
+    }
+    Submesh[] submeshes = new Submesh[count];
+    for (int i = 0; i < count; i++) {
+      int firstIndex = ranges.get(i * RANGE_SIZE + 1);
+      int submeshIndexCount = ranges.get(i * RANGE_SIZE + 2);
+      int baseVertex = ranges.get(i * RANGE_SIZE + 3);
+      if (firstIndex < 0 || submeshIndexCount < 0 || firstIndex + submeshIndexCount > indexCount
+          || baseVertex < 0 || baseVertex >= vertexCount) {
+        throw new IOException("Invalid submesh range: " + firstIndex + "+" + submeshIndexCount);
+      }
+      float[] color = new float[4];
+      for (int j = 0; j < 4; j++) {
+        color[j] = colors.get(i * 4 + j);
+      }
+      submeshes[i] = new Submesh(ranges.get(i * RANGE_SIZE), color, firstIndex, submeshIndexCount,
+          baseVertex);
+    }
+    return submeshes;
+  }
+}
@@ -38,6 +38,9 @@ public class Triangle {
     private int mPositionHandle;
     private int mColorHandle;
 
+    // GL state of the context, which the triangle changes only where needed.
+    private final GlStateCache mGlState;
+
     private final int vertexCount = triangleCoords.length / COORDS_PER_VERTEX;
     private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
 
@@ -54,7 +57,8 @@ public class Triangle {
         // Set color with red, green, blue and alpha (opacity) values
         float color[] = { 0.63671875f, 0.76953125f, 0.22265625f, 1.0f };
 
-        public Triangle() {
+        public Triangle(GlStateCache glState) {
+            mGlState = glState;
 
             // initialize vertex byte buffer for shape coordinates
             ByteBuffer bb = ByteBuffer.allocateDirect(
@@ -70,62 +74,41 @@ public class Triangle {
             // set the buffer to read the first coordinate
             vertexBuffer.position(0);
 
-            int vertexShader = MyGLRenderer.loadShader(GLES20.GL_VERTEX_SHADER,
-                    vertexShaderCode);
-            int fragmentShader = MyGLRenderer.loadShader(GLES20.GL_FRAGMENT_SHADER,
-                    fragmentShaderCode);
-
-            // create empty OpenGL ES Program
-            mProgram = GLES20.glCreateProgram();
-
-            // add the vertex shader to program
-            GLES20.glAttachShader(mProgram, vertexShader);
+            // get the OpenGL ES program, compiled and linked once per context
+            ShaderProgram program = ProgramRegistry.getInstance().getProgram(vertexShaderCode,
+                    fragmentShaderCode, null, null);
+            mProgram = program.getProgram();
 
-            // add the fragment shader to program
-            GLES20.glAttachShader(mProgram, fragmentShader);
-
-            // creates OpenGL ES program executables
-            GLES20.glLinkProgram(mProgram);
+            // get handles to the shader's members once, rather than on every draw
+            mPositionHandle = program.getAttribLocation("vPosition");
+            mColorHandle = program.getUniformLocation("vColor");
+            mMVPMatrixHandle = program.getUniformLocation("uMVPMatrix");
 
         }
 
     public void draw(float[] mvpMatrix) {
         // Add program to OpenGL ES environment
-        GLES20.glUseProgram(mProgram);
-
-        // get handle to vertex shader's vPosition member
-        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        mGlState.useProgram(mProgram);
 
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
+        // Enable a handle to the triangle vertices, which are read from client memory
+        mGlState.setEnabledAttribs(GlStateCache.attribBit(mPositionHandle));
+        mGlState.bindArrayBuffer(0);
 
         // Prepare the triangle coordinate data
         GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX,
                 GLES20.GL_FLOAT, false,
                 vertexStride, vertexBuffer);
 
-        // get handle to fragment shader's vColor member
-        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-
         // Set color for drawing the triangle
         GLES20.glUniform4fv(mColorHandle, 1, color, 0);
 
         // Draw the triangle
         GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
 
-        // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
-
-        // get handle to shape's transformation matrix
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-
         // Pass the projection and view transformation to the shader
         GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
 
         // Draw the triangle
         GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
-
-        // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
     }
 }
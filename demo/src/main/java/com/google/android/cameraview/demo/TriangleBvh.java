@@ -0,0 +1,486 @@
+package com.google.android.cameraview.demo;
+
+import android.support.annotation.Nullable;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * A bounding volume hierarchy over the triangles of a mesh, to find the triangle hit by a ray
+ * (such as a tap on the screen) without testing every triangle.
+ *
+ * The hierarchy is a binary tree of axis-aligned boxes, built top-down: the triangles of each
+ * node are split in two along the longest axis of their centroids, at the boundary that
+ * minimizes the surface area heuristic (the sum of the area of each side's box times its
+ * triangle count). Candidate boundaries are those of {@link #BIN_COUNT} equal bins, which keeps
+ * the build linear in the number of triangles at each level. A ray then only visits the nodes
+ * whose box it crosses, closest first, and stops as soon as the boxes left are farther than the
+ * closest hit found.
+ *
+ * The mesh is copied when the hierarchy is built, so it may be built on any thread.
+ */
+public class TriangleBvh {
+  /** Number of bins along the split axis. */
+  static final int BIN_COUNT = 16;
+  /** Largest number of triangles in a leaf. */
+  static final int MAX_LEAF_SIZE = 4;
+
+  // Vertex positions (3 floats per vertex).
+  private final float[] positions;
+  // Vertex indices of the triangles (3 per triangle), in the order of the leaves.
+  private final int[] triangleVertices;
+  // Index of each of those triangles in the mesh.
+  private final int[] triangleIds;
+  // Bounds of each node: minimum (x, y, z) then maximum (x, y, z).
+  private final float[] nodeBounds;
+  // For a leaf, the position of its first triangle; otherwise the index of its first child, the
+  // second one being next to it.
+  private final int[] nodeStarts;
+  // Number of triangles of a leaf, or 0 for an inner node.
+  private final int[] nodeTriangleCounts;
+  private final int nodeCount;
+  private final int depth;
+
+  private TriangleBvh(float[] positions, int[] triangleVertices, int[] triangleIds,
+      float[] nodeBounds, int[] nodeStarts, int[] nodeTriangleCounts, int nodeCount, int depth) {
+    this.positions = positions;
+    this.triangleVertices = triangleVertices;
+    this.triangleIds = triangleIds;
+    this.nodeBounds = nodeBounds;
+    this.nodeStarts = nodeStarts;
+    this.nodeTriangleCounts = nodeTriangleCounts;
+    this.nodeCount = nodeCount;
+    this.depth = depth;
+  }
+
+  /**
+   * Builds the hierarchy of the given mesh.
+   *
+   * @param vertices The interleaved vertices, with {@link MyGLUtils#FLOATS_PER_VERTEX} floats per
+   *     vertex, starting with the position.
+   * @param vertexCount The number of vertices.
+   * @param indices The index buffer: an IntBuffer, or a ShortBuffer whose indices are relative to
+   *     the base vertex of their submesh.
+   * @param indexCount The number of indices.
+   * @param submeshes The submeshes, for the base vertices of a ShortBuffer; may be null for an
+   *     IntBuffer.
+   */
+  public static TriangleBvh build(FloatBuffer vertices, int vertexCount, Buffer indices,
+      int indexCount, @Nullable Submesh[] submeshes) {
+    float[] positions = new float[vertexCount * 3];
+    for (int v = 0; v < vertexCount; v++) {
+      for (int axis = 0; axis < 3; axis++) {
+        positions[v * 3 + axis] = vertices.get(v * MyGLUtils.FLOATS_PER_VERTEX + axis);
+      }
+    }
+    int[] triangles = new int[indexCount / 3 * 3];
+    if (indices instanceof IntBuffer) {
+      for (int i = 0; i < triangles.length; i++) {
+        triangles[i] = ((IntBuffer) indices).get(i);
+      }
+    } else {
+      ShortBuffer shortIndices = (ShortBuffer) indices;
+      if (submeshes == null) {
+        submeshes = new Submesh[] { new Submesh(ObjGeometry.MISSING, Submesh.DEFAULT_COLOR, 0,
+            indexCount) };
+      }
+      for (Submesh submesh : submeshes) {
+        int end = Math.min(submesh.firstIndex + submesh.indexCount, triangles.length);
+        for (int i = submesh.firstIndex; i < end; i++) {
+          triangles[i] = submesh.baseVertex + (shortIndices.get(i) & 0xffff);
+        }
+      }
+    }
+    return new Builder(positions, triangles).build();
+  }
+
+  /** Returns the number of nodes of the hierarchy. */
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  /** Returns the number of levels of the hierarchy (1 for a single leaf). */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns the closest triangle hit by the given ray, or null if none is. Triangles are hit from
+   * both sides. The returned hit has no submesh or group (-1). Can be called from any thread.
+   *
+   * @param origin The origin of the ray (x, y, z).
+   * @param direction The direction of the ray (x, y, z); it doesn't have to be normalized.
+   */
+  @Nullable public RaycastHit raycast(float[] origin, float[] direction) {
+    if (nodeCount == 0) {
+      return null;
+    }
+    float originX = origin[0];
+    float originY = origin[1];
+    float originZ = origin[2];
+    float inverseX = 1 / direction[0];
+    float inverseY = 1 / direction[1];
+    float inverseZ = 1 / direction[2];
+    float closest = Float.POSITIVE_INFINITY;
+    int closestTriangle = -1;
+
+    int[] stack = new int[depth + 1];
+    int stackSize = 0;
+    int node = 0;
+    if (intersectBox(0, originX, originY, originZ, inverseX, inverseY, inverseZ, closest) < 0) {
+      return null;
+    }
+    while (true) {
+      int triangleCount = nodeTriangleCounts[node];
+      if (triangleCount > 0) {
+        int first = nodeStarts[node];
+        for (int t = first; t < first + triangleCount; t++) {
+          float distance = intersectTriangle(t, origin, direction, closest);
+          if (distance >= 0) {
+            closest = distance;
+            closestTriangle = t;
+          }
+        }
+      } else {
+        // Visit the closest child first; the other one may then be skipped.
+        int left = nodeStarts[node];
+        int right = left + 1;
+        float leftDistance = intersectBox(left, originX, originY, originZ, inverseX, inverseY,
+            inverseZ, closest);
+        float rightDistance = intersectBox(right, originX, originY, originZ, inverseX, inverseY,
+            inverseZ, closest);
+        if (leftDistance >= 0 && rightDistance >= 0) {
+          if (rightDistance < leftDistance) {
+            stack[stackSize++] = left;
+            node = right;
+          } else {
+            stack[stackSize++] = right;
+            node = left;
+          }
+          continue;
+        } else if (leftDistance >= 0) {
+          node = left;
+          continue;
+        } else if (rightDistance >= 0) {
+          node = right;
+          continue;
+        }
+      }
+      // Pop the next node whose box is still closer than the closest hit.
+      node = -1;
+      while (stackSize > 0) {
+        int candidate = stack[--stackSize];
+        if (intersectBox(candidate, originX, originY, originZ, inverseX, inverseY, inverseZ,
+            closest) >= 0) {
+          node = candidate;
+          break;
+        }
+      }
+      if (node < 0) {
+        break;
+      }
+    }
+    return closestTriangle < 0 ? null
+        : new RaycastHit(triangleIds[closestTriangle], -1, -1, closest);
+  }
+
+  // Returns the distance at which the ray enters the box of the given node, or -1 if it misses
+  // it or only reaches it beyond maxDistance (slab test).
+  private float intersectBox(int node, float originX, float originY, float originZ,
+      float inverseX, float inverseY, float inverseZ, float maxDistance) {
+    int b = node * 6;
+    float x0 = (nodeBounds[b] - originX) * inverseX;
+    float x1 = (nodeBounds[b + 3] - originX) * inverseX;
+    float y0 = (nodeBounds[b + 1] - originY) * inverseY;
+    float y1 = (nodeBounds[b + 4] - originY) * inverseY;
+    float z0 = (nodeBounds[b + 2] - originZ) * inverseZ;
+    float z1 = (nodeBounds[b + 5] - originZ) * inverseZ;
+    // A direction of 0 along an axis gives infinite inverses, which the slab test handles (except
+    // for an origin exactly on a face of the box, which is then missed).
+    float near = Math.max(Math.max(Math.min(x0, x1), Math.min(y0, y1)), Math.min(z0, z1));
+    float far = Math.min(Math.min(Math.max(x0, x1), Math.max(y0, y1)), Math.max(z0, z1));
+    if (near > far || far < 0 || near > maxDistance) {
+      return -1;
+    }
+    return Math.max(near, 0);
+  }
+
+  // Returns the distance at which the ray hits the given triangle (in leaf order), or -1 if it
+  // misses it or only hits it beyond maxDistance (Moller-Trumbore).
+  private float intersectTriangle(int triangle, float[] origin, float[] direction,
+      float maxDistance) {
+    int a = triangleVertices[triangle * 3] * 3;
+    int b = triangleVertices[triangle * 3 + 1] * 3;
+    int c = triangleVertices[triangle * 3 + 2] * 3;
+    float ax = positions[a];
+    float ay = positions[a + 1];
+    float az = positions[a + 2];
+    float e1x = positions[b] - ax;
+    float e1y = positions[b + 1] - ay;
+    float e1z = positions[b + 2] - az;
+    float e2x = positions[c] - ax;
+    float e2y = positions[c + 1] - ay;
+    float e2z = positions[c + 2] - az;
+    float px = direction[1] * e2z - direction[2] * e2y;
+    float py = direction[2] * e2x - direction[0] * e2z;
+    float pz = direction[0] * e2y - direction[1] * e2x;
+    float determinant = e1x * px + e1y * py + e1z * pz;
+    if (determinant == 0) {
+      return -1;
+    }
+    float inverseDeterminant = 1 / determinant;
+    float tx = origin[0] - ax;
+    float ty = origin[1] - ay;
+    float tz = origin[2] - az;
+    float u = (tx * px + ty * py + tz * pz) * inverseDeterminant;
+    if (u < 0 || u > 1) {
+      return -1;
+    }
+    float qx = ty * e1z - tz * e1y;
+    float qy = tz * e1x - tx * e1z;
+    float qz = tx * e1y - ty * e1x;
+    float v = (direction[0] * qx + direction[1] * qy + direction[2] * qz) * inverseDeterminant;
+    if (v < 0 || u + v > 1) {
+      return -1;
+    }
+    float distance = (e2x * qx + e2y * qy + e2z * qz) * inverseDeterminant;
+    return distance >= 0 && distance < maxDistance ? distance : -1;
+  }
+
+  // Builds the nodes depth-first, with an explicit stack so that unbalanced meshes can't
+  // overflow the thread's stack.
+  private static class Builder {
+    private final float[] positions;
+    private final int[] triangles;
+    private final int triangleCount;
+    // Bounds (6 floats) and centroid (3 floats) of each triangle of the mesh.
+    private final float[] triangleBounds;
+    private final float[] centroids;
+    // Triangles of the mesh, in the order of the leaves once built.
+    private final int[] order;
+
+    private final float[] nodeBounds;
+    private final int[] nodeStarts;
+    private final int[] nodeTriangleCounts;
+    private int nodeCount;
+    private int depth;
+
+    // Per-bin triangle counts and bounds, and the area and count on the left side of each
+    // boundary, reused for every node.
+    private final int[] binCounts = new int[BIN_COUNT];
+    private final float[] binBounds = new float[BIN_COUNT * 6];
+    private final float[] leftAreas = new float[BIN_COUNT];
+    private final int[] leftCounts = new int[BIN_COUNT];
+    private final float[] bounds = new float[6];
+
+    Builder(float[] positions, int[] triangles) {
+      this.positions = positions;
+      this.triangles = triangles;
+      triangleCount = triangles.length / 3;
+      triangleBounds = new float[triangleCount * 6];
+      centroids = new float[triangleCount * 3];
+      order = new int[triangleCount];
+      for (int t = 0; t < triangleCount; t++) {
+        order[t] = t;
+        int b = t * 6;
+        for (int axis = 0; axis < 3; axis++) {
+          float p0 = positions[triangles[t * 3] * 3 + axis];
+          float p1 = positions[triangles[t * 3 + 1] * 3 + axis];
+          float p2 = positions[triangles[t * 3 + 2] * 3 + axis];
+          triangleBounds[b + axis] = Math.min(p0, Math.min(p1, p2));
+          triangleBounds[b + 3 + axis] = Math.max(p0, Math.max(p1, p2));
+          centroids[t * 3 + axis] = (p0 + p1 + p2) / 3;
+        }
+      }
+      // A binary tree with at least one triangle per leaf has at most 2n - 1 nodes.
+      int maxNodes = Math.max(1, 2 * triangleCount - 1);
+      nodeBounds = new float[maxNodes * 6];
+      nodeStarts = new int[maxNodes];
+      nodeTriangleCounts = new int[maxNodes];
+    }
+
+    TriangleBvh build() {
+      if (triangleCount > 0) {
+        // Each entry is a node, its first triangle in order, its triangle count and its depth.
+        int[] stack = new int[4 * 64];
+        int stackSize = 0;
+        nodeCount = 1;
+        stack = push(stack, stackSize, 0, 0, triangleCount, 1);
+        stackSize += 4;
+        while (stackSize > 0) {
+          stackSize -= 4;
+          int node = stack[stackSize];
+          int first = stack[stackSize + 1];
+          int count = stack[stackSize + 2];
+          int nodeDepth = stack[stackSize + 3];
+          depth = Math.max(depth, nodeDepth);
+          int leftCount = split(node, first, count);
+          if (leftCount > 0) {
+            int left = nodeCount;
+            nodeCount += 2;
+            nodeStarts[node] = left;
+            stack = push(stack, stackSize, left + 1, first + leftCount, count - leftCount,
+                nodeDepth + 1);
+            stackSize += 4;
+            stack = push(stack, stackSize, left, first, leftCount, nodeDepth + 1);
+            stackSize += 4;
+          }
+        }
+      }
+
+      int[] triangleVertices = new int[triangleCount * 3];
+      for (int i = 0; i < triangleCount; i++) {
+        System.arraycopy(triangles, order[i] * 3, triangleVertices, i * 3, 3);
+      }
+      return new TriangleBvh(positions, triangleVertices, order,
+          Arrays.copyOf(nodeBounds, nodeCount * 6), Arrays.copyOf(nodeStarts, nodeCount),
+          Arrays.copyOf(nodeTriangleCounts, nodeCount), nodeCount, depth);
+    }
+
+    private static int[] push(int[] stack, int size, int node, int first, int count,
+        int nodeDepth) {
+      if (size + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+      }
+      stack[size] = node;
+      stack[size + 1] = first;
+      stack[size + 2] = count;
+      stack[size + 3] = nodeDepth;
+      return stack;
+    }
+
+    // Sets the bounds of the node, and either makes it a leaf (returning 0) or partitions its
+    // triangles, returning the number of those that go to its first child.
+    private int split(int node, int first, int count) {
+      float centroidMinX = Float.POSITIVE_INFINITY;
+      float centroidMinY = Float.POSITIVE_INFINITY;
+      float centroidMinZ = Float.POSITIVE_INFINITY;
+      float centroidMaxX = Float.NEGATIVE_INFINITY;
+      float centroidMaxY = Float.NEGATIVE_INFINITY;
+      float centroidMaxZ = Float.NEGATIVE_INFINITY;
+      resetBounds(bounds, 0);
+      for (int i = first; i < first + count; i++) {
+        int t = order[i];
+        growBounds(bounds, 0, triangleBounds, t * 6);
+        centroidMinX = Math.min(centroidMinX, centroids[t * 3]);
+        centroidMinY = Math.min(centroidMinY, centroids[t * 3 + 1]);
+        centroidMinZ = Math.min(centroidMinZ, centroids[t * 3 + 2]);
+        centroidMaxX = Math.max(centroidMaxX, centroids[t * 3]);
+        centroidMaxY = Math.max(centroidMaxY, centroids[t * 3 + 1]);
+        centroidMaxZ = Math.max(centroidMaxZ, centroids[t * 3 + 2]);
+      }
+      System.arraycopy(bounds, 0, nodeBounds, node * 6, 6);
+      nodeStarts[node] = first;
+      nodeTriangleCounts[node] = count;
+      if (count <= MAX_LEAF_SIZE) {
+        return 0;
+      }
+
+      int axis = 0;
+      float min = centroidMinX;
+      float extent = centroidMaxX - centroidMinX;
+      if (centroidMaxY - centroidMinY > extent) {
+        axis = 1;
+        min = centroidMinY;
+        extent = centroidMaxY - centroidMinY;
+      }
+      if (centroidMaxZ - centroidMinZ > extent) {
+        axis = 2;
+        min = centroidMinZ;
+        extent = centroidMaxZ - centroidMinZ;
+      }
+      if (!(extent > 0)) {
+        // All the centroids are at the same point: there is no way to split them.
+        return 0;
+      }
+
+      Arrays.fill(binCounts, 0);
+      for (int bin = 0; bin < BIN_COUNT; bin++) {
+        resetBounds(binBounds, bin * 6);
+      }
+      float binScale = BIN_COUNT / extent;
+      for (int i = first; i < first + count; i++) {
+        int t = order[i];
+        int bin = getBin(centroids[t * 3 + axis], min, binScale);
+        binCounts[bin]++;
+        growBounds(binBounds, bin * 6, triangleBounds, t * 6);
+      }
+
+      // Sweep from the left, then from the right, to get the cost of each boundary. The bins
+      // holding the smallest and largest centroids are never empty, so no boundary leaves a side
+      // empty.
+      resetBounds(bounds, 0);
+      int leftCount = 0;
+      for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+        if (binCounts[bin] > 0) {
+          growBounds(bounds, 0, binBounds, bin * 6);
+        }
+        leftCount += binCounts[bin];
+        leftCounts[bin] = leftCount;
+        leftAreas[bin] = leftCount > 0 ? getHalfArea(bounds) : 0;
+      }
+      resetBounds(bounds, 0);
+      int rightCount = 0;
+      int bestBin = 0;
+      float bestCost = Float.POSITIVE_INFINITY;
+      for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+        if (binCounts[bin] > 0) {
+          growBounds(bounds, 0, binBounds, bin * 6);
+        }
+        rightCount += binCounts[bin];
+        float cost = leftAreas[bin - 1] * leftCounts[bin - 1]
+            + (rightCount > 0 ? getHalfArea(bounds) : 0) * rightCount;
+        if (cost < bestCost) {
+          bestCost = cost;
+          bestBin = bin - 1;
+        }
+      }
+
+      // Partition the triangles: those in bins up to bestBin first.
+      int i = first;
+      int j = first + count - 1;
+      while (i <= j) {
+        if (getBin(centroids[order[i] * 3 + axis], min, binScale) <= bestBin) {
+          i++;
+        } else {
+          int swap = order[i];
+          order[i] = order[j];
+          order[j] = swap;
+          j--;
+        }
+      }
+      nodeTriangleCounts[node] = 0;
+      return i - first;
+    }
+
+    private static int getBin(float centroid, float min, float binScale) {
+      return Math.min(BIN_COUNT - 1, (int) ((centroid - min) * binScale));
+    }
+
+    private static void resetBounds(float[] bounds, int offset) {
+      for (int axis = 0; axis < 3; axis++) {
+        bounds[offset + axis] = Float.POSITIVE_INFINITY;
+        bounds[offset + 3 + axis] = Float.NEGATIVE_INFINITY;
+      }
+    }
+
+    private static void growBounds(float[] bounds, int offset, float[] other, int otherOffset) {
+      for (int axis = 0; axis < 3; axis++) {
+        bounds[offset + axis] = Math.min(bounds[offset + axis], other[otherOffset + axis]);
+        bounds[offset + 3 + axis] =
+            Math.max(bounds[offset + 3 + axis], other[otherOffset + 3 + axis]);
+      }
+    }
+
+    // Half the surface area of the box, which is all the heuristic needs.
+    private static float getHalfArea(float[] bounds) {
+      float x = bounds[3] - bounds[0];
+      float y = bounds[4] - bounds[1];
+      float z = bounds[5] - bounds[2];
+      return x * y + y * z + z * x;
+    }
+  }
+}
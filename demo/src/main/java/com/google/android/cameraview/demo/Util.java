@@ -29,27 +29,6 @@ import java.io.InputStream;
  */
 public final class Util extends Application{
 
-    public static int compileProgram(@RawRes int vertexShader, @RawRes int fragmentShader,
-                                     @NonNull String[] attributes) {
-        int program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, loadShader(GLES20.GL_VERTEX_SHADER,
-                readTextFileFromRawRes(vertexShader)));
-        GLES20.glAttachShader(program, loadShader(GLES20.GL_FRAGMENT_SHADER,
-                readTextFileFromRawRes(fragmentShader)));
-        for (int i = 0; i < attributes.length; i++) {
-            GLES20.glBindAttribLocation(program, i, attributes[i]);
-        }
-        GLES20.glLinkProgram(program);
-        return program;
-    }
-
-    public static void checkGLError(@NonNull String label) {
-        int error;
-        if ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
-            throw new RuntimeException(label + ": glError " + error);
-        }
-    }
-
     public static void closeSilently(@Nullable Closeable c) {
         try {
             if (c != null) {
@@ -100,7 +79,7 @@ public final class Util extends Application{
     }
 
     @NonNull
-    private static String readTextFileFromRawRes(@RawRes int resourceId) {
+    public static String readTextFileFromRawRes(@RawRes int resourceId) {
         InputStream inputStream = ARDemoApp.getInstance().getResources()
                 .openRawResource(resourceId);
         try {
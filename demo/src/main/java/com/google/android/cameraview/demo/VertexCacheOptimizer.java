@@ -0,0 +1,349 @@
+package com.google.android.cameraview.demo;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles and vertices of an indexed mesh so that the GPU transforms fewer
+ * vertices and fetches them more linearly.
+ *
+ * Triangles are reordered with Tom Forsyth's "linear-speed vertex cache optimization": a
+ * simulated LRU cache gives each vertex a score (higher if it was used recently, or if few
+ * triangles still use it), and the triangle with the best score among those that use cached
+ * vertices is emitted next. Triangles are only reordered within each {@link Submesh}, so the
+ * ranges of the submeshes and groups stay valid. Vertices are then renumbered in the order in
+ * which the indices first use them, so the vertex buffers are read front to back.
+ *
+ * The efficiency of the result is measured with a simulated FIFO cache, as the ACMR (average
+ * cache miss ratio: vertices transformed per triangle, between 0.5 and 3) and the ATVR (average
+ * transform to vertex ratio: vertices transformed per vertex, 1 at best).
+ */
+public class VertexCacheOptimizer {
+  /** Size of the FIFO cache used to measure the efficiency of an index buffer. */
+  public static final int MEASURED_CACHE_SIZE = 16;
+
+  // Size of the LRU cache simulated while optimizing, and the scoring parameters from Forsyth's
+  // article.
+  private static final int CACHE_SIZE = 32;
+  private static final float CACHE_DECAY_POWER = 1.5f;
+  private static final float LAST_TRIANGLE_SCORE = 0.75f;
+  private static final float VALENCE_BOOST_SCALE = 2.0f;
+  private static final float VALENCE_BOOST_POWER = 0.5f;
+  // Valences above this all get the score of this one, which is close to 0 anyway.
+  private static final int MAX_SCORED_VALENCE = 64;
+
+  private static final float[] CACHE_POSITION_SCORES = new float[CACHE_SIZE];
+  private static final float[] VALENCE_SCORES = new float[MAX_SCORED_VALENCE + 1];
+
+  static {
+    for (int i = 0; i < CACHE_SIZE; i++) {
+      if (i < 3) {
+        // The vertices of the last triangle were just used, so using them again right away
+        // doesn't save much. They get a fixed score so that the next triangle isn't just a
+        // neighbor of the last one, which helps make strips rather than fans.
+        CACHE_POSITION_SCORES[i] = LAST_TRIANGLE_SCORE;
+      } else {
+        float scale = 1.0f / (CACHE_SIZE - 3);
+        CACHE_POSITION_SCORES[i] =
+            (float) Math.pow(1.0f - (i - 3) * scale, CACHE_DECAY_POWER);
+      }
+    }
+    for (int i = 1; i <= MAX_SCORED_VALENCE; i++) {
+      VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+    }
+  }
+
+  // Scratch mapping from global vertex indices to the vertices of the range being optimized, or
+  // -1. Reset after each range.
+  private final int[] localVertices;
+
+  /** Creates an optimizer for meshes with the given number of vertices. */
+  public VertexCacheOptimizer(int vertexCount) {
+    localVertices = new int[vertexCount];
+    Arrays.fill(localVertices, -1);
+  }
+
+  /**
+   * The result of {@link #optimize}: the new order of the vertices, and the efficiency of the
+   * index buffer before and after, for callers to report.
+   */
+  public static class Result {
+    /**
+     * The new index of each vertex, to be passed to {@link #remapVertices(FloatBuffer, int, int[])}
+     * for each vertex attribute.
+     */
+    public final int[] remap;
+    public final int triangleCount;
+    public final int vertexCount;
+    /** The ACMR of the index buffer, before and after optimization. */
+    public final float acmrBefore;
+    public final float acmrAfter;
+
+    Result(int[] remap, int triangleCount, int vertexCount, float acmrBefore, float acmrAfter) {
+      this.remap = remap;
+      this.triangleCount = triangleCount;
+      this.vertexCount = vertexCount;
+      this.acmrBefore = acmrBefore;
+      this.acmrAfter = acmrAfter;
+    }
+
+    /** Returns the ATVR of the index buffer before optimization. */
+    public float getAtvrBefore() {
+      return toAtvr(acmrBefore);
+    }
+
+    /** Returns the ATVR of the index buffer after optimization. */
+    public float getAtvrAfter() {
+      return toAtvr(acmrAfter);
+    }
+
+    // Vertices transformed per vertex, from vertices transformed per triangle.
+    private float toAtvr(float acmr) {
+      return vertexCount > 0 ? acmr * triangleCount / vertexCount : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Vertex cache optimization of %d triangles, %d vertices: "
+              + "ACMR %.3f -> %.3f, ATVR %.3f -> %.3f", triangleCount, vertexCount,
+          acmrBefore, acmrAfter, getAtvrBefore(), getAtvrAfter());
+    }
+  }
+
+  /**
+   * Optimizes a mesh: reorders the triangles of each submesh, then renumbers the vertices in
+   * order of first use. The ACMR and ATVR before and after are measured and returned with the
+   * new order of the vertices, but not logged, so this can run anywhere.
+   *
+   * @param indices The triangle indices of the mesh, which are rewritten.
+   * @param submeshes The ranges of {@code indices} within which triangles can be reordered.
+   * @param vertexCount The number of vertices of the mesh.
+   * @return The new order of the vertices, and the efficiency of the index buffer.
+   */
+  public static Result optimize(IntArrayList indices, Submesh[] submeshes, int vertexCount) {
+    float acmrBefore = getAcmr(indices, vertexCount, MEASURED_CACHE_SIZE);
+    VertexCacheOptimizer optimizer = new VertexCacheOptimizer(vertexCount);
+    for (Submesh submesh : submeshes) {
+      optimizer.optimizeTriangleOrder(indices, submesh.firstIndex, submesh.indexCount);
+    }
+    int[] remap = optimizeVertexFetch(indices, vertexCount);
+    float acmrAfter = getAcmr(indices, vertexCount, MEASURED_CACHE_SIZE);
+    return new Result(remap, indices.size() / 3, vertexCount, acmrBefore, acmrAfter);
+  }
+
+  /**
+   * Reorders the triangles in the given range of indices to make better use of the vertex
+   * cache. Each triangle keeps its winding.
+   *
+   * @param indices The triangle indices of the mesh.
+   * @param first The position of the first index of the range.
+   * @param count The number of indices in the range, a multiple of 3.
+   */
+  public void optimizeTriangleOrder(IntArrayList indices, int first, int count) {
+    int triangleCount = count / 3;
+    if (triangleCount < 2) {
+      return;
+    }
+    // Use dense vertex numbers for this range, so the per-vertex arrays below are only as large
+    // as the number of vertices the range uses.
+    int[] triangleVertices = new int[triangleCount * 3];
+    int[] globalVertices = new int[triangleCount * 3];
+    int vertexCount = 0;
+    for (int i = 0; i < triangleCount * 3; i++) {
+      int global = indices.get(first + i);
+      if (localVertices[global] < 0) {
+        localVertices[global] = vertexCount;
+        globalVertices[vertexCount++] = global;
+      }
+      triangleVertices[i] = localVertices[global];
+    }
+    for (int i = 0; i < vertexCount; i++) {
+      localVertices[globalVertices[i]] = -1;
+    }
+
+    // Triangles that use each vertex: those of vertex v are at
+    // [adjacencyStarts[v], adjacencyStarts[v] + activeTriangles[v]). Emitted triangles are moved
+    // past the end of that range.
+    int[] activeTriangles = new int[vertexCount];
+    for (int vertex : triangleVertices) {
+      activeTriangles[vertex]++;
+    }
+    int[] adjacencyStarts = new int[vertexCount + 1];
+    for (int i = 0; i < vertexCount; i++) {
+      adjacencyStarts[i + 1] = adjacencyStarts[i] + activeTriangles[i];
+    }
+    int[] adjacency = new int[triangleCount * 3];
+    int[] next = Arrays.copyOf(adjacencyStarts, vertexCount);
+    for (int i = 0; i < triangleCount * 3; i++) {
+      adjacency[next[triangleVertices[i]]++] = i / 3;
+    }
+
+    float[] vertexScores = new float[vertexCount];
+    for (int i = 0; i < vertexCount; i++) {
+      vertexScores[i] = getVertexScore(-1, activeTriangles[i]);
+    }
+    float[] triangleScores = new float[triangleCount];
+    for (int t = 0; t < triangleCount; t++) {
+      triangleScores[t] = vertexScores[triangleVertices[t * 3]]
+          + vertexScores[triangleVertices[t * 3 + 1]] + vertexScores[triangleVertices[t * 3 + 2]];
+    }
+    boolean[] emitted = new boolean[triangleCount];
+
+    // The cache holds up to CACHE_SIZE vertices, plus the 3 of the last triangle while it's being
+    // updated.
+    int[] cache = new int[CACHE_SIZE + 3];
+    int[] newCache = new int[CACHE_SIZE + 3];
+    int cacheCount = 0;
+    int[] output = new int[triangleCount * 3];
+    int bestTriangle = -1;
+    int scanPosition = 0;
+    for (int emittedCount = 0; emittedCount < triangleCount; emittedCount++) {
+      if (bestTriangle < 0) {
+        // No cached vertex has triangles left: continue with the next triangle in the original
+        // order, which keeps the whole process linear.
+        while (emitted[scanPosition]) {
+          scanPosition++;
+        }
+        bestTriangle = scanPosition;
+      }
+      emitted[bestTriangle] = true;
+      int newCacheCount = 0;
+      for (int k = 0; k < 3; k++) {
+        int vertex = triangleVertices[bestTriangle * 3 + k];
+        output[emittedCount * 3 + k] = vertex;
+        // Move the triangle past the active part of the vertex's adjacency.
+        int start = adjacencyStarts[vertex];
+        int last = start + --activeTriangles[vertex];
+        for (int a = start; a <= last; a++) {
+          if (adjacency[a] == bestTriangle) {
+            adjacency[a] = adjacency[last];
+            adjacency[last] = bestTriangle;
+            break;
+          }
+        }
+        newCache[newCacheCount++] = vertex;
+      }
+      // The vertices of the triangle move to the front of the cache, followed by the others.
+      for (int i = 0; i < cacheCount; i++) {
+        int vertex = cache[i];
+        if (vertex != newCache[0] && vertex != newCache[1] && vertex != newCache[2]) {
+          newCache[newCacheCount++] = vertex;
+        }
+      }
+      int[] swap = cache;
+      cache = newCache;
+      newCache = swap;
+      cacheCount = newCacheCount;
+
+      // Update the scores of the vertices whose cache position changed, and of their triangles.
+      for (int i = 0; i < cacheCount; i++) {
+        int vertex = cache[i];
+        float score = getVertexScore(i < CACHE_SIZE ? i : -1, activeTriangles[vertex]);
+        float delta = score - vertexScores[vertex];
+        vertexScores[vertex] = score;
+        for (int a = adjacencyStarts[vertex];
+            a < adjacencyStarts[vertex] + activeTriangles[vertex]; a++) {
+          triangleScores[adjacency[a]] += delta;
+        }
+      }
+      cacheCount = Math.min(cacheCount, CACHE_SIZE);
+
+      // The next triangle is the best one among those that use a cached vertex.
+      bestTriangle = -1;
+      float bestScore = -1;
+      for (int i = 0; i < cacheCount; i++) {
+        int vertex = cache[i];
+        for (int a = adjacencyStarts[vertex];
+            a < adjacencyStarts[vertex] + activeTriangles[vertex]; a++) {
+          int triangle = adjacency[a];
+          if (triangleScores[triangle] > bestScore) {
+            bestScore = triangleScores[triangle];
+            bestTriangle = triangle;
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < output.length; i++) {
+      indices.set(first + i, globalVertices[output[i]]);
+    }
+  }
+
+  /**
+   * Renumbers the vertices in the order in which the given indices first use them, and rewrites
+   * the indices accordingly. Vertices that are not used keep their relative order, after all the
+   * used ones.
+   *
+   * @return The new index of each vertex.
+   */
+  public static int[] optimizeVertexFetch(IntArrayList indices, int vertexCount) {
+    int[] remap = new int[vertexCount];
+    Arrays.fill(remap, -1);
+    int nextVertex = 0;
+    for (int i = 0; i < indices.size(); i++) {
+      int vertex = indices.get(i);
+      if (remap[vertex] < 0) {
+        remap[vertex] = nextVertex++;
+      }
+      indices.set(i, remap[vertex]);
+    }
+    for (int i = 0; i < vertexCount; i++) {
+      if (remap[i] < 0) {
+        remap[i] = nextVertex++;
+      }
+    }
+    return remap;
+  }
+
+  /**
+   * Moves each vertex of the given attribute buffer to the position given by {@code remap}.
+   *
+   * @param buffer The attribute buffer. Its position is left at 0.
+   * @param components The number of floats per vertex.
+   * @param remap The new index of each vertex, as returned by {@link #optimize}.
+   */
+  public static void remapVertices(FloatBuffer buffer, int components, int[] remap) {
+    float[] source = new float[remap.length * components];
+    buffer.position(0);
+    buffer.get(source);
+    float[] target = new float[source.length];
+    for (int vertex = 0; vertex < remap.length; vertex++) {
+      System.arraycopy(source, vertex * components, target, remap[vertex] * components,
+          components);
+    }
+    buffer.position(0);
+    buffer.put(target);
+    buffer.position(0);
+  }
+
+  /**
+   * Returns the average number of vertices transformed per triangle when drawing the given
+   * indices with a FIFO post-transform cache of the given size.
+   */
+  public static float getAcmr(IntArrayList indices, int vertexCount, int cacheSize) {
+    int triangleCount = indices.size() / 3;
+    if (triangleCount == 0) {
+      return 0;
+    }
+    // A vertex is still in the cache if it was loaded by one of the last cacheSize misses.
+    int[] loadedAt = new int[vertexCount];
+    Arrays.fill(loadedAt, Integer.MIN_VALUE / 2);
+    int misses = 0;
+    for (int i = 0; i < triangleCount * 3; i++) {
+      int vertex = indices.get(i);
+      if (misses - loadedAt[vertex] > cacheSize) {
+        loadedAt[vertex] = misses++;
+      }
+    }
+    return (float) misses / triangleCount;
+  }
+
+  private static float getVertexScore(int cachePosition, int activeTriangles) {
+    if (activeTriangles == 0) {
+      // No triangle needs this vertex anymore.
+      return -1;
+    }
+    float score = cachePosition >= 0 ? CACHE_POSITION_SCORES[cachePosition] : 0;
+    return score + VALENCE_SCORES[Math.min(activeTriangles, MAX_SCORED_VALENCE)];
+  }
+}
@@ -0,0 +1,163 @@
+package com.google.android.cameraview.demo;
+
+import java.util.Arrays;
+
+/**
+ * Collects the vertices of a mesh, merging the ones that have exactly the same attributes
+ * (position and normal), so that faces that share a corner also share its index.
+ *
+ * Vertices are compared by the bits of their attributes (with -0 and +0 considered equal), and
+ * looked up in an open addressing hash table of vertex indices, so adding a vertex doesn't
+ * allocate anything.
+ */
+public class VertexWelder {
+  private static final int EMPTY = -1;
+  private static final int INITIAL_TABLE_SIZE = 64;
+
+  private FloatArrayList positions;
+  private FloatArrayList normals;
+  // Hash table of vertex indices, or EMPTY. Its size is a power of two, at least twice the number
+  // of vertices.
+  private int[] table;
+  private int vertexCount;
+
+  /** Creates a welder with room for about {@code expectedVertexCount} vertices. */
+  public VertexWelder(int expectedVertexCount) {
+    positions = new FloatArrayList(expectedVertexCount * 3);
+    normals = new FloatArrayList(expectedVertexCount * 3);
+    int tableSize = INITIAL_TABLE_SIZE;
+    while (tableSize < expectedVertexCount * 2) {
+      tableSize *= 2;
+    }
+    table = new int[tableSize];
+    Arrays.fill(table, EMPTY);
+  }
+
+  /**
+   * Returns the index of the vertex with the given position and normal (3 floats each), adding
+   * it if there is none yet.
+   */
+  public int add(float[] position, float[] normal) {
+    int mask = table.length - 1;
+    int slot = hash(position[0], position[1], position[2], normal[0], normal[1], normal[2]) & mask;
+    while (table[slot] != EMPTY) {
+      int vertex = table[slot];
+      if (equals(positions, vertex, position) && equals(normals, vertex, normal)) {
+        return vertex;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int vertex = vertexCount++;
+    table[slot] = vertex;
+    positions.add(position[0], position[1], position[2]);
+    normals.add(normal[0], normal[1], normal[2]);
+    if (vertexCount * 2 > table.length) {
+      rehash(table.length * 2);
+    }
+    return vertex;
+  }
+
+  /** Returns whether the two given vertices have exactly the same position. */
+  public boolean samePosition(int vertex1, int vertex2) {
+    for (int i = 0; i < 3; i++) {
+      if (bits(positions.get(vertex1 * 3 + i)) != bits(positions.get(vertex2 * 3 + i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the number of distinct vertices. */
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /** Returns the positions of the vertices (3 floats per vertex). */
+  public FloatArrayList getPositions() {
+    return positions;
+  }
+
+  /** Returns the normals of the vertices (3 floats per vertex). */
+  public FloatArrayList getNormals() {
+    return normals;
+  }
+
+  /**
+   * Removes the vertices that are not used by any of the given indices, and renumbers the
+   * indices accordingly. The remaining vertices keep their relative order. Vertices added after
+   * this are not merged with the ones added before.
+   */
+  public void removeUnreferenced(IntArrayList indices) {
+    int[] remap = new int[vertexCount];
+    Arrays.fill(remap, EMPTY);
+    for (int i = 0; i < indices.size(); i++) {
+      remap[indices.get(i)] = 0;
+    }
+    int kept = 0;
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      if (remap[vertex] != EMPTY) {
+        remap[vertex] = kept++;
+      }
+    }
+    if (kept == vertexCount) {
+      return;
+    }
+    FloatArrayList keptPositions = new FloatArrayList(kept * 3);
+    FloatArrayList keptNormals = new FloatArrayList(kept * 3);
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      if (remap[vertex] != EMPTY) {
+        keptPositions.add(positions.get(vertex * 3), positions.get(vertex * 3 + 1),
+            positions.get(vertex * 3 + 2));
+        keptNormals.add(normals.get(vertex * 3), normals.get(vertex * 3 + 1),
+            normals.get(vertex * 3 + 2));
+      }
+    }
+    for (int i = 0; i < indices.size(); i++) {
+      indices.set(i, remap[indices.get(i)]);
+    }
+    positions = keptPositions;
+    normals = keptNormals;
+    vertexCount = kept;
+    rehash(table.length);
+  }
+
+  private void rehash(int tableSize) {
+    table = new int[tableSize];
+    Arrays.fill(table, EMPTY);
+    int mask = tableSize - 1;
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      int slot = hash(positions.get(vertex * 3), positions.get(vertex * 3 + 1),
+          positions.get(vertex * 3 + 2), normals.get(vertex * 3), normals.get(vertex * 3 + 1),
+          normals.get(vertex * 3 + 2)) & mask;
+      while (table[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = vertex;
+    }
+  }
+
+  private static boolean equals(FloatArrayList list, int vertex, float[] value) {
+    return bits(list.get(vertex * 3)) == bits(value[0])
+        && bits(list.get(vertex * 3 + 1)) == bits(value[1])
+        && bits(list.get(vertex * 3 + 2)) == bits(value[2]);
+  }
+
+  private static int hash(float x, float y, float z, float nx, float ny, float nz) {
+    int h = bits(x);
+    h = h * 31 + bits(y);
+    h = h * 31 + bits(z);
+    h = h * 31 + bits(nx);
+    h = h * 31 + bits(ny);
+    h = h * 31 + bits(nz);
+    // Spread the high bits down, since the table only uses the low ones.
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+  }
+
+  // Adding 0 turns -0 into +0, so that they are treated as the same value.
+  private static int bits(float value) {
+    return Float.floatToIntBits(value + 0.0f);
+  }
+}
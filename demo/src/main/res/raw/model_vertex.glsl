@@ -2,10 +2,8 @@ precision mediump float;
 
 attribute vec4 a_Position;
 attribute vec3 a_Normal;
-attribute vec4 a_Color;
 varying vec3 v_Normal;
 varying vec3 v_Position;
-varying vec4 v_Color;
 uniform mat4 u_MVP;
 
 
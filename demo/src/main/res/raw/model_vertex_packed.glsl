@@ -0,0 +1,27 @@
+// Variant of model_vertex.glsl for packed vertices (see PackedVertices): positions are 16-bit
+// normalized values relative to the bounding box of the model, and normals are octahedral-encoded
+// bytes.
+precision highp float;
+
+attribute vec3 a_Position;
+attribute vec2 a_Normal;
+varying vec3 v_Normal;
+varying vec3 v_Position;
+uniform mat4 u_MVP;
+uniform vec3 u_PositionOffset;
+uniform vec3 u_PositionScale;
+
+vec3 decodeNormal(vec2 e) {
+    vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+    if (n.z < 0.0) {
+        n.xy = (1.0 - abs(n.yx)) * sign(n.xy);
+    }
+    return n;
+}
+
+void main() {
+    vec4 position = vec4(u_PositionOffset + a_Position * u_PositionScale, 1.0);
+    v_Normal =  normalize(vec3(u_MVP * vec4(decodeNormal(a_Normal), 0.0)));
+    gl_Position = u_MVP * position;
+    v_Position = gl_Position.xyz / gl_Position.w;
+}
@@ -4,6 +4,7 @@ uniform vec3 u_LightPos;
 uniform vec3 u_ambientColor;
 uniform vec3 u_diffuseColor;
 uniform vec3 u_specularColor;
+uniform vec4 u_materialColor;
 const float specular_exp = 16.0;
 varying vec3 v_Normal;
 varying vec3 v_Position;
@@ -16,5 +17,6 @@ void main()
     vec3 halfDir = normalize(lightPosNorm + cameraDir);
     float specular = pow(max(dot(halfDir, v_Normal), 0.0), specular_exp);
     float diffuse = max(dot(lightPosNorm, v_Normal), 0.0);
-    gl_FragColor = vec4(u_ambientColor * (1.0 - diffuse) + u_diffuseColor * (diffuse - specular) + u_specularColor * specular, 1.0);
+    vec3 lit = (u_ambientColor * (1.0 - diffuse) + u_diffuseColor * (diffuse - specular)) * u_materialColor.rgb;
+    gl_FragColor = vec4(lit + u_specularColor * specular, u_materialColor.a);
 }
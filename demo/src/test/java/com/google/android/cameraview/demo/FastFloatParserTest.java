@@ -0,0 +1,142 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Differential tests that check {@link FastFloatParser} against {@link Float#parseFloat}.
+ */
+public class FastFloatParserTest {
+
+    private static final String[] EDGE_CASES = {
+            "0", "-0", "+0", "0.0", "-0.0", "00000", "0e10", "-0e-10", ".0", "0.",
+            "1", "-1", "+1", "1.", ".5", "-.5", "1.5e3", "1.5E3", "1.5e+3", "1.5e-3", "1e0",
+            "0.1", "0.2", "0.3", "3.14159265358979", "2.718281828459045", "1.0000001",
+            "0.000001", "0.0000001", "123456.789", "-98765.4321", "1e22", "1e-22", "1e23",
+            "1e-23", "9999999999", "123456789012345", "1234567890123456",
+            "12345678901234567890", "0.12345678901234567890123",
+            // 2^24 + 1 and friends: exactly halfway between two floats.
+            "16777217", "16777219", "33554434", "-16777217", "16777217.0", "1.6777217e7",
+            // 2^53 + 1: too large for an exact double mantissa.
+            "9007199254740993", "9007199254740992",
+            // Limits of the float range.
+            "3.4028235e38", "3.4028236e38", "3.5e38", "1e39", "1.17549435e-38",
+            "1.4e-45", "1e-45", "7e-46", "1e-50", "-1e-50",
+            "00001.2500", "000.000123", "1.000000000000000000000000001",
+            // Not handled by the fast path, but valid for Float.parseFloat.
+            "NaN", "-Infinity", "Infinity", "0x1p3", "1f", "2.5d", "3.0F",
+    };
+
+    private static final String[] INVALID = {
+            "", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "1..2", "--1", "abc", "1,5", "1 2",
+    };
+
+    @Test
+    public void testEdgeCases() {
+        for (String s : EDGE_CASES) {
+            assertSameAsPlatform(s);
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        for (String s : INVALID) {
+            assertInvalid(s);
+        }
+    }
+
+    @Test
+    public void testRandomFloats() {
+        // The shortest representation of random float bit patterns.
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            float f = Float.intBitsToFloat(random.nextInt());
+            assertSameAsPlatform(Float.toString(f));
+        }
+    }
+
+    @Test
+    public void testRandomFixedPoint() {
+        // Decimals like the ones written by exporters ("%.6f").
+        Random random = new Random(43);
+        for (int i = 0; i < 200000; i++) {
+            double d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            assertSameAsPlatform(String.format(Locale.US, "%.6f", d));
+        }
+    }
+
+    @Test
+    public void testRandomDigits() {
+        // Random digit strings, with random decimal points and exponents.
+        Random random = new Random(44);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sb.setLength(0);
+            if (random.nextBoolean()) {
+                sb.append('-');
+            }
+            int digits = 1 + random.nextInt(20);
+            int point = random.nextInt(digits + 1);
+            for (int j = 0; j < digits; j++) {
+                if (j == point) {
+                    sb.append('.');
+                }
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(3) == 0) {
+                sb.append('e').append(random.nextInt(60) - 30);
+            }
+            assertSameAsPlatform(sb.toString());
+        }
+    }
+
+    @Test
+    public void testHalfwayCases() {
+        // Integers and scaled values that land exactly halfway between two adjacent floats.
+        Random random = new Random(45);
+        for (int i = 0; i < 100000; i++) {
+            long mantissa = (1L << 24) + (random.nextInt(1 << 24) | 1);
+            int shift = random.nextInt(30);
+            assertSameAsPlatform(Long.toString(mantissa << shift));
+            assertSameAsPlatform(mantissa + "e-" + random.nextInt(23));
+        }
+    }
+
+    @Test
+    public void testSubRange() {
+        byte[] bytes = "v 1.5 -2.25".getBytes(Charset.forName("US-ASCII"));
+        assertThat(FastFloatParser.parseFloat(bytes, 2, 5), is(1.5f));
+        assertThat(FastFloatParser.parseFloat(bytes, 6, 11), is(-2.25f));
+        assertThat(FastFloatParser.parseFloat("Kd 0.5 1", 3, 6), is(0.5f));
+    }
+
+    private static void assertSameAsPlatform(String s) {
+        int expected = Float.floatToRawIntBits(Float.parseFloat(s));
+        byte[] bytes = s.getBytes(Charset.forName("US-ASCII"));
+        assertThat(s, Float.floatToRawIntBits(FastFloatParser.parseFloat(bytes, 0, bytes.length)),
+                is(expected));
+        assertThat(s, Float.floatToRawIntBits(FastFloatParser.parseFloat(s, 0, s.length())),
+                is(expected));
+    }
+
+    private static void assertInvalid(String s) {
+        byte[] bytes = s.getBytes(Charset.forName("US-ASCII"));
+        try {
+            FastFloatParser.parseFloat(bytes, 0, bytes.length);
+            fail("Expected NumberFormatException for bytes \"" + s + "\"");
+        } catch (NumberFormatException expected) {
+        }
+        try {
+            FastFloatParser.parseFloat(s, 0, s.length());
+            fail("Expected NumberFormatException for chars \"" + s + "\"");
+        } catch (NumberFormatException expected) {
+        }
+    }
+}
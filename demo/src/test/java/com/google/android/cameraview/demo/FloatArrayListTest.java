@@ -0,0 +1,46 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+public class FloatArrayListTest {
+
+    @Test
+    public void testAddAndGet() {
+        FloatArrayList list = new FloatArrayList(1);
+        for (int i = 0; i < 100; i++) {
+            list.add(i * 0.5f);
+        }
+        list.add(1f, 2f, 3f);
+        assertThat(list.size(), is(103));
+        assertThat(list.get(99), is(49.5f));
+        assertThat(list.get(102), is(3f));
+        list.set(0, -1f);
+        assertThat(list.get(0), is(-1f));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGet_outOfBounds() {
+        FloatArrayList list = new FloatArrayList();
+        list.add(1f);
+        list.get(1);
+    }
+
+    @Test
+    public void testDrainTo() {
+        FloatArrayList list = new FloatArrayList();
+        list.add(1f, 2f, 3f);
+        FloatBuffer buffer = FloatBuffer.allocate(4);
+        buffer.put(0f);
+        list.drainTo(buffer);
+        assertThat(buffer.position(), is(4));
+        assertThat(buffer.get(3), is(3f));
+        assertThat(list.size(), is(0));
+        list.add(4f);
+        assertThat(list.get(0), is(4f));
+    }
+}
@@ -0,0 +1,49 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class FrustumTest {
+
+    @Test
+    public void testClassifyBox_identity() {
+        // With an identity clip matrix, the frustum is the cube from -1 to 1.
+        Frustum frustum = new Frustum();
+        frustum.set(new float[] { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 });
+
+        assertThat(frustum.classifyBox(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f), is(Frustum.INSIDE));
+        assertThat(frustum.classifyBox(0.5f, -0.5f, -0.5f, 1.5f, 0.5f, 0.5f),
+                is(Frustum.INTERSECTING));
+        assertThat(frustum.classifyBox(-2, -2, -2, 2, 2, 2), is(Frustum.INTERSECTING));
+        assertThat(frustum.classifyBox(1.5f, -0.5f, -0.5f, 2.5f, 0.5f, 0.5f),
+                is(Frustum.OUTSIDE));
+        assertThat(frustum.classifyBox(-0.5f, -0.5f, -3, 0.5f, 0.5f, -2), is(Frustum.OUTSIDE));
+    }
+
+    @Test
+    public void testClassifyBox_perspective() {
+        // Same as Matrix.frustumM(m, 0, -1, 1, -1, 1, 1, 100): a 90 degree field of view looking
+        // down -z, from z = -1 to z = -100.
+        float near = 1;
+        float far = 100;
+        float[] matrix = new float[16];
+        matrix[0] = near;
+        matrix[5] = near;
+        matrix[10] = -(far + near) / (far - near);
+        matrix[11] = -1;
+        matrix[14] = -2 * far * near / (far - near);
+        Frustum frustum = new Frustum();
+        frustum.set(matrix);
+
+        assertThat(frustum.classifyBox(-1, -1, -11, 1, 1, -9), is(Frustum.INSIDE));
+        // Behind the camera.
+        assertThat(frustum.classifyBox(-1, -1, 1, 1, 1, 3), is(Frustum.OUTSIDE));
+        // Beyond the far plane.
+        assertThat(frustum.classifyBox(-1, -1, -200, 1, 1, -150), is(Frustum.OUTSIDE));
+        // Off to the side, where the frustum is 20 wide.
+        assertThat(frustum.classifyBox(12, -1, -11, 14, 1, -9), is(Frustum.OUTSIDE));
+        assertThat(frustum.classifyBox(9, -1, -11, 11, 1, -9), is(Frustum.INTERSECTING));
+    }
+}
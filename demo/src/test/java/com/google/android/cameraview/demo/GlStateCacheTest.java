@@ -0,0 +1,134 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GlStateCacheTest {
+
+    private final RecordingGl gl = new RecordingGl();
+    private final GlStateCache state = new GlStateCache(gl);
+
+    @Test
+    public void testRedundantCallsAreElided() {
+        state.useProgram(3);
+        state.bindArrayBuffer(5);
+        state.setDepthTest(true);
+        assertThat(state.getIssuedCalls(), is(3));
+        assertThat(state.getElidedCalls(), is(0));
+
+        state.useProgram(3);
+        state.bindArrayBuffer(5);
+        state.setDepthTest(true);
+        state.bindElementArrayBuffer(5);
+        assertThat(state.getIssuedCalls(), is(4));
+        assertThat(state.getElidedCalls(), is(3));
+        assertThat(gl.calls, is(Arrays.asList("useProgram 3",
+                "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " 5",
+                "enable " + GLES20.GL_DEPTH_TEST,
+                "bindBuffer " + GLES20.GL_ELEMENT_ARRAY_BUFFER + " 5")));
+
+        state.resetCounters();
+        state.invalidate();
+        gl.calls.clear();
+        state.useProgram(3);
+        assertThat(state.getIssuedCalls(), is(1));
+        assertThat(state.getElidedCalls(), is(0));
+        assertThat(gl.calls, is(Arrays.asList("useProgram 3")));
+    }
+
+    @Test
+    public void testEnabledAttribs() {
+        int position = GlStateCache.attribBit(0);
+        int normal = GlStateCache.attribBit(1);
+        assertThat(GlStateCache.attribBit(-1), is(0));
+
+        // Unknown state: both are enabled.
+        state.setEnabledAttribs(position | normal);
+        assertThat(state.getIssuedCalls(), is(2));
+        state.setEnabledAttribs(position | normal);
+        assertThat(state.getIssuedCalls(), is(2));
+        assertThat(state.getElidedCalls(), is(2));
+        // Only the normal is disabled.
+        state.setEnabledAttribs(position);
+        assertThat(state.getIssuedCalls(), is(3));
+        assertThat(state.getElidedCalls(), is(3));
+        assertThat(gl.calls, is(Arrays.asList("enableVertexAttribArray 0",
+                "enableVertexAttribArray 1", "disableVertexAttribArray 1")));
+    }
+
+    @Test
+    public void testDeletedObjectsAreRebound() {
+        state.useProgram(3);
+        state.bindArrayBuffer(5);
+        state.bindTexture2d(1, 7);
+        state.onProgramDeleted(3);
+        state.onBuffersDeleted(new int[] { 5 });
+        state.onTexturesDeleted(new int[] { 7 });
+        state.resetCounters();
+        gl.calls.clear();
+
+        // The names may have been reused by new objects.
+        state.useProgram(3);
+        state.bindArrayBuffer(5);
+        state.bindTexture2d(1, 7);
+        assertThat(state.getIssuedCalls(), is(3));
+        // The active texture unit is still 1.
+        assertThat(state.getElidedCalls(), is(1));
+        assertThat(gl.calls, is(Arrays.asList("useProgram 3",
+                "bindBuffer " + GLES20.GL_ARRAY_BUFFER + " 5",
+                "bindTexture " + GLES20.GL_TEXTURE_2D + " 7")));
+    }
+
+    // Records the GL calls of the cache, since GLES20 is not available in local tests.
+    private static class RecordingGl implements GlStateCache.Gl {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void useProgram(int program) {
+            calls.add("useProgram " + program);
+        }
+
+        @Override
+        public void bindBuffer(int target, int buffer) {
+            calls.add("bindBuffer " + target + " " + buffer);
+        }
+
+        @Override
+        public void enableVertexAttribArray(int index) {
+            calls.add("enableVertexAttribArray " + index);
+        }
+
+        @Override
+        public void disableVertexAttribArray(int index) {
+            calls.add("disableVertexAttribArray " + index);
+        }
+
+        @Override
+        public void enable(int capability) {
+            calls.add("enable " + capability);
+        }
+
+        @Override
+        public void disable(int capability) {
+            calls.add("disable " + capability);
+        }
+
+        @Override
+        public void activeTexture(int texture) {
+            calls.add("activeTexture " + texture);
+        }
+
+        @Override
+        public void bindTexture(int target, int texture) {
+            calls.add("bindTexture " + target + " " + texture);
+        }
+    }
+}
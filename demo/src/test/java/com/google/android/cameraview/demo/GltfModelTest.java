@@ -0,0 +1,186 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+public class GltfModelTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // A unit square in the z = 0 plane, facing +z: 4 positions, then 4 normals, then 6 indices.
+    private static final float[] SQUARE_POSITIONS = { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0 };
+    private static final short[] SQUARE_INDICES = { 0, 1, 2, 0, 2, 3 };
+
+    private static final String SQUARE_ACCESSORS = "\"bufferViews\": ["
+            + "{\"buffer\": 0, \"byteOffset\": 0, \"byteLength\": 48},"
+            + "{\"buffer\": 0, \"byteOffset\": 48, \"byteLength\": 48},"
+            + "{\"buffer\": 0, \"byteOffset\": 96, \"byteLength\": 12}],"
+            + "\"accessors\": ["
+            + "{\"bufferView\": 0, \"componentType\": 5126, \"count\": 4, \"type\": \"VEC3\"},"
+            + "{\"bufferView\": 1, \"componentType\": 5126, \"count\": 4, \"type\": \"VEC3\"},"
+            + "{\"bufferView\": 2, \"componentType\": 5123, \"count\": 6, \"type\": \"SCALAR\"}],"
+            + "\"meshes\": [{\"name\": \"square\", \"primitives\": [{\"attributes\": "
+            + "{\"POSITION\": 0, \"NORMAL\": 1}, \"indices\": 2, \"material\": 0}]}],"
+            + "\"materials\": [{\"pbrMetallicRoughness\": "
+            + "{\"baseColorFactor\": [1, 0, 0, 1]}}],";
+
+    @Test
+    public void testGlb() throws Exception {
+        GltfModel model = new GltfModel(createGlb("{\"asset\": {\"version\": \"2.0\"},"
+                + SQUARE_ACCESSORS
+                + "\"nodes\": [{\"name\": \"node\", \"mesh\": 0}],"
+                + "\"scenes\": [{\"nodes\": [0]}], \"scene\": 0,"
+                + "\"buffers\": [{\"byteLength\": 108}]}", createSquareBuffer()), false);
+
+        assertThat(model.vertexCount, is(4));
+        assertThat(model.indexCount, is(6));
+        assertThat(model.submeshes.length, is(1));
+        assertThat(model.submeshes[0].materialId, is(0));
+        assertThat(model.submeshes[0].color[1], is(0f));
+        assertThat(model.groups.length, is(1));
+        assertThat(model.groups[0].name, is("node"));
+        assertThat(model.groups[0].boundsMax[0], is(1f));
+        float[] sphere = new float[4];
+        model.getBoundingSphere(sphere);
+        assertThat(sphere[0], is(0.5f));
+        for (int i = 0; i < 6; i++) {
+            int vertex = ((ShortBuffer) model.indexBuffer).get(i);
+            assertThat(model.vertexBuffer.get(vertex * 6),
+                    is(SQUARE_POSITIONS[SQUARE_INDICES[i] * 3]));
+            assertThat(model.vertexBuffer.get(vertex * 6 + 5), is(1f));
+        }
+    }
+
+    @Test
+    public void testGltf_transformAndFlatNormals() throws Exception {
+        // Without normals, and mirrored along x then moved by 10 along y: the winding is reversed,
+        // so the square still faces +z.
+        Map<String, ByteBuffer> files = new HashMap<>();
+        files.put("square data.bin", createSquareBuffer());
+        GltfModel model = new GltfModel("{\"asset\": {\"version\": \"2.0\"},"
+                + SQUARE_ACCESSORS.replace("\"NORMAL\": 1", "\"TEXCOORD_0\": 1")
+                + "\"nodes\": [{\"mesh\": 0, \"translation\": [0, 10, 0]},"
+                + "{\"children\": [0], \"scale\": [-1, 1, 1]}],"
+                + "\"buffers\": [{\"uri\": \"square%20data.bin\", \"byteLength\": 108}]}",
+                files, false);
+
+        // Each triangle gets its own vertices.
+        assertThat(model.vertexCount, is(6));
+        assertThat(model.groups[0].name, is("square"));
+        assertThat(model.groups[0].boundsMin[0], is(-1f));
+        assertThat(model.groups[0].boundsMin[1], is(10f));
+        for (int i = 0; i < 6; i++) {
+            int vertex = ((ShortBuffer) model.indexBuffer).get(i);
+            assertThat(model.vertexBuffer.get(vertex * 6 + 5), is(1f));
+        }
+        float[] first = getPosition(model, 0);
+        float[] second = getPosition(model, 1);
+        float[] third = getPosition(model, 2);
+        float crossZ = (second[0] - first[0]) * (third[1] - first[1])
+                - (second[1] - first[1]) * (third[0] - first[0]);
+        assertThat(crossZ > 0, is(true));
+    }
+
+    @Test
+    public void testGlb_interleavedUsedInPlace() throws Exception {
+        ByteBuffer bin = ByteBuffer.allocateDirect(4 * 24 + 12).order(ByteOrder.LITTLE_ENDIAN);
+        for (int v = 0; v < 4; v++) {
+            bin.putFloat(SQUARE_POSITIONS[v * 3]).putFloat(SQUARE_POSITIONS[v * 3 + 1])
+                    .putFloat(SQUARE_POSITIONS[v * 3 + 2]);
+            bin.putFloat(0).putFloat(0).putFloat(1);
+        }
+        for (short index : SQUARE_INDICES) {
+            bin.putShort(index);
+        }
+        bin.flip();
+        ByteBuffer glb = createGlb("{\"asset\": {\"version\": \"2.0\"},"
+                + "\"bufferViews\": ["
+                + "{\"buffer\": 0, \"byteLength\": 96, \"byteStride\": 24},"
+                + "{\"buffer\": 0, \"byteOffset\": 96, \"byteLength\": 12}],"
+                + "\"accessors\": ["
+                + "{\"bufferView\": 0, \"componentType\": 5126, \"count\": 4, \"type\": \"VEC3\"},"
+                + "{\"bufferView\": 0, \"byteOffset\": 12, \"componentType\": 5126, \"count\": 4,"
+                + " \"type\": \"VEC3\"},"
+                + "{\"bufferView\": 1, \"componentType\": 5123, \"count\": 6,"
+                + " \"type\": \"SCALAR\"}],"
+                + "\"meshes\": [{\"primitives\": [{\"attributes\": "
+                + "{\"POSITION\": 0, \"NORMAL\": 1}, \"indices\": 2}]}],"
+                + "\"nodes\": [{\"mesh\": 0}], \"scenes\": [{\"nodes\": [0]}],"
+                + "\"buffers\": [{\"byteLength\": 108}]}", bin);
+        GltfModel model = new GltfModel(glb, false);
+
+        assertThat(model.vertexCount, is(4));
+        assertThat(model.indexCount, is(6));
+        // The model draws from the GLB buffer itself, which ends with the binary chunk.
+        model.vertexBuffer.put(0, 42);
+        assertThat(glb.getFloat(glb.limit() - 108), is(42f));
+        assertThat(model.vertexBuffer.get(6), is(1f));
+        assertThat(((ShortBuffer) model.indexBuffer).get(2), is((short) 2));
+        assertThat(model.submeshes[0].color, is(Submesh.DEFAULT_COLOR));
+        assertThat(model.groups[0].name, is(MeshGroup.DEFAULT_NAME));
+    }
+
+    @Test
+    public void testGlb_outOfBounds() throws Exception {
+        try {
+            new GltfModel(createGlb("{\"asset\": {\"version\": \"2.0\"}," + SQUARE_ACCESSORS
+                    + "\"nodes\": [{\"mesh\": 0}], \"scenes\": [{\"nodes\": [0]}],"
+                    + "\"buffers\": [{\"byteLength\": 100}]}", createSquareBuffer()), false);
+            fail("Expected IOException for a buffer out of bounds");
+        } catch (IOException expected) {
+        }
+        try {
+            new GltfModel(ByteBuffer.wrap("solid".getBytes(UTF_8)), false);
+            fail("Expected IOException for a file that is not GLB");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static float[] getPosition(GltfModel model, int index) {
+        int vertex = ((ShortBuffer) model.indexBuffer).get(index);
+        return new float[] { model.vertexBuffer.get(vertex * 6),
+                model.vertexBuffer.get(vertex * 6 + 1), model.vertexBuffer.get(vertex * 6 + 2) };
+    }
+
+    private static ByteBuffer createSquareBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(108).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : SQUARE_POSITIONS) {
+            buffer.putFloat(value);
+        }
+        for (int v = 0; v < 4; v++) {
+            buffer.putFloat(0).putFloat(0).putFloat(1);
+        }
+        for (short index : SQUARE_INDICES) {
+            buffer.putShort(index);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer createGlb(String json, ByteBuffer bin) {
+        byte[] jsonBytes = json.getBytes(UTF_8);
+        int jsonLength = (jsonBytes.length + 3) & ~3;
+        int binLength = (bin.remaining() + 3) & ~3;
+        int length = 12 + 8 + jsonLength + 8 + binLength;
+        ByteBuffer glb = ByteBuffer.allocateDirect(length).order(ByteOrder.LITTLE_ENDIAN);
+        glb.putInt(0x46546C67).putInt(2).putInt(length);
+        glb.putInt(jsonLength).putInt(0x4E4F534A).put(jsonBytes);
+        while (glb.position() < 20 + jsonLength) {
+            glb.put((byte) ' ');
+        }
+        glb.putInt(binLength).putInt(0x004E4942).put(bin.duplicate());
+        glb.position(0);
+        return glb;
+    }
+}
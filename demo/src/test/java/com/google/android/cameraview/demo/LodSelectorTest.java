@@ -0,0 +1,78 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LodSelectorTest {
+
+    @Test
+    public void testSelectLod_coarsestUnderOnePixel() {
+        FakeModel model = new FakeModel(0, 0.01f, 0.1f, 1);
+
+        assertThat(LodSelector.selectLod(model, 5), is(2));
+        assertThat(LodSelector.selectLod(model, 0.5f), is(3));
+        assertThat(LodSelector.selectLod(model, 500), is(0));
+    }
+
+    @Test
+    public void testSelectLod_hysteresis() {
+        FakeModel model = new FakeModel(0, 0.01f, 0.1f, 1);
+        model.setLod(LodSelector.selectLod(model, 5));
+        assertThat(model.getLod(), is(2));
+
+        // Getting closer: level 2 is kept until its error reaches a pixel.
+        assertThat(LodSelector.selectLod(model, 9.9f), is(2));
+        model.setLod(LodSelector.selectLod(model, 10));
+        assertThat(model.getLod(), is(1));
+
+        // Moving back: level 2 is only used again well under a pixel.
+        assertThat(LodSelector.selectLod(model, 9.9f), is(1));
+        assertThat(LodSelector.selectLod(model, 7), is(2));
+    }
+
+    @Test
+    public void testSelectLod_singleLevel() {
+        FakeModel model = new FakeModel(0);
+
+        assertThat(LodSelector.selectLod(model, 0.001f), is(0));
+    }
+
+    private static class FakeModel extends Model {
+        private final float[] errors;
+        private int lod;
+
+        FakeModel(float... errors) {
+            this.errors = errors;
+        }
+
+        @Override
+        public int getLodCount() {
+            return errors.length;
+        }
+
+        @Override
+        public float getLodError(int lod) {
+            return errors[lod];
+        }
+
+        @Override
+        public int getLod() {
+            return lod;
+        }
+
+        @Override
+        public void setLod(int lod) {
+            this.lod = lod;
+        }
+
+        @Override
+        public void init(float boundSize) {
+        }
+
+        @Override
+        public void draw(float[] viewMatrix, float[] projectionMatrix, Light light) {
+        }
+    }
+}
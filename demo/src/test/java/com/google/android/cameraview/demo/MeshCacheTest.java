@@ -0,0 +1,108 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+public class MeshCacheTest {
+
+    private static final String ASSET_ID = "asset";
+    private static final long HASH = MeshCache.hash("http://example.com/model.obj");
+
+    private File directory;
+    private MeshCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("meshcache", "");
+        directory.delete();
+        cache = new MeshCache(directory);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        FloatBuffer floats = FloatBuffer.wrap(new float[] { 1.5f, -2f, 3f });
+        IntBuffer ints = IntBuffer.wrap(new int[] { 0, 1, 2, 2, 1 });
+        ShortBuffer shorts = ShortBuffer.wrap(new short[] { 7 });
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[] { 'a', 'b' });
+        floats.position(2);
+        cache.store(ASSET_ID, HASH, new MeshCache.Entry(new float[] { 4f, 5f },
+                new Buffer[] { floats, ints, shorts, bytes }));
+        assertThat(floats.position(), is(2));
+
+        MeshCache.Entry entry = cache.load(ASSET_ID, HASH);
+        assertThat(entry, is(notNullValue()));
+        assertThat(entry.values.length, is(2));
+        assertThat(entry.values[1], is(5f));
+        FloatBuffer loadedFloats = entry.getFloatBuffer(0);
+        assertThat(loadedFloats.limit(), is(3));
+        assertThat(loadedFloats.get(0), is(1.5f));
+        assertThat(loadedFloats.get(2), is(3f));
+        IntBuffer loadedInts = entry.getIntBuffer(1);
+        assertThat(loadedInts.limit(), is(5));
+        assertThat(loadedInts.get(3), is(2));
+        assertThat(entry.getShortBuffer(2).get(0), is((short) 7));
+        assertThat(entry.getByteBuffer(3).limit(), is(2));
+        assertThat(entry.getByteBuffer(3).get(1), is((byte) 'b'));
+    }
+
+    @Test
+    public void testLoad_missing() throws Exception {
+        assertThat(cache.load(ASSET_ID, HASH), is(nullValue()));
+    }
+
+    @Test
+    public void testLoad_otherContent() throws Exception {
+        cache.store(ASSET_ID, HASH, new MeshCache.Entry(new float[0], new Buffer[0]));
+        assertThat(cache.load(ASSET_ID, HASH + 1), is(nullValue()));
+        // Stale files are deleted.
+        assertThat(cache.load(ASSET_ID, HASH), is(nullValue()));
+    }
+
+    @Test
+    public void testLoad_truncated() throws Exception {
+        cache.store(ASSET_ID, HASH, new MeshCache.Entry(new float[0],
+                new Buffer[] { FloatBuffer.wrap(new float[100]) }));
+        File file = new File(directory, ASSET_ID + ".mesh");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 4);
+        randomAccessFile.close();
+        try {
+            cache.load(ASSET_ID, HASH);
+            fail("Expected IOException for a truncated file");
+        } catch (IOException expected) {
+        }
+        assertThat(file.exists(), is(false));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testEntry_wrongType() throws Exception {
+        new MeshCache.Entry(new float[0], new Buffer[] { IntBuffer.allocate(1) }).getFloatBuffer(0);
+    }
+}
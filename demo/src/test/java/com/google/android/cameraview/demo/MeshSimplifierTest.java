@@ -0,0 +1,132 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+public class MeshSimplifierTest {
+    private static final int SIZE = 20;
+
+    @Test
+    public void testBuildLods_flatGrid() {
+        FloatBuffer vertices = createGrid(false);
+        IntBuffer indices = createGridIndices();
+        Submesh[] submeshes = { new Submesh(0, Submesh.DEFAULT_COLOR, 0, indices.limit()) };
+        MeshLod[] lods = new MeshSimplifier(vertices, vertexCount(), indices, submeshes)
+                .buildLods(MeshSimplifier.DEFAULT_LOD_RATIOS);
+
+        assertThat(lods.length, is(3));
+        int fullTriangles = indices.limit() / 3;
+        assertThat(lods[0].indexCount / 3 <= fullTriangles / 2, is(true));
+        assertThat(lods[1].indexCount / 3 < lods[0].indexCount / 3, is(true));
+        // The border of the grid is kept, so it can't go all the way down to 10%.
+        assertThat(lods[2].indexCount / 3 < lods[1].indexCount / 3, is(true));
+        for (MeshLod lod : lods) {
+            // A flat surface is simplified without error or flipped triangles.
+            assertThat(lod.error, is(0f));
+            assertThat(lod.indices instanceof IntBuffer, is(true));
+            for (int t = 0; t < lod.indexCount / 3; t++) {
+                assertThat(getNormalZ(vertices, (IntBuffer) lod.indices, t) > 0, is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testBuildLods_keepsMaterialBoundaries() {
+        FloatBuffer vertices = createGrid(true);
+        IntBuffer indices = createGridIndices();
+        // The left half of the grid has one material, and the right half another.
+        int half = indices.limit() / 2;
+        Submesh[] submeshes = {
+                new Submesh(0, Submesh.DEFAULT_COLOR, 0, half),
+                new Submesh(1, Submesh.DEFAULT_COLOR, half, half) };
+        MeshLod[] lods = new MeshSimplifier(vertices, vertexCount(), indices, submeshes)
+                .buildLods(new float[] { 0.25f });
+
+        assertThat(lods.length, is(1));
+        MeshLod lod = lods[0];
+        assertThat(lod.error > 0, is(true));
+        assertThat(lod.submeshes.length, is(2));
+        assertThat(lod.submeshes[1].materialId, is(1));
+        assertThat(lod.submeshes[0].firstIndex + lod.submeshes[0].indexCount,
+                is(lod.submeshes[1].firstIndex));
+        for (int s = 0; s < 2; s++) {
+            Submesh submesh = lod.submeshes[s];
+            for (int i = submesh.firstIndex; i < submesh.firstIndex + submesh.indexCount; i++) {
+                float x = vertices.get(((IntBuffer) lod.indices).get(i) * 6);
+                if (s == 0) {
+                    assertThat(x <= SIZE / 2, is(true));
+                } else {
+                    assertThat(x >= SIZE / 2, is(true));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBuildLods_shortIndices() {
+        FloatBuffer vertices = createGrid(true);
+        IntBuffer intIndices = createGridIndices();
+        ShortBuffer indices = ShortBuffer.allocate(intIndices.limit());
+        for (int i = 0; i < intIndices.limit(); i++) {
+            indices.put(i, (short) intIndices.get(i));
+        }
+        Submesh[] submeshes = { new Submesh(0, Submesh.DEFAULT_COLOR, 0, indices.limit()) };
+        MeshLod[] lods = new MeshSimplifier(vertices, vertexCount(), indices, submeshes)
+                .buildLods(new float[] { 0.5f, 0.25f });
+
+        assertThat(lods.length, is(2));
+        assertThat(lods[1].indices instanceof ShortBuffer, is(true));
+        assertThat(lods[1].error >= lods[0].error, is(true));
+        for (int i = 0; i < lods[1].indexCount; i++) {
+            assertThat(((ShortBuffer) lods[1].indices).get(i) < vertexCount(), is(true));
+        }
+    }
+
+    private static int vertexCount() {
+        return (SIZE + 1) * (SIZE + 1);
+    }
+
+    // A grid of SIZE x SIZE quads in the z = 0 plane, or bumpy.
+    private static FloatBuffer createGrid(boolean bumpy) {
+        FloatBuffer vertices = FloatBuffer.allocate(vertexCount() * 6);
+        for (int y = 0; y <= SIZE; y++) {
+            for (int x = 0; x <= SIZE; x++) {
+                float z = bumpy ? (float) (Math.sin(x * 0.4) * Math.cos(y * 0.3)) : 0;
+                vertices.put(x).put(y).put(z).put(0).put(0).put(1);
+            }
+        }
+        vertices.position(0);
+        return vertices;
+    }
+
+    private static IntBuffer createGridIndices() {
+        IntBuffer indices = IntBuffer.allocate(SIZE * SIZE * 6);
+        // Column by column, so that the left half of the triangles comes first.
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                int v = y * (SIZE + 1) + x;
+                indices.put(v).put(v + 1).put(v + SIZE + 2);
+                indices.put(v).put(v + SIZE + 2).put(v + SIZE + 1);
+            }
+        }
+        indices.position(0);
+        return indices;
+    }
+
+    private static float getNormalZ(FloatBuffer vertices, IntBuffer indices, int triangle) {
+        int a = indices.get(triangle * 3) * 6;
+        int b = indices.get(triangle * 3 + 1) * 6;
+        int c = indices.get(triangle * 3 + 2) * 6;
+        float ux = vertices.get(b) - vertices.get(a);
+        float uy = vertices.get(b + 1) - vertices.get(a + 1);
+        float vx = vertices.get(c) - vertices.get(a);
+        float vy = vertices.get(c + 1) - vertices.get(a + 1);
+        return ux * vy - uy * vx;
+    }
+}
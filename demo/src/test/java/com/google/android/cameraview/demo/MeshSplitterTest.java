@@ -0,0 +1,70 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+public class MeshSplitterTest {
+
+    @Test
+    public void testSplit_smallMeshIsUnchanged() {
+        IntArrayList indices = new IntArrayList();
+        indices.add(0, 1, 2);
+        indices.add(2, 1, 3);
+        Submesh[] submeshes = { new Submesh(0, Submesh.DEFAULT_COLOR, 0, 6) };
+        MeshSplitter split = MeshSplitter.split(indices, 4, submeshes, null,
+                MeshSplitter.MAX_CHUNK_VERTICES);
+        assertThat(split.getChunkCount(), is(1));
+        assertThat(split.getVertexCount(), is(4));
+        assertThat(split.indices.get(5), is((short) 3));
+        assertThat(split.submeshes.length, is(1));
+        FloatBuffer positions = FloatBuffer.allocate(12);
+        assertThat(split.gatherVertices(positions, 3) == positions, is(true));
+    }
+
+    @Test
+    public void testSplit_chunksHaveAtMostMaxVertices() {
+        // A strip of 10 quads (22 vertices), in two submeshes and two groups.
+        IntArrayList indices = new IntArrayList();
+        for (int i = 0; i < 10; i++) {
+            int v = i * 2;
+            indices.add(v, v + 1, v + 3);
+            indices.add(v, v + 3, v + 2);
+        }
+        Submesh[] submeshes = {
+                new Submesh(0, Submesh.DEFAULT_COLOR, 0, 36),
+                new Submesh(1, Submesh.DEFAULT_COLOR, 36, 24) };
+        MeshGroup[] groups = {
+                new MeshGroup("a", 0, 1, new float[3], new float[3]),
+                new MeshGroup("b", 1, 1, new float[3], new float[3]) };
+        FloatBuffer positions = FloatBuffer.allocate(22);
+        for (int i = 0; i < 22; i++) {
+            positions.put(i, i);
+        }
+
+        MeshSplitter split = MeshSplitter.split(indices, 22, submeshes, groups, 5);
+        FloatBuffer splitPositions = split.gatherVertices(positions, 1);
+
+        assertThat(split.getChunkCount() > 1, is(true));
+        // Every triangle still refers to the same original vertices, through its base vertex.
+        for (Submesh submesh : split.submeshes) {
+            for (int i = submesh.firstIndex; i < submesh.firstIndex + submesh.indexCount; i++) {
+                int local = split.indices.get(i) & 0xffff;
+                assertThat(local < 5, is(true));
+                assertThat((int) splitPositions.get(submesh.baseVertex + local),
+                        is(indices.get(i)));
+            }
+        }
+        // The groups still cover their original submeshes.
+        MeshGroup second = split.groups[1];
+        assertThat(split.submeshes[second.firstSubmesh].firstIndex, is(36));
+        Submesh last = split.submeshes[second.firstSubmesh + second.submeshCount - 1];
+        assertThat(last.firstIndex + last.indexCount, is(60));
+        assertThat(split.submeshes[second.firstSubmesh].materialId, is(1));
+        assertThat(split.groups[0].firstSubmesh, is(0));
+        assertThat(split.groups[0].submeshCount, is(second.firstSubmesh));
+    }
+}
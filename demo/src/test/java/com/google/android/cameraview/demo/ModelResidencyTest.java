@@ -0,0 +1,124 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+public class ModelResidencyTest {
+
+    // 4 vertices of 6 floats, and 6 short indices.
+    private static final long BYTES = 4 * 6 * 4 + 6 * 2;
+
+    @Test
+    public void testWithoutSource_geometryIsKept() throws Exception {
+        IndexedModel model = createSquare(4);
+        model.onGeometryUploaded();
+
+        assertThat(model.getCpuBytes(), is(BYTES));
+        assertThat(model.vertexBuffer, is(notNullValue()));
+        assertThat(model.ensureGeometryLoaded(), is(true));
+    }
+
+    @Test
+    public void testWithSource_geometryIsReleasedAndReloaded() throws Exception {
+        IndexedModel model = createSquare(4);
+        model.setGeometrySource(createSource(4));
+        assertThat(model.getCpuBytes(), is(BYTES));
+
+        model.onGeometryUploaded();
+        assertThat(model.getCpuBytes(), is(0L));
+        assertThat(model.vertexBuffer, is(nullValue()));
+        assertThat(model.indexBuffer, is(nullValue()));
+
+        assertThat(model.ensureGeometryLoaded(), is(true));
+        assertThat(model.getCpuBytes(), is(BYTES));
+        assertThat(model.vertexBuffer.get(6), is(1f));
+        assertThat(((ShortBuffer) model.indexBuffer).get(5), is((short) 2));
+    }
+
+    @Test
+    public void testSourceSetAfterUpload_geometryIsReleased() {
+        IndexedModel model = createSquare(4);
+        model.onGeometryUploaded();
+        model.setGeometrySource(createSource(4));
+
+        assertThat(model.getCpuBytes(), is(0L));
+    }
+
+    @Test
+    public void testPacked_reloadedGeometryIsPacked() throws Exception {
+        IndexedModel model = createSquare(4);
+        model.packVertices();
+        model.setGeometrySource(createSource(4));
+        model.onGeometryUploaded();
+        assertThat(model.packedVertices, is(nullValue()));
+        assertThat(model.packed, is(true));
+
+        assertThat(model.ensureGeometryLoaded(), is(true));
+        assertThat(model.vertexBuffer, is(nullValue()));
+        assertThat(model.packedVertices, is(notNullValue()));
+        assertThat(model.getCpuBytes(), is(4L * PackedVertices.STRIDE + 6 * 2));
+    }
+
+    @Test
+    public void testMismatchedOrMissingSource_staysReleased() throws Exception {
+        IndexedModel model = createSquare(4);
+        model.setGeometrySource(createSource(5));
+        model.onGeometryUploaded();
+        assertThat(model.ensureGeometryLoaded(), is(false));
+        assertThat(model.vertexBuffer, is(nullValue()));
+
+        model.setGeometrySource(new ArrayModel.GeometrySource() {
+            @Override
+            public ArrayModel reload() throws IOException {
+                throw new IOException("Gone");
+            }
+        });
+        try {
+            model.ensureGeometryLoaded();
+            fail("Expected the IOException of the source");
+        } catch (IOException expected) {
+        }
+        assertThat(model.getCpuBytes(), is(0L));
+    }
+
+    private static ArrayModel.GeometrySource createSource(final int vertexCount) {
+        return new ArrayModel.GeometrySource() {
+            @Override
+            public ArrayModel reload() {
+                return createSquare(vertexCount);
+            }
+        };
+    }
+
+    private static IndexedModel createSquare(int vertexCount) {
+        IndexedModel model = new IndexedModel();
+        FloatBuffer vertices = ByteBuffer.allocateDirect(vertexCount * 6 * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int v = 0; v < vertexCount; v++) {
+            vertices.put(v & 1).put(v >> 1).put(0).put(0).put(0).put(1);
+        }
+        vertices.position(0);
+        ShortBuffer indices = ByteBuffer.allocateDirect(6 * 2).order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        indices.put(new short[] { 0, 1, 3, 0, 3, 2 }).position(0);
+        model.vertexBuffer = vertices;
+        model.vertexCount = vertexCount;
+        model.indexBuffer = indices;
+        model.indexCount = 6;
+        model.indexType = GLES20.GL_UNSIGNED_SHORT;
+        return model;
+    }
+}
@@ -0,0 +1,36 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class MtlLibraryTest {
+
+    @Test
+    public void testMaterialIds() throws Exception {
+        MtlLibrary library = new MtlLibrary();
+        library.parseAndAdd("newmtl red\nKd 1 0 0\nnewmtl green\nKd 0 1 0\n");
+        library.parseAndAdd("newmtl blue\nKd 0 0 1\n");
+        assertThat(library.getMaterialCount(), is(3));
+        assertThat(library.getMaterialId("red"), is(0));
+        assertThat(library.getMaterialId("blue"), is(2));
+        assertThat(library.getMaterial(1).name, is("green"));
+        assertThat(library.getMaterial(1).diffuseColor[1], is(1f));
+    }
+
+    @Test
+    public void testMaterialIds_redefinedMaterialKeepsId() throws Exception {
+        MtlLibrary library = new MtlLibrary();
+        library.parseAndAdd("newmtl red\nKd 1 0 0\nnewmtl green\nKd 0 1 0\n");
+        library.parseAndAdd("newmtl red\nKd 0.5 0 0\n");
+        assertThat(library.getMaterialCount(), is(2));
+        assertThat(library.getMaterialId("red"), is(0));
+        assertThat(library.getMaterial(0).diffuseColor[0], is(0.5f));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testGetMaterialId_unknown() {
+        new MtlLibrary().getMaterialId("missing");
+    }
+}
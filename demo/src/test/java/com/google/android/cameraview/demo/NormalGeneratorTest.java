@@ -0,0 +1,119 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class NormalGeneratorTest {
+
+    @Test
+    public void testGenerate_areaWeighted() throws Exception {
+        // A large face in the z = 0 plane and a small one in the x = 0 plane, sharing the edge
+        // from vertex 1 to vertex 2. With a crease angle above 90 degrees, they are smoothed
+        // together, and the large face dominates.
+        ObjGeometry geometry = ObjGeometry.parse("v 0 0 0\nv 0 1 0\nv 10 0 0\nv 0 0 -1\n"
+                + "f 1 3 2\nf 1 4 2\n");
+        NormalGenerator normals = NormalGenerator.generate(geometry, 100, null);
+        float[] normal = new float[3];
+        normals.getNormal(0, 0, normal);
+        // Face areas are 5 and 0.5.
+        assertClose(normal[2], 10 / (float) Math.sqrt(101));
+        assertClose(normal[0], 1 / (float) Math.sqrt(101));
+        // The corner that only the large face uses keeps its normal.
+        normals.getNormal(0, 1, normal);
+        assertThat(normal[2], is(1f));
+    }
+
+    @Test
+    public void testGenerate_crease() throws Exception {
+        ObjGeometry geometry = ObjGeometry.parse("v 0 0 0\nv 0 1 0\nv 1 0 0\nv 0 0 -1\n"
+                + "f 1 3 2\nf 1 4 2\n");
+        NormalGenerator normals = NormalGenerator.generate(geometry,
+                NormalGenerator.DEFAULT_CREASE_ANGLE, null);
+        float[] normal = new float[3];
+        normals.getNormal(0, 0, normal);
+        assertThat(normal[0], is(0f));
+        assertThat(normal[2], is(1f));
+        normals.getNormal(1, 0, normal);
+        assertThat(normal[0], is(1f));
+        assertThat(normal[2], is(0f));
+    }
+
+    @Test
+    public void testGenerate_seamWithDuplicatedPositions() throws Exception {
+        // Two slightly bent faces, whose shared edge is written with different indices on each
+        // side (vertices 2 and 3 are the same positions as 4 and 5), as exporters do at UV seams.
+        ObjGeometry geometry = ObjGeometry.parse("v 0 0 0\nv 1 0 0\nv 0 1 0\n"
+                + "v 1 0 0\nv 0 1 0\nv 1 1 0.5\nf 1 2 3\nf 5 4 6\n");
+        NormalGenerator normals = NormalGenerator.generate(geometry,
+                NormalGenerator.DEFAULT_CREASE_ANGLE, null);
+        float[] normal = new float[3];
+        float[] otherSide = new float[3];
+        normals.getNormal(0, 1, normal);
+        normals.getNormal(1, 1, otherSide);
+        // Both sides are smoothed together, into exactly the same normal.
+        assertThat(normal[2] < 1f, is(true));
+        assertThat(otherSide[0], is(normal[0]));
+        assertThat(otherSide[1], is(normal[1]));
+        assertThat(otherSide[2], is(normal[2]));
+        // The corner that only the first face uses keeps its normal.
+        normals.getNormal(0, 0, normal);
+        assertThat(normal[2], is(1f));
+    }
+
+    @Test
+    public void testGenerate_parallelSameAsSequential() throws Exception {
+        // A bumpy grid, large enough to be split into several tasks.
+        int size = 130;
+        StringBuilder obj = new StringBuilder();
+        for (int y = 0; y <= size; y++) {
+            for (int x = 0; x <= size; x++) {
+                obj.append("v ").append(x).append(' ').append(y).append(' ')
+                        .append((float) Math.sin(x * 0.3) * (float) Math.cos(y * 0.2)).append('\n');
+            }
+        }
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int v = y * (size + 1) + x + 1;
+                obj.append("f ").append(v).append(' ').append(v + 1).append(' ')
+                        .append(v + size + 2).append(' ').append(v + size + 1).append('\n');
+            }
+        }
+        ObjGeometry geometry = ObjGeometry.parse(obj.toString());
+        assertThat(NormalGenerator.isNeeded(geometry), is(true));
+
+        NormalGenerator sequential = NormalGenerator.generate(geometry, 30, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        NormalGenerator parallel;
+        try {
+            parallel = NormalGenerator.generate(geometry, 30, executor);
+        } finally {
+            executor.shutdown();
+        }
+        float[] expected = new float[3];
+        float[] actual = new float[3];
+        for (int face = 0; face < geometry.getFaceCount(); face++) {
+            for (int j = 0; j < 4; j++) {
+                sequential.getNormal(face, j, expected);
+                parallel.getNormal(face, j, actual);
+                for (int i = 0; i < 3; i++) {
+                    assertThat(actual[i], is(expected[i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIsNeeded() throws Exception {
+        assertThat(NormalGenerator.isNeeded(ObjGeometry.parse(
+                "v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 0 1\nf 1//1 2//1 3//1\n")), is(false));
+    }
+
+    private static void assertClose(float actual, float expected) {
+        assertThat(actual + " != " + expected, Math.abs(actual - expected) < 1e-6f, is(true));
+    }
+}
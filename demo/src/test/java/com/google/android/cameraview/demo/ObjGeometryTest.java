@@ -0,0 +1,222 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ObjGeometryTest {
+
+    private static final String CUBE_OBJ = "mtllib cube.mtl\n"
+            + "v -1 -1 -1\nv 1 -1 -1\nv 1 1 -1\nv -1 1 -1\n"
+            + "v -1 -1 1\nv 1 -1 1\nv 1 1 1\nv -1 1 1\n"
+            + "vn 0 0 -1\nvn 0 0 1\n"
+            + "vt 0 0\nvt 1 0\nvt 1 1\n"
+            + "usemtl front\n"
+            + "f 1/1/1 2/2/1 3/3/1 4/1/1\n"
+            + "usemtl back\n"
+            + "f -1//-1 -2//-1 -3//-1\n";
+
+    @Test
+    public void testParse() throws Exception {
+        ObjGeometry geometry = ObjGeometry.parse(CUBE_OBJ);
+        assertThat(geometry.getVertexCount(), is(8));
+        assertThat(geometry.getNormalCount(), is(2));
+        assertThat(geometry.getTexCoordCount(), is(3));
+        assertThat(geometry.getFaceCount(), is(2));
+        assertThat(geometry.getTotalFaceVertexCount(), is(7));
+        assertThat(geometry.getMaterialCount(), is(2));
+        // Quad.
+        assertThat(geometry.getFaceMaterial(0), is(0));
+        assertThat(geometry.getFaceMaterialName(0), is("front"));
+        assertThat(geometry.getFaceVertexCount(0), is(4));
+        assertThat(geometry.getFaceVertexIndex(0, 2), is(2));
+        assertThat(geometry.getFaceTexCoordIndex(0, 2), is(2));
+        assertThat(geometry.getFaceNormalIndex(0, 2), is(0));
+        // Triangle.
+        assertThat(geometry.getFaceMaterial(1), is(1));
+        assertThat(geometry.getMaterialName(1), is("back"));
+        assertThat(geometry.getFaceVertexCount(1), is(3));
+        assertThat(geometry.getFaceVertexIndex(1, 0), is(7));
+        assertThat(geometry.getFaceVertexIndex(1, 2), is(5));
+        assertThat(geometry.getFaceTexCoordIndex(1, 0), is(ObjGeometry.MISSING));
+        assertThat(geometry.getFaceNormalIndex(1, 0), is(1));
+        assertThat(geometry.getBoundsMin().x, is(-1f));
+        assertThat(geometry.getBoundsMax().z, is(1f));
+    }
+
+    @Test
+    public void testParse_noMaterial() throws Exception {
+        ObjGeometry geometry = ObjGeometry.parse("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n");
+        assertThat(geometry.getMaterialCount(), is(0));
+        assertThat(geometry.getFaceMaterial(0), is(ObjGeometry.MISSING));
+        assertThat(geometry.getFaceMaterialName(0), is((String) null));
+    }
+
+    @Test
+    public void testParse_groups() throws Exception {
+        ObjGeometry geometry = ObjGeometry.parse("v 0 0 0\nv 1 0 0\nv 0 1 0\n"
+                + "f 1 2 3\no car\nf 1 2 3\ng wheel left\nf 1 2 3\no car\nf 1 2 3\n");
+        assertThat(geometry.getGroupCount(), is(2));
+        assertThat(geometry.getFaceGroup(0), is(ObjGeometry.MISSING));
+        assertThat(geometry.getFaceGroupName(0), is((String) null));
+        assertThat(geometry.getFaceGroupName(1), is("car"));
+        assertThat(geometry.getFaceGroupName(2), is("wheel left"));
+        assertThat(geometry.getFaceGroup(3), is(0));
+    }
+
+    @Test
+    public void testGetFacesByGroupAndMaterial() throws Exception {
+        ObjGeometry geometry = ObjGeometry.parse("v 0 0 0\nv 1 0 0\nv 0 1 0\n"
+                + "f 1 2 3\nusemtl a\nf 1 2 3\nusemtl b\nf 1 2 3\nusemtl a\nf 1 2 3\n"
+                + "g top\nf 1 2 3\nusemtl b\nf 1 2 3\ng bottom\nf 1 2 3\n"
+                + "g top\nusemtl a\nf 1 2 3\n");
+        int[] faces = geometry.getFacesByGroupAndMaterial();
+        // No group: face 0 (no material), faces 1 and 3 ("a"), face 2 ("b").
+        // Group "top": faces 4 and 7 ("a"), face 5 ("b"). Group "bottom": face 6 ("b").
+        int[] expected = { 0, 1, 3, 2, 4, 7, 5, 6 };
+        assertThat(faces.length, is(expected.length));
+        for (int i = 0; i < expected.length; i++) {
+            assertThat(faces[i], is(expected[i]));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetFaceVertexIndex_outOfFace() throws Exception {
+        ObjGeometry.parse(CUBE_OBJ).getFaceVertexIndex(1, 3);
+    }
+
+    @Test(expected = ObjGeometry.ObjParseException.class)
+    public void testParse_noVertices() throws Exception {
+        ObjGeometry.parse("# nothing here\n");
+    }
+
+    @Test
+    public void testParseParallel_matchesSequential() throws Exception {
+        byte[] obj = generateObj(new Random(1234), 60000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSameGeometry(ObjGeometry.parse(obj, executor), ObjGeometry.parse(obj));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreamingParser_matchesSequential() throws Exception {
+        byte[] obj = generateObj(new Random(5678), 60000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSameGeometry(stream(obj, new Random(1), executor), ObjGeometry.parse(obj));
+            assertSameGeometry(stream(obj, new Random(2), null), ObjGeometry.parse(obj));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreamingParser_reportsLineNumberOfError() throws Exception {
+        byte[] obj = generateObj(new Random(9), 60000);
+        String badLine = "f 1 2\n";
+        byte[] bad = new byte[obj.length + badLine.length()];
+        System.arraycopy(obj, 0, bad, 0, obj.length);
+        System.arraycopy(badLine.getBytes(Charset.forName("US-ASCII")), 0, bad, obj.length,
+                badLine.length());
+        int lines = 0;
+        for (byte b : bad) {
+            if (b == '\n') lines++;
+        }
+        try {
+            stream(bad, new Random(3), null);
+            throw new AssertionError("Expected an ObjParseException.");
+        } catch (ObjGeometry.ObjParseException e) {
+            assertThat(e.getMessage(), is("Failed to parse OBJ, line #" + lines));
+        }
+    }
+
+    @Test
+    public void testStreamingParser_longLine() throws Exception {
+        StringBuilder sb = new StringBuilder("v 0 0 0\nv 1 0 0\nv 0 1 0\n#");
+        for (int i = 0; i < 600 * 1024; i++) {
+            sb.append('x');
+        }
+        sb.append("\nf 1 2 3");
+        byte[] obj = sb.toString().getBytes(Charset.forName("US-ASCII"));
+        assertSameGeometry(stream(obj, new Random(4), null), ObjGeometry.parse(obj));
+    }
+
+    // Streams the given file to a StreamingParser, in pieces of random size.
+    private static ObjGeometry stream(byte[] obj, Random random, ExecutorService executor)
+            throws ObjGeometry.ObjParseException {
+        ObjGeometry.StreamingParser parser = new ObjGeometry.StreamingParser(executor);
+        int offset = 0;
+        while (offset < obj.length) {
+            int length = Math.min(obj.length - offset, 1 + random.nextInt(20000));
+            parser.feed(obj, offset, length);
+            offset += length;
+        }
+        return parser.finish();
+    }
+
+    // Generates a strip of quads, using a mix of absolute and relative indices, and switching
+    // materials and groups every now and then.
+    private static byte[] generateObj(Random random, int quadCount) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < quadCount; i++) {
+            if (random.nextInt(500) == 0) {
+                sb.append("usemtl material").append(random.nextInt(10)).append('\n');
+            }
+            if (random.nextInt(700) == 0) {
+                sb.append(random.nextBoolean() ? "o" : "g").append(" part")
+                        .append(random.nextInt(10)).append('\n');
+            }
+            sb.append("v ").append(random.nextFloat()).append(' ').append(i)
+                    .append(" 0\nv ").append(random.nextFloat()).append(' ').append(i)
+                    .append(" 1\nvn 0 1 0\nvt 0.5 0.25\n");
+            if (i > 0) {
+                if (random.nextBoolean()) {
+                    int base = i * 2 - 1;
+                    sb.append("f ").append(base).append("/1 ").append(base + 1).append("/2 ")
+                            .append(base + 3).append("/3 ").append(base + 2).append("/4\n");
+                } else {
+                    sb.append("f -4/-1/-1 -3/-2/-2 -1/-1/-1 -2/-2/-2\n");
+                }
+            }
+        }
+        return sb.toString().getBytes(Charset.forName("US-ASCII"));
+    }
+
+    private static void assertSameGeometry(ObjGeometry actual, ObjGeometry expected) {
+        assertThat(actual.getVertexCount(), is(expected.getVertexCount()));
+        assertThat(actual.getNormalCount(), is(expected.getNormalCount()));
+        assertThat(actual.getTexCoordCount(), is(expected.getTexCoordCount()));
+        assertThat(actual.getFaceCount(), is(expected.getFaceCount()));
+        float[] a = new float[3];
+        float[] b = new float[3];
+        for (int i = 0; i < expected.getVertexCount(); i++) {
+            actual.getVertex(i, a);
+            expected.getVertex(i, b);
+            assertThat(a[0], is(b[0]));
+            assertThat(a[1], is(b[1]));
+            assertThat(a[2], is(b[2]));
+        }
+        for (int i = 0; i < expected.getFaceCount(); i++) {
+            assertThat(actual.getFaceMaterialName(i), is(expected.getFaceMaterialName(i)));
+            assertThat(actual.getFaceGroupName(i), is(expected.getFaceGroupName(i)));
+            assertThat(actual.getFaceVertexCount(i), is(expected.getFaceVertexCount(i)));
+            for (int j = 0; j < expected.getFaceVertexCount(i); j++) {
+                assertThat(actual.getFaceVertexIndex(i, j), is(expected.getFaceVertexIndex(i, j)));
+                assertThat(actual.getFaceTexCoordIndex(i, j),
+                        is(expected.getFaceTexCoordIndex(i, j)));
+                assertThat(actual.getFaceNormalIndex(i, j), is(expected.getFaceNormalIndex(i, j)));
+            }
+        }
+        assertThat(actual.getBoundsMin().x, is(expected.getBoundsMin().x));
+        assertThat(actual.getBoundsMax().y, is(expected.getBoundsMax().y));
+    }
+}
@@ -0,0 +1,113 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ObjModelTest {
+
+    private static final String OBJ = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+            + "usemtl red\nf 1 2 3\nusemtl blue\nf 1 2 3 4\nusemtl red\nf 2 3 4\n";
+    private static final String MTL = "newmtl blue\nKd 0 0 1\nnewmtl red\nKd 1 0 0\n";
+
+    @Test
+    public void testSubmeshesGroupedByMaterial() throws Exception {
+        ObjModel model = createModel();
+        assertThat(model.indexCount, is(12));
+        assertThat(model.submeshes.length, is(2));
+        // Red first (it's used first in the file), with both of its triangles.
+        assertThat(model.submeshes[0].materialId, is(1));
+        assertThat(model.submeshes[0].color[0], is(1f));
+        assertThat(model.submeshes[0].firstIndex, is(0));
+        assertThat(model.submeshes[0].indexCount, is(6));
+        // Then blue, with the quad split into two triangles.
+        assertThat(model.submeshes[1].materialId, is(0));
+        assertThat(model.submeshes[1].firstIndex, is(6));
+        assertThat(model.submeshes[1].indexCount, is(6));
+    }
+
+    @Test
+    public void testGroups() throws Exception {
+        MtlLibrary materials = new MtlLibrary();
+        materials.parseAndAdd(MTL);
+        ObjModel model = new ObjModel(ObjGeometry.parse("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 5\n"
+                + "f 1 2 3\ng lid\nusemtl red\nf 2 3 4\nusemtl blue\nf 1 2 4\n"), materials);
+        assertThat(model.groups.length, is(2));
+        assertThat(model.groups[0].name, is(MeshGroup.DEFAULT_NAME));
+        assertThat(model.groups[0].firstSubmesh, is(0));
+        assertThat(model.groups[0].submeshCount, is(1));
+        assertThat(model.groups[0].boundsMax[2], is(0f));
+        assertThat(model.groups[1].name, is("lid"));
+        assertThat(model.groups[1].firstSubmesh, is(1));
+        assertThat(model.groups[1].submeshCount, is(2));
+        assertThat(model.groups[1].boundsMin[0], is(0f));
+        assertThat(model.groups[1].boundsMax[2], is(5f));
+        assertThat(model.submeshes[2].firstIndex, is(6));
+
+        assertThat(model.setGroupVisible("lid", false), is(true));
+        assertThat(model.groups[1].isVisible(), is(false));
+        assertThat(model.setGroupVisible("missing", false), is(false));
+
+        ObjModel cached = new ObjModel(model.toCacheEntry());
+        assertThat(cached.groups.length, is(2));
+        assertThat(cached.groups[1].name, is("lid"));
+        assertThat(cached.groups[1].submeshCount, is(2));
+        assertThat(cached.groups[1].boundsMax[2], is(5f));
+    }
+
+    @Test
+    public void testVerticesWithExtraComponents() throws Exception {
+        // "v x y z w", and vertex colors "v x y z r g b", as written by many exporters.
+        ObjModel model = new ObjModel(ObjGeometry.parse("v 0 0 0 1\nv 1 0 0 0.5 0.5 0.5\n"
+                + "v 1 1 0 1 0 0\nvn 0 0 1 0\nf 1//1 2//1 3//1\n"), new MtlLibrary());
+        assertThat(model.vertexCount, is(3));
+        assertThat(model.indexCount, is(3));
+        assertThat(model.maxX, is(1f));
+        assertThat(model.maxY, is(1f));
+        // The normal of each vertex.
+        assertThat(model.vertexBuffer.get(5), is(1f));
+    }
+
+    @Test
+    public void testNonAsciiMaterialName() throws Exception {
+        MtlLibrary materials = new MtlLibrary();
+        materials.parseAndAdd("newmtl blue\nKd 0 0 1\nnewmtl r\u00f6d\nKd 1 0 0\n");
+        ObjModel model = new ObjModel(ObjGeometry.parse("v 0 0 0\nv 1 0 0\nv 1 1 0\n"
+                + "usemtl r\u00f6d\nf 1 2 3\n"), materials);
+        assertThat(model.submeshes.length, is(1));
+        assertThat(model.submeshes[0].materialId, is(1));
+        assertThat(model.submeshes[0].color[0], is(1f));
+    }
+
+    @Test
+    public void testVerticesInterleaved() throws Exception {
+        ObjModel model = createModel();
+        assertThat(model.vertexBuffer.limit(), is(4 * ArrayModel.FLOATS_PER_VERTEX));
+        // Each position is followed by its normal; the faces are in the z = 0 plane.
+        for (int v = 0; v < model.vertexCount; v++) {
+            int offset = v * ArrayModel.FLOATS_PER_VERTEX;
+            assertThat(model.vertexBuffer.get(offset + 2), is(0f));
+            assertThat(Math.abs(model.vertexBuffer.get(offset + 5)), is(1f));
+        }
+    }
+
+    @Test
+    public void testCacheEntry() throws Exception {
+        ObjModel model = createModel();
+        ObjModel cached = new ObjModel(model.toCacheEntry());
+        assertThat(cached.vertexCount, is(4));
+        assertThat(cached.indexCount, is(12));
+        assertThat(cached.maxX, is(1f));
+        assertThat(cached.centerMassY, is(0.5f));
+        assertThat(cached.submeshes.length, is(2));
+        assertThat(cached.submeshes[1].color[2], is(1f));
+        assertThat(cached.submeshes[1].firstIndex, is(6));
+    }
+
+    private static ObjModel createModel() throws Exception {
+        MtlLibrary materials = new MtlLibrary();
+        materials.parseAndAdd(MTL);
+        return new ObjModel(ObjGeometry.parse(OBJ), materials);
+    }
+}
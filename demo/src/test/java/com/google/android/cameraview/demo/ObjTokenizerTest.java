@@ -0,0 +1,117 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+public class ObjTokenizerTest {
+
+    private static ObjTokenizer tokenizer(String text) {
+        return new ObjTokenizer(text.getBytes(Charset.forName("US-ASCII")));
+    }
+
+    @Test
+    public void testRecordTypes() {
+        ObjTokenizer tokenizer = tokenizer("# comment\nv 1 2 3\r\nvt 0 1\n\nvn 0 0 1\n"
+                + "  usemtl red\nf 1 2 3\ng group\no object\ns 1\n");
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_OTHER));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_VERTEX));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_TEX_COORDS));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_OTHER));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_NORMAL));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_USE_MATERIAL));
+        assertThat(tokenizer.nextName(), is("red"));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_FACE));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_GROUP));
+        assertThat(tokenizer.nextName(), is("group"));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_OBJECT));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_OTHER));
+        assertThat(tokenizer.getLineNumber(), is(10));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_END));
+    }
+
+    @Test
+    public void testNonAsciiName() {
+        ObjTokenizer tokenizer = new ObjTokenizer(
+                "usemtl M\u00e9tal_\u9285 \nf 1 2 3\n".getBytes(Charset.forName("UTF-8")));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_USE_MATERIAL));
+        assertThat(tokenizer.nextName(), is("M\u00e9tal_\u9285"));
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_FACE));
+    }
+
+    @Test
+    public void testFloats() {
+        ObjTokenizer tokenizer = tokenizer("v 1 -2.5 +0.125 1e3 -4.5E-2 .5 7. 0.000001\n");
+        tokenizer.nextRecord();
+        String[] expected = {"1", "-2.5", "+0.125", "1e3", "-4.5E-2", ".5", "7.", "0.000001"};
+        for (String s : expected) {
+            assertThat(tokenizer.nextFloat(), is(Float.parseFloat(s)));
+        }
+        assertThat(tokenizer.hasMoreTokens(), is(false));
+    }
+
+    @Test
+    public void testFloats_fallback() {
+        ObjTokenizer tokenizer = tokenizer("v 1e-40 123456789012345678901234 NaN\n");
+        tokenizer.nextRecord();
+        assertThat(tokenizer.nextFloat(), is(Float.parseFloat("1e-40")));
+        assertThat(tokenizer.nextFloat(), is(Float.parseFloat("123456789012345678901234")));
+        assertThat(Float.isNaN(tokenizer.nextFloat()), is(true));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testFloats_invalid() {
+        ObjTokenizer tokenizer = tokenizer("v 1.2.3\n");
+        tokenizer.nextRecord();
+        tokenizer.nextFloat();
+    }
+
+    @Test
+    public void testFaceVertices() {
+        ObjTokenizer tokenizer = tokenizer("f 1 2/3 4//5 6/7/8 -1/-2/-3\n");
+        tokenizer.nextRecord();
+        int[] v = new int[3];
+        assertThat(tokenizer.nextFaceVertex(v), is(true));
+        assertFaceVertex(v, 1, ObjTokenizer.NO_INDEX, ObjTokenizer.NO_INDEX);
+        assertThat(tokenizer.nextFaceVertex(v), is(true));
+        assertFaceVertex(v, 2, 3, ObjTokenizer.NO_INDEX);
+        assertThat(tokenizer.nextFaceVertex(v), is(true));
+        assertFaceVertex(v, 4, ObjTokenizer.NO_INDEX, 5);
+        assertThat(tokenizer.nextFaceVertex(v), is(true));
+        assertFaceVertex(v, 6, 7, 8);
+        assertThat(tokenizer.nextFaceVertex(v), is(true));
+        assertFaceVertex(v, -1, -2, -3);
+        assertThat(tokenizer.nextFaceVertex(v), is(false));
+    }
+
+    @Test
+    public void testResolveIndex() {
+        assertThat(ObjTokenizer.resolveIndex(1, 10, -1), is(0));
+        assertThat(ObjTokenizer.resolveIndex(-1, 10, -1), is(9));
+        assertThat(ObjTokenizer.resolveIndex(ObjTokenizer.NO_INDEX, 10, -1), is(-1));
+    }
+
+    @Test
+    public void testWrap_directBuffer() {
+        byte[] bytes = "v 1 2 3".getBytes(Charset.forName("US-ASCII"));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        ObjTokenizer tokenizer = ObjTokenizer.wrap(buffer);
+        assertThat(tokenizer.nextRecord(), is(ObjTokenizer.RECORD_VERTEX));
+        assertThat(tokenizer.nextFloat(), is(1f));
+        assertThat(tokenizer.nextFloat(), is(2f));
+        assertThat(tokenizer.nextFloat(), is(3f));
+        assertThat(buffer.position(), is(0));
+    }
+
+    private static void assertFaceVertex(int[] v, int position, int texCoords, int normal) {
+        assertThat(v[ObjTokenizer.FACE_VERTEX_POSITION], is(position));
+        assertThat(v[ObjTokenizer.FACE_VERTEX_TEX_COORDS], is(texCoords));
+        assertThat(v[ObjTokenizer.FACE_VERTEX_NORMAL], is(normal));
+    }
+}
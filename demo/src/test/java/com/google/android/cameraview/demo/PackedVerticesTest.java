@@ -0,0 +1,67 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+public class PackedVerticesTest {
+
+    @Test
+    public void testPack_positionsWithinBounds() {
+        FloatBuffer vertices = FloatBuffer.wrap(new float[] {
+                -10, 2, 0.5f, 0, 0, 1,
+                30, 2, 0.25f, 0, 1, 0,
+                7.3f, 2, 0.3f, 1, 0, 0 });
+        PackedVertices packed = PackedVertices.pack(vertices, 3);
+
+        assertThat(packed.getByteCount(), is(24));
+        assertThat(packed.offset[0], is(10f));
+        assertThat(packed.scale[0], is(20f));
+        float[] position = new float[3];
+        for (int v = 0; v < 3; v++) {
+            packed.getPosition(v, position);
+            assertClose(position[0], vertices.get(v * 6), 40f / 65535);
+            // All the vertices have the same y, so there is nothing to quantize.
+            assertThat(position[1], is(2f));
+            assertClose(position[2], vertices.get(v * 6 + 2), 0.25f / 65535);
+        }
+    }
+
+    @Test
+    public void testPack_normalsWithinOneDegree() {
+        Random random = new Random(1);
+        int vertexCount = 1000;
+        FloatBuffer vertices = FloatBuffer.allocate(vertexCount * 6);
+        for (int v = 0; v < vertexCount; v++) {
+            for (int i = 3; i < 6; i++) {
+                vertices.put(v * 6 + i, (float) random.nextGaussian());
+            }
+        }
+        // The poles and the edges of the octahedron.
+        vertices.put(3, 0).put(4, 0).put(5, -1);
+        vertices.put(9, 0).put(10, 0).put(11, 1);
+        vertices.put(15, 0).put(16, -1).put(17, 0);
+        vertices.put(21, -1).put(22, 0).put(23, -1);
+        PackedVertices packed = PackedVertices.pack(vertices, vertexCount);
+
+        float[] normal = new float[3];
+        double minCos = Math.cos(Math.toRadians(1));
+        for (int v = 0; v < vertexCount; v++) {
+            packed.getNormal(v, normal);
+            double x = vertices.get(v * 6 + 3);
+            double y = vertices.get(v * 6 + 4);
+            double z = vertices.get(v * 6 + 5);
+            double length = Math.sqrt(x * x + y * y + z * z);
+            double cos = (x * normal[0] + y * normal[1] + z * normal[2]) / length;
+            assertThat("vertex " + v + ": " + cos, cos > minCos, is(true));
+        }
+    }
+
+    private static void assertClose(float actual, float expected, float tolerance) {
+        assertThat(actual + " != " + expected, Math.abs(actual - expected) <= tolerance, is(true));
+    }
+}
@@ -0,0 +1,84 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ProgramRegistryTest {
+
+    private static final String DRIVER = "Vendor\nRenderer\nOpenGL ES 3.2 V@1.0\nfingerprint";
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        File file = createTempFile();
+        byte[] data = { 1, 2, 3, 4, 5 };
+        ProgramRegistry.writeBinary(file, DRIVER,
+                new ProgramRegistry.ProgramBinary(0x1234, data));
+
+        ProgramRegistry.ProgramBinary binary = ProgramRegistry.readBinary(file, DRIVER);
+        assertThat(binary.format, is(0x1234));
+        assertThat(Arrays.equals(binary.data, data), is(true));
+        assertThat(new File(file.getPath() + ".tmp").exists(), is(false));
+    }
+
+    @Test
+    public void testBinaryOfAnotherDriver_isIgnored() throws Exception {
+        File file = createTempFile();
+        ProgramRegistry.writeBinary(file, DRIVER,
+                new ProgramRegistry.ProgramBinary(1, new byte[] { 1 }));
+
+        String updatedDriver = DRIVER.replace("V@1.0", "V@2.0");
+        assertThat(ProgramRegistry.readBinary(file, updatedDriver), is(nullValue()));
+    }
+
+    @Test
+    public void testTruncatedBinary_throws() throws Exception {
+        File file = createTempFile();
+        file.getParentFile().mkdirs();
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[] { 0x50, 0x52, 0x47 });
+        output.close();
+        try {
+            ProgramRegistry.readBinary(file, DRIVER);
+            org.junit.Assert.fail("Expected IOException for a truncated file");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testKey_dependsOnDefinesAndAttributes() {
+        String key = ProgramRegistry.getKey("vertex", "fragment", null, null);
+        assertThat(ProgramRegistry.getKey("vertex", "fragment", null, null), is(key));
+        assertThat(ProgramRegistry.getKey("vertex", "fragment", new String[] { "PACKED" }, null),
+                is(not(key)));
+        assertThat(ProgramRegistry.getKey("vertex", "fragment", null, new String[] { "a" }),
+                is(not(key)));
+        assertThat(ProgramRegistry.getKey("vertexfragment", "", null, null), is(not(key)));
+    }
+
+    @Test
+    public void testApplyDefines() {
+        assertThat(ProgramRegistry.applyDefines("void main() {}", null), is("void main() {}"));
+        assertThat(ProgramRegistry.applyDefines("void main() {}", new String[] { "A", "B 2" }),
+                is("#define A\n#define B 2\nvoid main() {}"));
+        assertThat(ProgramRegistry.applyDefines("#version 100\nvoid main() {}",
+                new String[] { "A" }), is("#version 100\n#define A\nvoid main() {}"));
+    }
+
+    private static File createTempFile() throws IOException {
+        File directory = File.createTempFile("programs", "");
+        directory.delete();
+        File file = new File(directory, "program.bin");
+        file.deleteOnExit();
+        directory.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,68 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class RawObjectTest {
+
+    // A cube whose quads share their corners, without normals.
+    private static final String CUBE_OBJ = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+            + "v 0 0 1\nv 1 0 1\nv 1 1 1\nv 0 1 1\n"
+            + "f 1 2 3 4\nf 5 6 7 8\nf 1 2 6 5\nf 2 3 7 6\nf 3 4 8 7\nf 4 1 5 8\n";
+
+    @Test
+    public void testConvert_weldsSharedCorners() throws Exception {
+        // Two coplanar quads sharing an edge, without normals.
+        RawObject object = convert("v 0 0 0\nv 1 0 0\nv 2 0 0\nv 0 1 0\nv 1 1 0\nv 2 1 0\n"
+                + "f 1 2 5 4\nf 2 3 6 5\n");
+        assertThat(object.unweldedVertexCount, is(8));
+        assertThat(object.vertexCount, is(6));
+        assertThat(object.vertices.limit(), is(36));
+        assertThat(object.indexCount, is(12));
+        assertThat(object.vertices.get(5), is(1f));
+    }
+
+    @Test
+    public void testConvert_keepsCreasesSharp() throws Exception {
+        // The edges of the cube are sharper than the crease angle, so each side gets its own
+        // vertices, with the normal of the side.
+        RawObject object = convert(CUBE_OBJ);
+        assertThat(object.unweldedVertexCount, is(24));
+        assertThat(object.vertexCount, is(24));
+        assertThat(object.indexCount, is(36));
+        for (int v = 0; v < object.vertexCount; v++) {
+            float nx = object.vertices.get(v * 6 + 3);
+            float ny = object.vertices.get(v * 6 + 4);
+            float nz = object.vertices.get(v * 6 + 5);
+            assertThat(Math.abs(nx) + Math.abs(ny) + Math.abs(nz), is(1f));
+        }
+    }
+
+    @Test
+    public void testConvert_keepsCornersWithDifferentNormals() throws Exception {
+        RawObject object = convert("v 0 0 0\nv 1 0 0\nv 0 1 0\nvn 0 0 1\nvn 0 0 -1\n"
+                + "f 1//1 2//1 3//1\nf 1//2 3//2 2//2\n");
+        assertThat(object.vertexCount, is(6));
+        assertThat(object.indexCount, is(6));
+    }
+
+    @Test
+    public void testConvert_dropsDegenerateTriangles() throws Exception {
+        // The second face has two corners at the same position (from different "v" records), and
+        // its last vertex is not used by any other face.
+        RawObject object = convert("v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 0 0\nv 5 5 5\n"
+                + "f 1 2 3\nf 2 4 5\n");
+        assertThat(object.unweldedVertexCount, is(6));
+        assertThat(object.vertexCount, is(3));
+        assertThat(object.indexCount, is(3));
+        assertThat(object.submeshes.length, is(1));
+        assertThat(object.groups[0].boundsMax[0], is(1f));
+    }
+
+    private static RawObject convert(String obj) throws Exception {
+        return RawObject.convertObjAndMtl(ObjGeometry.parse(obj), new MtlLibrary(),
+                new ObjGeometry.Vec3(0, 0, 0), 1f);
+    }
+}
@@ -0,0 +1,145 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+public class TriangleBvhTest {
+
+    @Test
+    public void testRaycast_singleTriangle() {
+        FloatBuffer vertices = FloatBuffer.wrap(new float[] {
+                0, 0, 0, 0, 0, 1,
+                1, 0, 0, 0, 0, 1,
+                0, 1, 0, 0, 0, 1 });
+        TriangleBvh bvh = TriangleBvh.build(vertices, 3, IntBuffer.wrap(new int[] { 0, 1, 2 }), 3,
+                null);
+
+        RaycastHit hit = bvh.raycast(new float[] { 0.25f, 0.25f, 5 }, new float[] { 0, 0, -1 });
+        assertThat(hit.triangle, is(0));
+        assertThat(hit.distance, is(5f));
+        // From behind, as triangles are hit from both sides.
+        hit = bvh.raycast(new float[] { 0.25f, 0.25f, -2 }, new float[] { 0, 0, 1 });
+        assertThat(hit.distance, is(2f));
+        assertThat(bvh.raycast(new float[] { 0.75f, 0.75f, 5 }, new float[] { 0, 0, -1 }),
+                is(nullValue()));
+        assertThat(bvh.raycast(new float[] { 0.25f, 0.25f, 5 }, new float[] { 0, 0, 1 }),
+                is(nullValue()));
+    }
+
+    @Test
+    public void testRaycast_matchesBruteForce() {
+        Random random = new Random(3);
+        int triangleCount = 2000;
+        float[] vertices = new float[triangleCount * 3 * 6];
+        int[] indices = new int[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            float cx = random.nextFloat() * 20 - 10;
+            float cy = random.nextFloat() * 20 - 10;
+            float cz = random.nextFloat() * 20 - 10;
+            for (int j = 0; j < 3; j++) {
+                int v = t * 3 + j;
+                vertices[v * 6] = cx + random.nextFloat() - 0.5f;
+                vertices[v * 6 + 1] = cy + random.nextFloat() - 0.5f;
+                vertices[v * 6 + 2] = cz + random.nextFloat() - 0.5f;
+                indices[v] = v;
+            }
+        }
+        TriangleBvh bvh = TriangleBvh.build(FloatBuffer.wrap(vertices), triangleCount * 3,
+                IntBuffer.wrap(indices), indices.length, null);
+        assertThat(bvh.getNodeCount() < 2 * triangleCount, is(true));
+
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            float[] origin = { random.nextFloat() * 30 - 15, random.nextFloat() * 30 - 15, 20 };
+            float[] direction = { random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -1 };
+            int expected = -1;
+            float closest = Float.POSITIVE_INFINITY;
+            for (int t = 0; t < triangleCount; t++) {
+                float distance = intersect(vertices, t, origin, direction);
+                if (distance >= 0 && distance < closest) {
+                    closest = distance;
+                    expected = t;
+                }
+            }
+            RaycastHit hit = bvh.raycast(origin, direction);
+            if (expected < 0) {
+                assertThat(hit, is(nullValue()));
+            } else {
+                hits++;
+                assertThat(hit.triangle, is(expected));
+                assertThat(hit.distance, is(closest));
+            }
+        }
+        assertThat(hits > 50, is(true));
+    }
+
+    @Test
+    public void testBuild_shortIndicesWithBaseVertex() {
+        FloatBuffer vertices = FloatBuffer.wrap(new float[] {
+                9, 9, 9, 0, 0, 1,
+                0, 0, 0, 0, 0, 1,
+                1, 0, 0, 0, 0, 1,
+                0, 1, 0, 0, 0, 1 });
+        Submesh[] submeshes = {
+                new Submesh(ObjGeometry.MISSING, Submesh.DEFAULT_COLOR, 0, 3, 1) };
+        TriangleBvh bvh = TriangleBvh.build(vertices, 4,
+                ShortBuffer.wrap(new short[] { 0, 1, 2 }), 3, submeshes);
+
+        RaycastHit hit = bvh.raycast(new float[] { 0.25f, 0.25f, 1 }, new float[] { 0, 0, -1 });
+        assertThat(hit.triangle, is(0));
+        assertThat(hit.distance, is(1f));
+    }
+
+    @Test
+    public void testBuild_empty() {
+        TriangleBvh bvh = TriangleBvh.build(FloatBuffer.allocate(0), 0, IntBuffer.allocate(0), 0,
+                null);
+
+        assertThat(bvh.getNodeCount(), is(0));
+        assertThat(bvh.raycast(new float[3], new float[] { 0, 0, 1 }), is(nullValue()));
+    }
+
+    // Same test as the hierarchy, on the triangle t of a non-indexed soup.
+    private static float intersect(float[] vertices, int t, float[] origin, float[] direction) {
+        float[] a = new float[3];
+        float[] e1 = new float[3];
+        float[] e2 = new float[3];
+        for (int i = 0; i < 3; i++) {
+            a[i] = vertices[t * 18 + i];
+            e1[i] = vertices[t * 18 + 6 + i] - a[i];
+            e2[i] = vertices[t * 18 + 12 + i] - a[i];
+        }
+        float px = direction[1] * e2[2] - direction[2] * e2[1];
+        float py = direction[2] * e2[0] - direction[0] * e2[2];
+        float pz = direction[0] * e2[1] - direction[1] * e2[0];
+        float determinant = e1[0] * px + e1[1] * py + e1[2] * pz;
+        if (determinant == 0) {
+            return -1;
+        }
+        float inverseDeterminant = 1 / determinant;
+        float tx = origin[0] - a[0];
+        float ty = origin[1] - a[1];
+        float tz = origin[2] - a[2];
+        float u = (tx * px + ty * py + tz * pz) * inverseDeterminant;
+        if (u < 0 || u > 1) {
+            return -1;
+        }
+        float qx = ty * e1[2] - tz * e1[1];
+        float qy = tz * e1[0] - tx * e1[2];
+        float qz = tx * e1[1] - ty * e1[0];
+        float v = (direction[0] * qx + direction[1] * qy + direction[2] * qz) * inverseDeterminant;
+        if (v < 0 || u + v > 1) {
+            return -1;
+        }
+        float distance = (e2[0] * qx + e2[1] * qy + e2[2] * qz) * inverseDeterminant;
+        return distance >= 0 ? distance : -1;
+    }
+}
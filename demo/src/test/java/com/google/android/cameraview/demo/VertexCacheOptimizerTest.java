@@ -0,0 +1,138 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class VertexCacheOptimizerTest {
+
+    private static final int GRID_SIZE = 40;
+    private static final int VERTEX_COUNT = (GRID_SIZE + 1) * (GRID_SIZE + 1);
+
+    @Test
+    public void testOptimize_reducesCacheMissesAndKeepsTriangles() {
+        IntArrayList indices = shuffledGrid(new Random(42));
+        String[] before = triangleKeys(indices);
+        float acmrBefore = VertexCacheOptimizer.getAcmr(indices, VERTEX_COUNT, 16);
+        Submesh[] submeshes = { new Submesh(-1, Submesh.DEFAULT_COLOR, 0, indices.size()) };
+
+        VertexCacheOptimizer.Result result =
+                VertexCacheOptimizer.optimize(indices, submeshes, VERTEX_COUNT);
+        int[] remap = result.remap;
+
+        float acmrAfter = VertexCacheOptimizer.getAcmr(indices, VERTEX_COUNT, 16);
+        assertThat(acmrAfter < 1.0f, is(true));
+        assertThat(acmrAfter < acmrBefore / 2, is(true));
+        assertThat(result.acmrBefore, is(acmrBefore));
+        assertThat(result.acmrAfter, is(acmrAfter));
+        assertThat(result.triangleCount, is(indices.size() / 3));
+        assertThat(result.getAtvrAfter(), is(acmrAfter * result.triangleCount / VERTEX_COUNT));
+        // Same triangles, with the same winding, once the vertices are mapped back.
+        int[] inverse = new int[VERTEX_COUNT];
+        for (int i = 0; i < VERTEX_COUNT; i++) {
+            inverse[remap[i]] = i;
+        }
+        IntArrayList original = new IntArrayList();
+        for (int i = 0; i < indices.size(); i++) {
+            original.add(inverse[indices.get(i)]);
+        }
+        assertThat(Arrays.equals(triangleKeys(original), before), is(true));
+    }
+
+    @Test
+    public void testOptimize_keepsSubmeshRanges() {
+        IntArrayList indices = shuffledGrid(new Random(7));
+        int split = indices.size() / 3 / 2 * 3;
+        String[] firstHalf = triangleKeys(slice(indices, 0, split));
+        Submesh[] submeshes = {
+                new Submesh(0, Submesh.DEFAULT_COLOR, 0, split),
+                new Submesh(1, Submesh.DEFAULT_COLOR, split, indices.size() - split) };
+        VertexCacheOptimizer optimizer = new VertexCacheOptimizer(VERTEX_COUNT);
+        for (Submesh submesh : submeshes) {
+            optimizer.optimizeTriangleOrder(indices, submesh.firstIndex, submesh.indexCount);
+        }
+        assertThat(Arrays.equals(triangleKeys(slice(indices, 0, split)), firstHalf), is(true));
+    }
+
+    @Test
+    public void testOptimizeVertexFetch() {
+        IntArrayList indices = new IntArrayList();
+        indices.add(3, 1, 4);
+        indices.add(1, 3, 0);
+        int[] remap = VertexCacheOptimizer.optimizeVertexFetch(indices, 6);
+        assertThat(Arrays.equals(remap, new int[] { 3, 1, 4, 0, 2, 5 }), is(true));
+        assertThat(indices.get(0), is(0));
+        assertThat(indices.get(2), is(2));
+        assertThat(indices.get(5), is(3));
+
+        FloatBuffer positions = FloatBuffer.wrap(new float[] { 0, 1, 2, 3, 4, 5 });
+        VertexCacheOptimizer.remapVertices(positions, 1, remap);
+        assertThat(positions.get(0), is(3f));
+        assertThat(positions.get(3), is(0f));
+        assertThat(positions.get(5), is(5f));
+    }
+
+    @Test
+    public void testGetAcmr() {
+        IntArrayList indices = new IntArrayList();
+        indices.add(0, 1, 2);
+        indices.add(2, 1, 3);
+        // 4 vertices transformed for 2 triangles.
+        assertThat(VertexCacheOptimizer.getAcmr(indices, 4, 16), is(2f));
+        // With room for only one vertex, every index misses except the repeated 2.
+        assertThat(VertexCacheOptimizer.getAcmr(indices, 4, 1), is(2.5f));
+    }
+
+    // A grid of quads, split into triangles that are then shuffled.
+    private static IntArrayList shuffledGrid(Random random) {
+        ArrayList<int[]> triangles = new ArrayList<>();
+        for (int y = 0; y < GRID_SIZE; y++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                int v = y * (GRID_SIZE + 1) + x;
+                triangles.add(new int[] { v, v + 1, v + GRID_SIZE + 2 });
+                triangles.add(new int[] { v, v + GRID_SIZE + 2, v + GRID_SIZE + 1 });
+            }
+        }
+        Collections.shuffle(triangles, random);
+        IntArrayList indices = new IntArrayList();
+        for (int[] triangle : triangles) {
+            indices.add(triangle[0], triangle[1], triangle[2]);
+        }
+        return indices;
+    }
+
+    private static IntArrayList slice(IntArrayList list, int from, int to) {
+        IntArrayList result = new IntArrayList();
+        for (int i = from; i < to; i++) {
+            result.add(list.get(i));
+        }
+        return result;
+    }
+
+    // Returns a sorted key for each triangle, starting from its smallest vertex so that rotations
+    // of the same triangle (which keep its winding) have the same key.
+    private static String[] triangleKeys(IntArrayList indices) {
+        String[] keys = new String[indices.size() / 3];
+        for (int t = 0; t < keys.length; t++) {
+            int a = indices.get(t * 3);
+            int b = indices.get(t * 3 + 1);
+            int c = indices.get(t * 3 + 2);
+            while (a > b || a > c) {
+                int swap = a;
+                a = b;
+                b = c;
+                c = swap;
+            }
+            keys[t] = a + "," + b + "," + c;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+}
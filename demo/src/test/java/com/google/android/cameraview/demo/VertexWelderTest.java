@@ -0,0 +1,55 @@
+package com.google.android.cameraview.demo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class VertexWelderTest {
+
+    private static final float[] UP = { 0, 1, 0 };
+    private static final float[] DOWN = { 0, -1, 0 };
+
+    @Test
+    public void testAdd_mergesIdenticalVertices() {
+        VertexWelder welder = new VertexWelder(0);
+        assertThat(welder.add(new float[] { 1, 2, 3 }, UP), is(0));
+        assertThat(welder.add(new float[] { 1, 2, 3 }, DOWN), is(1));
+        assertThat(welder.add(new float[] { 1, 2, 3 }, UP), is(0));
+        // -0 and +0 are the same coordinate.
+        assertThat(welder.add(new float[] { 0, 0, 0 }, UP), is(2));
+        assertThat(welder.add(new float[] { -0f, 0, 0 }, UP), is(2));
+        assertThat(welder.getVertexCount(), is(3));
+        assertThat(welder.samePosition(0, 1), is(true));
+        assertThat(welder.samePosition(0, 2), is(false));
+    }
+
+    @Test
+    public void testAdd_manyVertices() {
+        VertexWelder welder = new VertexWelder(4);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < 1000; i++) {
+                assertThat(welder.add(new float[] { i, i * 0.5f, -i }, UP), is(i));
+            }
+        }
+        assertThat(welder.getVertexCount(), is(1000));
+    }
+
+    @Test
+    public void testRemoveUnreferenced() {
+        VertexWelder welder = new VertexWelder(4);
+        for (int i = 0; i < 5; i++) {
+            welder.add(new float[] { i, 0, 0 }, UP);
+        }
+        IntArrayList indices = new IntArrayList();
+        indices.add(4, 1, 3);
+        welder.removeUnreferenced(indices);
+        assertThat(welder.getVertexCount(), is(3));
+        assertThat(indices.get(0), is(2));
+        assertThat(indices.get(1), is(0));
+        assertThat(indices.get(2), is(1));
+        assertThat(welder.getPositions().get(6), is(4f));
+        // The remaining vertices can still be found.
+        assertThat(welder.add(new float[] { 3, 0, 0 }, UP), is(1));
+    }
+}